@@ -2,7 +2,7 @@ package celtech.roboxbase.comms;
 
 import celtech.roboxbase.ApplicationFeature;
 import celtech.roboxbase.BaseLookup;
-import celtech.roboxbase.comms.async.AsyncWriteThread;
+import celtech.roboxbase.comms.async.AsyncWriter;
 import celtech.roboxbase.comms.async.CommandPacket;
 import celtech.roboxbase.comms.exceptions.PortNotFoundException;
 import celtech.roboxbase.comms.exceptions.RoboxCommsException;
@@ -27,6 +27,12 @@ import celtech.roboxbase.printerControl.model.PrinterException;
 import celtech.roboxbase.services.firmware.FirmwareLoadResult;
 import celtech.roboxbase.services.firmware.FirmwareLoadService;
 import celtech.roboxbase.utils.PrinterUtils;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import javafx.application.Platform;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.scene.paint.Color;
@@ -43,7 +49,7 @@ import libertysystems.stenographer.StenographerFactory;
 public abstract class CommandInterface extends Thread
 {
 
-    protected boolean keepRunning = true;
+    protected volatile boolean keepRunning = true;
 
     protected Stenographer steno = StenographerFactory.getStenographer(
             HardwareCommandInterface.class.getName());
@@ -74,7 +80,12 @@ public abstract class CommandInterface extends Thread
     private int statusRequestCount = 0;
     private static final int maxAllowedStatusRequestCount = 3;
 
-    private final AsyncWriteThread asyncWriteThread;
+    private final AsyncWriter asyncWriter;
+
+    private final Object statusPollLock = new Object();
+    private ScheduledFuture<?> nextStatusPoll = null;
+    private final StatusPollingPolicy statusPollingPolicy = new StatusPollingPolicy();
+    private int lastPolledStatusHash = 0;
 
     /**
      *
@@ -99,7 +110,7 @@ public abstract class CommandInterface extends Thread
         this.setName("CommandInterface|" + printerHandle.getConnectionHandle());
         this.setPriority(8);
 
-        asyncWriteThread = new AsyncWriteThread(this, printerHandle.getConnectionHandle());
+        asyncWriter = new AsyncWriter(this, printerHandle.getConnectionHandle());
         
 
         try
@@ -419,45 +430,10 @@ public abstract class CommandInterface extends Thread
 
                     break;
                 case CONNECTED:
-                    try
-                    {
-                        if (!suspendStatusChecks && isConnected && commsState == RoboxCommsState.CONNECTED)
-                        {
-                            try
-                            {
-                                writeToPrinter(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.STATUS_REQUEST));
-                                
-                                writeToPrinter(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.REPORT_ERRORS));
-
-                                // If we're talking to a remote printer we need to keep checking data that may have changed without us knowing
-                                if (this instanceof RoboxRemoteCommandInterface)
-                                {
-                                    writeToPrinter(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.READ_PRINTER_ID));
-                                }
-                                statusRequestCount = 0;
-                            } catch (RoboxCommsException ex)
-                            {
-                                if (isConnected)
-                                {
-                                    // Disconnect printer after max allowed number of failed attempts.
-                                    ++statusRequestCount;
-                                    if (statusRequestCount > maxAllowedStatusRequestCount)
-                                    {
-                                        steno.warning("Failure during printer status request: " + ex);
-                                        //steno.debug("Status request count for " + printerHandle.getConnectionHandle() + " (" + Integer.toString(statusRequestCount) + ") exceeds maxAllowedStatusRequestCount(" + Integer.toString(maxAllowedStatusRequestCount));
-                                        shutdown();
-                                    }
-                                }
-                            }
-                        }
-
-                        this.sleep(sleepBetweenStatusChecks);
-                    } catch (InterruptedException ex)
-                    {
-                        steno.debug("Comms interrupted");
-                    }
-                    
-                    break;
+                    // From here on the printer is polled from the status
+                    // poll pool, so this thread is no longer needed.
+                    scheduleNextStatusPoll(0);
+                    return;
 
                 case DISCONNECTED:
                     steno.debug("state is disconnected");
@@ -466,11 +442,120 @@ public abstract class CommandInterface extends Thread
                     break;
             }
         }
+        exitCommsHandler();
+    }
+
+    private void exitCommsHandler()
+    {
         steno.info("Handler for " + printerHandle.getConnectionHandle() + " beginning exit routine - state was " + commsState);
         finalShutdown();
         steno.info("Handler for " + printerHandle.getConnectionHandle() + " exited");
     }
 
+    /**
+     * Polls a connected printer. Each poll schedules the next one when it has
+     * finished, so polls of one printer never overlap. A printer that already
+     * has commands queued behind the one being written skips the poll rather
+     * than adding to the queue. The time to the next poll is chosen by the
+     * polling policy from what the printer is doing. Polls run on a pool of
+     * their own, as work on the shared pool may be waiting for what they see.
+     */
+    private void pollStatus()
+    {
+        long nextPollDelay = sleepBetweenStatusChecks;
+
+        if (keepRunning
+                && !suspendStatusChecks && isConnected && commsState == RoboxCommsState.CONNECTED
+                && !isStatusPushed()
+                && asyncWriter.getCommandsWaiting() <= 1)
+        {
+            try
+            {
+                List<RoboxTxPacket> statusPoll = new ArrayList<>(3);
+                statusPoll.add(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.STATUS_REQUEST));
+                statusPoll.add(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.REPORT_ERRORS));
+
+                // If we're talking to a remote printer we need to keep checking data that may have changed without us knowing
+                if (this instanceof RoboxRemoteCommandInterface)
+                {
+                    statusPoll.add(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.READ_PRINTER_ID));
+                }
+
+                List<RoboxRxPacket> replies = writeToPrinter(statusPoll, false);
+                statusRequestCount = 0;
+
+                if (!replies.isEmpty()
+                        && replies.get(0) instanceof StatusResponse)
+                {
+                    nextPollDelay = choosePollDelay((StatusResponse) replies.get(0));
+                }
+            } catch (RoboxCommsException ex)
+            {
+                if (isConnected)
+                {
+                    // Disconnect printer after max allowed number of failed attempts.
+                    ++statusRequestCount;
+                    if (statusRequestCount > maxAllowedStatusRequestCount)
+                    {
+                        steno.warning("Failure during printer status request: " + ex);
+                        shutdown();
+                    }
+                }
+            }
+        }
+
+        scheduleNextStatusPoll(nextPollDelay);
+    }
+
+    private long choosePollDelay(StatusResponse statusResponse)
+    {
+        // Compared by hash as some interfaces update one status object in place
+        int statusHash = statusResponse.hashCode();
+        boolean statusChanged = statusHash != lastPolledStatusHash;
+        lastPolledStatusHash = statusHash;
+
+        StatusPollingPolicy.PrinterActivity activity = StatusPollingPolicy.activityOf(printerToUse,
+                statusResponse, loadingFirmware);
+        return statusPollingPolicy.getPollInterval(sleepBetweenStatusChecks, activity, statusChanged);
+    }
+
+    /**
+     * A command has been sent, so the printer is about to be doing something.
+     * If it was being polled less often because it was idle, the next poll is
+     * brought forward.
+     */
+    private void commandSent()
+    {
+        if (statusPollingPolicy.reset())
+        {
+            synchronized (statusPollLock)
+            {
+                if (keepRunning
+                        && nextStatusPoll != null
+                        && nextStatusPoll.getDelay(TimeUnit.MILLISECONDS) > sleepBetweenStatusChecks
+                        && nextStatusPoll.cancel(false))
+                {
+                    nextStatusPoll = BackgroundExecutor.getStatusPollInstance().schedule(this::pollStatus,
+                            sleepBetweenStatusChecks, getName());
+                }
+            }
+        }
+    }
+
+    private void scheduleNextStatusPoll(long delayMs)
+    {
+        synchronized (statusPollLock)
+        {
+            if (keepRunning)
+            {
+                nextStatusPoll = BackgroundExecutor.getStatusPollInstance().schedule(this::pollStatus, delayMs, getName());
+                return;
+            }
+            nextStatusPoll = null;
+        }
+        exitCommsHandler();
+    }
+
     private void moveOnFromFirmwareCheck(FirmwareResponse firmwareResponse)
     {
         if (suppressPrinterIDChecks == false)
@@ -501,8 +586,23 @@ public abstract class CommandInterface extends Thread
 
     public void shutdown()
     {
-        keepRunning = false;
-        commsState = RoboxCommsState.SHUTTING_DOWN;
+        ScheduledFuture<?> pendingStatusPoll;
+        synchronized (statusPollLock)
+        {
+            keepRunning = false;
+            commsState = RoboxCommsState.SHUTTING_DOWN;
+            pendingStatusPoll = nextStatusPoll;
+            nextStatusPoll = null;
+        }
+
+        // A poll that has already started will see that it should stop and
+        // exit instead of scheduling another. One that has not started yet is
+        // cancelled, so the exit is done here rather than after the next sleep.
+        if (pendingStatusPoll != null
+                && pendingStatusPoll.cancel(false))
+        {
+            BackgroundExecutor.getInstance().execute(this::exitCommsHandler, getName());
+        }
     }
 
     private void finalShutdown()
@@ -523,7 +623,7 @@ public abstract class CommandInterface extends Thread
         steno.debug("set state to disconnected");
         commsState = RoboxCommsState.DISCONNECTED;
         isConnected = false;
-        asyncWriteThread.shutdown();
+        asyncWriter.shutdown();
         steno.debug("Shutdown command interface for " + printerHandle.getConnectionHandle() + " complete");
         controlInterface.disconnected(printerHandle);
     }
@@ -562,7 +662,8 @@ public abstract class CommandInterface extends Thread
     {
         if (isConnected)
         {
-            return asyncWriteThread.sendCommand(new CommandPacket(messageToWrite, dontPublishResult));
+            commandSent();
+            return asyncWriter.sendCommand(new CommandPacket(messageToWrite, dontPublishResult));
         } else
         {
             return null;
@@ -572,20 +673,76 @@ public abstract class CommandInterface extends Thread
     public abstract RoboxRxPacket writeToPrinterImpl(RoboxTxPacket messageToWrite,
             boolean dontPublishResult) throws RoboxCommsException;
 
+    /**
+     * Called before each status poll. Interfaces whose printer status is
+     * pushed to them return true while that is happening, and the poll is
+     * skipped.
+     *
+     * @return
+     */
+    protected boolean isStatusPushed()
+    {
+        return false;
+    }
+
+    /**
+     * Write a group of packets. The replies are returned - and published,
+     * unless dontPublishResult is set - in the order the packets were given.
+     *
+     * @param messagesToWrite
+     * @param dontPublishResult
+     * @return
+     * @throws RoboxCommsException
+     */
+    public final List<RoboxRxPacket> writeToPrinter(List<RoboxTxPacket> messagesToWrite, boolean dontPublishResult) throws RoboxCommsException
+    {
+        if (isConnected)
+        {
+            return writeBatchToPrinterImpl(messagesToWrite, dontPublishResult);
+        } else
+        {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Sends the packets one at a time through the async writer. Interfaces
+     * that can deliver several packets in one exchange override this.
+     *
+     * @param messagesToWrite
+     * @param dontPublishResult
+     * @return
+     * @throws RoboxCommsException
+     */
+    protected List<RoboxRxPacket> writeBatchToPrinterImpl(List<RoboxTxPacket> messagesToWrite,
+            boolean dontPublishResult) throws RoboxCommsException
+    {
+        // Written directly rather than through writeToPrinter, so that a status
+        // poll is not taken for a command
+        List<RoboxRxPacket> replies = new ArrayList<>(messagesToWrite.size());
+        for (RoboxTxPacket messageToWrite : messagesToWrite)
+        {
+            replies.add(asyncWriter.sendCommand(new CommandPacket(messageToWrite, dontPublishResult)));
+        }
+        return replies;
+    }
+
+    /**
+     * @return true if writeBatchToPrinterImpl delivers a group of packets in
+     * one exchange, so that sending packets together saves round trips
+     */
+    public boolean deliversBatchesInOneExchange()
+    {
+        return false;
+    }
+
     /**
      *
      * @param printer
      */
     public void setPrinter(Printer printer)
     {
-        // The asyncWriterThread is started here because it is potentially risky
-        // starting a thread in the constructor, as the command interface is not
-        // properly initialised. As not much can happen until a printer is set,
-        // it is started here. 
         this.printerToUse = printer;
-        State s = asyncWriteThread.getState();
-        
-        asyncWriteThread.start();
     }
 
     /**
@@ -2,6 +2,7 @@ package celtech.roboxbase.comms;
 
 import celtech.roboxbase.camera.CameraInfo;
 import celtech.roboxbase.comms.remote.Configuration;
+import celtech.roboxbase.comms.remote.RootStatusStream;
 import celtech.roboxbase.comms.remote.StringToBase64Encoder;
 import celtech.roboxbase.comms.remote.clear.ListCamerasResponse;
 import celtech.roboxbase.comms.remote.clear.ListPrintersResponse;
@@ -15,7 +16,10 @@ import celtech.roboxbase.configuration.fileRepresentation.CameraSettings;
 import celtech.roboxbase.services.printing.SFTPUtils;
 import celtech.roboxbase.utils.PercentProgressReceiver;
 import celtech.roboxbase.utils.SystemUtils;
+import celtech.roboxbase.utils.net.ConditionalGet;
 import celtech.roboxbase.utils.net.MultipartUtility;
+import celtech.roboxbase.utils.net.RootHttpClient;
+import celtech.roboxbase.utils.tasks.ProgressBus;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
@@ -28,13 +32,15 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.jcraft.jsch.SftpProgressMonitor;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.InetAddress;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ListProperty;
 import javafx.beans.property.ObjectProperty;
@@ -181,12 +187,20 @@ public final class DetectedServer
     @JsonIgnore
     private ApplicationVersion version;
     
+    // Replaced, never changed, so that readers on other threads always see a
+    // whole list
     @JsonIgnore
-    private List<DetectedDevice> detectedDevices = new ArrayList();
+    private volatile List<DetectedDevice> detectedDevices = new ArrayList();
 
     @JsonIgnore
     private List<CameraInfo> attachedCameras = new ArrayList();
 
+    @JsonIgnore
+    private final ConditionalGet printerInventory = new ConditionalGet(LIST_PRINTERS_COMMAND);
+
+    @JsonIgnore
+    private final ConditionalGet cameraInventory = new ConditionalGet(LIST_CAMERAS_COMMAND);
+
     @JsonIgnore
     private int pollCount = 0;
 
@@ -196,6 +210,18 @@ public final class DetectedServer
     @JsonIgnore
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    @JsonIgnore
+    private RootHttpClient httpClient = null;
+
+    @JsonIgnore
+    private volatile boolean binaryPacketTransportRefused = false;
+
+    @JsonIgnore
+    private volatile boolean binaryPacketBatchRefused = false;
+
+    @JsonIgnore
+    private RootStatusStream statusStream = null;
+
     @JsonIgnore
     private final ObjectProperty<ServerStatus> serverStatus = new SimpleObjectProperty<>(ServerStatus.NOT_CONNECTED);
 
@@ -308,9 +334,10 @@ public final class DetectedServer
         return address;
     }
 
-    public void setAddress(InetAddress address)
+    public synchronized void setAddress(InetAddress address)
     {
         this.address = address;
+        httpClient = null;
     }
 
     public String getName()
@@ -367,6 +394,7 @@ public final class DetectedServer
         if (this.version == null || !version.getVersionString().equals(this.version.getVersionString()))
         {
             this.version = version;
+            packetProtocolMayHaveChanged();
             dataChanged.set(!dataChanged.get());
         }
     }
@@ -498,6 +526,13 @@ public final class DetectedServer
         if (!pin.equals(this.pin))
         {
             this.pin.set(pin);
+            synchronized (this)
+            {
+                if (httpClient != null)
+                {
+                    httpClient.setCredentials(DEFAULT_USER, pin);
+                }
+            }
             dataChanged.set(!dataChanged.get());
         }
     }
@@ -580,6 +615,9 @@ public final class DetectedServer
     public void disconnect()
     {
         steno.info("Disconnecting \"" + getDisplayName() + "\"");
+        // Whatever is attached will be listed in full on reconnection
+        printerInventory.reset();
+        cameraInventory.reset();
         setCameraDetected(false);
         setServerStatus(ServerStatus.NOT_CONNECTED);
         CoreMemory.getInstance().deactivateRoboxRoot(this);
@@ -596,37 +634,26 @@ public final class DetectedServer
         boolean gotAResponse = false;
         WhoAreYouResponse response = null;
 
-        String url = "http://" + address.getHostAddress() + ":" + Configuration.remotePort + "/api/discovery/whoareyou?pc=yes&rid=yes";
+        String url = "/api/discovery/whoareyou?pc=yes&rid=yes";
         long t1 = System.currentTimeMillis();
         try
         {
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            // optional default is GET
-            con.setRequestMethod("GET");
-
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-                    //+ BaseConfiguration.getApplicationVersion());
-
-            con.setConnectTimeout(CONNECT_TIMEOUT_SHORT);
-            con.setReadTimeout(READ_TIMEOUT_SHORT);
-
-            int responseCode = con.getResponseCode();
+            RootHttpClient.Response httpResponse = getHttpClient().get(url, RootHttpClient.CallType.DISCOVERY);
+            int responseCode = httpResponse.getResponseCode();
 
             if (responseCode == 200)
             {
                 pollCount = 0; // Contact! Zero the poll count;
-                int availChars = con.getInputStream().available();
-                byte[] inputData = new byte[availChars];
-                con.getInputStream().read(inputData, 0, availChars);
-                response = mapper.readValue(inputData, WhoAreYouResponse.class);
+                response = mapper.readValue(httpResponse.getBody(), WhoAreYouResponse.class);
 
                 if (response != null)
                 {
                     gotAResponse = true;
                     name.set(response.getName());
+                    if (version == null || !version.getVersionString().equals(response.getServerVersion()))
+                    {
+                        packetProtocolMayHaveChanged();
+                    }
                     version = new ApplicationVersion(response.getServerVersion());
                     serverIP.set(response.getServerIP());
                     
@@ -641,11 +668,6 @@ public final class DetectedServer
                     String rid = response.getRootUUID();
                     if (rid != null) 
                         rootUUID.set(rid);
-                    //System.out.println("Host \"" + address.getHostAddress() + "\" name = \"" + response.getName() + "\" rootUUID = \"" + rid + "\"");
-                    //if (!version.getVersionString().equalsIgnoreCase(BaseConfiguration.getApplicationVersion()))
-                    //{
-                    //    setServerStatus(ServerStatus.WRONG_VERSION);
-                    //}
                 } else
                 {
                     steno.warning("Got an indecipherable response from " + address.getHostAddress());
@@ -662,13 +684,11 @@ public final class DetectedServer
             else
             {
                 steno.warning("No response to \"" + url + "\" from @" + address.getHostAddress());
-                //disconnect();
             }
         } catch (java.net.SocketTimeoutException stex)
         {
             long t2 = System.currentTimeMillis();
             steno.warning("Timeout whilst asking who are you @ " + address.getHostAddress() + " - time taken = " + Long.toString(t2 - t1));
-            //disconnect();
         }
         catch (IOException ex)
         {
@@ -678,50 +698,46 @@ public final class DetectedServer
         return gotAResponse;
     }
 
-    public List<DetectedDevice> listAttachedPrinters()
+    /**
+     * @return the printers found by the last successful listAttachedPrinters
+     */
+    public List<DetectedDevice> getDetectedDevices()
     {
-        String url = "http://" + address.getHostAddress() + ":" + Configuration.remotePort + LIST_PRINTERS_COMMAND;
+        return new ArrayList<>(detectedDevices);
+    }
 
+    public List<DetectedDevice> listAttachedPrinters()
+    {
         long t1 = System.currentTimeMillis();
         try
         {
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            // optional default is GET
-            con.setRequestMethod("GET");
-
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-            con.setRequestProperty("Authorization", "Basic " + StringToBase64Encoder.encode("root:" + getPin()));
+            RootHttpClient.Response httpResponse = printerInventory.fetchIfChanged(getHttpClient(), RootHttpClient.CallType.DISCOVERY);
 
-            con.setConnectTimeout(CONNECT_TIMEOUT_SHORT);
-            con.setReadTimeout(READ_TIMEOUT_SHORT);
-            
-            int responseCode = con.getResponseCode();
-
-            if (responseCode == 200)
+            if (httpResponse == null)
+            {
+                // Nothing attached or detached since the last list
+                pollCount = 0;
+            }
+            else if (httpResponse.getResponseCode() == 200)
             {
-                int availChars = con.getInputStream().available();
-                byte[] inputData = new byte[availChars];
-                con.getInputStream().read(inputData, 0, availChars);
-                ListPrintersResponse listPrintersResponse = mapper.readValue(inputData, ListPrintersResponse.class);
+                ListPrintersResponse listPrintersResponse = mapper.readValue(httpResponse.getBody(), ListPrintersResponse.class);
 
                 List<DetectedDevice> previousDetectedDevices = detectedDevices;
-                detectedDevices = new ArrayList();
+                List<DetectedDevice> newDetectedDevices = new ArrayList<>();
                 // Move any existing devices from the current list to the new list.
                 listPrintersResponse.getPrinterIDs().forEach((printerID) ->
                 {
-                     detectedDevices.add(previousDetectedDevices.stream()
+                     newDetectedDevices.add(previousDetectedDevices.stream()
                                                                 .filter((d) -> d.getConnectionHandle().equals(printerID) && d.getConnectionType() == DeviceDetector.DeviceConnectionType.ROBOX_REMOTE)
                                                                 .findAny()
                                                                 .orElse(new RemoteDetectedPrinter(this, DeviceDetector.DeviceConnectionType.ROBOX_REMOTE, printerID)));
                 });
+                detectedDevices = newDetectedDevices;
                 
                 // Disconnect any devices that were previously found, but are not in the new list.
                 previousDetectedDevices.forEach((device) -> 
                 {
-                    if (!detectedDevices.contains(device))
+                    if (!newDetectedDevices.contains(device))
                     {
                         steno.info("Disconnecting missing device " + device.getConnectionHandle());
                         RoboxCommsManager.getInstance().disconnected(device);
@@ -732,14 +748,13 @@ public final class DetectedServer
             else
             {
                 disconnect();
-                steno.warning("No response to \"" + url + "\" from @" + address.getHostAddress());
+                steno.warning("No response to \"" + LIST_PRINTERS_COMMAND + "\" from @" + address.getHostAddress());
             }
         } catch (java.net.SocketTimeoutException ex)
         {
             long t2 = System.currentTimeMillis();
             steno.error("Timeout whilst polling for remote printers @ " + address.getHostAddress() + " - time taken = " + Long.toString(t2 - t1));
             // But don't disconnect.
-            //disconnect();
         }
         catch (IOException ex)
         {
@@ -751,35 +766,21 @@ public final class DetectedServer
     
     public List<CameraInfo> listAttachedCameras()
     {
-        String url = "http://" + address.getHostAddress() + ":" + Configuration.remotePort + LIST_CAMERAS_COMMAND;
-        
         List<CameraInfo> detectedCameras = new ArrayList<>();
         
         long t1 = System.currentTimeMillis();
         try
         {
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            // optional default is GET
-            con.setRequestMethod("GET");
+            RootHttpClient.Response httpResponse = cameraInventory.fetchIfChanged(getHttpClient(), RootHttpClient.CallType.DISCOVERY);
 
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-            con.setRequestProperty("Authorization", "Basic " + StringToBase64Encoder.encode("root:" + getPin()));
-
-            con.setConnectTimeout(CONNECT_TIMEOUT_SHORT);
-            con.setReadTimeout(READ_TIMEOUT_SHORT);
-            
-            int responseCode = con.getResponseCode();
-
-            if (responseCode == 200)
+            if (httpResponse == null)
             {
-                int availChars = con.getInputStream().available();
-                byte[] inputData = new byte[availChars];
-                con.getInputStream().read(inputData, 0, availChars);
-
-                ListCamerasResponse listCamerasResponse = mapper.readValue(inputData, ListCamerasResponse.class);
+                detectedCameras = attachedCameras;
+                pollCount = 0;
+            }
+            else if (httpResponse.getResponseCode() == 200)
+            {
+                ListCamerasResponse listCamerasResponse = mapper.readValue(httpResponse.getBody(), ListCamerasResponse.class);
 
                 detectedCameras = listCamerasResponse.getCameras();
                 detectedCameras.forEach((dc) -> {
@@ -791,7 +792,7 @@ public final class DetectedServer
                 pollCount = 0; // Successful contact, so zero the poll count;
             } 
             else {
-                steno.warning("No response to \"" + url + "\"from @" + address.getHostAddress());
+                steno.warning("No response to \"" + LIST_CAMERAS_COMMAND + "\"from @" + address.getHostAddress());
             }
         } catch (java.net.SocketTimeoutException ex)
         {
@@ -812,11 +813,7 @@ public final class DetectedServer
     
     public Image takeCameraSnapshot(CameraSettings settings)
     {
-        String url = "http://" 
-                         + address.getHostAddress() 
-                         + ":" 
-                         + Configuration.remotePort 
-                         + CAMERA_CONTROL_COMMAND
+        String url = CAMERA_CONTROL_COMMAND
                          + "/" 
                          + Integer.toString(settings.getCamera().getCameraNumber())
                          + TAKE_SNAPSHOT_COMMAND;
@@ -824,34 +821,16 @@ public final class DetectedServer
         long t1 = System.currentTimeMillis();
         try
         {
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            // optional default is GET
-            con.setRequestMethod("POST");
-
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-            con.setRequestProperty("Authorization", "Basic " + StringToBase64Encoder.encode("root:" + getPin()));
-            
             String jsonifiedData = SystemUtils.jsonEscape(mapper.writeValueAsString(settings));
-            con.setDoOutput(true);
-            con.setRequestProperty("Content-Type", "application/json");
-            con.setRequestProperty("Content-Length", "" + jsonifiedData.length());
-            con.getOutputStream().write(jsonifiedData.getBytes());
-            
-            con.setConnectTimeout(CONNECT_TIMEOUT_SHORT);
-            con.setReadTimeout(READ_TIMEOUT_SHORT);
-            
-            int responseCode = con.getResponseCode();
+            RootHttpClient.Response httpResponse = getHttpClient().post(url, jsonifiedData, RootHttpClient.CallType.CAMERA);
 
-            if (responseCode == 200)
+            if (httpResponse.getResponseCode() == 200)
             {
                 pollCount = 0; // Successful contact, so zero the poll count;
-                snapshotImage = new Image(con.getInputStream());
+                snapshotImage = new Image(new ByteArrayInputStream(httpResponse.getBody()));
                 if (snapshotImage.isError()) {
-                    snapshotImage = null;
                     steno.exception("Error loading image.from \"" + url + "\"@" + address.getHostAddress() + "\r\n" + snapshotImage.exceptionProperty().get().getMessage(), snapshotImage.exceptionProperty().get());
+                    snapshotImage = null;
                 }
             } else
             {
@@ -879,37 +858,17 @@ public final class DetectedServer
     {
         Object returnvalue = null;
 
-        URL obj = new URL("http://" + address.getHostAddress() + ":" + Configuration.remotePort + urlString);
         try
         {
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            con.setRequestMethod("POST");
-
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-            con.setRequestProperty("Authorization", "Basic " + StringToBase64Encoder.encode("root:" + getPin()));
-
-            con.setConnectTimeout(CONNECT_TIMEOUT_LONG);
-            con.setReadTimeout(READ_TIMEOUT_LONG);
-
-            if (content != null)
-            {
-                con.setDoOutput(true);
-                con.setRequestProperty("Content-Type", "application/json");
-                con.setRequestProperty("Content-Length", "" + content.length());
-                con.getOutputStream().write(content.getBytes());
-            }
-
-            int responseCode = con.getResponseCode();
+            RootHttpClient.Response httpResponse = getHttpClient().post(urlString, content, RootHttpClient.CallType.CONTROL);
+            int responseCode = httpResponse.getResponseCode();
             pollCount = 0; // Successful contact, so zero the poll count;
 
-            if (responseCode >= 200
-                    && responseCode < 300)
+            if (httpResponse.isSuccess())
             {
                 if (expectedResponseClass != null)
                 {
-                    returnvalue = mapper.readValue(con.getInputStream(), expectedResponseClass);
+                    returnvalue = mapper.readValue(httpResponse.getBody(), expectedResponseClass);
                 }
             } else
             {
@@ -919,77 +878,195 @@ public final class DetectedServer
         }
         catch (java.net.SocketTimeoutException ex)
         {
-            steno.error("Timeout in postRoboxPacket @" + obj.toString() + ", exception message = " + ex.getMessage());
+            steno.error("Timeout in postRoboxPacket @" + getHttpClient().getBaseUrl() + urlString + ", exception message = " + ex.getMessage());
             throw ex;
         }
         return returnvalue;
     }
 
-    public int postData(String urlString, String content) throws IOException
+    /**
+     * Post the raw bytes of a tx packet to the binary packet relay.
+     *
+     * @param urlString
+     * @param packetBytes
+     * @return the reply, whose body holds the raw rx packet if the Root speaks
+     * the binary protocol
+     * @throws IOException
+     */
+    public RootHttpClient.Response postBinaryRoboxPacket(String urlString, byte[] packetBytes) throws IOException
     {
-        URL obj = new URL("http://" + address.getHostAddress() + ":" + Configuration.remotePort + urlString);
-        int rc = -1;
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Configuration.packetProtocolHeader, Integer.toString(Configuration.binaryPacketProtocolVersion));
 
         try
         {
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
+            RootHttpClient.Response httpResponse = getHttpClient().request("POST", urlString, packetBytes,
+                    Configuration.binaryPacketContentType, headers, RootHttpClient.CallType.CONTROL);
+            pollCount = 0; // Successful contact, so zero the poll count;
+            return httpResponse;
+        }
+        catch (java.net.SocketTimeoutException ex)
+        {
+            steno.error("Timeout in postBinaryRoboxPacket @" + getHttpClient().getBaseUrl() + urlString + ", exception message = " + ex.getMessage());
+            throw ex;
+        }
+    }
 
-            con.setRequestMethod("POST");
+    /**
+     * @return false once this Root has shown that it does not understand the
+     * binary packet relay
+     */
+    public boolean isBinaryPacketTransportAvailable()
+    {
+        return !binaryPacketTransportRefused;
+    }
 
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-            con.setRequestProperty("Authorization", "Basic " + StringToBase64Encoder.encode("root:" + getPin()));
+    public void binaryPacketTransportRefused()
+    {
+        if (!binaryPacketTransportRefused)
+        {
+            steno.info("Root \"" + getDisplayName() + "\" does not support binary packets - using JSON");
+            binaryPacketTransportRefused = true;
+        }
+    }
 
-            con.setReadTimeout(READ_TIMEOUT_LONG);
-            con.setConnectTimeout(CONNECT_TIMEOUT_LONG);
+    /**
+     * @return the stream of status changes pushed by this Root
+     */
+    public synchronized RootStatusStream getStatusStream()
+    {
+        if (statusStream == null)
+        {
+            statusStream = new RootStatusStream(getDisplayName(), this::openStatusStream);
+        }
+        return statusStream;
+    }
 
-            if (content != null)
-            {
-                con.setDoOutput(true);
-                con.setRequestProperty("Content-Type", "application/json");
-                con.setRequestProperty("Content-Length", "" + content.length());
-                con.getOutputStream().write(content.getBytes());
-            }
+    private RootHttpClient.StreamResponse openStatusStream() throws IOException
+    {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Accept", Configuration.statusStreamContentType);
+        headers.put(Configuration.packetProtocolHeader, Integer.toString(Configuration.binaryPacketProtocolVersion));
+        return getHttpClient().openStream("/api" + Configuration.statusStreamService, headers, RootHttpClient.CallType.STREAM);
+    }
+
+    /**
+     * A different Root version may speak a different packet protocol, so give
+     * the binary relay, batching and the status stream another chance.
+     */
+    private void packetProtocolMayHaveChanged()
+    {
+        binaryPacketTransportRefused = false;
+        binaryPacketBatchRefused = false;
+        RootStatusStream streamToReset;
+        synchronized (this)
+        {
+            streamToReset = statusStream;
+        }
+        if (streamToReset != null)
+        {
+            streamToReset.reset();
+        }
+    }
 
-            rc = con.getResponseCode();
+    /**
+     * @return false once this Root has shown that it does not understand the
+     * batched binary relay
+     */
+    @JsonIgnore
+    public boolean isBinaryPacketBatchAvailable()
+    {
+        return !binaryPacketTransportRefused && !binaryPacketBatchRefused;
+    }
+
+    public void binaryPacketBatchRefused()
+    {
+        if (!binaryPacketBatchRefused)
+        {
+            steno.info("Root \"" + getDisplayName() + "\" does not support batched packets - sending them one at a time");
+            binaryPacketBatchRefused = true;
+        }
+    }
+
+    public int postData(String urlString, String content) throws IOException
+    {
+        int rc = -1;
+
+        try
+        {
+            rc = getHttpClient().post(urlString, content, RootHttpClient.CallType.CONTROL).getResponseCode();
             pollCount = 0; // Successful contact, so zero the poll count;
         }
         catch (java.net.SocketTimeoutException ex)
         {
-            steno.error("Timeout in postData @" + obj.toString() + ", exception message = " + ex.getMessage());
+            steno.error("Timeout in postData @" + getHttpClient().getBaseUrl() + urlString + ", exception message = " + ex.getMessage());
             throw ex;
         }
         return rc;
     }
 
+    public CompletableFuture<Integer> postDataAsync(String urlString, String content)
+    {
+        return getHttpClient().postAsync(urlString, content, RootHttpClient.CallType.CONTROL)
+                .thenApply((httpResponse) ->
+                {
+                    pollCount = 0; // Successful contact, so zero the poll count;
+                    return httpResponse.getResponseCode();
+                });
+    }
+
     public int getData(String urlString) throws IOException
     {
-        URL obj = new URL("http://" + address.getHostAddress() + ":" + Configuration.remotePort + urlString);
         int rc = -1;
         try
         {
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-
-            con.setRequestMethod("GET");
-
-            //add request header
-            con.setRequestProperty("User-Agent", BaseConfiguration.getApplicationName());
-            con.setRequestProperty("Authorization", "Basic " + StringToBase64Encoder.encode("root:" + getPin()));
-
-            con.setConnectTimeout(CONNECT_TIMEOUT_LONG);
-            con.setReadTimeout(READ_TIMEOUT_LONG);
-
-            rc = con.getResponseCode();
+            rc = getHttpClient().get(urlString, RootHttpClient.CallType.CONTROL).getResponseCode();
             pollCount = 0; // Successful contact, so zero the poll count;
         }
         catch (java.net.SocketTimeoutException ex)
         {
-            steno.error("Timeout in getData @" + obj.toString() + ", exception message = " + ex.getMessage());
+            steno.error("Timeout in getData @" + getHttpClient().getBaseUrl() + urlString + ", exception message = " + ex.getMessage());
             throw ex;
         }
         return rc;
     }
 
+    public CompletableFuture<Integer> getDataAsync(String urlString)
+    {
+        return getHttpClient().getAsync(urlString, RootHttpClient.CallType.CONTROL)
+                .thenApply((httpResponse) ->
+                {
+                    pollCount = 0; // Successful contact, so zero the poll count;
+                    return httpResponse.getResponseCode();
+                });
+    }
+
+    /**
+     * Change the connect and read timeouts used for one type of call to this
+     * server.
+     *
+     * @param callType
+     * @param timeouts
+     */
+    public void setTimeouts(RootHttpClient.CallType callType, RootHttpClient.Timeouts timeouts)
+    {
+        getHttpClient().setTimeouts(callType, timeouts);
+    }
+
+    private synchronized RootHttpClient getHttpClient()
+    {
+        if (httpClient == null)
+        {
+            httpClient = new RootHttpClient(address.getHostAddress(), Configuration.remotePort, BaseConfiguration.getApplicationName());
+            httpClient.setTimeouts(RootHttpClient.CallType.DISCOVERY, new RootHttpClient.Timeouts(CONNECT_TIMEOUT_SHORT, READ_TIMEOUT_SHORT));
+            httpClient.setTimeouts(RootHttpClient.CallType.CAMERA, new RootHttpClient.Timeouts(CONNECT_TIMEOUT_SHORT, READ_TIMEOUT_SHORT));
+            httpClient.setTimeouts(RootHttpClient.CallType.CONTROL, new RootHttpClient.Timeouts(CONNECT_TIMEOUT_LONG, READ_TIMEOUT_LONG));
+            httpClient.setTimeouts(RootHttpClient.CallType.STREAM, new RootHttpClient.Timeouts(CONNECT_TIMEOUT_LONG, Configuration.statusStreamHeartbeatMs * 3));
+            httpClient.setCredentials(DEFAULT_USER, getPin());
+        }
+        return httpClient;
+    }
+
     @Override
     public int hashCode()
     {
@@ -1030,12 +1107,12 @@ public final class DetectedServer
         long count = 0;
         long fileSize = 0;
         DetectedServer server;
-        PercentProgressReceiver progressReceiver;
+        ProgressBus.Channel progress;
         
-        public TransferProgressMonitor(DetectedServer server, PercentProgressReceiver progressReceiver)
+        public TransferProgressMonitor(DetectedServer server, ProgressBus.Channel progress)
         {
             this.server = server;
-            this.progressReceiver = progressReceiver;
+            this.progress = progress;
         }
 
         @Override
@@ -1043,6 +1120,7 @@ public final class DetectedServer
         {
             this.fileSize = fileSize;
             this.count = 0;
+            progress.update(0, fileSize);
 
             server.resetPollCount();
             steno.debug("Initialise file transfer: src = \"" + src + "\", dst = \"" + dest + "\", fileSize = " + Long.toString(fileSize));
@@ -1052,18 +1130,15 @@ public final class DetectedServer
         public boolean count(long increment)
         {
           count += increment;
-          float percentageDone = 50.0f;
-          if (fileSize > 0)
-            percentageDone = 25.0f + (75.0f * (float) count / (float) fileSize);
-          progressReceiver.updateProgressPercent(percentageDone);
+          progress.add(increment);
 
           server.resetPollCount();
-          steno.debug("Transfer progress: " + Float.toString(percentageDone) + "%");
           return true;
         }
         
         @Override
         public void end(){
+            steno.debug("Transfer progress: " + Long.toString(count) + " of " + Long.toString(fileSize));
         }
     }
     
@@ -1084,10 +1159,20 @@ public final class DetectedServer
         serverStatus.set(ServerStatus.UPGRADING);
         
         // First try SFTP;
-        TransferProgressMonitor monitor = new TransferProgressMonitor(this, progressReceiver);
+        ProgressBus.Channel progress = ProgressBus.getInstance().open("Upgrade " + address.getHostAddress());
+        ProgressBus.getInstance().subscribe(progress, update ->
+        {
+            float percentageDone = 50.0f;
+            if (update.getTotal() > 0)
+                percentageDone = 25.0f + (75.0f * (float) update.getFraction());
+            progressReceiver.updateProgressPercent(percentageDone);
+        });
+        TransferProgressMonitor monitor = new TransferProgressMonitor(this, progress);
         SFTPUtils sftpHelper = new SFTPUtils(address.getHostAddress());
         File localFile = new File(path + filename);
-        if (sftpHelper.transferToRemotePrinter(localFile, "/tmp", filename, monitor))
+        boolean transferredOK = sftpHelper.transferToRemotePrinter(localFile, "/tmp", filename, monitor);
+        progress.close();
+        if (transferredOK)
         {
             try
             {
@@ -1114,7 +1199,7 @@ public final class DetectedServer
             {
                 progressReceiver.updateProgressPercent(0.0);
                 long t1 = System.currentTimeMillis();
-                MultipartUtility multipart = new MultipartUtility(requestURL, charset, StringToBase64Encoder.encode("root:" + getPin()));
+                MultipartUtility multipart = new MultipartUtility(requestURL, charset, StringToBase64Encoder.encode(DEFAULT_USER + ":" + getPin()));
 
                 File rootSoftwareFile = new File(path + filename);
                 steno.info("upgradeRootSoftware: uploading file " + path + filename);
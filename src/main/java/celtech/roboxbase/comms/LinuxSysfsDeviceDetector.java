@@ -0,0 +1,298 @@
+package celtech.roboxbase.comms;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Finds USB serial printers on Linux by reading sysfs, rather than by running
+ * the detector script.
+ *
+ * Each USB device in /sys/bus/usb/devices whose vendor ID matches, and whose
+ * product ID or product name matches, is a candidate; its tty device nodes are
+ * the handles returned. Where sysfs is not available the links in
+ * /dev/serial/by-id are used instead.
+ *
+ * The device directory is watched, so the scan is only repeated when a tty
+ * node has been added or removed - or every FULL_SCAN_INTERVAL_MS, in case an
+ * event was missed. If the directory cannot be watched every search scans.
+ *
+ * @author ianhudson
+ */
+public class LinuxSysfsDeviceDetector extends DeviceDetector
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(LinuxSysfsDeviceDetector.class.getName());
+
+    static final long FULL_SCAN_INTERVAL_MS = 10000;
+
+    private static final String TTY_PREFIX = "tty";
+
+    private final Path usbDevicesDirectory;
+    private final Path deviceNodeDirectory;
+    private final Path serialByIDDirectory;
+    private final String vendorID;
+    private final String productID;
+    private final String deviceNameToSearchFor;
+
+    private WatchService deviceNodeWatcher = null;
+    private List<DetectedDevice> lastDetectedDevices = null;
+    private long lastScanTime = 0;
+    private int scanCount = 0;
+
+    public LinuxSysfsDeviceDetector(String vendorID,
+            String productID,
+            String deviceNameToSearchFor)
+    {
+        this(Paths.get("/sys/bus/usb/devices"), Paths.get("/dev"), vendorID, productID, deviceNameToSearchFor);
+    }
+
+    LinuxSysfsDeviceDetector(Path usbDevicesDirectory,
+            Path deviceNodeDirectory,
+            String vendorID,
+            String productID,
+            String deviceNameToSearchFor)
+    {
+        super();
+
+        this.usbDevicesDirectory = usbDevicesDirectory;
+        this.deviceNodeDirectory = deviceNodeDirectory;
+        this.serialByIDDirectory = deviceNodeDirectory.resolve("serial").resolve("by-id");
+        this.vendorID = vendorID;
+        this.productID = productID;
+        this.deviceNameToSearchFor = deviceNameToSearchFor;
+
+        try
+        {
+            deviceNodeWatcher = deviceNodeDirectory.getFileSystem().newWatchService();
+            deviceNodeDirectory.register(deviceNodeWatcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException ex)
+        {
+            steno.warning("Unable to watch " + deviceNodeDirectory + " - will scan for printers on every search: " + ex);
+            closeWatcher();
+        }
+    }
+
+    /**
+     * @return false if neither sysfs nor the serial links are present, in which
+     * case this detector can never find anything
+     */
+    public boolean isAvailable()
+    {
+        return Files.isDirectory(usbDevicesDirectory)
+                || Files.isDirectory(serialByIDDirectory);
+    }
+
+    @Override
+    public synchronized List<DetectedDevice> searchForDevices()
+    {
+        long now = System.currentTimeMillis();
+
+        if (deviceNodesHaveChanged()
+                || lastDetectedDevices == null
+                || now - lastScanTime >= FULL_SCAN_INTERVAL_MS)
+        {
+            lastDetectedDevices = scan();
+            lastScanTime = now;
+            scanCount++;
+        }
+
+        return new ArrayList<>(lastDetectedDevices);
+    }
+
+    /**
+     * @return the number of times sysfs has actually been read
+     */
+    synchronized int getScanCount()
+    {
+        return scanCount;
+    }
+
+    public synchronized void shutdown()
+    {
+        closeWatcher();
+    }
+
+    private boolean deviceNodesHaveChanged()
+    {
+        if (deviceNodeWatcher == null)
+        {
+            return true;
+        }
+
+        boolean changed = false;
+        WatchKey watchKey;
+        while ((watchKey = deviceNodeWatcher.poll()) != null)
+        {
+            for (WatchEvent<?> event : watchKey.pollEvents())
+            {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || event.context().toString().startsWith(TTY_PREFIX))
+                {
+                    changed = true;
+                }
+            }
+
+            if (!watchKey.reset())
+            {
+                steno.warning(deviceNodeDirectory + " can no longer be watched - will scan for printers on every search");
+                closeWatcher();
+                return true;
+            }
+        }
+        return changed;
+    }
+
+    private void closeWatcher()
+    {
+        if (deviceNodeWatcher != null)
+        {
+            try
+            {
+                deviceNodeWatcher.close();
+            } catch (IOException ex)
+            {
+                steno.debug("Error closing device watcher: " + ex);
+            }
+            deviceNodeWatcher = null;
+        }
+    }
+
+    private List<DetectedDevice> scan()
+    {
+        TreeSet<String> deviceNodes = new TreeSet<>();
+
+        if (Files.isDirectory(usbDevicesDirectory))
+        {
+            scanSysfs(deviceNodes);
+        } else if (Files.isDirectory(serialByIDDirectory))
+        {
+            scanSerialByID(deviceNodes);
+        }
+
+        List<DetectedDevice> detectedDevices = new ArrayList<>();
+        deviceNodes.forEach(deviceNode -> detectedDevices.add(new DetectedDevice(DeviceConnectionType.SERIAL, deviceNode)));
+        return detectedDevices;
+    }
+
+    private void scanSysfs(TreeSet<String> deviceNodes)
+    {
+        try (DirectoryStream<Path> usbDevices = Files.newDirectoryStream(usbDevicesDirectory))
+        {
+            for (Path usbDevice : usbDevices)
+            {
+                if (isMatchingDevice(usbDevice))
+                {
+                    addTTYNodes(usbDevice, deviceNodes);
+                }
+            }
+        } catch (IOException ex)
+        {
+            steno.error("Error reading " + usbDevicesDirectory + ": " + ex);
+        }
+    }
+
+    private boolean isMatchingDevice(Path usbDevice)
+    {
+        String deviceVendorID = readAttribute(usbDevice, "idVendor");
+        if (deviceVendorID == null
+                || !deviceVendorID.equalsIgnoreCase(vendorID))
+        {
+            return false;
+        }
+
+        String deviceProductID = readAttribute(usbDevice, "idProduct");
+        String deviceProductName = readAttribute(usbDevice, "product");
+        return (deviceProductID != null && deviceProductID.equalsIgnoreCase(productID))
+                || (deviceProductName != null && deviceProductName.contains(deviceNameToSearchFor));
+    }
+
+    /**
+     * The tty nodes sit below the device's interfaces - in a tty directory for
+     * ACM devices, or directly for USB serial converters. Nodes that udev has
+     * not yet created are left out; they will be picked up when they appear.
+     */
+    private void addTTYNodes(Path usbDevice, TreeSet<String> deviceNodes)
+    {
+        String interfacePrefix = usbDevice.getFileName().toString() + ":";
+
+        try (DirectoryStream<Path> interfaces = Files.newDirectoryStream(usbDevice, interfacePrefix + "*"))
+        {
+            for (Path usbInterface : interfaces)
+            {
+                Path ttyDirectory = usbInterface.resolve("tty");
+                Path directoryToSearch = Files.isDirectory(ttyDirectory) ? ttyDirectory : usbInterface;
+
+                try (DirectoryStream<Path> ttys = Files.newDirectoryStream(directoryToSearch, TTY_PREFIX + "*"))
+                {
+                    for (Path tty : ttys)
+                    {
+                        Path deviceNode = deviceNodeDirectory.resolve(tty.getFileName().toString());
+                        if (Files.exists(deviceNode))
+                        {
+                            deviceNodes.add(deviceNode.toString());
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex)
+        {
+            steno.debug("Error reading interfaces of " + usbDevice + ": " + ex);
+        }
+    }
+
+    private void scanSerialByID(TreeSet<String> deviceNodes)
+    {
+        try (DirectoryStream<Path> serialLinks = Files.newDirectoryStream(serialByIDDirectory))
+        {
+            for (Path serialLink : serialLinks)
+            {
+                if (serialLink.getFileName().toString().contains(deviceNameToSearchFor))
+                {
+                    try
+                    {
+                        deviceNodes.add(serialLink.toRealPath().toString());
+                    } catch (IOException ex)
+                    {
+                        // The link has outlived its device
+                        steno.debug("Ignoring broken serial link " + serialLink);
+                    }
+                }
+            }
+        } catch (IOException ex)
+        {
+            steno.error("Error reading " + serialByIDDirectory + ": " + ex);
+        }
+    }
+
+    private static String readAttribute(Path usbDevice, String attributeName)
+    {
+        Path attribute = usbDevice.resolve(attributeName);
+        if (!Files.isRegularFile(attribute))
+        {
+            return null;
+        }
+
+        try
+        {
+            return new String(Files.readAllBytes(attribute), StandardCharsets.UTF_8).trim();
+        } catch (IOException ex)
+        {
+            return null;
+        }
+    }
+}
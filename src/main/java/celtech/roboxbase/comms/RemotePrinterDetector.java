@@ -1,8 +1,16 @@
 package celtech.roboxbase.comms;
 
 import celtech.roboxbase.configuration.CoreMemory;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 
@@ -15,29 +23,86 @@ public class RemotePrinterDetector extends DeviceDetector
 
     private final Stenographer steno = StenographerFactory.getStenographer("RemotePrinterDetector");
 
+    // How long a search waits for any one Root to list its printers
+    static final long LIST_PRINTERS_TIMEOUT_MS = 3000;
+
+    private final Supplier<List<DetectedServer>> serverSupplier;
+    private final long listPrintersTimeoutMs;
+
+    // Requests that an earlier search gave up waiting for. They are reused, rather
+    // than sending another, until they have finished.
+    private final Map<DetectedServer, CompletableFuture<List<DetectedDevice>>> outstandingRequests = new ConcurrentHashMap<>();
+
     public RemotePrinterDetector()
+    {
+        this(() -> CoreMemory.getInstance().getActiveRoboxRoots(), LIST_PRINTERS_TIMEOUT_MS);
+    }
+
+    RemotePrinterDetector(Supplier<List<DetectedServer>> serverSupplier, long listPrintersTimeoutMs)
     {
         super();
+        this.serverSupplier = serverSupplier;
+        this.listPrintersTimeoutMs = listPrintersTimeoutMs;
     }
 
+    /**
+     * Ask every connected Root for its printers at once. A Root that does not
+     * answer in time is represented by the printers it listed last, and is not
+     * asked again until its outstanding request has finished.
+     *
+     * @return
+     */
     @Override
     public List<DetectedDevice> searchForDevices()
     {
         List<DetectedDevice> newlyDetectedPrinters = new ArrayList();
 
         //Take a copy of the list in case it gets changed under our feet
-        List<DetectedServer> activeRoboxRoots = new ArrayList<>(CoreMemory.getInstance().getActiveRoboxRoots());
+        List<DetectedServer> activeRoboxRoots = new ArrayList<>(serverSupplier.get());
 
-        // Search the roots that have been registered in core memory
+        List<CompletableFuture<List<DetectedDevice>>> requests = new ArrayList<>();
+        List<DetectedServer> serversAsked = new ArrayList<>();
         for (DetectedServer server : activeRoboxRoots)
         {
             if (server.getServerStatus() == DetectedServer.ServerStatus.CONNECTED)
             {
-                List<DetectedDevice> attachedPrinters = server.listAttachedPrinters();
+                serversAsked.add(server);
+                requests.add(outstandingRequests.computeIfAbsent(server, this::listAttachedPrinters));
+            }
+        }
+
+        long endTime = System.currentTimeMillis() + listPrintersTimeoutMs;
+        for (int serverIndex = 0; serverIndex < serversAsked.size(); serverIndex++)
+        {
+            DetectedServer server = serversAsked.get(serverIndex);
+            try
+            {
+                long timeLeft = Math.max(endTime - System.currentTimeMillis(), 0);
+                List<DetectedDevice> attachedPrinters = requests.get(serverIndex).get(timeLeft, TimeUnit.MILLISECONDS);
+                outstandingRequests.remove(server);
                 newlyDetectedPrinters.addAll(attachedPrinters);
+            } catch (TimeoutException ex)
+            {
+                steno.debug("Still waiting for the printer list from " + server.getName());
+                newlyDetectedPrinters.addAll(server.getDetectedDevices());
+            } catch (ExecutionException ex)
+            {
+                outstandingRequests.remove(server);
+                steno.exception("Error listing printers on " + server.getName(), ex.getCause());
+                newlyDetectedPrinters.addAll(server.getDetectedDevices());
+            } catch (InterruptedException ex)
+            {
+                steno.debug("Interrupted whilst listing remote printers");
+                Thread.currentThread().interrupt();
+                break;
             }
         }
-        
+
         return newlyDetectedPrinters;
     }
+
+    private CompletableFuture<List<DetectedDevice>> listAttachedPrinters(DetectedServer server)
+    {
+        return CompletableFuture.supplyAsync(server::listAttachedPrinters, BackgroundExecutor.getInstance());
+    }
 }
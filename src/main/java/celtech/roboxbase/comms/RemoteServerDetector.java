@@ -1,7 +1,8 @@
 package celtech.roboxbase.comms;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
 import java.io.IOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
@@ -10,14 +11,31 @@ import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 
 /**
+ * Finds Roots on the local networks by multicasting a discovery message and
+ * collecting the replies.
+ *
+ * The message is sent on every interface that can multicast at once, and the
+ * replies from all of them are received through one selector. Each address
+ * that replies is checked with whoAreYou on the background pool as soon as
+ * its reply arrives, so a slow Root does not hold up the others.
  *
  * @author Ian
  */
@@ -26,159 +44,313 @@ public class RemoteServerDetector
 
     private final Stenographer steno = StenographerFactory.getStenographer(RemoteServerDetector.class.getName());
 
+    /**
+     * Decides whether an address that replied is a Root that can be used.
+     */
+    interface ServerVerifier
+    {
+
+        /**
+         * @param address
+         * @return the server, or null if it should be ignored
+         */
+        DetectedServer verify(InetAddress address);
+    }
+
     private static RemoteServerDetector instance = null;
-    private InetSocketAddress transmitGroup = null;
-    private DatagramChannel datagramChannel = null;
-    private static final ObjectMapper mapper = new ObjectMapper();
     private static final int MAX_WAIT_TIME_MS = 2000;
-    private static final int CYCLE_WAIT_TIME_MS = 200;
+    private static final int RECEIVE_BUFFER_SIZE = 100;
+
+    private final InetSocketAddress transmitGroup;
+    private final Supplier<List<NetworkInterface>> interfaceFinder;
+    private final ServerVerifier serverVerifier;
+    private final long maxWaitTimeMs;
+
+    private Selector selector = null;
+    private final Map<NetworkInterface, DatagramChannel> channels = new LinkedHashMap<>();
 
-    private void setupDatagramChannel(NetworkInterface localInterface) throws IOException
+    private RemoteServerDetector()
     {
-        steno.debug("Using local address " + localInterface.toString());
-        transmitGroup = new InetSocketAddress(RemoteDiscovery.multicastAddress, RemoteDiscovery.remoteSocket);
-        datagramChannel = DatagramChannel.open(StandardProtocolFamily.INET);
-        datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-        datagramChannel.bind(new InetSocketAddress(RemoteDiscovery.remoteSocket));
-        datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, localInterface);
-        datagramChannel.configureBlocking(false);
-        steno.debug("setup datagram channel " + datagramChannel.toString());
+        this(new InetSocketAddress(RemoteDiscovery.multicastAddress, RemoteDiscovery.remoteSocket),
+                RemoteServerDetector::findDiscoveryInterfaces,
+                RemoteServerDetector::verifyWithWhoAreYou,
+                MAX_WAIT_TIME_MS);
     }
-    
-    private RemoteServerDetector()
+
+    RemoteServerDetector(InetSocketAddress transmitGroup,
+            Supplier<List<NetworkInterface>> interfaceFinder,
+            ServerVerifier serverVerifier,
+            long maxWaitTimeMs)
+    {
+        this.transmitGroup = transmitGroup;
+        this.interfaceFinder = interfaceFinder;
+        this.serverVerifier = serverVerifier;
+        this.maxWaitTimeMs = maxWaitTimeMs;
+    }
+
+    public static synchronized RemoteServerDetector getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new RemoteServerDetector();
+        }
+
+        return instance;
+    }
+
+    /**
+     * The interfaces with an IPv4 address that are up and can multicast. Only
+     * if there are none is the loopback interface used.
+     */
+    private static List<NetworkInterface> findDiscoveryInterfaces()
     {
-        boolean done = false;
-        // Look for a local interface with external access. The code used to do the following:
-        // 
-        //     NetworkInterface localInterface = NetworkInterface.getByInetAddress(InetAddress.getLocalHost());
-        //
-        // but this failed on some Linux distributions, because InetAddress.getLocalHost() would return 127.0.1.1.
-        // This address did not map to a network interface, so localInterface was null.
-        //
-        // This code, copied from StackOverflow, finds the first interface that is not a loopback or link local address.
+        List<NetworkInterface> discoveryInterfaces = new ArrayList<>();
+        NetworkInterface loopbackInterface = null;
+
         try
         {
-            Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
-            while (!done && networkInterfaces.hasMoreElements()) 
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces()))
             {
-                try
+                if (!networkInterface.isUp()
+                        || !hasIPv4Address(networkInterface))
                 {
-                    NetworkInterface ni = (NetworkInterface) networkInterfaces.nextElement();
-                    Enumeration<InetAddress> nias = ni.getInetAddresses();
-                    while(nias.hasMoreElements())
-                    {
-                        InetAddress ia = (InetAddress) nias.nextElement();
-                        steno.debug("Checking internet address " + ia.toString());
-                        if (!ia.isLinkLocalAddress() &&
-                            !ia.isLoopbackAddress())
-                        {
-                            setupDatagramChannel(ni);
-                            done = true;
-                            break;
-                        }
-                    }
+                    continue;
                 }
-                catch (IOException ex)
+
+                if (networkInterface.isLoopback())
+                {
+                    loopbackInterface = networkInterface;
+                } else if (networkInterface.supportsMulticast())
                 {
-                    steno.debug("IO Exception when checking network interface : " + ex.getMessage());
+                    discoveryInterfaces.add(networkInterface);
                 }
             }
+        } catch (SocketException ex)
+        {
+            StenographerFactory.getStenographer(RemoteServerDetector.class.getName())
+                    .debug("Socket Exception when getting network interfaces : " + ex.getMessage());
         }
-        catch (SocketException ex)
+
+        if (discoveryInterfaces.isEmpty() && loopbackInterface != null)
+        {
+            discoveryInterfaces.add(loopbackInterface);
+        }
+        return discoveryInterfaces;
+    }
+
+    private static boolean hasIPv4Address(NetworkInterface networkInterface)
+    {
+        return Collections.list(networkInterface.getInetAddresses())
+                .stream()
+                .anyMatch(address -> address instanceof Inet4Address && !address.isLinkLocalAddress());
+    }
+
+    private static DetectedServer verifyWithWhoAreYou(InetAddress address)
+    {
+        DetectedServer server = DetectedServer.createDetectedServer(address);
+        return server.whoAreYou() ? server : null;
+    }
+
+    /**
+     * Search for Roots, waiting the full search time for replies.
+     *
+     * @return the Roots found
+     * @throws IOException
+     */
+    public List<DetectedServer> searchForServers() throws IOException
+    {
+        List<DetectedServer> discoveredServers = Collections.synchronizedList(new ArrayList<>());
+        searchForServers(discoveredServers::add);
+        return new ArrayList<>(discoveredServers);
+    }
+
+    /**
+     * Search for Roots, passing each one to serverFound as soon as it has been
+     * verified. Returns once the search time is up and every reply has been
+     * checked.
+     *
+     * @param serverFound called on a background thread for each Root found
+     * @throws IOException
+     */
+    public synchronized void searchForServers(Consumer<DetectedServer> serverFound) throws IOException
+    {
+        openChannels();
+        if (channels.isEmpty())
         {
-            steno.debug("Socket Exception when getting network interfaces : " + ex.getMessage());
+            steno.error("Unable to set up remote discovery client");
+            return;
         }
 
-        if (!done)
+        ByteBuffer discoverMessage = ByteBuffer.wrap(RemoteDiscovery.discoverHostsMessage.getBytes(StandardCharsets.US_ASCII));
+        for (Map.Entry<NetworkInterface, DatagramChannel> channel : channels.entrySet())
         {
-            // No external interfaces found. Try the loopback address. Not sure this is actually useful.
             try
             {
-                NetworkInterface localInterface = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
-                if (localInterface != null)
-                {
-                        setupDatagramChannel(localInterface);
-                        done = true;
-                }
+                discoverMessage.rewind();
+                channel.getValue().send(discoverMessage, transmitGroup);
+            } catch (IOException ex)
+            {
+                steno.debug("Unable to send discovery message on " + channel.getKey().getName() + ": " + ex.getMessage());
             }
-            catch (SocketException ex)
+        }
+
+        Set<InetAddress> addressesSeen = new HashSet<>();
+        List<CompletableFuture<Void>> verifications = new ArrayList<>();
+        ByteBuffer inputBuffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+        long endTime = System.currentTimeMillis() + maxWaitTimeMs;
+
+        for (long timeLeft = maxWaitTimeMs; timeLeft > 0; timeLeft = endTime - System.currentTimeMillis())
+        {
+            if (selector.select(timeLeft) == 0)
             {
-                steno.debug("Socket exception when checking loopback address: " + ex.getMessage());
+                continue;
             }
-            catch (IOException ex)
+
+            Iterator<SelectionKey> readyKeys = selector.selectedKeys().iterator();
+            while (readyKeys.hasNext())
             {
-                steno.debug("IO Exception when checking loopback address: " + ex.getMessage());
+                SelectionKey readyKey = readyKeys.next();
+                readyKeys.remove();
+
+                DatagramChannel readyChannel = (DatagramChannel) readyKey.channel();
+                InetSocketAddress inboundAddress;
+                while ((inboundAddress = receive(readyChannel, inputBuffer)) != null)
+                {
+                    String receivedData = new String(inputBuffer.array(), 0, inputBuffer.position(), StandardCharsets.US_ASCII);
+
+                    if (receivedData.equals(RemoteDiscovery.iAmHereMessage))
+                    {
+                        InetAddress serverAddress = inboundAddress.getAddress();
+                        // A Root on several networks, or one that answers twice, is only checked once
+                        if (addressesSeen.add(serverAddress))
+                        {
+                            steno.trace("searchForServers got response from address " + serverAddress);
+                            verifications.add(CompletableFuture.runAsync(() -> verifyServer(serverAddress, serverFound),
+                                    BackgroundExecutor.getInstance()));
+                        }
+                    } else if (!receivedData.equals(RemoteDiscovery.discoverHostsMessage))
+                    {
+                        steno.warning("Didn't understand the response from remote server with address " + inboundAddress.getAddress() + ". I saw: " + receivedData);
+                    }
+                }
             }
         }
-        
-        if (!done)
+
+        CompletableFuture.allOf(verifications.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private InetSocketAddress receive(DatagramChannel channel, ByteBuffer inputBuffer)
+    {
+        inputBuffer.clear();
+        try
         {
-            steno.error("Unable to set up remote discovery client");
+            return (InetSocketAddress) channel.receive(inputBuffer);
+        } catch (IOException ex)
+        {
+            steno.debug("Error receiving discovery reply: " + ex.getMessage());
+            return null;
         }
     }
 
-    public static RemoteServerDetector getInstance()
+    private void verifyServer(InetAddress serverAddress, Consumer<DetectedServer> serverFound)
     {
-        if (instance == null)
+        try
         {
-            instance = new RemoteServerDetector();
+            DetectedServer server = serverVerifier.verify(serverAddress);
+            if (server != null)
+            {
+                steno.trace("Adding server " + serverAddress + " to newly discovered server list.");
+                serverFound.accept(server);
+            }
+        } catch (RuntimeException ex)
+        {
+            steno.exception("Error checking server " + serverAddress, ex);
         }
-
-        return instance;
     }
 
-    public List<DetectedServer> searchForServers() throws IOException
+    /**
+     * Keep a channel open on each discovery interface. Channels for interfaces
+     * that have gone are closed, and ones for new interfaces opened, so an
+     * address change is picked up by the next search.
+     */
+    private void openChannels() throws IOException
     {
-        List<DetectedServer> newlyDiscoveredServers = new ArrayList<>();
+        if (selector == null)
+        {
+            selector = Selector.open();
+        }
 
-        ByteBuffer sendBuffer = ByteBuffer.wrap(RemoteDiscovery.discoverHostsMessage.getBytes("US-ASCII"));
-        datagramChannel.send(sendBuffer, transmitGroup);
+        List<NetworkInterface> discoveryInterfaces = interfaceFinder.get();
 
-        int waitTime = 0;
-        while (waitTime < MAX_WAIT_TIME_MS)
+        Iterator<Map.Entry<NetworkInterface, DatagramChannel>> channelIterator = channels.entrySet().iterator();
+        while (channelIterator.hasNext())
         {
-            ByteBuffer inputBuffer = ByteBuffer.allocate(100);
-            InetSocketAddress inboundAddress = (InetSocketAddress) datagramChannel.receive(inputBuffer);
-            if (inboundAddress != null)
+            Map.Entry<NetworkInterface, DatagramChannel> channel = channelIterator.next();
+            if (!discoveryInterfaces.contains(channel.getKey()))
             {
-                byte[] inputBytes = new byte[100];
-                int bytesRead = inputBuffer.position();
-                inputBuffer.rewind();
-                inputBuffer.get(inputBytes, 0, bytesRead);
-                String receivedData = new String(Arrays.copyOf(inputBytes, bytesRead), "US-ASCII");
+                steno.debug("Closing discovery channel on " + channel.getKey().getName());
+                closeQuietly(channel.getValue());
+                channelIterator.remove();
+            }
+        }
 
-                if (receivedData.equals(RemoteDiscovery.iAmHereMessage))
-                {
-                    steno.trace("searchForServers got response from address " + inboundAddress.getAddress());
-                    DetectedServer newServer = DetectedServer.createDetectedServer(inboundAddress.getAddress());
-                    if (newServer.whoAreYou())
-                    {
-                        steno.trace("Adding server " + inboundAddress.getAddress() + " to newly discovered server list.");
-                        newlyDiscoveredServers.add(newServer);
-                    }
-                } else if (receivedData.equals(RemoteDiscovery.discoverHostsMessage))
-                {
-                    // FIXME On Macs, it seems to receive the discoverHostsMessage (twice) as well as the iAmHereMessage.
-                    // Don't know why.
-                    steno.debug("Received \"" + RemoteDiscovery.discoverHostsMessage + "\" from address " + inboundAddress.getAddress());
-                }
-                else
-                {
-                    steno.warning("Didn't understand the response from remote server with address " + inboundAddress.getAddress() + ". I saw: " + receivedData);
-                }
-            } else
+        for (NetworkInterface discoveryInterface : discoveryInterfaces)
+        {
+            if (!channels.containsKey(discoveryInterface))
             {
+                DatagramChannel datagramChannel = null;
                 try
                 {
-                    Thread.sleep(CYCLE_WAIT_TIME_MS);
-                    waitTime += CYCLE_WAIT_TIME_MS;
-                } catch (InterruptedException ex)
+                    steno.debug("Using local interface " + discoveryInterface.toString());
+                    datagramChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+                    datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                    // Replies come back to whichever port the message was sent from
+                    datagramChannel.bind(new InetSocketAddress(0));
+                    datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, discoveryInterface);
+                    datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+                    datagramChannel.configureBlocking(false);
+                    datagramChannel.register(selector, SelectionKey.OP_READ);
+                    channels.put(discoveryInterface, datagramChannel);
+                } catch (IOException ex)
                 {
-
+                    steno.debug("IO Exception when setting up discovery on " + discoveryInterface.getName() + " : " + ex.getMessage());
+                    if (datagramChannel != null)
+                    {
+                        closeQuietly(datagramChannel);
+                    }
                 }
             }
         }
-        
-        return newlyDiscoveredServers;
+    }
+
+    /**
+     * Close the discovery channels. They are opened again by the next search.
+     */
+    public synchronized void shutdown()
+    {
+        channels.values().forEach(this::closeQuietly);
+        channels.clear();
+        if (selector != null)
+        {
+            try
+            {
+                selector.close();
+            } catch (IOException ex)
+            {
+                steno.debug("Error closing discovery selector: " + ex.getMessage());
+            }
+            selector = null;
+        }
+    }
+
+    private void closeQuietly(DatagramChannel datagramChannel)
+    {
+        try
+        {
+            datagramChannel.close();
+        } catch (IOException ex)
+        {
+            steno.debug("Error closing discovery channel: " + ex.getMessage());
+        }
     }
 }
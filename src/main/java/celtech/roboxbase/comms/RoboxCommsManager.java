@@ -10,6 +10,7 @@ import celtech.roboxbase.configuration.hardwarevariants.PrinterType;
 import celtech.roboxbase.printerControl.model.HardwarePrinter;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.printerControl.model.PrinterConnection;
+import celtech.roboxbase.services.printing.SFTPUtils;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +34,10 @@ public class RoboxCommsManager extends Thread implements PrinterStatusConsumer
 
     public static final String MOUNTED_MEDIA_FILE_PATH = "/media";
 
+    /**
+     * The default for the number of printers that can be connected at once.
+     * Installations driving more printers raise it with setMaxActivePrinters.
+     */
     public static final int MAX_ACTIVE_PRINTERS = 9;
     
     private static RoboxCommsManager instance = null;
@@ -48,6 +53,7 @@ public class RoboxCommsManager extends Thread implements PrinterStatusConsumer
     private final ObservableList<CameraInfo> activeCameras = FXCollections.observableArrayList();
     private boolean suppressPrinterIDChecks = false;
     private int sleepBetweenStatusChecksMS = 1000;
+    private int maxActivePrinters = MAX_ACTIVE_PRINTERS;
 
     private final String dummyPrinterPort = "DummyPrinterPort";
     private int dummyPrinterCounter = 0;
@@ -181,7 +187,7 @@ public class RoboxCommsManager extends Thread implements PrinterStatusConsumer
         if (detectedPrinter != null
                 && !activePrinters.keySet().contains(detectedPrinter))
         {
-            if (activePrinters.size() >= MAX_ACTIVE_PRINTERS)
+            if (activePrinters.size() >= maxActivePrinters)
             {
                 steno.info("Max number of printers already connected - not connecteding to new printer on " + detectedPrinter.getConnectionHandle());
                 tooManyRoboxAttachedProperty.set(true);
@@ -388,6 +394,8 @@ public class RoboxCommsManager extends Thread implements PrinterStatusConsumer
                 steno.error("Error shutting down printer");
             }
         }
+
+        SFTPUtils.closeSessions();
     }
 
     /**
@@ -496,6 +504,30 @@ public class RoboxCommsManager extends Thread implements PrinterStatusConsumer
         sleepBetweenStatusChecksMS = milliseconds;
     }
 
+    public int getMaxActivePrinters()
+    {
+        return maxActivePrinters;
+    }
+
+    /**
+     * Set the number of printers that can be connected at once. Printers that
+     * are already connected stay connected if the limit is lowered.
+     *
+     * @param maxActivePrinters
+     */
+    public synchronized void setMaxActivePrinters(int maxActivePrinters)
+    {
+        if (maxActivePrinters < 1)
+        {
+            throw new IllegalArgumentException("At least one printer must be allowed - asked for " + maxActivePrinters);
+        }
+        this.maxActivePrinters = maxActivePrinters;
+        if (activePrinters.size() < maxActivePrinters)
+        {
+            tooManyRoboxAttachedProperty.set(false);
+        }
+    }
+
     private void deviceNoLongerPresent(DetectedDevice detectedDevice)
     {
         Printer printerToDisconnect = activePrinters.get(detectedDevice);
@@ -24,6 +24,7 @@ public class SerialDeviceDetector extends DeviceDetector
     private final String deviceDetectorStringLinux;
     private final String notConnectedString = "NOT_CONNECTED";
     private List<String> command = new ArrayList<>();
+    private LinuxSysfsDeviceDetector sysfsDeviceDetector = null;
 
     public SerialDeviceDetector(String pathToBinaries,
             String vendorID,
@@ -54,6 +55,18 @@ public class SerialDeviceDetector extends DeviceDetector
                 command.add(deviceDetectorStringLinux);
                 command.add(deviceNameToSearchFor);
                 command.add(vendorID);
+
+                // Reading sysfs saves running the script on every search; the
+                // script is only needed if sysfs is missing
+                LinuxSysfsDeviceDetector linuxDetector = new LinuxSysfsDeviceDetector(vendorID, productID, deviceNameToSearchFor);
+                if (linuxDetector.isAvailable())
+                {
+                    sysfsDeviceDetector = linuxDetector;
+                } else
+                {
+                    steno.info("No sysfs USB information - falling back to the detector script");
+                    linuxDetector.shutdown();
+                }
                 break;
             default:
                 steno.error("Unsupported OS - cannot establish comms.");
@@ -72,6 +85,11 @@ public class SerialDeviceDetector extends DeviceDetector
     @Override
     public List<DetectedDevice> searchForDevices()
     {
+        if (sysfsDeviceDetector != null)
+        {
+            return sysfsDeviceDetector.searchForDevices();
+        }
+
         StringBuilder outputBuffer = new StringBuilder();
 
         ProcessBuilder builder = new ProcessBuilder(command);
@@ -0,0 +1,172 @@
+package celtech.roboxbase.comms;
+
+import celtech.roboxbase.comms.remote.BusyStatus;
+import celtech.roboxbase.comms.remote.PauseStatus;
+import celtech.roboxbase.comms.rx.StatusResponse;
+import celtech.roboxbase.printerControl.PrinterStatus;
+import celtech.roboxbase.printerControl.model.HeaterMode;
+import celtech.roboxbase.printerControl.model.Printer;
+import celtech.roboxbase.utils.PrinterUtils;
+
+/**
+ * Decides how long to wait before polling a printer's status again.
+ *
+ * A printer that is doing something is polled at the configured interval, or
+ * faster while it is moving, calibrating or running a macro. An idle printer
+ * whose status has stopped changing is polled less and less often, up to
+ * MAX_BACKOFF_FACTOR times the configured interval, until its status changes
+ * or it is sent a command.
+ *
+ * @author ianhudson
+ */
+public class StatusPollingPolicy
+{
+
+    public enum PrinterActivity
+    {
+
+        IDLE,
+        HEATING,
+        PRINTING,
+        PAUSED,
+        BUSY,
+        RUNNING_MACRO,
+        CALIBRATING,
+        UPDATING_FIRMWARE
+    }
+
+    // Unchanged idle polls before the interval starts to grow
+    static final int QUIET_POLLS_BEFORE_BACKOFF = 5;
+    static final int MAX_BACKOFF_FACTOR = 8;
+    // The fastest a printer is polled however short the configured interval
+    static final int MIN_POLL_INTERVAL_MS = 250;
+
+    private int quietPolls = 0;
+
+    /**
+     * @param baseIntervalMs the configured interval between polls
+     * @param activity what the printer was doing at the last poll
+     * @param statusChanged whether the last poll's status differed from the
+     * one before
+     * @return how long to wait before the next poll
+     */
+    public synchronized long getPollInterval(int baseIntervalMs, PrinterActivity activity, boolean statusChanged)
+    {
+        if (activity != PrinterActivity.IDLE
+                || statusChanged)
+        {
+            quietPolls = 0;
+        } else if (quietPolls <= QUIET_POLLS_BEFORE_BACKOFF + MAX_BACKOFF_FACTOR)
+        {
+            quietPolls++;
+        }
+
+        switch (activity)
+        {
+            case BUSY:
+            case RUNNING_MACRO:
+            case CALIBRATING:
+                return Math.max(baseIntervalMs / 2, Math.min(baseIntervalMs, MIN_POLL_INTERVAL_MS));
+            case UPDATING_FIRMWARE:
+                // Status checks are suspended whilst the firmware is loaded
+                return (long) baseIntervalMs * MAX_BACKOFF_FACTOR;
+            case IDLE:
+                if (quietPolls > QUIET_POLLS_BEFORE_BACKOFF)
+                {
+                    int backoffFactor = Math.min(1 << (quietPolls - QUIET_POLLS_BEFORE_BACKOFF),
+                            MAX_BACKOFF_FACTOR);
+                    return (long) baseIntervalMs * backoffFactor;
+                }
+                return baseIntervalMs;
+            default:
+                return baseIntervalMs;
+        }
+    }
+
+    /**
+     * Stop backing off, because the printer has been sent a command.
+     *
+     * @return true if the printer was being polled less often than usual
+     */
+    public synchronized boolean reset()
+    {
+        boolean wasBackedOff = quietPolls > QUIET_POLLS_BEFORE_BACKOFF;
+        quietPolls = 0;
+        return wasBackedOff;
+    }
+
+    /**
+     * @param printer the printer model, or null if there is none yet
+     * @param status the latest status, or null if there is none
+     * @param updatingFirmware
+     * @return what the printer is doing
+     */
+    public static PrinterActivity activityOf(Printer printer, StatusResponse status, boolean updatingFirmware)
+    {
+        if (updatingFirmware)
+        {
+            return PrinterActivity.UPDATING_FIRMWARE;
+        }
+
+        if (status != null
+                && status.getPauseStatus() != null
+                && status.getPauseStatus() != PauseStatus.NOT_PAUSED)
+        {
+            return PrinterActivity.PAUSED;
+        }
+
+        PrinterStatus printerStatus = (printer == null) ? null : printer.printerStatusProperty().get();
+        if (printerStatus != null)
+        {
+            switch (printerStatus)
+            {
+                case PRINTING_PROJECT:
+                case RUNNING_TEST:
+                    return PrinterActivity.PRINTING;
+                case RUNNING_MACRO_FILE:
+                case REMOVING_HEAD:
+                case PURGING_HEAD:
+                case OPENING_DOOR:
+                    return PrinterActivity.RUNNING_MACRO;
+                case CALIBRATING_NOZZLE_ALIGNMENT:
+                case CALIBRATING_NOZZLE_HEIGHT:
+                case CALIBRATING_NOZZLE_OPENING:
+                    return PrinterActivity.CALIBRATING;
+                default:
+                    break;
+            }
+        }
+
+        if (status == null)
+        {
+            return PrinterActivity.IDLE;
+        }
+
+        // Another client may have started a print on this printer
+        if (PrinterUtils.printJobIDIndicatesPrinting(status.getRunningPrintJobID()))
+        {
+            return PrinterActivity.PRINTING;
+        }
+
+        if (status.getBusyStatus() != null
+                && status.getBusyStatus() != BusyStatus.NOT_BUSY)
+        {
+            return PrinterActivity.BUSY;
+        }
+
+        if (isHeating(status.getBedHeaterMode())
+                || isHeating(status.getNozzle0HeaterMode())
+                || isHeating(status.getNozzle1HeaterMode()))
+        {
+            return PrinterActivity.HEATING;
+        }
+
+        return PrinterActivity.IDLE;
+    }
+
+    private static boolean isHeating(HeaterMode heaterMode)
+    {
+        return heaterMode != null
+                && heaterMode != HeaterMode.OFF;
+    }
+}
@@ -0,0 +1,141 @@
+package celtech.roboxbase.comms.async;
+
+import celtech.roboxbase.comms.CommandInterface;
+import celtech.roboxbase.comms.exceptions.ConnectionLostException;
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.RxPacketTypeEnum;
+import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Writes commands to one printer, one at a time and in the order they were
+ * sent.
+ *
+ * Each write is made on the thread that sent the command, so a printer never
+ * occupies a thread of its own, and a caller that is itself a pool thread
+ * can't be left waiting on a write queued behind it. A write that gets no
+ * answer is ended by the transport - the serial port's read timeout, or the
+ * Root's HTTP read timeout - not by giving up on it here, so it can't be left
+ * running into the next command. At most NUMBER_OF_SIMULTANEOUS_COMMANDS
+ * commands may be waiting
+ * for a printer; any more are refused, so that a printer which has stopped
+ * answering pushes back on its callers instead of collecting an ever growing
+ * backlog.
+ *
+ * @author Ian
+ */
+public class AsyncWriter
+{
+    public static final int NUMBER_OF_SIMULTANEOUS_COMMANDS = 50;
+
+    // How long a command waits for the commands before it. This must be longer than the total
+    // timeout of the detected server, or a command can give up before the server times out.
+    // It is 30 seconds because the remote server can pause for several seconds, for reasons unknown.
+    private final int pollTimeout = 30000;
+    private final Stenographer steno = StenographerFactory.getStenographer(AsyncWriter.class.getName());
+
+    private final CommandInterface commandInterface;
+    private final String name;
+    // Fair, so that waiting commands are written in the order they were sent
+    private final ReentrantLock commandLock = new ReentrantLock(true);
+    private final AtomicInteger commandsWaiting = new AtomicInteger(0);
+    private volatile boolean keepRunning = true;
+
+    public AsyncWriter(CommandInterface commandInterface, String ciReference)
+    {
+        this.commandInterface = commandInterface;
+        this.name = "AsyncWriter|" + ciReference;
+    }
+
+    public RoboxRxPacket sendCommand(CommandPacket command) throws RoboxCommsException
+    {
+        if (!keepRunning)
+        {
+            throw new RoboxCommsException("Command writer for " + name + " has been shut down");
+        }
+
+        if (commandsWaiting.incrementAndGet() > NUMBER_OF_SIMULTANEOUS_COMMANDS)
+        {
+            commandsWaiting.decrementAndGet();
+            steno.info("Message queue full; can not add command:" + command.getCommand().getPacketType());
+            throw new RoboxCommsException("Message queue full");
+        }
+
+        RoboxRxPacket response = null;
+        long t1 = System.currentTimeMillis();
+
+        try
+        {
+            if (commandLock.tryLock(pollTimeout, TimeUnit.MILLISECONDS))
+            {
+                try
+                {
+                    response = processCommand(command);
+                } finally
+                {
+                    commandLock.unlock();
+                }
+            }
+        } catch (InterruptedException ex)
+        {
+            steno.debug("**** Throwing RoboxCommsException('Interrupted waiting for response')");
+            throw new RoboxCommsException("Interrupted waiting for response");
+        } finally
+        {
+            commandsWaiting.decrementAndGet();
+        }
+
+        long dt = System.currentTimeMillis() - t1;
+        if (dt > 500)
+        {
+            steno.debug("Long wait (" + Long.toString(dt) + ") for response to command " + command.getCommand().getPacketType());
+            if (command.getCommand().getPacketType() == TxPacketTypeEnum.DATA_FILE_CHUNK)
+            {
+                steno.debug("    sequence number = " + command.getCommand().getSequenceNumber());
+            }
+        }
+
+        if (response == null
+                || response.getPacketType() == RxPacketTypeEnum.NULL_PACKET)
+        {
+            steno.debug("**** Throwing RoboxCommsException('No response to message from command " + command + "')");
+            throw new RoboxCommsException("No response to message from command " + command);
+        }
+        return response;
+    }
+
+    private RoboxRxPacket processCommand(CommandPacket command)
+    {
+        try
+        {
+            return commandInterface.writeToPrinterImpl(command.getCommand(), command.getDontPublish());
+        } catch (ConnectionLostException ex)
+        {
+            // This is ok - the printer has probably been unplugged
+            steno.info("Connection lost - " + name);
+        } catch (RoboxCommsException | RuntimeException ex)
+        {
+            steno.exception("Unexpected error during write", ex);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of commands sent but not yet answered, including the
+     * one being written
+     */
+    public int getCommandsWaiting()
+    {
+        return commandsWaiting.get();
+    }
+
+    public void shutdown()
+    {
+        keepRunning = false;
+    }
+}
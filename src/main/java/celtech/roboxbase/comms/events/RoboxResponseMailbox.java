@@ -0,0 +1,200 @@
+package celtech.roboxbase.comms.events;
+
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.StatusResponse;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Holds the packets received from one printer until its consumer is ready for
+ * them.
+ *
+ * Only the newest StatusResponse is kept - a newer one replaces any still
+ * waiting, since each carries the whole printer state. Other packets are kept
+ * in the order they arrived, except that one identical to a packet of the same
+ * type already waiting is dropped. At most one drain task is outstanding at a
+ * time, however many packets arrive, and at most MAX_PENDING_PACKETS are held.
+ *
+ * @author ianhudson
+ */
+public class RoboxResponseMailbox
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(RoboxResponseMailbox.class.getName());
+
+    public static final int MAX_PENDING_PACKETS = 64;
+
+    private final String name;
+    private final Consumer<Runnable> drainScheduler;
+    private final RoboxResponseConsumer consumer;
+
+    private final ArrayDeque<RoboxRxPacket> pendingPackets = new ArrayDeque<>();
+    private StatusResponse pendingStatus = null;
+    private boolean drainScheduled = false;
+    private long packetsConflated = 0;
+
+    /**
+     * @param name used when logging
+     * @param drainScheduler runs the drain task on the consumer's thread
+     * @param consumer
+     */
+    public RoboxResponseMailbox(String name, Consumer<Runnable> drainScheduler, RoboxResponseConsumer consumer)
+    {
+        this.name = name;
+        this.drainScheduler = drainScheduler;
+        this.consumer = consumer;
+    }
+
+    public void post(RoboxRxPacket rxPacket)
+    {
+        boolean scheduleDrain;
+
+        synchronized (this)
+        {
+            if (rxPacket instanceof StatusResponse)
+            {
+                if (pendingStatus != null)
+                {
+                    pendingPackets.removeFirstOccurrence(pendingStatus);
+                    packetsConflated++;
+                }
+                pendingStatus = (StatusResponse) rxPacket;
+                pendingPackets.addLast(rxPacket);
+            } else if (isAlreadyPending(rxPacket))
+            {
+                packetsConflated++;
+            } else
+            {
+                if (pendingPackets.size() >= MAX_PENDING_PACKETS)
+                {
+                    dropOldestNonStatusPacket();
+                }
+                pendingPackets.addLast(rxPacket);
+            }
+
+            scheduleDrain = !drainScheduled;
+            drainScheduled = true;
+        }
+
+        if (scheduleDrain)
+        {
+            drainScheduler.accept(this::drain);
+        }
+    }
+
+    public synchronized int getPendingCount()
+    {
+        return pendingPackets.size();
+    }
+
+    /**
+     * @return the number of packets that were replaced or dropped as duplicates
+     * before they were consumed
+     */
+    public synchronized long getPacketsConflated()
+    {
+        return packetsConflated;
+    }
+
+    /**
+     * Packets built in code rather than read from a printer may have no
+     * payload, so their bytes say nothing about their content and they are
+     * never treated as duplicates.
+     */
+    private boolean isAlreadyPending(RoboxRxPacket rxPacket)
+    {
+        if (rxPacket.getMessagePayload() == null)
+        {
+            return false;
+        }
+
+        byte[] packetBytes = null;
+        for (RoboxRxPacket pendingPacket : pendingPackets)
+        {
+            if (pendingPacket.getPacketType() == rxPacket.getPacketType()
+                    && pendingPacket.getMessagePayload() != null)
+            {
+                if (packetBytes == null)
+                {
+                    packetBytes = rxPacket.toByteArray();
+                }
+                if (Arrays.equals(packetBytes, pendingPacket.toByteArray()))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void dropOldestNonStatusPacket()
+    {
+        Iterator<RoboxRxPacket> pendingIterator = pendingPackets.iterator();
+        while (pendingIterator.hasNext())
+        {
+            RoboxRxPacket pendingPacket = pendingIterator.next();
+            if (pendingPacket != pendingStatus)
+            {
+                pendingIterator.remove();
+                packetsConflated++;
+                steno.warning("Response queue for " + name + " is full - dropped " + pendingPacket.getPacketType());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Consume the packets that were waiting when the drain started. Anything
+     * arriving meanwhile is left for another drain task, so that a busy
+     * printer cannot hold the consumer's thread indefinitely.
+     */
+    private void drain()
+    {
+        int packetsToConsume;
+        synchronized (this)
+        {
+            packetsToConsume = pendingPackets.size();
+        }
+
+        for (int packetCount = 0; packetCount < packetsToConsume; packetCount++)
+        {
+            RoboxRxPacket nextPacket;
+            synchronized (this)
+            {
+                nextPacket = pendingPackets.pollFirst();
+                if (nextPacket == null)
+                {
+                    break;
+                }
+                if (nextPacket == pendingStatus)
+                {
+                    pendingStatus = null;
+                }
+            }
+
+            try
+            {
+                consumer.processRoboxResponse(nextPacket);
+            } catch (RuntimeException ex)
+            {
+                steno.exception("Error processing " + nextPacket.getPacketType() + " from " + name, ex);
+            }
+        }
+
+        boolean scheduleDrain;
+        synchronized (this)
+        {
+            scheduleDrain = !pendingPackets.isEmpty();
+            drainScheduled = scheduleDrain;
+        }
+
+        if (scheduleDrain)
+        {
+            drainScheduler.accept(this::drain);
+        }
+    }
+}
@@ -31,6 +31,40 @@ public class Configuration
     public static final String clearAllErrorsService = "/clearAllErrors";
     public static final String clearErrorService = "/clearError";
 
+    /**
+     * Binary packet relay - the request body is the raw bytes of a tx packet
+     * and the reply body the raw bytes of the rx packet read back from the
+     * printer. A Root that speaks this protocol echoes the protocol header in
+     * its reply; anything else means the client falls back to writeData.
+     */
+    public static final String writeDataBinaryService = "/writeDataBinary";
+    public static final String binaryPacketContentType = "application/x-robox-packet";
+    public static final String packetProtocolHeader = "X-Robox-Packet-Protocol";
+    public static final String firmwareVersionHeader = "X-Robox-Firmware-Version";
+    public static final int binaryPacketProtocolVersion = 2;
+
+    /**
+     * Batched binary relay - the request body is a run of tx packets, each
+     * preceded by its length as a two byte big-endian number, and the reply
+     * holds the rx packets framed the same way and in the same order. Only
+     * Roots that echo protocol version 2 or later understand it.
+     */
+    public static final String writeDataBatchService = "/writeDataBatch";
+    public static final int batchPacketProtocolVersion = 2;
+
+    /**
+     * Status stream - a server-sent event stream, one per client, carrying
+     * the replies to status, error and printer ID reads for every attached
+     * printer, starting with their current state and then whenever they
+     * change. Each "packet" event has the data
+     * "printerID firmwareVersion hexBytes"; a "detached" event has the data
+     * "printerID". A comment line is sent at least every
+     * statusStreamHeartbeatMs so that a dead connection can be spotted.
+     */
+    public static final String statusStreamService = "/statusStream";
+    public static final String statusStreamContentType = "text/event-stream";
+    public static final int statusStreamHeartbeatMs = 5000;
+
     /**
      * Camera API
      */
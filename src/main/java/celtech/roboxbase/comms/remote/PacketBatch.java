@@ -0,0 +1,68 @@
+package celtech.roboxbase.comms.remote;
+
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Framing for the batched binary relay. Each packet is preceded by its length
+ * as a two byte big-endian number.
+ *
+ * @author ianhudson
+ */
+public class PacketBatch
+{
+
+    public static final int MAX_PACKET_LENGTH = 0xFFFF;
+
+    public static byte[] encode(List<byte[]> packets)
+    {
+        int totalLength = 0;
+        for (byte[] packet : packets)
+        {
+            totalLength += packet.length + 2;
+        }
+
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(totalLength);
+        for (byte[] packet : packets)
+        {
+            if (packet.length > MAX_PACKET_LENGTH)
+            {
+                throw new IllegalArgumentException("Packet of " + packet.length + " bytes is too long to batch");
+            }
+            batch.write((packet.length >> 8) & 0xFF);
+            batch.write(packet.length & 0xFF);
+            batch.write(packet, 0, packet.length);
+        }
+
+        return batch.toByteArray();
+    }
+
+    public static List<byte[]> decode(byte[] batch) throws RoboxCommsException
+    {
+        List<byte[]> packets = new ArrayList<>();
+        int position = 0;
+
+        while (position < batch.length)
+        {
+            if (position + 2 > batch.length)
+            {
+                throw new RoboxCommsException("Truncated packet length in batch at byte " + position);
+            }
+            int packetLength = ((batch[position] & 0xFF) << 8) | (batch[position + 1] & 0xFF);
+            position += 2;
+
+            if (position + packetLength > batch.length)
+            {
+                throw new RoboxCommsException("Truncated packet in batch at byte " + position);
+            }
+            byte[] packet = new byte[packetLength];
+            System.arraycopy(batch, position, packet, 0, packetLength);
+            packets.add(packet);
+            position += packetLength;
+        }
+
+        return packets;
+    }
+}
@@ -1,19 +1,30 @@
 package celtech.roboxbase.comms.remote;
 
 import celtech.roboxbase.camera.CameraInfo;
+import celtech.roboxbase.comms.DetectedServer;
 import celtech.roboxbase.comms.RemoteDetectedPrinter;
+import celtech.roboxbase.comms.exceptions.InvalidCommandByteException;
 import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.exceptions.UnableToGenerateRoboxPacketException;
+import celtech.roboxbase.comms.exceptions.UnknownPacketTypeException;
 import celtech.roboxbase.comms.rx.FirmwareError;
 import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.RoboxRxPacketFactory;
+import celtech.roboxbase.comms.rx.RxPacketTypeEnum;
 import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.configuration.BaseConfiguration;
 import celtech.roboxbase.configuration.Filament;
 import celtech.roboxbase.configuration.fileRepresentation.CameraSettings;
 import celtech.roboxbase.postprocessor.PrintJobStatistics;
 import celtech.roboxbase.utils.SystemUtils;
+import celtech.roboxbase.utils.net.RootHttpClient;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
@@ -32,6 +43,8 @@ public class RemoteClient implements LowLevelInterface
     private final String connectUrlString;
     private final String disconnectUrlString;
     private final String writeToPrinterUrlString;
+    private final String writeToPrinterBinaryUrlString;
+    private final String writeToPrinterBatchUrlString;
     private final String sendStatisticsUrlString;
     private final String retrieveStatisticsUrlString;
     private final String overrideFilamentUrlString;
@@ -46,6 +59,8 @@ public class RemoteClient implements LowLevelInterface
         connectUrlString = Configuration.lowLevelAPIService + Configuration.connectService;
         disconnectUrlString = Configuration.lowLevelAPIService + Configuration.disconnectService;
         writeToPrinterUrlString = Configuration.lowLevelAPIService + Configuration.writeDataService;
+        writeToPrinterBinaryUrlString = Configuration.lowLevelAPIService + Configuration.writeDataBinaryService;
+        writeToPrinterBatchUrlString = Configuration.lowLevelAPIService + Configuration.writeDataBatchService;
         sendStatisticsUrlString = Configuration.lowLevelAPIService + Configuration.sendStatisticsService;
         retrieveStatisticsUrlString = Configuration.lowLevelAPIService + Configuration.retrieveStatisticsService;
         overrideFilamentUrlString = Configuration.lowLevelAPIService + Configuration.overrideFilamentService;
@@ -83,16 +98,157 @@ public class RemoteClient implements LowLevelInterface
 
     @Override
     public RoboxRxPacket writeToPrinter(String printerID, RoboxTxPacket messageToWrite) throws RoboxCommsException
+    {
+        return writeToPrinter(printerID, messageToWrite, RoboxRxPacketFactory.USE_LATEST_FIRMWARE_VERSION);
+    }
+
+    /**
+     * Write a packet to the remote printer, relaying it as raw bytes if the
+     * Root supports it and falling back to JSON if not. Any other failure of
+     * the binary relay is thrown rather than retried, as the packet may already
+     * have reached the printer.
+     *
+     * @param printerID
+     * @param messageToWrite
+     * @param firmwareVersion the firmware version to use when decoding a binary
+     * reply, if the Root does not say which version it is talking to
+     * @return
+     * @throws RoboxCommsException
+     */
+    public RoboxRxPacket writeToPrinter(String printerID, RoboxTxPacket messageToWrite, float firmwareVersion) throws RoboxCommsException
+    {
+        DetectedServer server = remotePrinterHandle.getServerPrinterIsAttachedTo();
+
+        if (BaseConfiguration.isRemoteBinaryPacketTransportEnabled()
+                && server.isBinaryPacketTransportAvailable())
+        {
+            try
+            {
+                RootHttpClient.Response response = server.postBinaryRoboxPacket(baseAPIString + "/" + printerID + writeToPrinterBinaryUrlString, messageToWrite.toByteArray());
+
+                if (isBinaryReply(response))
+                {
+                    return decodeBinaryReply(response, firmwareVersion);
+                }
+
+                if (!isBinaryRefusal(response))
+                {
+                    steno.error("Failed to write to remote printer (" + messageToWrite.getPacketType().name() + ") " + remotePrinterHandle.getConnectionHandle() + " : response " + response.getResponseCode());
+                    throw new RoboxCommsException("Failed to write to remote printer (" + messageToWrite.getPacketType().name() + ") " + remotePrinterHandle.getConnectionHandle());
+                }
+                server.binaryPacketTransportRefused();
+            } catch (IOException ex)
+            {
+                steno.error("Failed to write to remote printer (" + messageToWrite.getPacketType().name() + ") " + remotePrinterHandle.getConnectionHandle() + " :" + ex.getMessage());
+                throw new RoboxCommsException("Failed to write to remote printer (" + messageToWrite.getPacketType().name() + ") " + remotePrinterHandle.getConnectionHandle());
+            }
+        }
+
+        return writeToPrinterAsJSON(printerID, messageToWrite);
+    }
+
+    /**
+     * Write several packets to the remote printer in a single round trip. The
+     * replies come back in the order the packets were sent. If the Root cannot
+     * take a batch the packets are written one at a time instead; any other
+     * failure of the batch is thrown rather than retried.
+     *
+     * @param printerID
+     * @param messagesToWrite
+     * @param firmwareVersion the firmware version to use when decoding the
+     * replies, if the Root does not say which version it is talking to
+     * @return one reply per packet written
+     * @throws RoboxCommsException
+     */
+    public List<RoboxRxPacket> writeToPrinter(String printerID, List<RoboxTxPacket> messagesToWrite, float firmwareVersion) throws RoboxCommsException
+    {
+        DetectedServer server = remotePrinterHandle.getServerPrinterIsAttachedTo();
+
+        if (messagesToWrite.size() > 1
+                && BaseConfiguration.isRemoteBinaryPacketTransportEnabled()
+                && server.isBinaryPacketBatchAvailable())
+        {
+            try
+            {
+                List<byte[]> packets = new ArrayList<>(messagesToWrite.size());
+                for (RoboxTxPacket messageToWrite : messagesToWrite)
+                {
+                    packets.add(messageToWrite.toByteArray());
+                }
+
+                RootHttpClient.Response response = server.postBinaryRoboxPacket(baseAPIString + "/" + printerID + writeToPrinterBatchUrlString, PacketBatch.encode(packets));
+
+                if (isBinaryReply(response, Configuration.batchPacketProtocolVersion))
+                {
+                    return decodeBatchReply(response, firmwareVersion, messagesToWrite.size());
+                }
+
+                if (!isBinaryRefusal(response, Configuration.batchPacketProtocolVersion))
+                {
+                    steno.error("Failed to write batch of " + messagesToWrite.size() + " packets to remote printer " + remotePrinterHandle.getConnectionHandle() + " : response " + response.getResponseCode());
+                    throw new RoboxCommsException("Failed to write batch of " + messagesToWrite.size() + " packets to remote printer " + remotePrinterHandle.getConnectionHandle());
+                }
+                server.binaryPacketBatchRefused();
+            } catch (IOException ex)
+            {
+                steno.error("Failed to write batch of " + messagesToWrite.size() + " packets to remote printer " + remotePrinterHandle.getConnectionHandle() + " :" + ex.getMessage());
+                throw new RoboxCommsException("Failed to write batch of " + messagesToWrite.size() + " packets to remote printer " + remotePrinterHandle.getConnectionHandle());
+            }
+        }
+
+        List<RoboxRxPacket> replies = new ArrayList<>(messagesToWrite.size());
+        for (RoboxTxPacket messageToWrite : messagesToWrite)
+        {
+            RoboxRxPacket reply = writeToPrinter(printerID, messageToWrite, firmwareVersion);
+            replies.add(reply);
+            if (reply != null && reply.getPacketType() == RxPacketTypeEnum.PRINTER_NOT_FOUND)
+            {
+                break;
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * Ask the Root to push status changes for this printer rather than wait to
+     * be polled for them.
+     *
+     * @param printerID
+     * @param listener
+     */
+    public void subscribeToStatus(String printerID, RootStatusStream.Listener listener)
+    {
+        if (BaseConfiguration.isRemoteStatusStreamEnabled())
+        {
+            remotePrinterHandle.getServerPrinterIsAttachedTo().getStatusStream().subscribe(printerID, listener);
+        }
+    }
+
+    public void unsubscribeFromStatus(String printerID)
+    {
+        remotePrinterHandle.getServerPrinterIsAttachedTo().getStatusStream().unsubscribe(printerID);
+    }
+
+    /**
+     * @param printerID
+     * @return true while status changes for this printer are being pushed to
+     * us, so there is no need to poll for them
+     */
+    public boolean isStatusStreaming(String printerID)
+    {
+        return BaseConfiguration.isRemoteStatusStreamEnabled()
+                && remotePrinterHandle.getServerPrinterIsAttachedTo().getStatusStream().isStreaming(printerID);
+    }
+
+    private RoboxRxPacket writeToPrinterAsJSON(String printerID, RoboxTxPacket messageToWrite) throws RoboxCommsException
     {
         RoboxRxPacket returnedPacket = null;
 
         try
         {
-            //steno.info("remoteClient.writeToPrinter(" + printerID + ", " + messageToWrite.getPacketType().name());
             String dataToOutput = SystemUtils.jsonEscape(mapper.writeValueAsString(messageToWrite));
             
             returnedPacket = (RoboxRxPacket) remotePrinterHandle.getServerPrinterIsAttachedTo().postRoboxPacket(baseAPIString + "/" + printerID + writeToPrinterUrlString, dataToOutput, RoboxRxPacket.class);
-            //steno.info("got response " + returnedPacket.getPacketType());
         } catch (JsonProcessingException ex)
         {
             steno.warning("Didn't get correct JSON from request - passing back null for " + messageToWrite.getPacketType().name());
@@ -105,6 +261,135 @@ public class RemoteClient implements LowLevelInterface
         return returnedPacket;
     }
 
+    /**
+     * A Root that understands the binary relay echoes a protocol version we
+     * speak. Older Roots answer 404 (or similar) without the header.
+     *
+     * @param response
+     * @return
+     */
+    static boolean isBinaryReply(RootHttpClient.Response response)
+    {
+        return isBinaryReply(response, 1);
+    }
+
+    static boolean isBinaryRefusal(RootHttpClient.Response response)
+    {
+        return isBinaryRefusal(response, 1);
+    }
+
+    /**
+     * A Root without the binary relay answers 404, 405 or 415, or answers
+     * without a protocol version we speak. Any other failure, such as a 503,
+     * is a failure of the request and says nothing about the Root.
+     *
+     * @param response
+     * @param minimumProtocolVersion
+     * @return
+     */
+    static boolean isBinaryRefusal(RootHttpClient.Response response, int minimumProtocolVersion)
+    {
+        switch (response.getResponseCode())
+        {
+            case HttpURLConnection.HTTP_NOT_FOUND:
+            case HttpURLConnection.HTTP_BAD_METHOD:
+            case HttpURLConnection.HTTP_UNSUPPORTED_TYPE:
+                return true;
+            default:
+                return response.isSuccess() && !isBinaryReply(response, minimumProtocolVersion);
+        }
+    }
+
+    static boolean isBinaryReply(RootHttpClient.Response response, int minimumProtocolVersion)
+    {
+        String protocolVersion = response.getHeader(Configuration.packetProtocolHeader);
+        if (!response.isSuccess() || protocolVersion == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            int version = Integer.parseInt(protocolVersion.trim());
+            return version >= minimumProtocolVersion && version <= Configuration.binaryPacketProtocolVersion;
+        } catch (NumberFormatException ex)
+        {
+            return false;
+        }
+    }
+
+    static RoboxRxPacket decodeBinaryReply(RootHttpClient.Response response, float firmwareVersion) throws RoboxCommsException
+    {
+        return decodeBinaryPacket(response.getBody(), replyFirmwareVersion(response, firmwareVersion));
+    }
+
+    static List<RoboxRxPacket> decodeBatchReply(RootHttpClient.Response response, float firmwareVersion, int expectedReplies) throws RoboxCommsException
+    {
+        float firmwareVersionToUse = replyFirmwareVersion(response, firmwareVersion);
+        List<byte[]> replyPackets = PacketBatch.decode(response.getBody());
+
+        List<RoboxRxPacket> replies = new ArrayList<>(replyPackets.size());
+        for (byte[] replyBytes : replyPackets)
+        {
+            RoboxRxPacket reply = decodeBinaryPacket(replyBytes, firmwareVersionToUse);
+            replies.add(reply);
+            if (reply != null && reply.getPacketType() == RxPacketTypeEnum.PRINTER_NOT_FOUND)
+            {
+                // The Root stops at the first packet it can't deliver
+                return replies;
+            }
+        }
+
+        if (replies.size() != expectedReplies)
+        {
+            throw new RoboxCommsException("Expected " + expectedReplies + " replies in batch but got " + replies.size());
+        }
+
+        return replies;
+    }
+
+    private static float replyFirmwareVersion(RootHttpClient.Response response, float firmwareVersion)
+    {
+        float firmwareVersionToUse = firmwareVersion;
+        String firmwareVersionHeader = response.getHeader(Configuration.firmwareVersionHeader);
+        if (firmwareVersionHeader != null)
+        {
+            try
+            {
+                firmwareVersionToUse = Float.parseFloat(firmwareVersionHeader.trim());
+            } catch (NumberFormatException ex)
+            {
+                // Stick with the version we were given
+            }
+        }
+        if (firmwareVersionToUse <= 0)
+        {
+            firmwareVersionToUse = RoboxRxPacketFactory.USE_LATEST_FIRMWARE_VERSION;
+        }
+        return firmwareVersionToUse;
+    }
+
+    static RoboxRxPacket decodeBinaryPacket(byte[] replyBytes, float firmwareVersion) throws RoboxCommsException
+    {
+        if (replyBytes.length == 0)
+        {
+            return null;
+        }
+
+        if (replyBytes[0] == RxPacketTypeEnum.PRINTER_NOT_FOUND.getCommandByte())
+        {
+            return RoboxRxPacketFactory.createPacket(RxPacketTypeEnum.PRINTER_NOT_FOUND);
+        }
+
+        try
+        {
+            return RoboxRxPacketFactory.createPacket(replyBytes, firmwareVersion);
+        } catch (InvalidCommandByteException | UnableToGenerateRoboxPacketException | UnknownPacketTypeException ex)
+        {
+            throw new RoboxCommsException("Couldn't decode binary reply from remote printer: " + ex.getClass().getSimpleName());
+        }
+    }
+
     public void clearAllErrors(String printerID) throws RoboxCommsException
     {
         try
@@ -215,6 +500,32 @@ public class RemoteClient implements LowLevelInterface
         }
     }
 
+    /**
+     * Ask the Root for a job in its print spool that has the given content
+     * hash. A Root that does not know how to answer is treated as not having
+     * the job.
+     *
+     * @param printerID
+     * @param contentHash
+     * @return the ID of the job, or null if it has no such job
+     * @throws RoboxCommsException
+     */
+    public String findPrintJobWithContentHash(String printerID, String contentHash) throws RoboxCommsException
+    {
+        try
+        {
+            return (String) remotePrinterHandle.getServerPrinterIsAttachedTo().postRoboxPacket(baseAPIString + "/" + printerID + "/remoteControl/findPrintJob", contentHash, String.class);
+        } catch (IOException ex)
+        {
+            String message = "Failed to look for print job with hash " +
+                             contentHash +
+                             " on remote printer " +
+                             remotePrinterHandle.getServerPrinterIsAttachedTo().getServerIP();
+            steno.error(message);
+            throw new RoboxCommsException(message);
+        }
+    }
+
     public void printGCodeFile(String printerID, String remoteFileName) throws RoboxCommsException
     {
         try
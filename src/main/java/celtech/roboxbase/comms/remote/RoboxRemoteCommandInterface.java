@@ -15,6 +15,8 @@ import celtech.roboxbase.configuration.fileRepresentation.CameraSettings;
 import celtech.roboxbase.postprocessor.PrintJobStatistics;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.utils.tasks.Cancellable;
+import java.util.List;
+import java.util.Optional;
 
 /**
  *
@@ -24,6 +26,7 @@ public class RoboxRemoteCommandInterface extends CommandInterface
 {
 
     private final RemoteClient remoteClient;
+    private volatile boolean subscribedToStatus = false;
 
     public RoboxRemoteCommandInterface(PrinterStatusConsumer controlInterface,
             RemoteDetectedPrinter printerHandle,
@@ -52,6 +55,12 @@ public class RoboxRemoteCommandInterface extends CommandInterface
     @Override
     protected void disconnectPrinterImpl()
     {
+        if (subscribedToStatus)
+        {
+            remoteClient.unsubscribeFromStatus(printerHandle.getConnectionHandle());
+            subscribedToStatus = false;
+        }
+
         try
         {
             remoteClient.disconnect(printerHandle.getConnectionHandle());
@@ -65,7 +74,7 @@ public class RoboxRemoteCommandInterface extends CommandInterface
     public synchronized RoboxRxPacket writeToPrinterImpl(RoboxTxPacket messageToWrite,
             boolean dontPublishResult) throws RoboxCommsException
     {
-        RoboxRxPacket rxPacket = remoteClient.writeToPrinter(printerHandle.getConnectionHandle(), messageToWrite);
+        RoboxRxPacket rxPacket = remoteClient.writeToPrinter(printerHandle.getConnectionHandle(), messageToWrite, firmwareVersionInUse);
 
         if (rxPacket != null)
         {
@@ -81,6 +90,60 @@ public class RoboxRemoteCommandInterface extends CommandInterface
         return rxPacket;
     }
 
+    /**
+     * Sends the whole group to the Root in one round trip. This is
+     * synchronized with writeToPrinterImpl so a batch never interleaves with
+     * packets from the async writer.
+     */
+    @Override
+    protected synchronized List<RoboxRxPacket> writeBatchToPrinterImpl(List<RoboxTxPacket> messagesToWrite,
+            boolean dontPublishResult) throws RoboxCommsException
+    {
+        List<RoboxRxPacket> rxPackets = remoteClient.writeToPrinter(printerHandle.getConnectionHandle(), messagesToWrite, firmwareVersionInUse);
+
+        for (RoboxRxPacket rxPacket : rxPackets)
+        {
+            if (rxPacket instanceof PrinterNotFound)
+            {
+                actionOnCommsFailure();
+            } else if (rxPacket != null && !dontPublishResult)
+            {
+                printerToUse.processRoboxResponse(rxPacket);
+            }
+        }
+
+        return rxPackets;
+    }
+
+    @Override
+    public boolean deliversBatchesInOneExchange()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean isStatusPushed()
+    {
+        if (!subscribedToStatus)
+        {
+            remoteClient.subscribeToStatus(printerHandle.getConnectionHandle(), this::statusPushed);
+            subscribedToStatus = true;
+        }
+        return remoteClient.isStatusStreaming(printerHandle.getConnectionHandle());
+    }
+
+    private void statusPushed(RoboxRxPacket rxPacket)
+    {
+        if (rxPacket instanceof PrinterNotFound)
+        {
+            steno.debug("Root reports printer " + printerHandle.getConnectionHandle() + " has gone");
+            shutdown();
+        } else if (printerToUse != null)
+        {
+            printerToUse.processRoboxResponse(rxPacket);
+        }
+    }
+
     private void actionOnCommsFailure() throws ConnectionLostException
     {
         //If we get an exception then abort and treat
@@ -173,6 +236,12 @@ public class RoboxRemoteCommandInterface extends CommandInterface
         remoteClient.startPrintJob(printerHandle.getConnectionHandle(), printJobID);
     }
 
+    public Optional<String> findPrintJobWithContentHash(String contentHash) throws RoboxCommsException
+    {
+        String printJobID = remoteClient.findPrintJobWithContentHash(printerHandle.getConnectionHandle(), contentHash);
+        return (printJobID == null || printJobID.isEmpty()) ? Optional.empty() : Optional.of(printJobID);
+    }
+
     public void printGCodeFile(String remoteFileName) throws RoboxCommsException
     {
         remoteClient.printGCodeFile(printerHandle.getConnectionHandle(), remoteFileName);
@@ -0,0 +1,292 @@
+package celtech.roboxbase.comms.remote;
+
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.RoboxRxPacketFactory;
+import celtech.roboxbase.comms.rx.RxPacketTypeEnum;
+import celtech.roboxbase.utils.SystemUtils;
+import celtech.roboxbase.utils.net.RootHttpClient;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * The status stream from one Root, shared by every printer on that Root that
+ * this client is connected to.
+ *
+ * Packets pushed by the Root are handed to the listener registered for the
+ * printer. A packet identical to the last one of the same type for that
+ * printer is dropped, so listeners only see changes. While the stream is down
+ * isStreaming returns false and the command interfaces go back to polling; the
+ * stream is retried with a back-off until the Root shows that it doesn't have
+ * one at all.
+ *
+ * @author ianhudson
+ */
+public class RootStatusStream
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(RootStatusStream.class.getName());
+
+    private static final int MIN_RETRY_DELAY_MS = 1000;
+    private static final int MAX_RETRY_DELAY_MS = 30000;
+
+    public interface Listener
+    {
+
+        void statusPushed(RoboxRxPacket rxPacket);
+    }
+
+    public interface Source
+    {
+
+        RootHttpClient.StreamResponse open() throws IOException;
+    }
+
+    private final String serverName;
+    private final Source source;
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+    private final Map<String, String> lastPayloads = new ConcurrentHashMap<>();
+    private volatile boolean streaming = false;
+    private volatile boolean refused = false;
+    private Thread streamThread = null;
+    private RootHttpClient.StreamResponse currentStream = null;
+
+    public RootStatusStream(String serverName, Source source)
+    {
+        this.serverName = serverName;
+        this.source = source;
+    }
+
+    public synchronized void subscribe(String printerID, Listener listener)
+    {
+        listeners.put(printerID, listener);
+        startIfNeeded();
+    }
+
+    public synchronized void unsubscribe(String printerID)
+    {
+        listeners.remove(printerID);
+        lastPayloads.keySet().removeIf((key) -> key.startsWith(printerID + " "));
+        if (listeners.isEmpty())
+        {
+            stop();
+        }
+    }
+
+    /**
+     * @param printerID
+     * @return true if changes for this printer are currently being pushed to
+     * us
+     */
+    public boolean isStreaming(String printerID)
+    {
+        return streaming && listeners.containsKey(printerID);
+    }
+
+    public boolean isRefused()
+    {
+        return refused;
+    }
+
+    /**
+     * Forget that the Root refused the stream - called when the Root's version
+     * changes.
+     */
+    public synchronized void reset()
+    {
+        refused = false;
+        startIfNeeded();
+    }
+
+    public synchronized void stop()
+    {
+        Thread threadToStop = streamThread;
+        streamThread = null;
+        if (threadToStop != null)
+        {
+            threadToStop.interrupt();
+        }
+        if (currentStream != null)
+        {
+            currentStream.close();
+            currentStream = null;
+        }
+    }
+
+    private void startIfNeeded()
+    {
+        if (streamThread == null && !refused && !listeners.isEmpty())
+        {
+            streamThread = new Thread(this::run, "StatusStream|" + serverName);
+            streamThread.setDaemon(true);
+            streamThread.start();
+        }
+    }
+
+    private synchronized boolean isCurrentThread()
+    {
+        return streamThread == Thread.currentThread();
+    }
+
+    private void run()
+    {
+        int retryDelay = MIN_RETRY_DELAY_MS;
+
+        while (isCurrentThread())
+        {
+            try (RootHttpClient.StreamResponse response = source.open())
+            {
+                synchronized (this)
+                {
+                    if (streamThread != Thread.currentThread())
+                    {
+                        break;
+                    }
+                    currentStream = response;
+                }
+
+                int responseCode = response.getResponseCode();
+                if (responseCode == 404 || responseCode == 405 || responseCode == 501)
+                {
+                    steno.info("Root \"" + serverName + "\" does not support the status stream - polling instead");
+                    refused = true;
+                    break;
+                }
+                if (!response.isSuccess())
+                {
+                    throw new IOException("Status stream refused with code " + responseCode);
+                }
+
+                steno.debug("Status stream from " + serverName + " open");
+                streaming = true;
+                retryDelay = MIN_RETRY_DELAY_MS;
+                readEvents(response.getInputStream());
+            } catch (IOException ex)
+            {
+                if (isCurrentThread())
+                {
+                    steno.debug("Status stream from " + serverName + " dropped: " + ex.getMessage());
+                }
+            } finally
+            {
+                streaming = false;
+                lastPayloads.clear();
+                synchronized (this)
+                {
+                    currentStream = null;
+                }
+            }
+
+            try
+            {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException ex)
+            {
+                break;
+            }
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+        }
+
+        synchronized (this)
+        {
+            if (streamThread == Thread.currentThread())
+            {
+                streamThread = null;
+            }
+        }
+    }
+
+    private void readEvents(InputStream inputStream) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII));
+        String eventName = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+
+        while ((line = reader.readLine()) != null && isCurrentThread())
+        {
+            if (line.isEmpty())
+            {
+                if (data.length() > 0)
+                {
+                    dispatch(eventName, data.toString());
+                }
+                eventName = null;
+                data.setLength(0);
+            } else if (line.startsWith(":"))
+            {
+                // Heartbeat
+            } else if (line.startsWith("event:"))
+            {
+                eventName = line.substring(6).trim();
+            } else if (line.startsWith("data:"))
+            {
+                if (data.length() > 0)
+                {
+                    data.append('\n');
+                }
+                data.append(line.substring(5).trim());
+            }
+        }
+    }
+
+    private void dispatch(String eventName, String data)
+    {
+        if ("packet".equals(eventName))
+        {
+            String[] fields = data.split(" ");
+            if (fields.length != 3 || fields[2].length() < 2)
+            {
+                steno.warning("Malformed packet event from " + serverName + ": " + data);
+                return;
+            }
+
+            String printerID = fields[0];
+            String packetHex = fields[2];
+            Listener listener = listeners.get(printerID);
+            if (listener == null)
+            {
+                return;
+            }
+
+            // Keyed on the command byte so each packet type is compared with its predecessor
+            String payloadKey = printerID + " " + packetHex.substring(0, 2);
+            if (packetHex.equals(lastPayloads.put(payloadKey, packetHex)))
+            {
+                return;
+            }
+
+            try
+            {
+                float firmwareVersion = Float.parseFloat(fields[1]);
+                if (firmwareVersion <= 0)
+                {
+                    firmwareVersion = RoboxRxPacketFactory.USE_LATEST_FIRMWARE_VERSION;
+                }
+                RoboxRxPacket rxPacket = RemoteClient.decodeBinaryPacket(SystemUtils.hexDecode(packetHex), firmwareVersion);
+                if (rxPacket != null)
+                {
+                    listener.statusPushed(rxPacket);
+                }
+            } catch (IllegalArgumentException | RoboxCommsException ex)
+            {
+                lastPayloads.remove(payloadKey);
+                steno.warning("Couldn't decode packet pushed by " + serverName + " for " + printerID + ": " + ex.getMessage());
+            }
+        } else if ("detached".equals(eventName))
+        {
+            Listener listener = listeners.get(data.trim());
+            if (listener != null)
+            {
+                listener.statusPushed(RoboxRxPacketFactory.createPacket(RxPacketTypeEnum.PRINTER_NOT_FOUND));
+            }
+        }
+    }
+}
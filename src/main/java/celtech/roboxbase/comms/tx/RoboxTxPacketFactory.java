@@ -18,6 +18,9 @@ import celtech.roboxbase.comms.tx.ListFiles;
 import celtech.roboxbase.comms.tx.AbortPrint;
 import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
 import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.comms.exceptions.InvalidCommandByteException;
+import celtech.roboxbase.comms.exceptions.UnknownPacketTypeException;
+import java.nio.charset.StandardCharsets;
 
 /**
  *
@@ -31,6 +34,9 @@ public class RoboxTxPacketFactory
      */
     public final static byte commandByteMask = (byte) 0x80;
 
+    private static final int sequenceNumberLength = 8;
+    private static final int charsOfDataLength = 4;
+
     private RoboxTxPacketFactory()
     {
     }
@@ -169,37 +175,56 @@ public class RoboxTxPacketFactory
         return returnVal;
     }
 
-//    /**
-//     *
-//     * @param remotePacket
-//     * @return
-//     * @throws InvalidCommandByteException
-//     * @throws UnableToGenerateRoboxPacketException
-//     * @throws UnknownPacketTypeException
-//     */
-//    public static RoboxTxPacket createPacket(RoboxTxPacketRemote remotePacket) throws InvalidCommandByteException, UnableToGenerateRoboxPacketException, UnknownPacketTypeException
-//    {
-//        RoboxTxPacket returnVal = null;
-//        
-//        byte[] messageData = remotePacket.getRawData();
-//
-//        if ((inputBytes[0] & commandByteMask) != commandByteMask)
-//        {
-//            throw new InvalidCommandByteException();
-//        }
-//
-//        TxPacketTypeEnum packetType = TxPacketTypeEnum.getEnumForCommand(inputBytes[0]);
-//
-//        if (packetType != null)
-//        {
-//            returnVal = instantiatePacket(packetType);
-//
-//            if (returnVal != null)
-//            {
-//                returnVal.populatePacket(inputBytes);
-//            }
-//        }
-//
-//        return returnVal;
-//    }
+    /**
+     * Rebuild a packet from the bytes produced by
+     * {@link RoboxTxPacket#toByteArray()}, so that a packet relayed as raw
+     * bytes can be handled in the same way as one built locally.
+     *
+     * @param inputBytes
+     * @return
+     * @throws InvalidCommandByteException
+     * @throws UnknownPacketTypeException
+     */
+    public static RoboxTxPacket createPacket(byte[] inputBytes) throws InvalidCommandByteException, UnknownPacketTypeException
+    {
+        if (inputBytes.length == 0
+                || (inputBytes[0] & commandByteMask) != commandByteMask)
+        {
+            throw new InvalidCommandByteException();
+        }
+
+        TxPacketTypeEnum packetType = TxPacketTypeEnum.getEnumForCommand(inputBytes[0]);
+        if (packetType == null)
+        {
+            throw new UnknownPacketTypeException();
+        }
+
+        RoboxTxPacket returnVal = instantiatePacket(packetType);
+        if (returnVal == null)
+        {
+            throw new UnknownPacketTypeException();
+        }
+
+        String payload = new String(inputBytes, 1, inputBytes.length - 1, StandardCharsets.US_ASCII);
+        int payloadOffset = 0;
+
+        if (returnVal.getIncludeSequenceNumber() && payload.length() >= sequenceNumberLength)
+        {
+            returnVal.setSequenceNumber(Integer.parseUnsignedInt(payload.substring(0, sequenceNumberLength), 16));
+            payloadOffset += sequenceNumberLength;
+        }
+
+        if (returnVal.getIncludeCharsOfDataInOutput()
+                && payload.length() >= payloadOffset + charsOfDataLength)
+        {
+            int charsOfData = Integer.parseInt(payload.substring(payloadOffset, payloadOffset + charsOfDataLength), 16);
+            payloadOffset += charsOfDataLength;
+            returnVal.setMessagePayload(payload.substring(payloadOffset, Math.min(payload.length(), payloadOffset + charsOfData)));
+        } else if (payload.length() > payloadOffset)
+        {
+            returnVal.setMessagePayload(payload.substring(payloadOffset));
+        }
+
+        return returnVal;
+    }
 }
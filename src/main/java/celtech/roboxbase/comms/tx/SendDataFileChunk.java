@@ -7,6 +7,11 @@ package celtech.roboxbase.comms.tx;
 public class SendDataFileChunk extends RoboxTxPacket
 {
 
+    /**
+     * The number of payload characters carried by a full data file chunk
+     */
+    public static final int PAYLOAD_SIZE = 512;
+
     /**
      *
      */
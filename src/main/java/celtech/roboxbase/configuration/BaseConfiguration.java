@@ -100,6 +100,10 @@ public class BaseConfiguration
 
     private static boolean autoRepairReels = true;
 
+    private static boolean remoteBinaryPacketTransportEnabled = true;
+
+    private static boolean remoteStatusStreamEnabled = true;
+
     private static Properties installationProperties = null;
     private static String applicationVersion = null;
     private static String applicationLocale = null;
@@ -120,6 +124,10 @@ public class BaseConfiguration
      */
     public static String statisticsFileExtension = ".statistics";
     public static String cameraDataFileExtension = ".camera";
+    /**
+     * The extension for the list of printers holding a complete copy of a job
+     */
+    public static String printerCopiesFileExtension = ".printers";
     public static final String gcodeTempFileExtension = ".gcode";
     public static final String stlTempFileExtension = ".stl";
     public static final String amfTempFileExtension = ".amf";
@@ -475,6 +483,26 @@ public class BaseConfiguration
         autoRepairReels = value;
     }
 
+    public static boolean isRemoteBinaryPacketTransportEnabled()
+    {
+        return remoteBinaryPacketTransportEnabled;
+    }
+
+    public static void setRemoteBinaryPacketTransportEnabled(boolean value)
+    {
+        remoteBinaryPacketTransportEnabled = value;
+    }
+
+    public static boolean isRemoteStatusStreamEnabled()
+    {
+        return remoteStatusStreamEnabled;
+    }
+
+    public static void setRemoteStatusStreamEnabled(boolean value)
+    {
+        remoteStatusStreamEnabled = value;
+    }
+
     private static void loadProjectProperties()
     {
         InputStream input = null;
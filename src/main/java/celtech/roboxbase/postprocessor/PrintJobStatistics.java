@@ -4,6 +4,7 @@
 package celtech.roboxbase.postprocessor;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -30,6 +31,7 @@ import org.parboiled.common.FileUtils;
  *
  * @author tony
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class PrintJobStatistics
 {
 
@@ -54,6 +56,8 @@ public class PrintJobStatistics
     private double predictedDuration;
     private int lineNumberOfFirstExtrusion;
     private String projectPath;
+    // Identifies jobs whose roboxised files are the same, or empty if unknown
+    private String contentHash;
     
     @JsonIgnore
     private Date creationDate;
@@ -79,6 +83,7 @@ public class PrintJobStatistics
         lineNumberOfFirstExtrusion = 0;
         layerNumberToLineNumber = null;
         predictedDuration = 0;
+        contentHash = "";
     }
 
     public PrintJobStatistics(
@@ -118,6 +123,7 @@ public class PrintJobStatistics
         this.layerNumberToPredictedDuration_D_FeedrateDependent = layerNumberToPredictedDuration_D_FeedrateDependent;
         this.layerNumberToPredictedDuration_FeedrateIndependent = layerNumberToPredictedDuration_FeedrateIndependent;
         this.predictedDuration = predictedDuration;
+        this.contentHash = "";
     }
 
     public String getPrintedWithHeadID()
@@ -318,6 +324,16 @@ public class PrintJobStatistics
         this.projectPath = projectPath;
     }
 
+    public String getContentHash()
+    {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash)
+    {
+        this.contentHash = contentHash;
+    }
+
     @JsonIgnore
     public Date getCreationDate()
     {
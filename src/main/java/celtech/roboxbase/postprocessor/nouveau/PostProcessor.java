@@ -33,6 +33,7 @@ import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.services.camera.CameraTriggerData;
 import celtech.roboxbase.utils.SystemUtils;
 import celtech.roboxbase.utils.TimeUtils;
+import celtech.roboxbase.utils.tasks.ProgressBus;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
@@ -42,7 +43,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import javafx.beans.property.DoubleProperty;
 import javafx.concurrent.Task;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
@@ -86,7 +86,7 @@ public class PostProcessor
     private final String gcodeOutputFile;
     private final HeadFile headFile;
     private final RoboxProfile settingsProfile;
-    private final DoubleProperty taskProgress;
+    private final ProgressBus.Channel progress;
     private final boolean safetyFeaturesRequired;
     private final PrinterSettingsOverrides printerOverrides;
     
@@ -122,7 +122,7 @@ public class PostProcessor
             PrinterSettingsOverrides printerOverrides,
             PostProcessorFeatureSet postProcessorFeatureSet,
             String headType,
-            DoubleProperty taskProgress,
+            ProgressBus.Channel progress,
             Map<Integer, Integer> objectToNozzleNumberMap,
             CameraTriggerData cameraTriggerData,
             boolean safetyFeaturesRequired,
@@ -137,7 +137,7 @@ public class PostProcessor
         this.headFile = headFile;
         this.featureSet = postProcessorFeatureSet;
         this.settingsProfile = settings;
-        this.taskProgress = taskProgress;
+        this.progress = progress;
         this.printerOverrides = printerOverrides;
         this.safetyFeaturesRequired = safetyFeaturesRequired;
         this.slicerType = slicerType;
@@ -239,7 +239,6 @@ public class PostProcessor
                 timeUtils.timerStop(this, countLinesTimerName);
 
                 int linesRead = 0;
-                double lastPercentSoFar = 0;
 
                 fileReader = new BufferedReader(new FileReader(inputFile));
 
@@ -271,14 +270,9 @@ public class PostProcessor
                     }
                     
                     linesRead++;
-                    double percentSoFar = ((double) linesRead / (double) linesInGCodeFile) * 100;
-                    if (percentSoFar - lastPercentSoFar >= 1)
+                    if (progress != null)
                     {
-                        if (taskProgress != null)
-                        {
-                            taskProgress.set(percentSoFar);
-                        }
-                        lastPercentSoFar = percentSoFar;
+                        progress.update(linesRead, linesInGCodeFile);
                     }
                     
                     lineRead = lineRead.trim();
@@ -3,8 +3,20 @@ package celtech.roboxbase.printerControl;
 import celtech.roboxbase.configuration.BaseConfiguration;
 import celtech.roboxbase.configuration.fileRepresentation.CameraSettings;
 import celtech.roboxbase.postprocessor.PrintJobStatistics;
+import celtech.roboxbase.utils.SystemUtils;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 
@@ -17,6 +29,7 @@ import libertysystems.stenographer.StenographerFactory;
 public class PrintJob
 {
     private static final Stenographer STENO = StenographerFactory.getStenographer(PrintJob.class.getName());
+    private static final Object PRINTER_COPIES_LOCK = new Object();
     
     
     private String jobUUID = null;
@@ -142,4 +155,192 @@ public class PrintJob
         }
         return cameraData;
     }
+
+    /**
+     * Get the content hash from the statistics, working it out from the
+     * roboxised file for jobs made before the statistics held one.
+     *
+     * @return
+     * @throws IOException
+     */
+    public String getContentHash() throws IOException
+    {
+        PrintJobStatistics jobStatistics = getStatistics();
+        if (jobStatistics.getContentHash() == null
+                || jobStatistics.getContentHash().isEmpty())
+        {
+            jobStatistics.setContentHash(calculateContentHash(new File(getRoboxisedFileLocation())));
+        }
+        return jobStatistics.getContentHash();
+    }
+
+    /**
+     * Work out the hash that identifies jobs which would send the printer the
+     * same data.
+     *
+     * @param gcodeFile
+     * @return
+     * @throws IOException
+     */
+    public static String calculateContentHash(File gcodeFile) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex)
+        {
+            throw new IOException("Unable to hash " + gcodeFile + ": " + ex.getMessage());
+        }
+
+        try (InputStream input = new FileInputStream(gcodeFile))
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) > 0)
+            {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+
+        byte[] hash = digest.digest();
+        byte[] hexHash = new byte[hash.length * 2];
+        SystemUtils.hexEncode(hash, 0, hash.length, hexHash);
+        return new String(hexHash, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the location of the list of printers holding a complete copy of the
+     * job on their SD card
+     *
+     * @return
+     */
+    public String getPrinterCopiesFileLocation()
+    {
+        return printJobDirectory
+            + jobUUID
+            + BaseConfiguration.printerCopiesFileExtension;
+    }
+
+    /**
+     * @param printerID
+     * @return true if the whole of the job is known to have been sent to the
+     * printer's SD card
+     */
+    public boolean hasCompleteCopyOnPrinter(String printerID)
+    {
+        synchronized (PRINTER_COPIES_LOCK)
+        {
+            return readPrinterCopies().contains(printerID);
+        }
+    }
+
+    /**
+     * Record whether the printer holds a complete copy of the job. A copy is
+     * recorded as incomplete when a transfer to the printer starts, and as
+     * complete only once the whole file has been sent, so an interrupted
+     * transfer is never taken for a copy of the job.
+     *
+     * @param printerID
+     * @param complete
+     */
+    public void recordCopyOnPrinter(String printerID, boolean complete)
+    {
+        synchronized (PRINTER_COPIES_LOCK)
+        {
+            Set<String> printerIDs = readPrinterCopies();
+            boolean changed = complete ? printerIDs.add(printerID) : printerIDs.remove(printerID);
+            if (changed)
+            {
+                try
+                {
+                    Files.write(new File(getPrinterCopiesFileLocation()).toPath(), printerIDs, StandardCharsets.US_ASCII);
+                } catch (IOException ex)
+                {
+                    STENO.warning("Couldn't record the copy of job " + jobUUID + " on printer " + printerID + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private Set<String> readPrinterCopies()
+    {
+        Set<String> printerIDs = new LinkedHashSet<>();
+        File printerCopiesFile = new File(getPrinterCopiesFileLocation());
+        if (printerCopiesFile.exists())
+        {
+            try
+            {
+                printerIDs.addAll(Files.readAllLines(printerCopiesFile.toPath(), StandardCharsets.US_ASCII));
+            } catch (IOException ex)
+            {
+                STENO.debug("Couldn't read the printers holding job " + jobUUID + ": " + ex.getMessage());
+            }
+        }
+        return printerIDs;
+    }
+
+    /**
+     * @param contentHash
+     * @param jobIDs the jobs to consider
+     * @return the first of the jobs in the print spool with the given content
+     * hash
+     */
+    public static Optional<String> findJobWithContentHash(String contentHash, Collection<String> jobIDs)
+    {
+        return findJobWithContentHash(contentHash, jobIDs, BaseConfiguration.getPrintSpoolDirectory());
+    }
+
+    /**
+     * The hash in a job's statistics may have arrived before the roboxised
+     * file, which may have been cut short, so a job only matches if the file
+     * itself has the hash.
+     *
+     * @param contentHash
+     * @param jobIDs the jobs to consider
+     * @param spoolDirectory the directory holding the jobs
+     * @return the first of the jobs with the given content hash
+     */
+    public static Optional<String> findJobWithContentHash(String contentHash, Collection<String> jobIDs, String spoolDirectory)
+    {
+        for (String jobID : jobIDs)
+        {
+            PrintJob printJob = new PrintJob(jobID, spoolDirectory + jobID + File.separator);
+            if (printJob.roboxisedFileExists())
+            {
+                try
+                {
+                    if (contentHash.equals(printJob.getContentHash()))
+                    {
+                        if (contentHash.equals(calculateContentHash(new File(printJob.getRoboxisedFileLocation()))))
+                        {
+                            return Optional.of(jobID);
+                        }
+                        STENO.info("Job " + jobID + " doesn't hold all of its file - not using it");
+                    }
+                } catch (IOException ex)
+                {
+                    STENO.debug("Couldn't get the content hash of job " + jobID + ": " + ex.getMessage());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Look through every job in the print spool, as a Root does when asked
+     * whether it already has a job.
+     *
+     * @param contentHash
+     * @return the ID of a job in the print spool with the given content hash
+     */
+    public static Optional<String> findJobWithContentHash(String contentHash)
+    {
+        String[] jobIDs = new File(BaseConfiguration.getPrintSpoolDirectory()).list();
+        if (jobIDs == null)
+        {
+            return Optional.empty();
+        }
+        return findJobWithContentHash(contentHash, Arrays.asList(jobIDs));
+    }
 }
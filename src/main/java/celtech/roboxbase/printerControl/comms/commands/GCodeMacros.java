@@ -14,6 +14,8 @@ import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -32,6 +34,7 @@ public class GCodeMacros
             getName());
     private static final String macroDefinitionString = "Macro:";
     private static final String macroSeparator = "#";
+    private static final MacroCache macroCache = new MacroCache();
 
     public interface FilenameEncoder {
 
@@ -140,6 +143,14 @@ public class GCodeMacros
 
         assert typeCode != null;
 
+        MacroCache.Key key = macroKey(macroFileName, typeCode, headTypeCode,
+                requireNozzle0, requireNozzle1, requireSafetyFeatures);
+        MacroCache.Lookup<List<String>> cachedContents = macroCache.lookup("contents", key, getMacroDirectory());
+        if (cachedContents.getValue() != null)
+        {
+            return new ArrayList<>(cachedContents.getValue());
+        }
+
         ArrayList<String> contents = new ArrayList<>();
         ArrayList<String> parentMacros = new ArrayList<>();
 
@@ -151,6 +162,21 @@ public class GCodeMacros
             contents.add("; Printed with safety features OFF");
         }
 
+        appendMacroContents(contents, parentMacros, macroFileName,
+                typeCode, key.headTypeCode, key.nozzleUse, key.safeties);
+
+        cachedContents.store(new ArrayList<>(contents));
+
+        return contents;
+    }
+
+    private static MacroCache.Key macroKey(String macroName,
+            Optional<PrinterType> typeCode,
+            String headTypeCode,
+            boolean requireNozzle0,
+            boolean requireNozzle1,
+            boolean requireSafetyFeatures)
+    {
         NozzleUseIndicator nozzleUse;
         String specifiedHeadType = null;
 
@@ -177,11 +203,24 @@ public class GCodeMacros
             }
         }
 
-        appendMacroContents(contents, parentMacros, macroFileName,
-                typeCode, specifiedHeadType, nozzleUse,
+        return new MacroCache.Key(macroName, typeCode, specifiedHeadType, nozzleUse,
                 (requireSafetyFeatures == false) ? GCodeMacros.SafetyIndicator.SAFETIES_OFF : GCodeMacros.SafetyIndicator.DONT_CARE);
+    }
 
-        return contents;
+    private static Path getMacroDirectory()
+    {
+        return Paths.get(BaseConfiguration.getCommonApplicationDirectory()
+                + BaseConfiguration.macroFileSubpath);
+    }
+
+    /**
+     * Visible for testing.
+     *
+     * @return
+     */
+    static MacroCache getMacroCache()
+    {
+        return macroCache;
     }
 
     private static String cleanMacroName(String macroName)
@@ -337,6 +376,25 @@ public class GCodeMacros
 
         assert typeCode != null;
 
+        MacroCache.Lookup<String> cachedFilename = macroCache.lookup("filename",
+                new MacroCache.Key(macroName, typeCode, headTypeCode, nozzleUse, safeties),
+                getMacroDirectory());
+        if (cachedFilename.getValue() != null)
+        {
+            return cachedFilename.getValue();
+        }
+
+        String filename = findFilename(macroName, typeCode, headTypeCode, nozzleUse, safeties);
+        cachedFilename.store(filename);
+        return filename;
+    }
+
+    private static String findFilename(String macroName,
+            Optional<PrinterType> typeCode,
+            String headTypeCode,
+            NozzleUseIndicator nozzleUse,
+            SafetyIndicator safeties) throws FileNotFoundException
+    {
         if (!typeCode.isPresent())
         {
             // not specifying a type code requires that there only be a default macro
@@ -565,6 +623,14 @@ public class GCodeMacros
         String macro = cleanMacroName(macroDirective);
         if (macro != null)
         {
+            MacroCache.Lookup<Integer> cachedLineCount = macroCache.lookup("operativeLines",
+                    macroKey(macro, typeCode, headType, useNozzle0, useNozzle1, requireSafetyFeatures),
+                    getMacroDirectory());
+            if (cachedLineCount.getValue() != null)
+            {
+                return cachedLineCount.getValue();
+            }
+
             try
             {
                 List<String> contents = getMacroContents(macro, typeCode,
@@ -576,6 +642,7 @@ public class GCodeMacros
                         linesInMacro++;
                     }
                 }
+                cachedLineCount.store(linesInMacro);
             } catch (IOException | MacroLoadException ex)
             {
                 steno.error("Error trying to get number of lines in macro " + macro);
@@ -0,0 +1,270 @@
+package celtech.roboxbase.printerControl.comms.commands;
+
+import celtech.roboxbase.configuration.hardwarevariants.PrinterType;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Remembers which file each macro resolves to and what it expands to, so that
+ * using a macro again does not touch the disk.
+ *
+ * The macro directory and its printer type subdirectories are watched, and
+ * everything is forgotten as soon as any file in them changes. If they cannot
+ * be watched nothing is kept.
+ *
+ * @author ianhudson
+ */
+class MacroCache
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(MacroCache.class.getName());
+
+    /**
+     * Everything that decides which file a macro resolves to.
+     */
+    static final class Key
+    {
+
+        final String macroName;
+        final Optional<PrinterType> typeCode;
+        final String headTypeCode;
+        final GCodeMacros.NozzleUseIndicator nozzleUse;
+        final GCodeMacros.SafetyIndicator safeties;
+
+        Key(String macroName,
+                Optional<PrinterType> typeCode,
+                String headTypeCode,
+                GCodeMacros.NozzleUseIndicator nozzleUse,
+                GCodeMacros.SafetyIndicator safeties)
+        {
+            this.macroName = macroName;
+            this.typeCode = typeCode;
+            this.headTypeCode = headTypeCode;
+            this.nozzleUse = nozzleUse;
+            this.safeties = safeties;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return macroName.equals(other.macroName)
+                    && typeCode.equals(other.typeCode)
+                    && Objects.equals(headTypeCode, other.headTypeCode)
+                    && nozzleUse == other.nozzleUse
+                    && safeties == other.safeties;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(macroName, typeCode, headTypeCode, nozzleUse, safeties);
+        }
+    }
+
+    private Path macroDirectory = null;
+    private WatchService macroWatcher = null;
+    private final Set<Path> directoriesWatched = new HashSet<>();
+    // Changed whenever the cache is cleared, so that a value loaded before a
+    // change is not kept after it
+    private long generation = 0;
+    private final Map<String, Map<Key, Object>> entries = new ConcurrentHashMap<>();
+    private int loads = 0;
+
+    /**
+     * Something looked up in the cache. If nothing was found, the value is
+     * loaded by the caller and passed to store.
+     *
+     * @param <T>
+     */
+    final class Lookup<T>
+    {
+
+        private final Map<Key, Object> kindEntries;
+        private final Key key;
+        private final T value;
+        private final long generationLookedUp;
+
+        private Lookup(Map<Key, Object> kindEntries, Key key, T value, long generationLookedUp)
+        {
+            this.kindEntries = kindEntries;
+            this.key = key;
+            this.value = value;
+            this.generationLookedUp = generationLookedUp;
+        }
+
+        /**
+         * @return the cached value, or null if it has to be loaded
+         */
+        T getValue()
+        {
+            return value;
+        }
+
+        /**
+         * Cache a value loaded after the lookup. It is not kept if the macros
+         * have changed since the lookup, as it may have been read from the
+         * old files.
+         *
+         * @param loadedValue
+         */
+        void store(T loadedValue)
+        {
+            synchronized (MacroCache.this)
+            {
+                if (generationLookedUp == generation
+                        && macroWatcher != null)
+                {
+                    kindEntries.put(key, loadedValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param <T>
+     * @param kind what is being looked up, so that the same key can be used
+     * for several things
+     * @param key
+     * @param currentMacroDirectory where the macros are now
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T> Lookup<T> lookup(String kind, Key key, Path currentMacroDirectory)
+    {
+        checkForChanges(currentMacroDirectory);
+        Map<Key, Object> kindEntries = entries.computeIfAbsent(kind, (k) -> new ConcurrentHashMap<>());
+        T cachedValue = (T) kindEntries.get(key);
+        if (cachedValue == null)
+        {
+            loads++;
+        }
+        return new Lookup<>(kindEntries, key, cachedValue, generation);
+    }
+
+    /**
+     * @return the number of times a value has had to be loaded
+     */
+    synchronized int getLoadCount()
+    {
+        return loads;
+    }
+
+    synchronized void clear()
+    {
+        entries.clear();
+        generation++;
+    }
+
+    private void checkForChanges(Path currentMacroDirectory)
+    {
+        if (!currentMacroDirectory.equals(macroDirectory))
+        {
+            watch(currentMacroDirectory);
+            clear();
+            return;
+        }
+
+        if (macroWatcher == null)
+        {
+            return;
+        }
+
+        boolean changed = false;
+        WatchKey watchKey;
+        while ((watchKey = macroWatcher.poll()) != null)
+        {
+            changed = true;
+            watchKey.pollEvents();
+            if (!watchKey.reset())
+            {
+                directoriesWatched.remove((Path) watchKey.watchable());
+            }
+        }
+
+        if (changed)
+        {
+            steno.debug("Macros in " + macroDirectory + " have changed");
+            clear();
+            // A printer type subdirectory may have been added
+            watchSubdirectories();
+        }
+    }
+
+    private void watch(Path newMacroDirectory)
+    {
+        stopWatching();
+        macroDirectory = newMacroDirectory;
+
+        try
+        {
+            macroWatcher = macroDirectory.getFileSystem().newWatchService();
+            register(macroDirectory);
+            watchSubdirectories();
+        } catch (IOException ex)
+        {
+            steno.warning("Unable to watch " + macroDirectory + " - macros will be read every time they are used: " + ex);
+            stopWatching();
+        }
+    }
+
+    private void watchSubdirectories()
+    {
+        try (DirectoryStream<Path> subdirectories = Files.newDirectoryStream(macroDirectory, Files::isDirectory))
+        {
+            for (Path subdirectory : subdirectories)
+            {
+                if (!directoriesWatched.contains(subdirectory))
+                {
+                    register(subdirectory);
+                }
+            }
+        } catch (IOException ex)
+        {
+            steno.warning("Unable to watch the subdirectories of " + macroDirectory + " - macros will be read every time they are used: " + ex);
+            stopWatching();
+        }
+    }
+
+    private void register(Path directory) throws IOException
+    {
+        directory.register(macroWatcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        directoriesWatched.add(directory);
+    }
+
+    private void stopWatching()
+    {
+        if (macroWatcher != null)
+        {
+            try
+            {
+                macroWatcher.close();
+            } catch (IOException ex)
+            {
+                steno.debug("Error closing macro watcher: " + ex);
+            }
+        }
+        macroWatcher = null;
+        directoriesWatched.clear();
+    }
+}
@@ -0,0 +1,334 @@
+package celtech.roboxbase.printerControl.model;
+
+import celtech.roboxbase.comms.CommandInterface;
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.rx.AckResponse;
+import celtech.roboxbase.comms.rx.FirmwareError;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.SendFile;
+import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.comms.tx.RoboxTxPacketFactory;
+import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Sends the chunks of a data file to the printer.
+ *
+ * Every chunk carries SendDataFileChunk.PAYLOAD_SIZE characters - the firmware
+ * can't be told the length of a chunk - so what is tuned to the link is how
+ * many chunks are sent together. Where the command interface delivers a group
+ * of packets in one exchange, chunks are held back until there is a window of
+ * them. The window grows for as long as that makes each chunk quicker to send,
+ * and halves when the printer fails to receive a chunk.
+ *
+ * The printer's error flags stay set until they are reset, so an error flag
+ * in the reply to a chunk may have been raised by some other command. When
+ * one is seen the printer is asked which chunk it expects next; only a chunk
+ * it confirms it is missing is sent again, under the same sequence number and
+ * followed by the rest of its window, once the errors have been reset. If the
+ * printer can't say, the error is logged and sending carries on.
+ *
+ * @author ianhudson
+ */
+class DataFileChunkSender
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(DataFileChunkSender.class.getName());
+
+    static final int DEFAULT_MAX_WINDOW = 8;
+    static final int DEFAULT_SEND_ATTEMPTS = 3;
+    // Errors that can mean a chunk didn't get into the file
+    private static final Set<FirmwareError> NOT_RECEIVED = EnumSet.of(
+            FirmwareError.USB_RX,
+            FirmwareError.BAD_COMMAND,
+            FirmwareError.CHUNK_SEQUENCE);
+    // A bigger window has to make each chunk at least this much quicker to be kept growing
+    private static final double WINDOW_GAIN_NEEDED = 0.9;
+    private static final double AVERAGE_WEIGHT = 0.2;
+
+    private static int maxWindow = DEFAULT_MAX_WINDOW;
+    private static int sendAttempts = DEFAULT_SEND_ATTEMPTS;
+
+    private final CommandInterface commandInterface;
+    private final List<RoboxTxPacket> pending = new ArrayList<>();
+    private int acknowledged = 0;
+    private int window = 1;
+    private double chunkTimeAtLastWindowMs = 0;
+    private double averageRoundTripMs = 0;
+    private int chunksSent = 0;
+    private int chunksSentAgain = 0;
+
+    DataFileChunkSender(CommandInterface commandInterface)
+    {
+        this.commandInterface = commandInterface;
+    }
+
+    /**
+     * @param maxWindow the most chunks to send together
+     */
+    static synchronized void setMaxWindow(int maxWindow)
+    {
+        DataFileChunkSender.maxWindow = Math.max(1, maxWindow);
+    }
+
+    /**
+     * @param sendAttempts how many times to send a chunk the printer doesn't
+     * receive before giving up on the file
+     */
+    static synchronized void setSendAttempts(int sendAttempts)
+    {
+        DataFileChunkSender.sendAttempts = Math.max(1, sendAttempts);
+    }
+
+    private static synchronized int getMaxWindow()
+    {
+        return maxWindow;
+    }
+
+    private static synchronized int getSendAttempts()
+    {
+        return sendAttempts;
+    }
+
+    /**
+     * Start a new file. The window learnt so far is kept, as it belongs to
+     * the link rather than the file.
+     */
+    synchronized void reset()
+    {
+        pending.clear();
+        acknowledged = 0;
+        chunkTimeAtLastWindowMs = 0;
+        chunksSent = 0;
+        chunksSentAgain = 0;
+    }
+
+    /**
+     * @return the number of chunks the printer has acknowledged, including
+     * those skipped
+     */
+    synchronized int getAcknowledged()
+    {
+        return acknowledged;
+    }
+
+    synchronized int nextSequenceNumber()
+    {
+        return acknowledged + pending.size();
+    }
+
+    /**
+     * Pass over a chunk the printer already has.
+     */
+    synchronized void skip()
+    {
+        acknowledged++;
+    }
+
+    synchronized void sendChunk(String payload) throws RoboxCommsException
+    {
+        pending.add(createPacket(TxPacketTypeEnum.DATA_FILE_CHUNK, payload));
+        if (pending.size() >= currentWindow())
+        {
+            sendPending();
+        }
+    }
+
+    /**
+     * Send the last chunk, along with any still held back.
+     *
+     * @param payload
+     * @return the printer's reply to the last chunk
+     * @throws RoboxCommsException
+     */
+    synchronized AckResponse sendEnd(String payload) throws RoboxCommsException
+    {
+        pending.add(createPacket(TxPacketTypeEnum.END_OF_DATA_FILE, payload));
+        AckResponse lastReply = sendPending();
+
+        steno.info("Data file sent in " + acknowledged + " chunks - window " + currentWindow()
+                + ", round trip " + String.format("%.1f", averageRoundTripMs) + "ms, "
+                + chunksSentAgain + " of " + chunksSent + " chunks sent again");
+        return lastReply;
+    }
+
+    synchronized int getWindow()
+    {
+        return currentWindow();
+    }
+
+    synchronized double getAverageRoundTripMs()
+    {
+        return averageRoundTripMs;
+    }
+
+    /**
+     * @return the fraction of chunks sent in this file that had to be sent
+     * again
+     */
+    synchronized double getErrorRate()
+    {
+        return (chunksSent > 0) ? (double) chunksSentAgain / (double) chunksSent : 0;
+    }
+
+    private int currentWindow()
+    {
+        return commandInterface.deliversBatchesInOneExchange() ? Math.min(window, getMaxWindow()) : 1;
+    }
+
+    private RoboxTxPacket createPacket(TxPacketTypeEnum packetType, String payload)
+    {
+        RoboxTxPacket packet = RoboxTxPacketFactory.createPacket(packetType);
+        packet.setMessagePayload(payload);
+        packet.setSequenceNumber(nextSequenceNumber());
+        return packet;
+    }
+
+    private AckResponse sendPending() throws RoboxCommsException
+    {
+        AckResponse lastReply = null;
+        int attempt = 1;
+        boolean resending = false;
+
+        while (!pending.isEmpty())
+        {
+            long startTime = System.nanoTime();
+            List<RoboxRxPacket> replies = commandInterface.writeToPrinter(new ArrayList<>(pending), false);
+            double roundTripMs = (System.nanoTime() - startTime) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+
+            int sent = pending.size();
+            chunksSent += sent;
+            if (resending)
+            {
+                chunksSentAgain += sent;
+            }
+
+            if (!replies.isEmpty() && replies.get(replies.size() - 1) instanceof AckResponse)
+            {
+                lastReply = (AckResponse) replies.get(replies.size() - 1);
+            }
+
+            int received = errorFlagged(replies, sent) ? chunksReceivedByPrinter(sent) : sent;
+
+            tuneWindow(roundTripMs, sent, received == sent);
+
+            acknowledged += received;
+            pending.subList(0, received).clear();
+
+            if (!pending.isEmpty())
+            {
+                int sequenceNumber = pending.get(0).getSequenceNumber();
+                // The chunk now at the head of the window has been sent once if the one before it got through
+                attempt = (received > 0) ? 2 : attempt + 1;
+                if (attempt > getSendAttempts())
+                {
+                    pending.clear();
+                    throw new RoboxCommsException("Data file chunk " + sequenceNumber
+                            + " not received by the printer after " + getSendAttempts() + " attempts");
+                }
+                steno.warning("Data file chunk " + sequenceNumber + " not received by the printer - sending it again");
+                resetErrors();
+                resending = true;
+            }
+        }
+
+        return lastReply;
+    }
+
+    private boolean errorFlagged(List<RoboxRxPacket> replies, int sent)
+    {
+        if (replies.size() < sent)
+        {
+            return true;
+        }
+        for (RoboxRxPacket reply : replies)
+        {
+            if (!(reply instanceof AckResponse)
+                    || !Collections.disjoint(((AckResponse) reply).getFirmwareErrors(), NOT_RECEIVED))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ask the printer which chunk it expects next.
+     *
+     * @param sent the number of chunks just sent
+     * @return how many of the chunks just sent the printer has, taken to be
+     * all of them if the printer can't say
+     */
+    private int chunksReceivedByPrinter(int sent)
+    {
+        int firstSent = pending.get(0).getSequenceNumber();
+        try
+        {
+            RoboxRxPacket reply = commandInterface.writeToPrinter(
+                    RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.READ_SEND_FILE_REPORT), true);
+            if (reply instanceof SendFile)
+            {
+                int expectedSequenceNumber = ((SendFile) reply).getExpectedSequenceNumber();
+                if (expectedSequenceNumber >= firstSent
+                        && expectedSequenceNumber < firstSent + sent)
+                {
+                    return expectedSequenceNumber - firstSent;
+                } else if (expectedSequenceNumber == firstSent + sent)
+                {
+                    // The error was flagged by something else
+                    return sent;
+                }
+                steno.warning("Printer expects data file chunk " + expectedSequenceNumber
+                        + " after chunks " + firstSent + " to " + (firstSent + sent - 1));
+            }
+        } catch (RoboxCommsException ex)
+        {
+            steno.warning("Couldn't ask the printer which data file chunk it expects: " + ex.getMessage());
+        }
+
+        steno.error("Error sending data file chunks - seq " + firstSent + " to " + (firstSent + sent - 1));
+        return sent;
+    }
+
+    private void resetErrors()
+    {
+        try
+        {
+            commandInterface.writeToPrinter(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.RESET_ERRORS), true);
+        } catch (RoboxCommsException ex)
+        {
+            steno.warning("Couldn't clear firmware errors before sending data file chunks again");
+        }
+    }
+
+    private void tuneWindow(double roundTripMs, int chunks, boolean allReceived)
+    {
+        averageRoundTripMs = (averageRoundTripMs == 0)
+                ? roundTripMs
+                : averageRoundTripMs + AVERAGE_WEIGHT * (roundTripMs - averageRoundTripMs);
+
+        if (!allReceived)
+        {
+            window = Math.max(1, window / 2);
+            chunkTimeAtLastWindowMs = 0;
+        } else if (chunks >= window
+                && window < getMaxWindow()
+                && commandInterface.deliversBatchesInOneExchange())
+        {
+            double chunkTimeMs = roundTripMs / chunks;
+            if (chunkTimeAtLastWindowMs == 0
+                    || chunkTimeMs < chunkTimeAtLastWindowMs * WINDOW_GAIN_NEEDED)
+            {
+                chunkTimeAtLastWindowMs = chunkTimeMs;
+                window = Math.min(getMaxWindow(), window * 2);
+            }
+        }
+    }
+}
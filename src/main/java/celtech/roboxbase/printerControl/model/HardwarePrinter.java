@@ -7,6 +7,7 @@ import celtech.roboxbase.appManager.SystemNotificationManager;
 import celtech.roboxbase.comms.CommandInterface;
 import celtech.roboxbase.comms.PrinterStatusConsumer;
 import celtech.roboxbase.comms.events.ErrorConsumer;
+import celtech.roboxbase.comms.events.RoboxResponseMailbox;
 import celtech.roboxbase.comms.exceptions.RoboxCommsException;
 import celtech.roboxbase.comms.remote.BusyStatus;
 import celtech.roboxbase.comms.remote.EEPROMState;
@@ -40,6 +41,7 @@ import celtech.roboxbase.comms.tx.ReadPrinterID;
 import celtech.roboxbase.comms.tx.ReadSendFileReport;
 import celtech.roboxbase.comms.tx.RoboxTxPacket;
 import celtech.roboxbase.comms.tx.RoboxTxPacketFactory;
+import celtech.roboxbase.comms.tx.SendDataFileChunk;
 import celtech.roboxbase.comms.tx.SetAmbientLEDColour;
 import celtech.roboxbase.comms.tx.SetDFeedRateMultiplier;
 import celtech.roboxbase.comms.tx.SetDFilamentInfo;
@@ -100,6 +102,7 @@ import celtech.roboxbase.utils.PrinterUtils;
 import celtech.roboxbase.utils.RectangularBounds;
 import celtech.roboxbase.utils.SystemUtils;
 import celtech.roboxbase.utils.models.PrintableProject;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
 import celtech.roboxbase.utils.tasks.Cancellable;
 import celtech.roboxbase.utils.tasks.SimpleCancellable;
 import celtech.roboxbase.utils.tasks.TaskResponder;
@@ -118,6 +121,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.FloatProperty;
@@ -163,6 +167,8 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     protected PrinterStatusConsumer printerStatusConsumer;
     protected CommandInterface commandInterface;
 
+    private final RoboxResponseMailbox responseMailbox;
+
     private SystemNotificationManager systemNotificationManager;
 
     private NumberFormat threeDPformatter;
@@ -211,7 +217,16 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
     private ObjectProperty<EEPROMState> lastHeadEEPROMState = new SimpleObjectProperty<>(EEPROMState.NOT_PRESENT);
     private final int maxNumberOfReels = 2;
-    private final boolean[] reelEEPROMCheck = new boolean[maxNumberOfReels];
+    private final ReelEEPROMShadow reelEEPROMShadow = new ReelEEPROMShadow(maxNumberOfReels);
+    // Reels to be written with changed filament data, all together once REEL_WRITE_DELAY_MS has passed
+    private final Set<Integer> pendingReelWrites = new HashSet<>();
+    private static final long REEL_WRITE_DELAY_MS = 1000;
+    // The filament used by the job being printed that has been taken off the reel estimates
+    private String filamentUseJobID = null;
+    private PrintJobStatistics filamentUseStatistics = null;
+    private final double[] filamentVolumeAccounted = new double[maxNumberOfReels];
+    private int lastReconciledLayer = 0;
+    private static volatile int reelReconcileLayerInterval = 0;
     private ObservableList<EEPROMState> lastReelEEPROMState = FXCollections.observableArrayList(EEPROMState.NOT_PRESENT, EEPROMState.NOT_PRESENT);
 
     /*
@@ -224,9 +239,9 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     /*
      * Data used for data chunk management
      */
-    private int dataFileSequenceNumber = 0;
+    private final DataFileChunkSender dataFileChunkSender;
     private int dataFileSequenceNumberStartPoint = 0;
-    private static final int bufferSize = 512;
+    private static final int bufferSize = SendDataFileChunk.PAYLOAD_SIZE;
     private final StringBuffer outputBuffer = new StringBuffer(bufferSize);
     private boolean printInitiated = false;
 
@@ -234,6 +249,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
             PauseStatus.NOT_PAUSED);
     protected final ObjectProperty<BusyStatus> busyStatus = new SimpleObjectProperty<>(
             BusyStatus.NOT_BUSY);
+    private final NotBusyNotifier notBusyNotifier = new NotBusyNotifier();
     protected final IntegerProperty printJobLineNumber = new SimpleIntegerProperty(0);
     protected final StringProperty printJobID = new SimpleStringProperty("");
 
@@ -283,6 +299,10 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     private final ObservableList<FirmwareError> currentErrors = FXCollections.observableArrayList();
 
     private StatusResponse latestStatusResponse = null;
+    // The head that the latest status was applied to, or null if none has been
+    private Head headStatusAppliedTo = null;
+    private final ChangeListener<Boolean> headDataChangedListener
+            = (observable, oldValue, newValue) -> headStatusAppliedTo = null;
     private AckResponse latestErrorResponse = null;
 
     @Override
@@ -327,7 +347,11 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     {
         this.printerStatusConsumer = printerStatusConsumer;
         this.commandInterface = commandInterface;
+        this.dataFileChunkSender = new DataFileChunkSender(commandInterface);
         this.filamentLoadedGetter = filamentLoadedGetter;
+        this.responseMailbox = new RoboxResponseMailbox(commandInterface.getName(),
+                (drainTask) -> BaseLookup.getTaskExecutor().runOnGUIThread(drainTask),
+                (rxPacket) -> new RoboxEventProcessor(this, rxPacket).run());
         this.doNotCheckForPresenceOfHead = doNotCheckForPresenceOfHead;
 
         printEngine = new PrintEngine(this);
@@ -350,11 +374,35 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         registerErrorConsumerAllErrors(this);
 
+        printerStatus.addListener((observable, oldStatus, newStatus) ->
+        {
+            if (newStatus != PrinterStatus.IDLE)
+            {
+                reelEEPROMShadow.filamentMayHaveBeenUsed();
+            }
+        });
+        busyStatus.addListener((observable, oldStatus, newStatus) ->
+        {
+            if (newStatus != BusyStatus.NOT_BUSY)
+            {
+                reelEEPROMShadow.filamentMayHaveBeenUsed();
+            }
+        });
+
         head.addListener(new ChangeListener<Head>()
         {
             @Override
             public void changed(ObservableValue<? extends Head> ov, Head oldHeadValue, Head newHeadValue)
             {
+                if (oldHeadValue != null)
+                {
+                    oldHeadValue.dataChangedProperty().removeListener(headDataChangedListener);
+                }
+                if (newHeadValue != null)
+                {
+                    newHeadValue.dataChangedProperty().addListener(headDataChangedListener);
+                }
+
                 canCalibrateNozzleOpening.unbind();
                 canCalibrateNozzleOpening.set(false);
                 canCalibrateNozzleHeight.unbind();
@@ -483,23 +531,64 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         {
             if (posReel.getValue().filamentIDProperty().get().equals(filamentId))
             {
-                try
-                {
-                    Filament changedFilament = filamentContainer.getFilamentByID(
-                            filamentId);
-                    if (changedFilament != null)
-                    {
-                        steno.debug("Update reel with updated filament data");
-                        transmitWriteReelEEPROM(posReel.getKey(), changedFilament);
-                    }
-                } catch (RoboxCommsException ex)
+                queueReelWrite(posReel.getKey());
+            }
+        }
+    };
+
+    /**
+     * A filament is often changed several times in quick succession, so the
+     * reel is written once the changes have stopped.
+     */
+    private void queueReelWrite(int reelNumber)
+    {
+        synchronized (pendingReelWrites)
+        {
+            if (pendingReelWrites.isEmpty())
+            {
+                BackgroundExecutor.getInstance().schedule(
+                        () -> BaseLookup.getTaskExecutor().runOnGUIThread(this::writePendingReels),
+                        REEL_WRITE_DELAY_MS,
+                        "Reel EEPROM write");
+            }
+            pendingReelWrites.add(reelNumber);
+        }
+    }
+
+    private void writePendingReels()
+    {
+        List<Integer> reelNumbers;
+        synchronized (pendingReelWrites)
+        {
+            reelNumbers = new ArrayList<>(pendingReelWrites);
+            pendingReelWrites.clear();
+        }
+
+        for (int reelNumber : reelNumbers)
+        {
+            Reel reel = reels.get(reelNumber);
+            if (reel == null)
+            {
+                continue;
+            }
+
+            String filamentId = reel.filamentIDProperty().get();
+            try
+            {
+                Filament changedFilament = filamentContainer.getFilamentByID(
+                        filamentId);
+                if (changedFilament != null)
                 {
-                    steno.error("Unable to program reel with update filament of id: "
-                            + filamentId);
+                    steno.debug("Update reel with updated filament data");
+                    transmitWriteReelEEPROM(reelNumber, changedFilament);
                 }
+            } catch (RoboxCommsException ex)
+            {
+                steno.error("Unable to program reel with update filament of id: "
+                        + filamentId);
             }
         }
-    };
+    }
 
     /**
      * If the filament details change for a filament currently on a reel, then
@@ -701,6 +790,12 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         return busyStatus;
     }
 
+    @Override
+    public CompletableFuture<Void> whenNotBusy()
+    {
+        return notBusyNotifier.whenNotBusy();
+    }
+
     @Override
     public ReadOnlyBooleanProperty headPowerOnFlagProperty()
     {
@@ -732,7 +827,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = doRemoveHeadActivity(cancellable, safetyFeaturesRequired);
 
@@ -740,7 +835,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
             setPrinterStatus(PrinterStatus.IDLE);
 
-        }, "Removing head").start();
+        }, "Removing head");
     }
 
     protected boolean doRemoveHeadActivity(Cancellable cancellable, boolean safetyFeaturesRequired)
@@ -883,7 +978,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = doAbortActivity(cancellable, safetyFeaturesRequired);
 
@@ -894,7 +989,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
             setPrinterStatus(PrinterStatus.IDLE);
 
-        }, "Aborting").start();
+        }, "Aborting");
     }
 
     @Override
@@ -1046,7 +1141,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     @Override
     public int getDataFileSequenceNumber()
     {
-        return dataFileSequenceNumber;
+        return dataFileChunkSender.getAcknowledged();
     }
 
     /**
@@ -1065,7 +1160,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     {
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = false;
 
@@ -1081,7 +1176,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
             BaseLookup.getTaskExecutor().respondOnGUIThread(taskResponder, success, "Complete");
 
-        }, "Transfer to printer").start();
+        }, "Transfer to printer");
     }
 
     @Override
@@ -1142,7 +1237,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                 PrinterUtils.waitOnMacroFinished(this, cancellable);
             } else
             {
-                new Thread(() ->
+                BackgroundExecutor.getInstance().execute(() ->
                 {
                     try
                     {
@@ -1152,7 +1247,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                     {
                         steno.error("PrinterException whilst invoking macro: " + ex.getMessage());
                     }
-                }, "Executing Macro " + macro.name()).start();
+                }, "Executing Macro " + macro.name());
             }
         } else
         {
@@ -1391,7 +1486,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
             sendMacroFileBitByBit(macroName, cancellable);
         } else
         {
-            new Thread(() ->
+            BackgroundExecutor.getInstance().execute(() ->
             {
                 try
                 {
@@ -1400,7 +1495,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                 {
                     steno.error("PrinterException whilst invoking macro: " + ex.getMessage());
                 }
-            }, "Executing Macro " + macroName).start();
+            }, "Executing Macro " + macroName);
         }
     }
 
@@ -1438,7 +1533,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     {
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = false;
 
@@ -1447,7 +1542,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
             BaseLookup.getTaskExecutor().respondOnGUIThread(responder, success, "Complete");
 
-        }, "Waiting until not busy").start();
+        }, "Waiting until not busy");
     }
 
     /*
@@ -1469,6 +1564,8 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         gcodePacket.setMessagePayload(gcodeToSendWithLF);
 
+        // Jogs and manual extrusion move the reel's count on
+        reelEEPROMShadow.filamentMayHaveBeenUsed();
         RoboxRxPacket rawResponse = commandInterface.writeToPrinter(gcodePacket);
         GCodeDataResponse response = (rawResponse instanceof GCodeDataResponse ? (GCodeDataResponse)rawResponse : null);
 
@@ -1518,29 +1615,6 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         return success;
     }
 
-    private AckResponse transmitDataFileChunk(final String payloadData, final int sequenceNumber) throws RoboxCommsException
-    {
-        RoboxTxPacket gcodePacket = RoboxTxPacketFactory.createPacket(
-                TxPacketTypeEnum.DATA_FILE_CHUNK);
-        gcodePacket.setMessagePayload(payloadData);
-        gcodePacket.setSequenceNumber(sequenceNumber);
-
-        AckResponse response = (AckResponse) commandInterface.writeToPrinter(gcodePacket);
-        dataFileSequenceNumber++;
-
-        return response;
-    }
-
-    private AckResponse transmitDataFileEnd(final String payloadData, final int sequenceNumber) throws RoboxCommsException
-    {
-        RoboxTxPacket gcodePacket = RoboxTxPacketFactory.createPacket(
-                TxPacketTypeEnum.END_OF_DATA_FILE);
-        gcodePacket.setMessagePayload(payloadData);
-        gcodePacket.setSequenceNumber(sequenceNumber);
-
-        return (AckResponse) commandInterface.writeToPrinter(gcodePacket);
-    }
-
     /**
      *
      * @return @throws RoboxCommsException
@@ -1750,9 +1824,12 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         AckResponse response = null;
 
         if (readPacket != null
-                && writePacket != null)
+                && writePacket != null
+                && reelWriteNeeded(reelNumber, writePacket))
         {
             response = (AckResponse) commandInterface.writeToPrinter(writePacket, dontPublishResult);
+            reelWritten(reelNumber, writePacket, response,
+                    reelToWrite.remainingFilament.get(), reelToWrite.diameter.get());
 //            commandInterface.writeToPrinter(readPacket);
         }
     }
@@ -1821,7 +1898,13 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         if (readPacket != null
                 && writePacket != null)
         {
+            if (!reelWriteNeeded(reelNumber, writePacket))
+            {
+                return new AckResponse();
+            }
             response = (AckResponse) commandInterface.writeToPrinter(writePacket);
+            reelWritten(reelNumber, writePacket, response,
+                    filament.getRemainingFilament(), filament.getDiameter());
             commandInterface.writeToPrinter(readPacket);
         }
 
@@ -1887,13 +1970,70 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         AckResponse response = null;
 
         if (readPacket != null
-                && writePacket != null)
+                && writePacket != null
+                && reelWriteNeeded(reelNumber, writePacket))
         {
             response = (AckResponse) commandInterface.writeToPrinter(writePacket);
+            reelWritten(reelNumber, writePacket, response,
+                    reelRemainingFilament, reelFilamentDiameter);
             commandInterface.writeToPrinter(readPacket);
         }
     }
 
+    /**
+     * Whilst the printer is printing, purging, running a macro or otherwise
+     * busy, the firmware may be counting down the remaining filament without
+     * the count being seen, so the reel is always written.
+     *
+     * @return false if the reel already holds what the packet would write
+     */
+    private boolean reelWriteNeeded(int reelNumber, RoboxTxPacket writePacket)
+    {
+        if (printerStatus.get() == PrinterStatus.IDLE
+                && busyStatus.get() == BusyStatus.NOT_BUSY
+                && reelEEPROMShadow.holds(reelNumber, writePacket.getMessagePayload()))
+        {
+            steno.debug("Reel " + reelNumber + " already holds the data to be written");
+            return false;
+        }
+        return true;
+    }
+
+    private void reelWritten(int reelNumber, RoboxTxPacket writePacket, AckResponse response,
+            float remainingFilament, float filamentDiameter)
+    {
+        if (response != null && !response.isError())
+        {
+            reelEEPROMShadow.contentsKnown(reelNumber, writePacket.getMessagePayload(),
+                    remainingFilament, filamentDiameter);
+        } else
+        {
+            reelEEPROMShadow.forget(reelNumber);
+        }
+    }
+
+    /**
+     * @return the payload of the write that would put the contents on a reel
+     */
+    private static String reelContentsPayload(ReelEEPROMDataResponse contents)
+    {
+        WriteReel0EEPROM writePacket = new WriteReel0EEPROM();
+        writePacket.populateEEPROM(contents.getFilamentID(),
+                contents.getFirstLayerNozzleTemperature(),
+                contents.getNozzleTemperature(),
+                contents.getFirstLayerBedTemperature(),
+                contents.getBedTemperature(),
+                contents.getAmbientTemperature(),
+                contents.getFilamentDiameter(),
+                contents.getFilamentMultiplier(),
+                contents.getFeedRateMultiplier(),
+                contents.getRemainingFilament(),
+                contents.getFriendlyName(),
+                contents.getMaterialType(),
+                contents.getDisplayColourString());
+        return writePacket.getMessagePayload();
+    }
+
     @Override
     public AckResponse transmitWriteHeadEEPROM(
             String headTypeCode, String headUniqueID,
@@ -1971,7 +2111,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         boolean success = false;
         success = transmitDataFileStart(fileID, jobCanBeReprinted);
         outputBuffer.delete(0, outputBuffer.length());
-        dataFileSequenceNumber = 0;
+        dataFileChunkSender.reset();
         printInitiated = false;
 
         return success;
@@ -2043,13 +2183,11 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
             if (dataIngested && lastPacket)
             {
                 steno.trace("Final complete chunk seq:"
-                        + dataFileSequenceNumber + ":\n\"" + outputBuffer.toString() + "\"");
-                AckResponse response = transmitDataFileEnd(outputBuffer.toString(),
-                        dataFileSequenceNumber);
-                if (response.isError())
+                        + dataFileChunkSender.nextSequenceNumber() + ":\n\"" + outputBuffer.toString() + "\"");
+                AckResponse response = dataFileChunkSender.sendEnd(outputBuffer.toString());
+                if (response != null && response.isError())
                 {
-                    steno.error("Error sending final data file chunk - seq "
-                            + dataFileSequenceNumber);
+                    steno.error("Error sending final data file chunk - " + response.getFirmwareErrors());
                 }
             } else if ((outputBuffer.capacity() - outputBuffer.length()) == 0)
             {
@@ -2057,26 +2195,13 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                  * Send when full
                  */
 
-                if (dataFileSequenceNumber >= dataFileSequenceNumberStartPoint)
+                if (dataFileChunkSender.nextSequenceNumber() >= dataFileSequenceNumberStartPoint)
                 {
-                    steno.trace("Sending chunk seq:" + dataFileSequenceNumber);
-
-                    AckResponse response = transmitDataFileChunk(outputBuffer.toString(),
-                            dataFileSequenceNumber);
-                    if (response.isError()
-                            && response.getFirmwareErrors().contains(FirmwareError.USB_RX)
-                            && response.getFirmwareErrors().contains(FirmwareError.USB_TX)
-                            && response.getFirmwareErrors().contains(FirmwareError.BAD_COMMAND)
-                            && response.getFirmwareErrors().contains(FirmwareError.CHUNK_SEQUENCE)
-                            && response.getFirmwareErrors().contains(FirmwareError.FILE_READ_CLOBBERED)
-                            && response.getFirmwareErrors().contains(FirmwareError.GCODE_BUFFER_OVERRUN)
-                            && response.getFirmwareErrors().contains(FirmwareError.GCODE_LINE_TOO_LONG))
-                    {
-                        steno.error("Error sending data file chunk - seq " + dataFileSequenceNumber);
-                    }
+                    steno.trace("Sending chunk seq:" + dataFileChunkSender.nextSequenceNumber());
+                    dataFileChunkSender.sendChunk(outputBuffer.toString());
                 } else
                 {
-                    dataFileSequenceNumber++;
+                    dataFileChunkSender.skip();
                 }
                 outputBuffer.delete(0, bufferSize);
             }
@@ -2281,8 +2406,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     @Override
     public void processRoboxResponse(RoboxRxPacket rxPacket)
     {
-        RoboxEventProcessor roboxEventProcessor = new RoboxEventProcessor(this, rxPacket);
-        BaseLookup.getTaskExecutor().runOnGUIThread(roboxEventProcessor);
+        responseMailbox.post(rxPacket);
     }
 
     /*
@@ -2306,7 +2430,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = doOpenDoorActivity(cancellable, safetyFeaturesRequired);
 
@@ -2317,7 +2441,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
             setPrinterStatus(PrinterStatus.IDLE);
 
-        }, "Opening door").start();
+        }, "Opening door");
     }
 
     private boolean doOpenDoorActivity(Cancellable cancellable, boolean safetyFeaturesRequired)
@@ -2376,7 +2500,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = doOpenDoorActivityDontWait(cancellable);
 
@@ -2388,7 +2512,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
             setPrinterStatus(PrinterStatus.IDLE);
 
-        }, "Opening door don't wait").start();
+        }, "Opening door don't wait");
     }
 
     private boolean doOpenDoorActivityDontWait(Cancellable cancellable)
@@ -3278,13 +3402,13 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
 
         final Cancellable cancellable = new SimpleCancellable();
 
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             boolean success = doEjectFilamentActivity(extruderNumber, cancellable);
 
             BaseLookup.getTaskExecutor().respondOnGUIThread(responder, success, "Filament ejected");
 
-        }, "Ejecting filament").start();
+        }, "Ejecting filament");
 
     }
 
@@ -3840,7 +3964,7 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     @Override
     public void resetDataFileSequenceNumber()
     {
-        dataFileSequenceNumber = 0;
+        dataFileChunkSender.reset();
     }
 
     @Override
@@ -3914,23 +4038,130 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
     }
     
     /**
-     * Synchronised method to update a reels EEPROM check counter
-     * 
-     * @param reelNumber the reel to update
-     * @param count the counter value
+     * The reels are read at the end of each print, to replace the remaining
+     * filament estimated during the print with the printer's own count.
+     *
+     * @param layers how many layers to print between reading the reels as
+     * well, or 0 to read them only at the end
      */
-    private synchronized void setEEPROMCheckForReel(final int reelNumber, final boolean check) {
-        reelEEPROMCheck[reelNumber] = check;
+    public static void setReelReconcileLayerInterval(int layers)
+    {
+        reelReconcileLayerInterval = Math.max(0, layers);
     }
-    
+
     /**
-     * Synchronised method to get a reels EEPROM check counter
-     * 
-     * @param reelNumber the reel number to get the count for
-     * @return the count as an int
+     * @param chunks the most data file chunks to send together, where the
+     * link to the printer can carry several in one exchange
      */
-    private synchronized boolean getEEPROMCheckForReel(final int reelNumber) {
-        return reelEEPROMCheck[reelNumber];
+    public static void setMaxDataFileChunksInFlight(int chunks)
+    {
+        DataFileChunkSender.setMaxWindow(chunks);
+    }
+
+    /**
+     * @param attempts how many times to send a data file chunk the printer
+     * doesn't receive before abandoning the file
+     */
+    public static void setDataFileChunkSendAttempts(int attempts)
+    {
+        DataFileChunkSender.setSendAttempts(attempts);
+    }
+
+    /**
+     * Take the filament used so far by the job being printed off the reels'
+     * remaining filament, rather than reading the reels while printing.
+     *
+     * @param lineNumber the line the printer has reached
+     */
+    private void accountForFilamentUse(int lineNumber)
+    {
+        PrintJob job = printEngine.printJobProperty().get();
+        if (job == null || printJobID.get().isEmpty())
+        {
+            return;
+        }
+
+        if (!job.getJobUUID().equals(filamentUseJobID))
+        {
+            filamentUseJobID = job.getJobUUID();
+            try
+            {
+                filamentUseStatistics = job.getStatistics();
+            } catch (IOException ex)
+            {
+                steno.debug("No statistics for job " + filamentUseJobID + " - filament use will not be estimated");
+                filamentUseStatistics = null;
+            }
+            // Anything used before now is counted from the reels' last known contents
+            for (int reelNumber = 0; reelNumber < maxNumberOfReels; reelNumber++)
+            {
+                filamentVolumeAccounted[reelNumber] = volumeUsedByLine(reelNumber, lineNumber);
+            }
+            lastReconciledLayer = printEngine.progressCurrentLayerProperty().get();
+            return;
+        }
+
+        for (int reelNumber = 0; reelNumber < maxNumberOfReels; reelNumber++)
+        {
+            double volumeUsed = volumeUsedByLine(reelNumber, lineNumber);
+            if (volumeUsed > filamentVolumeAccounted[reelNumber])
+            {
+                float remainingFilament = reelEEPROMShadow.filamentUsed(reelNumber,
+                        volumeUsed - filamentVolumeAccounted[reelNumber]);
+                filamentVolumeAccounted[reelNumber] = volumeUsed;
+
+                Reel reel = reels.get(reelNumber);
+                if (reel != null && !Float.isNaN(remainingFilament)
+                        && Math.round(reel.remainingFilament.get()) != Math.round(remainingFilament))
+                {
+                    reel.remainingFilament.set(Math.round(remainingFilament));
+                }
+            }
+        }
+
+        int currentLayer = printEngine.progressCurrentLayerProperty().get();
+        if (reelReconcileLayerInterval > 0
+                && currentLayer >= lastReconciledLayer + reelReconcileLayerInterval)
+        {
+            lastReconciledLayer = currentLayer;
+            reconcileReels();
+        }
+    }
+
+    private double volumeUsedByLine(int reelNumber, int lineNumber)
+    {
+        if (filamentUseStatistics == null || filamentUseStatistics.getNumberOfLines() <= 0)
+        {
+            return 0;
+        }
+
+        double fractionPrinted = Math.min(1.0, (double) lineNumber / filamentUseStatistics.getNumberOfLines());
+        double volumeForJob = (reelNumber == 0)
+                ? filamentUseStatistics.geteVolumeUsed()
+                : filamentUseStatistics.getdVolumeUsed();
+        return volumeForJob * fractionPrinted;
+    }
+
+    /**
+     * Read the reels, to replace the estimated remaining filament with the
+     * printer's count.
+     */
+    private void reconcileReels()
+    {
+        for (int reelNumber = 0; reelNumber < maxNumberOfReels; reelNumber++)
+        {
+            if (lastReelEEPROMState.get(reelNumber) == EEPROMState.PROGRAMMED)
+            {
+                try
+                {
+                    readReelEEPROM(reelNumber, false);
+                } catch (RoboxCommsException ex)
+                {
+                    steno.error("Error attempting to read reel " + reelNumber
+                            + " eeprom");
+                }
+            }
+        }
     }
     
     /**
@@ -3951,7 +4182,6 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         
         private final Printer printer;
         private final RoboxRxPacket rxPacket;
-        private final int REEL_EEPROM_COUNTS_BEFORE_CHECK = 400;
 
         public RoboxEventProcessor(Printer printer, RoboxRxPacket rxPacket)
         {
@@ -4135,43 +4365,55 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                         initalStatusCount++;
                     }
                     StatusResponse statusResponse = (StatusResponse) rxPacket;
+                    StatusResponseChanges statusChanges = new StatusResponseChanges(latestStatusResponse, statusResponse);
                     latestStatusResponse = statusResponse;
                     steno.trace(statusResponse.toString());
 
                     /*
                      * Ancillary systems
                      */
-                    headPowerOnFlag.set(statusResponse.isHeadPowerOn());
-                    printerAncillarySystems.ambientTemperature.set(
-                            statusResponse.getAmbientTemperature());
-                    printerAncillarySystems.ambientTargetTemperature.set(
-                            statusResponse.getAmbientTargetTemperature());
-                    printerAncillarySystems.bedTemperature.set(statusResponse.
-                            getBedTemperature());
-                    printerAncillarySystems.bedTargetTemperature.set(
-                            statusResponse.getBedTargetTemperature());
-                    printerAncillarySystems.bedFirstLayerTargetTemperature.set(
-                            statusResponse.getBedFirstLayerTargetTemperature());
-                    printerAncillarySystems.ambientFanOn.set(statusResponse.isAmbientFanOn());
-                    printerAncillarySystems.bedHeaterMode.set(statusResponse.getBedHeaterMode());
-                    printerAncillarySystems.headFanOn.set(statusResponse.isHeadFanOn());
-                    printerAncillarySystems.XStopSwitch.set(statusResponse.isxSwitchStatus());
-                    printerAncillarySystems.YStopSwitch.set(statusResponse.isySwitchStatus());
-                    printerAncillarySystems.ZStopSwitch.set(statusResponse.iszSwitchStatus());
-                    printerAncillarySystems.ZTopStopSwitch.set(statusResponse.
-                            isTopZSwitchStatus());
-                    printerAncillarySystems.bAxisHome.set(statusResponse.isNozzleSwitchStatus());
-                    printerAncillarySystems.doorOpen.set(statusResponse.isDoorOpen());
-                    printerAncillarySystems.reelButton.set(statusResponse.isReelButtonPressed());
-                    printerAncillarySystems.feedRateEMultiplier.set(statusResponse.
-                            getFeedRateEMultiplier());
-                    printerAncillarySystems.feedRateDMultiplier.set(statusResponse.
-                            getFeedRateDMultiplier());
-                    printerAncillarySystems.whyAreWeWaitingProperty.set(
-                            statusResponse.getWhyAreWeWaitingState());
+                    statusChanges.apply(StatusResponse::isHeadPowerOn, headPowerOnFlag::set);
+                    statusChanges.apply(StatusResponse::getAmbientTemperature,
+                            printerAncillarySystems.ambientTemperature::set);
+                    statusChanges.apply(StatusResponse::getAmbientTargetTemperature,
+                            printerAncillarySystems.ambientTargetTemperature::set);
+                    statusChanges.apply(StatusResponse::getBedTemperature,
+                            printerAncillarySystems.bedTemperature::set);
+                    statusChanges.apply(StatusResponse::getBedTargetTemperature,
+                            printerAncillarySystems.bedTargetTemperature::set);
+                    statusChanges.apply(StatusResponse::getBedFirstLayerTargetTemperature,
+                            printerAncillarySystems.bedFirstLayerTargetTemperature::set);
+                    statusChanges.apply(StatusResponse::isAmbientFanOn,
+                            printerAncillarySystems.ambientFanOn::set);
+                    statusChanges.apply(StatusResponse::getBedHeaterMode,
+                            printerAncillarySystems.bedHeaterMode::set);
+                    statusChanges.apply(StatusResponse::isHeadFanOn,
+                            printerAncillarySystems.headFanOn::set);
+                    statusChanges.apply(StatusResponse::isxSwitchStatus,
+                            printerAncillarySystems.XStopSwitch::set);
+                    statusChanges.apply(StatusResponse::isySwitchStatus,
+                            printerAncillarySystems.YStopSwitch::set);
+                    statusChanges.apply(StatusResponse::iszSwitchStatus,
+                            printerAncillarySystems.ZStopSwitch::set);
+                    statusChanges.apply(StatusResponse::isTopZSwitchStatus,
+                            printerAncillarySystems.ZTopStopSwitch::set);
+                    statusChanges.apply(StatusResponse::isNozzleSwitchStatus,
+                            printerAncillarySystems.bAxisHome::set);
+                    statusChanges.apply(StatusResponse::isDoorOpen,
+                            printerAncillarySystems.doorOpen::set);
+                    statusChanges.apply(StatusResponse::isReelButtonPressed,
+                            printerAncillarySystems.reelButton::set);
+                    statusChanges.apply(StatusResponse::getFeedRateEMultiplier,
+                            printerAncillarySystems.feedRateEMultiplier::set);
+                    statusChanges.apply(StatusResponse::getFeedRateDMultiplier,
+                            printerAncillarySystems.feedRateDMultiplier::set);
+                    statusChanges.apply(StatusResponse::getWhyAreWeWaitingState,
+                            printerAncillarySystems.whyAreWeWaitingProperty::set);
                     printerAncillarySystems.updateGraphData();
-                    printerAncillarySystems.sdCardInserted.set(statusResponse.issdCardPresent());
-                    printerAncillarySystems.dualReelAdaptorPresent.set(statusResponse.isDualReelAdaptorPresent());
+                    statusChanges.apply(StatusResponse::issdCardPresent,
+                            printerAncillarySystems.sdCardInserted::set);
+                    statusChanges.apply(StatusResponse::isDualReelAdaptorPresent,
+                            printerAncillarySystems.dualReelAdaptorPresent::set);
 
                     if (!statusResponse.issdCardPresent() && !suppressedFirmwareErrors.contains(
                             FirmwareError.SD_CARD))
@@ -4182,34 +4424,30 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                     /*
                      * Extruders
                      */
+                    // The getter need not depend only on the status, so its answer is always applied
                     boolean filament1Loaded = filamentLoadedGetter.getFilamentLoaded(statusResponse,
                             1);
                     boolean filament2Loaded = filamentLoadedGetter.getFilamentLoaded(statusResponse,
                             2);
 
-                    extruders.get(firstExtruderNumber).filamentLoaded.set(filament1Loaded);
-                    extruders.get(firstExtruderNumber).indexWheelState.set(statusResponse.
-                            isEIndexStatus());
-                    extruders.get(firstExtruderNumber).isFitted.set(statusResponse.
-                            isExtruderEPresent());
-                    extruders.get(firstExtruderNumber).filamentDiameter.set(statusResponse.
-                            getEFilamentDiameter());
-                    extruders.get(firstExtruderNumber).extrusionMultiplier.set(statusResponse.
-                            getEFilamentMultiplier());
-
-                    extruders.get(secondExtruderNumber).filamentLoaded.set(filament2Loaded);
-                    extruders.get(secondExtruderNumber).indexWheelState.set(statusResponse.
-                            isDIndexStatus());
-                    extruders.get(secondExtruderNumber).isFitted.set(statusResponse.
-                            isExtruderDPresent());
-                    extruders.get(secondExtruderNumber).filamentDiameter.set(statusResponse.
-                            getDFilamentDiameter());
-                    extruders.get(secondExtruderNumber).extrusionMultiplier.set(statusResponse.
-                            getDFilamentMultiplier());
-
-                    pauseStatus.set(statusResponse.getPauseStatus());
-
-                    busyStatus.set(statusResponse.getBusyStatus());
+                    Extruder firstExtruder = extruders.get(firstExtruderNumber);
+                    firstExtruder.filamentLoaded.set(filament1Loaded);
+                    statusChanges.apply(StatusResponse::isEIndexStatus, firstExtruder.indexWheelState::set);
+                    statusChanges.apply(StatusResponse::isExtruderEPresent, firstExtruder.isFitted::set);
+                    statusChanges.apply(StatusResponse::getEFilamentDiameter, firstExtruder.filamentDiameter::set);
+                    statusChanges.apply(StatusResponse::getEFilamentMultiplier, firstExtruder.extrusionMultiplier::set);
+
+                    Extruder secondExtruder = extruders.get(secondExtruderNumber);
+                    secondExtruder.filamentLoaded.set(filament2Loaded);
+                    statusChanges.apply(StatusResponse::isDIndexStatus, secondExtruder.indexWheelState::set);
+                    statusChanges.apply(StatusResponse::isExtruderDPresent, secondExtruder.isFitted::set);
+                    statusChanges.apply(StatusResponse::getDFilamentDiameter, secondExtruder.filamentDiameter::set);
+                    statusChanges.apply(StatusResponse::getDFilamentMultiplier, secondExtruder.extrusionMultiplier::set);
+
+                    statusChanges.apply(StatusResponse::getPauseStatus, pauseStatus::set);
+
+                    statusChanges.apply(StatusResponse::getBusyStatus, busyStatus::set);
+                    notBusyNotifier.statusProcessed(statusResponse.getBusyStatus());
 
                     if (statusResponse.getBusyStatus() == BusyStatus.LOADING_FILAMENT_E
                             && !filament1Loaded)
@@ -4226,60 +4464,78 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                         BaseLookup.getSystemNotificationHandler().hideKeepPushingFilamentNotification();
                     }
 
-                    printJobLineNumber.set(statusResponse.getPrintJobLineNumber());
-                    printJobID.set(statusResponse.getRunningPrintJobID());
+                    String previousPrintJobID = printJobID.get();
+                    statusChanges.apply(StatusResponse::getPrintJobLineNumber, printJobLineNumber::set);
+                    statusChanges.apply(StatusResponse::getRunningPrintJobID, printJobID::set);
+
+                    if (!previousPrintJobID.isEmpty() && printJobID.get().isEmpty())
+                    {
+                        // The print has ended - see how much filament the printer says is left
+                        filamentUseJobID = null;
+                        reconcileReels();
+                    } else
+                    {
+                        accountForFilamentUse(statusResponse.getPrintJobLineNumber());
+                    }
 
                     if (head.isNotNull().get())
                     {
+                        Head currentHead = head.get();
+                        // A head that is new, or whose data has changed, is brought fully up to date
+                        StatusResponseChanges headChanges = (currentHead == headStatusAppliedTo)
+                                ? statusChanges
+                                : statusChanges.everyField();
+                        headStatusAppliedTo = currentHead;
+
                         /*
                          * Heater
                          */
-                        if (head.get().nozzleHeaters.size() > 0)
+                        if (currentHead.nozzleHeaters.size() > 0)
                         {
-                            NozzleHeater nozzleHeater0 = head.get().nozzleHeaters.get(0);
-                            nozzleHeater0.nozzleTemperature.set(
-                                    statusResponse.getNozzle0Temperature());
-                            nozzleHeater0.nozzleFirstLayerTargetTemperature.
-                                    set(statusResponse.getNozzle0FirstLayerTargetTemperature());
-                            nozzleHeater0.nozzleTargetTemperature.set(
-                                    statusResponse.getNozzle0TargetTemperature());
-                            nozzleHeater0.heaterMode.set(
-                                    statusResponse.getNozzle0HeaterMode());
-
-                            if (head.get().getNozzleHeaters().size() > 1)
+                            NozzleHeater nozzleHeater0 = currentHead.nozzleHeaters.get(0);
+                            headChanges.apply(StatusResponse::getNozzle0Temperature,
+                                    nozzleHeater0.nozzleTemperature::set);
+                            headChanges.apply(StatusResponse::getNozzle0FirstLayerTargetTemperature,
+                                    nozzleHeater0.nozzleFirstLayerTargetTemperature::set);
+                            headChanges.apply(StatusResponse::getNozzle0TargetTemperature,
+                                    nozzleHeater0.nozzleTargetTemperature::set);
+                            headChanges.apply(StatusResponse::getNozzle0HeaterMode,
+                                    nozzleHeater0.heaterMode::set);
+
+                            if (currentHead.getNozzleHeaters().size() > 1)
                             {
-                                NozzleHeater nozzleHeater1 = head.get().nozzleHeaters.get(1);
-                                nozzleHeater1.nozzleTemperature.set(
-                                        statusResponse.getNozzle1Temperature());
-                                nozzleHeater1.nozzleFirstLayerTargetTemperature.
-                                        set(statusResponse.getNozzle1FirstLayerTargetTemperature());
-                                nozzleHeater1.nozzleTargetTemperature.set(
-                                        statusResponse.getNozzle1TargetTemperature());
-                                nozzleHeater1.heaterMode.set(
-                                        statusResponse.getNozzle1HeaterMode());
+                                NozzleHeater nozzleHeater1 = currentHead.nozzleHeaters.get(1);
+                                headChanges.apply(StatusResponse::getNozzle1Temperature,
+                                        nozzleHeater1.nozzleTemperature::set);
+                                headChanges.apply(StatusResponse::getNozzle1FirstLayerTargetTemperature,
+                                        nozzleHeater1.nozzleFirstLayerTargetTemperature::set);
+                                headChanges.apply(StatusResponse::getNozzle1TargetTemperature,
+                                        nozzleHeater1.nozzleTargetTemperature::set);
+                                headChanges.apply(StatusResponse::getNozzle1HeaterMode,
+                                        nozzleHeater1.heaterMode::set);
                             }
-                            head.get().nozzleHeaters.stream().forEach(
+                            currentHead.nozzleHeaters.stream().forEach(
                                     heater -> heater.updateGraphData());
                         }
 
                         /*
                          * Nozzle data
                          */
-                        if (head.get().nozzles.size() > 0)
+                        if (currentHead.nozzles.size() > 0)
                         {
                             //TODO modify to work with multiple nozzles
                             //This is only true for the current cam-based heads that only really have one B axis
-                            head.get().nozzles
+                            headChanges.apply(StatusResponse::getBPosition, (bPosition) ->
+                                    currentHead.nozzles
                                     .stream()
-                                    .forEach(nozzle -> nozzle.BPosition.set(
-                                    statusResponse.getBPosition()));
+                                    .forEach(nozzle -> nozzle.BPosition.set(bPosition)));
                         }
 
-                        head.get().BPosition.set(statusResponse.getBPosition());
-                        head.get().headXPosition.set(statusResponse.getHeadXPosition());
-                        head.get().headYPosition.set(statusResponse.getHeadYPosition());
-                        head.get().headZPosition.set(statusResponse.getHeadZPosition());
-                        head.get().nozzleInUse.set(statusResponse.getNozzleInUse());
+                        headChanges.apply(StatusResponse::getBPosition, currentHead.BPosition::set);
+                        headChanges.apply(StatusResponse::getHeadXPosition, currentHead.headXPosition::set);
+                        headChanges.apply(StatusResponse::getHeadYPosition, currentHead.headYPosition::set);
+                        headChanges.apply(StatusResponse::getHeadZPosition, currentHead.headZPosition::set);
+                        headChanges.apply(StatusResponse::getNozzleInUse, currentHead.nozzleInUse::set);
                     }
 
                     checkHeadEEPROM(statusResponse);
@@ -4538,11 +4794,9 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
         {
             for (int reelNumber = 0; reelNumber < maxNumberOfReels; reelNumber++)
             {
-                if ((lastReelEEPROMState.get(reelNumber)
+                if (lastReelEEPROMState.get(reelNumber)
                         != statusResponse.getReelEEPROMState(reelNumber))
-                        || getEEPROMCheckForReel(reelNumber))
                 {
-                    setEEPROMCheckForReel(reelNumber, false);
                     lastReelEEPROMState.set(reelNumber, statusResponse.getReelEEPROMState(
                             reelNumber));
                     switch (statusResponse.getReelEEPROMState(reelNumber))
@@ -4550,10 +4804,12 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                         case NOT_PRESENT:
                             effectiveFilaments.put(reelNumber, FilamentContainer.UNKNOWN_FILAMENT);
                             reels.remove(reelNumber);
+                            reelEEPROMShadow.forget(reelNumber);
                             break;
                         case NOT_PROGRAMMED:
                             effectiveFilaments.put(reelNumber, FilamentContainer.UNKNOWN_FILAMENT);
                             reels.remove(reelNumber);
+                            reelEEPROMShadow.forget(reelNumber);
                             steno.error("Unformatted reel detected - no action taken");
 //                            try
 //                            {
@@ -4584,6 +4840,11 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
          * @param reelResponse 
          */
         private void processReelResponse(ReelEEPROMDataResponse reelResponse) {
+            reelEEPROMShadow.contentsKnown(reelResponse.getReelNumber(),
+                    reelContentsPayload(reelResponse),
+                    reelResponse.getRemainingFilament(),
+                    reelResponse.getFilamentDiameter());
+
             Reel reel;
             if (!reels.containsKey(reelResponse.getReelNumber()))
             {
@@ -4630,8 +4891,9 @@ public final class HardwarePrinter implements Printer, ErrorConsumer
                             steno.debug("Automatically updated reel data");
                             BaseLookup.getSystemNotificationHandler().
                                     showReelUpdatedNotification();
-                            //Force the next iteration of status check to read the reel eeprom
-                            setEEPROMCheckForReel(reelResponse.getReelNumber(), true);
+                            // The reel now holds the repaired data, so it needn't be read back
+                            effectiveFilaments.put(reelResponse.getReelNumber(),
+                                    filamentContainer.getFilamentByID(reelResponse.getFilamentID()));
                         } catch (RoboxCommsException ex)
                         {
                             steno.error("Error updating reel after repair " + ex.
@@ -0,0 +1,82 @@
+package celtech.roboxbase.printerControl.model;
+
+import celtech.roboxbase.comms.remote.BusyStatus;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Completes futures when the status processing sees the printer go from busy
+ * to not busy.
+ *
+ * A future is only completed by a not busy status that follows a busy one,
+ * as a status requested before a command was sent may be processed after the
+ * future was asked for.
+ *
+ * @author ianhudson
+ */
+class NotBusyNotifier
+{
+
+    private static class Waiter
+    {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private boolean busySeen = false;
+    }
+
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    /**
+     * @return a future completed by the first not busy status after a busy
+     * one. Cancelling it stops it being waited on.
+     */
+    synchronized CompletableFuture<Void> whenNotBusy()
+    {
+        Waiter waiter = new Waiter();
+        waiters.add(waiter);
+        waiter.future.whenComplete((result, failure) -> remove(waiter));
+        return waiter.future;
+    }
+
+    /**
+     * Called for each status processed, in the order they were received.
+     *
+     * @param busyStatus
+     */
+    void statusProcessed(BusyStatus busyStatus)
+    {
+        List<CompletableFuture<Void>> futuresToComplete = new ArrayList<>();
+
+        synchronized (this)
+        {
+            Iterator<Waiter> waiterIterator = waiters.iterator();
+            while (waiterIterator.hasNext())
+            {
+                Waiter waiter = waiterIterator.next();
+                if (busyStatus != BusyStatus.NOT_BUSY)
+                {
+                    waiter.busySeen = true;
+                } else if (waiter.busySeen)
+                {
+                    waiterIterator.remove();
+                    futuresToComplete.add(waiter.future);
+                }
+            }
+        }
+
+        // Completed outside the lock, as the waiting threads may ask again
+        futuresToComplete.forEach(future -> future.complete(null));
+    }
+
+    synchronized int getWaiterCount()
+    {
+        return waiters.size();
+    }
+
+    private synchronized void remove(Waiter waiter)
+    {
+        waiters.remove(waiter);
+    }
+}
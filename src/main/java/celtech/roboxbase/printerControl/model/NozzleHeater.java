@@ -1,7 +1,6 @@
 package celtech.roboxbase.printerControl.model;
 
 import celtech.roboxbase.configuration.BaseConfiguration;
-import java.util.ArrayList;
 import javafx.beans.property.FloatProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
@@ -37,8 +36,8 @@ public class NozzleHeater implements Cloneable
     
     protected final StringProperty filamentID = new SimpleStringProperty("");
 
-    private final LineChart.Series<Number, Number> nozzleTemperatureHistory = new LineChart.Series<>();
-    private final ArrayList<LineChart.Data<Number, Number>> nozzleTemperatureDataPoints = new ArrayList<>();
+    private final TemperatureHistory nozzleTemperatureHistory = new TemperatureHistory(
+        BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP);
     private final LineChart.Series<Number, Number> nozzleTargetTemperatureSeries = new LineChart.Series<>();
     private final LineChart.Data<Number, Number> nozzleTargetPoint = new LineChart.Data<>(
         BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP + 5, 0);
@@ -72,12 +71,6 @@ public class NozzleHeater implements Cloneable
 
     private void initialiseTemperatureGraph()
     {
-        for (int i = 0; i < BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP; i++)
-        {
-            LineChart.Data<Number, Number> newNozzlePoint = new LineChart.Data<>(i, 0);
-            nozzleTemperatureDataPoints.add(newNozzlePoint);
-            nozzleTemperatureHistory.getData().add(newNozzlePoint);
-        }
         nozzleTargetTemperatureSeries.getData().add(nozzleTargetPoint);
     }
 
@@ -128,7 +121,7 @@ public class NozzleHeater implements Cloneable
     
     public XYChart.Series<Number, Number> getNozzleTemperatureHistory()
     {
-        return nozzleTemperatureHistory;
+        return nozzleTemperatureHistory.getChartSeries();
     }
 
     protected void updateGraphData()
@@ -138,21 +131,13 @@ public class NozzleHeater implements Cloneable
         {
             lastTemperatureTimestamp = now;
 
-            for (int pointCounter = 0; pointCounter < BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP
-                - 1; pointCounter++)
-            {
-                nozzleTemperatureDataPoints.get(pointCounter).setYValue(
-                    nozzleTemperatureDataPoints.get(pointCounter + 1).getYValue());
-            }
-
-//            nozzleTemperatureDataPoints.add(bedTargetPoint);
-
             if (nozzleTemperature.get() < BaseConfiguration.maxTempToDisplayOnGraph
                 && nozzleTemperature.get() > BaseConfiguration.minTempToDisplayOnGraph)
             {
-                nozzleTemperatureDataPoints
-                    .get(BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP - 1)
-                    .setYValue(nozzleTemperature.get());
+                nozzleTemperatureHistory.add(now, nozzleTemperature.get());
+            } else
+            {
+                nozzleTemperatureHistory.repeatLatest(now);
             }
         }
 
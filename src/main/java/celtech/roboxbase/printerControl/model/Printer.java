@@ -32,6 +32,7 @@ import celtech.roboxbase.utils.tasks.Cancellable;
 import celtech.roboxbase.utils.tasks.TaskResponder;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
@@ -523,6 +524,13 @@ public interface Printer extends RoboxResponseConsumer
 
     public ReadOnlyObjectProperty<BusyStatus> busyStatusProperty();
 
+    /**
+     * @return a future completed when a status processed after this call shows
+     * the printer has finished being busy. Cancel it if it is no longer
+     * wanted.
+     */
+    public CompletableFuture<Void> whenNotBusy();
+
     /**
      * As of v741 firmware this is now handled within Robox Causes a reduction
      * in feedrate until the minimum value is reached. Returns false if the
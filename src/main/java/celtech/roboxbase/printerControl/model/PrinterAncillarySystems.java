@@ -2,7 +2,6 @@ package celtech.roboxbase.printerControl.model;
 
 import celtech.roboxbase.comms.remote.WhyAreWeWaitingState;
 import celtech.roboxbase.configuration.BaseConfiguration;
-import java.util.ArrayList;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.FloatProperty;
 import javafx.beans.property.IntegerProperty;
@@ -46,10 +45,10 @@ public class PrinterAncillarySystems
     protected final IntegerProperty bedTemperature = new SimpleIntegerProperty(0);
     protected final IntegerProperty bedFirstLayerTargetTemperature = new SimpleIntegerProperty(0);
     protected final IntegerProperty bedTargetTemperature = new SimpleIntegerProperty(0);
-    private final LineChart.Series<Number, Number> ambientTemperatureHistory = new LineChart.Series<>();
-    private final ArrayList<LineChart.Data<Number, Number>> ambientTemperatureDataPoints = new ArrayList<>();
-    private final LineChart.Series<Number, Number> bedTemperatureHistory = new LineChart.Series<>();
-    private final ArrayList<LineChart.Data<Number, Number>> bedTemperatureDataPoints = new ArrayList<>();
+    private final TemperatureHistory ambientTemperatureHistory = new TemperatureHistory(
+        BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP);
+    private final TemperatureHistory bedTemperatureHistory = new TemperatureHistory(
+        BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP);
     private final LineChart.Series<Number, Number> ambientTargetTemperatureSeries = new LineChart.Series<>();
     private final LineChart.Series<Number, Number> bedTargetTemperatureSeries = new LineChart.Series<>();
     private final LineChart.Data<Number, Number> ambientTargetPoint = new LineChart.Data<>(
@@ -62,15 +61,6 @@ public class PrinterAncillarySystems
 
     public PrinterAncillarySystems()
     {
-        for (int i = 0; i < BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP; i++)
-        {
-            LineChart.Data<Number, Number> newAmbientPoint = new LineChart.Data<>(i, 0);
-            ambientTemperatureDataPoints.add(newAmbientPoint);
-            ambientTemperatureHistory.getData().add(newAmbientPoint);
-            LineChart.Data<Number, Number> newBedPoint = new LineChart.Data<>(i, 0);
-            bedTemperatureDataPoints.add(newBedPoint);
-            bedTemperatureHistory.getData().add(newBedPoint);
-        }
         ambientTargetTemperatureSeries.getData().add(ambientTargetPoint);
         bedTargetTemperatureSeries.getData().add(bedTargetPoint);
     }
@@ -182,12 +172,12 @@ public class PrinterAncillarySystems
 
     public XYChart.Series<Number, Number> getAmbientTemperatureHistory()
     {
-        return ambientTemperatureHistory;
+        return ambientTemperatureHistory.getChartSeries();
     }
 
     public XYChart.Series<Number, Number> getBedTemperatureHistory()
     {
-        return bedTemperatureHistory;
+        return bedTemperatureHistory.getChartSeries();
     }
 
     protected void updateGraphData()
@@ -197,25 +187,15 @@ public class PrinterAncillarySystems
         {
             lastTemperatureTimestamp = now;
 
-            for (int pointCounter = 0; pointCounter < BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP
-                - 1; pointCounter++)
-            {
-                ambientTemperatureDataPoints.get(pointCounter).setYValue(
-                    ambientTemperatureDataPoints.get(pointCounter + 1).getYValue());
-                bedTemperatureDataPoints.get(pointCounter).setYValue(
-                    bedTemperatureDataPoints.get(pointCounter + 1).getYValue());
-            }
-
-            ambientTemperatureDataPoints
-                .get(BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP - 1)
-                .setYValue(ambientTemperature.get());
+            ambientTemperatureHistory.add(now, ambientTemperature.get());
 
             if (bedTemperature.get() < BaseConfiguration.maxTempToDisplayOnGraph
                 && bedTemperature.get() > BaseConfiguration.minTempToDisplayOnGraph)
             {
-                bedTemperatureDataPoints
-                    .get(BaseConfiguration.NUMBER_OF_TEMPERATURE_POINTS_TO_KEEP - 1)
-                    .setYValue(bedTemperature.get());
+                bedTemperatureHistory.add(now, bedTemperature.get());
+            } else
+            {
+                bedTemperatureHistory.repeatLatest(now);
             }
         }
 
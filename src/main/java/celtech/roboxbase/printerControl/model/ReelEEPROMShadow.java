@@ -0,0 +1,135 @@
+package celtech.roboxbase.printerControl.model;
+
+/**
+ * What each reel EEPROM is known to hold, so that the printer need not be
+ * asked again and is not sent data it already has.
+ *
+ * The contents are held as the payload of the write that would put them on
+ * the reel. Each change to what is known moves the reel's version on.
+ *
+ * The firmware counts down the remaining filament as it extrudes, but the
+ * count is only seen when the EEPROM is read. In between, the filament used
+ * is subtracted here to give an estimate. Purges, macros and G-code sent
+ * directly also extrude without the filament used being seen, so once any of
+ * them has run the reel's count can't be known until it is read again.
+ *
+ * @author ianhudson
+ */
+class ReelEEPROMShadow
+{
+
+    private static class ReelContents
+    {
+
+        private String payload = null;
+        private long version = 0;
+        private float remainingFilament = 0;
+        private float filamentDiameter = 0;
+        private double volumeUsed = 0;
+        private boolean filamentMayHaveBeenUsed = false;
+    }
+
+    private final ReelContents[] reels;
+
+    ReelEEPROMShadow(int numberOfReels)
+    {
+        reels = new ReelContents[numberOfReels];
+        for (int reelNumber = 0; reelNumber < numberOfReels; reelNumber++)
+        {
+            reels[reelNumber] = new ReelContents();
+        }
+    }
+
+    /**
+     * Record what has just been read from, or written to, a reel.
+     *
+     * @param reelNumber
+     * @param payload the write payload for the contents
+     * @param remainingFilament in mm
+     * @param filamentDiameter in mm
+     * @return the new version of the reel's contents
+     */
+    synchronized long contentsKnown(int reelNumber, String payload, float remainingFilament, float filamentDiameter)
+    {
+        ReelContents reel = reels[reelNumber];
+        reel.payload = payload;
+        reel.remainingFilament = remainingFilament;
+        reel.filamentDiameter = filamentDiameter;
+        reel.volumeUsed = 0;
+        reel.filamentMayHaveBeenUsed = false;
+        return ++reel.version;
+    }
+
+    /**
+     * The reel has gone, or can't be read.
+     *
+     * @param reelNumber
+     */
+    synchronized void forget(int reelNumber)
+    {
+        ReelContents reel = reels[reelNumber];
+        if (reel.payload != null)
+        {
+            reel.payload = null;
+            reel.volumeUsed = 0;
+            reel.version++;
+        }
+    }
+
+    /**
+     * Once filament has been used the firmware's count has moved on from the
+     * payload, so the reel can't be known to hold it.
+     *
+     * @param reelNumber
+     * @param payload
+     * @return true if writing the payload would not change the reel
+     */
+    synchronized boolean holds(int reelNumber, String payload)
+    {
+        ReelContents reel = reels[reelNumber];
+        return payload != null
+                && payload.equals(reel.payload)
+                && reel.volumeUsed == 0
+                && !reel.filamentMayHaveBeenUsed;
+    }
+
+    /**
+     * The printer has started something that may extrude without the filament
+     * used being seen.
+     */
+    synchronized void filamentMayHaveBeenUsed()
+    {
+        for (ReelContents reel : reels)
+        {
+            reel.filamentMayHaveBeenUsed = true;
+        }
+    }
+
+    synchronized long getVersion(int reelNumber)
+    {
+        return reels[reelNumber].version;
+    }
+
+    /**
+     * Take filament used since the reel was last read or written off its
+     * remaining filament.
+     *
+     * @param reelNumber
+     * @param volume in mm3
+     * @return the estimated remaining filament in mm, or NaN if the reel's
+     * contents are not known
+     */
+    synchronized float filamentUsed(int reelNumber, double volume)
+    {
+        ReelContents reel = reels[reelNumber];
+        if (reel.payload == null || reel.filamentDiameter <= 0)
+        {
+            return Float.NaN;
+        }
+
+        reel.volumeUsed += volume;
+        double radius = reel.filamentDiameter / 2.0;
+        double lengthUsed = reel.volumeUsed / (Math.PI * radius * radius);
+        return (float) Math.max(0, reel.remainingFilament - lengthUsed);
+    }
+}
@@ -0,0 +1,73 @@
+package celtech.roboxbase.printerControl.model;
+
+import celtech.roboxbase.comms.rx.StatusResponse;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Applies the fields of a StatusResponse that differ from those of the status
+ * applied before it.
+ *
+ * Most of the printer state is the same from one status to the next, so
+ * comparing with the previous status means the model properties - and
+ * everything listening to them - are only touched for the fields that have
+ * changed.
+ *
+ * @author ianhudson
+ */
+class StatusResponseChanges
+{
+
+    private final StatusResponse previousStatus;
+    private final StatusResponse status;
+    private int fieldsWritten = 0;
+
+    /**
+     * @param previousStatus the status last applied, or null to apply every
+     * field
+     * @param status
+     */
+    StatusResponseChanges(StatusResponse previousStatus, StatusResponse status)
+    {
+        // A status sent again after being updated in place, as the dummy
+        // printer does, cannot be compared with itself
+        this.previousStatus = (previousStatus == status) ? null : previousStatus;
+        this.status = status;
+    }
+
+    /**
+     * The same status, with every field treated as changed. Used when the
+     * target of some fields is new, or may have been altered since the
+     * previous status was applied.
+     *
+     * @return
+     */
+    StatusResponseChanges everyField()
+    {
+        return new StatusResponseChanges(null, status);
+    }
+
+    /**
+     * Pass the field to the target if it has changed.
+     *
+     * @param <T>
+     * @param field
+     * @param target
+     */
+    <T> void apply(Function<StatusResponse, T> field, Consumer<T> target)
+    {
+        T value = field.apply(status);
+        if (previousStatus == null
+                || !Objects.equals(value, field.apply(previousStatus)))
+        {
+            target.accept(value);
+            fieldsWritten++;
+        }
+    }
+
+    int getFieldsWritten()
+    {
+        return fieldsWritten;
+    }
+}
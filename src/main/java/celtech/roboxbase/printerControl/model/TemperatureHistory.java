@@ -0,0 +1,166 @@
+package celtech.roboxbase.printerControl.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.collections.ObservableList;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
+
+/**
+ * A fixed-size history of temperature samples.
+ *
+ * Samples are held in primitive arrays used as a ring buffer, so adding one
+ * is a single write however long the history is, and the memory used never
+ * grows. The chart series is only built when it is first asked for, and its
+ * points are only kept up to date whilst it is on a chart, each sample adding
+ * a point and dropping the oldest. Points keep their place in the window as X,
+ * so the target markers just past the end of the window stay put. When it is
+ * added to a chart it is filled in from the buffer.
+ *
+ * @author ianhudson
+ */
+public class TemperatureHistory
+{
+
+    private final float[] values;
+    private final long[] timestamps;
+    // Where the next sample goes
+    private int head = 0;
+    private int size = 0;
+
+    private LineChart.Series<Number, Number> chartSeries = null;
+
+    public TemperatureHistory(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Temperature history must hold at least one sample");
+        }
+        values = new float[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Add a sample, replacing the oldest one if the history is full.
+     *
+     * @param timestamp
+     * @param value
+     */
+    public void add(long timestamp, float value)
+    {
+        synchronized (this)
+        {
+            values[head] = value;
+            timestamps[head] = timestamp;
+            head = (head + 1) % values.length;
+            if (size < values.length)
+            {
+                size++;
+            }
+        }
+
+        if (chartSeries != null
+                && chartSeries.getChart() != null)
+        {
+            ObservableList<XYChart.Data<Number, Number>> points = chartSeries.getData();
+            points.remove(0);
+            for (int i = 0; i < points.size(); i++)
+            {
+                points.get(i).setXValue(i);
+            }
+            points.add(new LineChart.Data<>(points.size(), value));
+        }
+    }
+
+    /**
+     * Add a sample with the same value as the latest one, or zero if there are
+     * none yet.
+     *
+     * @param timestamp
+     */
+    public void repeatLatest(long timestamp)
+    {
+        add(timestamp, getLatestValue());
+    }
+
+    public int getCapacity()
+    {
+        return values.length;
+    }
+
+    public synchronized int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @param index 0 for the oldest sample held
+     * @return
+     */
+    public synchronized float getValue(int index)
+    {
+        return values[bufferIndex(index)];
+    }
+
+    /**
+     * @param index 0 for the oldest sample held
+     * @return
+     */
+    public synchronized long getTimestamp(int index)
+    {
+        return timestamps[bufferIndex(index)];
+    }
+
+    /**
+     * @return the newest sample, or zero if there are none
+     */
+    public synchronized float getLatestValue()
+    {
+        return (size == 0) ? 0 : getValue(size - 1);
+    }
+
+    private int bufferIndex(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Sample " + index + " of " + size);
+        }
+        return (head - size + index + values.length) % values.length;
+    }
+
+    /**
+     * The history as a chart series, with one point for each sample the
+     * history can hold, numbered from 0 for the oldest. Until the history is
+     * full the missing samples at the start are shown as zero.
+     *
+     * @return
+     */
+    public XYChart.Series<Number, Number> getChartSeries()
+    {
+        if (chartSeries == null)
+        {
+            chartSeries = new LineChart.Series<>();
+            chartSeries.getData().setAll(chartPoints());
+            chartSeries.chartProperty().addListener((observable, oldChart, newChart) ->
+            {
+                if (newChart != null)
+                {
+                    chartSeries.getData().setAll(chartPoints());
+                }
+            });
+        }
+        return chartSeries;
+    }
+
+    private synchronized List<XYChart.Data<Number, Number>> chartPoints()
+    {
+        List<XYChart.Data<Number, Number>> points = new ArrayList<>(values.length);
+        int missingSamples = values.length - size;
+        for (int i = 0; i < values.length; i++)
+        {
+            float value = (i < missingSamples) ? 0 : getValue(i - missingSamples);
+            points.add(new LineChart.Data<>(i, value));
+        }
+        return points;
+    }
+}
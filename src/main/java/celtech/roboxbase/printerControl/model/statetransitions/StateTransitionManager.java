@@ -4,6 +4,7 @@
 package celtech.roboxbase.printerControl.model.statetransitions;
 
 import celtech.roboxbase.BaseLookup;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
 import celtech.roboxbase.utils.tasks.Cancellable;
 import celtech.roboxbase.utils.tasks.SimpleCancellable;
 import celtech.roboxbase.utils.tasks.TaskExecutor;
@@ -284,7 +285,7 @@ public class StateTransitionManager<StateType>
      */
     private void doCancelOrErrorDetectedAndGotoState(StateType nextState)
     {
-        new Thread(() ->
+        BackgroundExecutor.getInstance().execute(() ->
         {
             try
             {
@@ -297,7 +298,7 @@ public class StateTransitionManager<StateType>
             // "redetected" on the next state change / transition.
             errorCancellable.cancelled().set(false);
             setState(nextState);
-        }).start();
+        }, "Resetting after cancel or error");
 
     }
 
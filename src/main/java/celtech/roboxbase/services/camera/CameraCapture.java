@@ -0,0 +1,183 @@
+package celtech.roboxbase.services.camera;
+
+import celtech.roboxbase.configuration.fileRepresentation.CameraSettings;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Takes one photo with the capture script, in two parts - the trigger, which
+ * is over when the shutter has been released, and the acquisition, which is
+ * over when the script has fetched and stored the image.
+ *
+ * The script prints SHUTTER_RELEASED on a line of its own once the camera has
+ * captured the image. A script that does not is taken to have released the
+ * shutter when it finishes.
+ *
+ * @author ianhudson
+ */
+class CameraCapture
+{
+
+    static final String SHUTTER_RELEASED = "SHUTTER_RELEASED";
+
+    private static final Stenographer STENO = StenographerFactory.getStenographer(CameraCapture.class.getName());
+
+    private final List<String> command = new ArrayList<>();
+    private final int timeoutSeconds;
+    private final CompletableFuture<Void> shutterReleased = new CompletableFuture<>();
+    private final CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+    private long startTime = 0;
+    private volatile long shutterLatencyMs = -1;
+    private volatile long captureLatencyMs = -1;
+
+    CameraCapture(String pathToScript, int timeoutSeconds, List<String> parameters)
+    {
+        command.add(pathToScript);
+        command.addAll(parameters);
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Start the capture and wait until the shutter has been released, or the
+     * script has failed or run out of time. The rest of the capture carries on
+     * in the background.
+     *
+     * @return true if the shutter was released
+     */
+    boolean trigger()
+    {
+        startTime = System.nanoTime();
+        BackgroundExecutor.getInstance().execute(this::runScript, "Camera capture");
+
+        try
+        {
+            shutterReleased.get(timeoutSeconds, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex)
+        {
+            STENO.error("Camera shutter not released: " + ex.getCause().getMessage());
+        } catch (TimeoutException ex)
+        {
+            STENO.error("Camera shutter not released within " + timeoutSeconds + "s");
+        }
+        return false;
+    }
+
+    /**
+     * @return completed with true when the image has been stored, or false if
+     * the script failed
+     */
+    CompletableFuture<Boolean> whenAcquired()
+    {
+        return acquired;
+    }
+
+    /**
+     * @return the time from the start of the capture to the shutter being
+     * released, or -1 if it has not been
+     */
+    long getShutterLatencyMs()
+    {
+        return shutterLatencyMs;
+    }
+
+    /**
+     * @return the time from the start of the capture to the image being
+     * stored, or -1 if it has not been
+     */
+    long getCaptureLatencyMs()
+    {
+        return captureLatencyMs;
+    }
+
+    private void runScript()
+    {
+        boolean succeeded = false;
+
+        // Synchronized access with CameraAPI::takeSnapshot, so both are not trying to access the
+        // camera at the same time. Synchronize on the CameraSettings class object as it
+        // is easily accessable to both methods.
+        synchronized (CameraSettings.class)
+        {
+            STENO.debug("Running script \"" + String.join(" ", command) + "\"");
+            try
+            {
+                Process scriptProcess = new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .start();
+                BackgroundExecutor.getInstance().execute(() -> watchOutput(scriptProcess), "Camera capture output");
+
+                long remainingMs = TimeUnit.SECONDS.toMillis(timeoutSeconds)
+                        - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                if (!scriptProcess.waitFor(Math.max(0, remainingMs), TimeUnit.MILLISECONDS))
+                {
+                    STENO.error("Camera capture script timeout");
+                    scriptProcess.destroyForcibly();
+                } else if (scriptProcess.exitValue() != 0)
+                {
+                    STENO.error("Camera capture script error " + scriptProcess.exitValue());
+                } else
+                {
+                    succeeded = true;
+                }
+            } catch (IOException ex)
+            {
+                STENO.error("Error running camera capture script: " + ex);
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (succeeded)
+        {
+            // For a script that doesn't say when the shutter is released
+            shutterWasReleased();
+            captureLatencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        } else
+        {
+            shutterReleased.completeExceptionally(new IOException("capture script failed"));
+        }
+        acquired.complete(succeeded);
+    }
+
+    private void watchOutput(Process scriptProcess)
+    {
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(scriptProcess.getInputStream())))
+        {
+            String line;
+            while ((line = output.readLine()) != null)
+            {
+                if (line.trim().equals(SHUTTER_RELEASED))
+                {
+                    shutterWasReleased();
+                }
+            }
+        } catch (IOException ex)
+        {
+            STENO.debug("Camera capture script output ended: " + ex.getMessage());
+        }
+    }
+
+    private synchronized void shutterWasReleased()
+    {
+        if (!shutterReleased.isDone())
+        {
+            shutterLatencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            shutterReleased.complete(null);
+        }
+    }
+}
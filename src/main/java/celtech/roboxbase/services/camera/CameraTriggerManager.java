@@ -11,7 +11,6 @@ import celtech.roboxbase.postprocessor.nouveau.nodes.TravelNode;
 import celtech.roboxbase.printerControl.PrintJob;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.printerControl.model.PrinterException;
-import celtech.roboxbase.utils.ScriptUtils;
 import java.util.List;
 import javafx.beans.value.ChangeListener;
 import javafx.scene.paint.Color;
@@ -35,6 +34,8 @@ public class CameraTriggerManager
     private Printer associatedPrinter = null;
     private static final int MOVE_FEED_RATE_MM_PER_MIN = 12000;
     private CameraTriggerData triggerData;
+    private volatile long lastShutterLatencyMs = -1;
+    private volatile long lastCaptureLatencyMs = -1;
 
     private final ChangeListener pauseStatusListener = (observable, oldPauseStatus, newPauseStatus) -> {
         if (newPauseStatus == PauseStatus.SELFIE_PAUSE)
@@ -117,6 +118,38 @@ public class CameraTriggerManager
         this.triggerData = triggerData;
     }
         
+    /**
+     * @return how long the printer was kept paused waiting for the camera on
+     * the last layer, or -1 if no photo has been taken
+     */
+    public long getLastShutterLatencyMs()
+    {
+        return lastShutterLatencyMs;
+    }
+
+    /**
+     * @return how long the last layer's photo took to be stored, or -1 if no
+     * photo has been stored
+     */
+    public long getLastCaptureLatencyMs()
+    {
+        return lastCaptureLatencyMs;
+    }
+
+    private void captureFinished(String jobID, CameraCapture capture, boolean acquired)
+    {
+        if (acquired)
+        {
+            lastShutterLatencyMs = capture.getShutterLatencyMs();
+            lastCaptureLatencyMs = capture.getCaptureLatencyMs();
+            STENO.info("Photo for job " + jobID + " - shutter released after " + lastShutterLatencyMs
+                    + "ms, stored after " + lastCaptureLatencyMs + "ms");
+        } else
+        {
+            STENO.error("Failed to take photo for job " + jobID);
+        }
+    }
+
     private boolean triggerUSBCamera()
     {
         boolean resumePrinter;
@@ -143,9 +176,6 @@ public class CameraTriggerManager
                         if (cameraData != null) {
                             String printerName = associatedPrinter.getPrinterIdentity().printerFriendlyNameProperty().get();
                             List<String> parameters = cameraData.encodeSettingsForRootScript(printerName, jobID);
-                            // Synchronized access with CameraAPI::takeSnapshot, so both are not trying to access the
-                            // camera at the same time. Synchronize on the CameraSettings class object as it
-                            // is easily accessable to both methods.
                             if (cameraData.getProfile().isAmbientLightOff()) {
                                 try {
                                     associatedPrinter.setAmbientLEDColour(Color.BLACK);
@@ -158,11 +188,13 @@ public class CameraTriggerManager
                                 catch (InterruptedException ex) {
                                 }
                             }
-                            synchronized(CameraSettings.class){
-                                ScriptUtils.runScript(BaseConfiguration.getApplicationInstallDirectory(CameraTriggerManager.class) + "takePhoto.sh",
-                                                      SCRIPT_TIMEOUT,
-                                                      parameters.toArray(new String[0]));
-                            }
+                            // The printer can carry on as soon as the shutter has been released,
+                            // while the image is fetched and stored in the background.
+                            CameraCapture capture = new CameraCapture(BaseConfiguration.getApplicationInstallDirectory(CameraTriggerManager.class) + "takePhoto.sh",
+                                                                      SCRIPT_TIMEOUT,
+                                                                      parameters);
+                            capture.trigger();
+                            capture.whenAcquired().thenAccept(acquired -> captureFinished(jobID, capture, acquired));
                             if (!cameraData.getProfile().isAmbientLightOff()) {
                                 try {
                                     associatedPrinter.setAmbientLEDColour(associatedPrinter.getPrinterIdentity()
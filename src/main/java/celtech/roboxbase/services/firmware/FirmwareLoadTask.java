@@ -3,12 +3,15 @@ package celtech.roboxbase.services.firmware;
 import celtech.roboxbase.BaseLookup;
 import celtech.roboxbase.comms.exceptions.RoboxCommsException;
 import celtech.roboxbase.comms.exceptions.SDCardErrorException;
+import celtech.roboxbase.comms.tx.SendDataFileChunk;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.utils.SystemUtils;
+import celtech.roboxbase.utils.tasks.ProgressBus;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ResourceBundle;
 import javafx.concurrent.Task;
 import libertysystems.stenographer.Stenographer;
@@ -52,7 +55,6 @@ public class FirmwareLoadTask extends Task<FirmwareLoadResult>
             dis.readFully(fileData);
             dis.close();
 
-            int remainingBytes = fileData.length;
             int bufferPosition = 0;
             String firmwareID = SystemUtils.generate16DigitID();
             boolean sendOK = printerToUpdate.initialiseDataFileSend(firmwareID, false);
@@ -62,16 +64,31 @@ public class FirmwareLoadTask extends Task<FirmwareLoadResult>
                 updateTitle(languageBundle.getString("dialogs.firmwareUpdateProgressTitle"));
                 updateMessage(languageBundle.getString("dialogs.firmwareUpdateProgressLoading"));
 
-                while (bufferPosition < fileData.length && !isCancelled())
+                ProgressBus.Channel progress = ProgressBus.getInstance().open("Firmware " + firmwareID);
+                ProgressBus.getInstance().subscribe(progress,
+                        update -> updateProgress(update.getDone(), update.getTotal()));
+                progress.setTotal(fileData.length);
+
+                // Each byte of firmware becomes two hex characters, so a full chunk carries half its size in bytes
+                byte[] chunkBuffer = new byte[SendDataFileChunk.PAYLOAD_SIZE];
+                int bytesPerChunk = chunkBuffer.length / 2;
+
+                try
                 {
-                    updateProgress(bufferPosition, fileData.length);
-                    byte byteToOutput = fileData[bufferPosition];
-                    String byteAsString = String.format("%02X", byteToOutput);
+                    while (bufferPosition < fileData.length && !isCancelled())
+                    {
+                        int bytesToSend = Math.min(bytesPerChunk, fileData.length - bufferPosition);
+                        int charactersToSend = SystemUtils.hexEncode(fileData, bufferPosition, bytesToSend, chunkBuffer);
+                        bufferPosition += bytesToSend;
 
-                    printerToUpdate.sendDataFileChunk(byteAsString, remainingBytes == 1, false);
+                        printerToUpdate.sendDataFileChunk(new String(chunkBuffer, 0, charactersToSend, StandardCharsets.US_ASCII),
+                                bufferPosition == fileData.length, false);
 
-                    remainingBytes--;
-                    bufferPosition++;
+                        progress.update(bufferPosition, fileData.length);
+                    }
+                } finally
+                {
+                    progress.close();
                 }
 
                 if (!isCancelled())
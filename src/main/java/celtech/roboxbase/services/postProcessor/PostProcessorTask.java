@@ -10,6 +10,8 @@ import celtech.roboxbase.postprocessor.nouveau.PostProcessorFeatureSet;
 import celtech.roboxbase.printerControl.PrintJob;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.utils.models.PrintableMeshes;
+import celtech.roboxbase.utils.tasks.ProgressBus;
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -128,7 +130,10 @@ public class PostProcessorTask extends Task<GCodePostProcessingResult>
             STENO.debug("Slice cancelled");
             return null;
         }
-        
+
+        ProgressBus.Channel progress = ProgressBus.getInstance().open("Post Processor " + printJobUUID);
+        ProgressBus.getInstance().subscribe(progress, this::showProgress);
+
         PostProcessor postProcessor = new PostProcessor(
                 printJobUUID,
                 printableMeshes.getProjectName(),
@@ -141,19 +146,37 @@ public class PostProcessorTask extends Task<GCodePostProcessingResult>
                 printableMeshes.getPrintOverrides(),
                 ppFeatures,
                 headType,
-                taskProgress,
+                progress,
                 objectToNozzleNumberMap,
                 printableMeshes.getCameraTriggerData(),
                 printableMeshes.isSafetyFeaturesRequired(),
                 slicerType);
 
-        RoboxiserResult roboxiserResult = postProcessor.processInput(this);
+        RoboxiserResult roboxiserResult;
+        try
+        {
+            roboxiserResult = postProcessor.processInput(this);
+        } finally
+        {
+            progress.close();
+        }
+
         if (roboxiserResult.isSuccess())
         {
+            roboxiserResult.getPrintJobStatistics().setContentHash(PrintJob.calculateContentHash(new File(gcodeOutputFile)));
             roboxiserResult.getPrintJobStatistics().writeStatisticsToFile(printJob.getStatisticsFileLocation());
             postProcessingResult = new GCodePostProcessingResult(printJobUUID, gcodeOutputFile, printerToUse, roboxiserResult);
         }
 
         return postProcessingResult;
     }
+
+    private void showProgress(ProgressBus.Update update)
+    {
+        updateProgress(update.getPercent(), 100.0);
+        if (taskProgress != null)
+        {
+            taskProgress.set(update.getPercent());
+        }
+    }
 }
@@ -0,0 +1,166 @@
+package celtech.roboxbase.services.printing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a GCode file that are to be sent to the printer, cleaned
+ * as SystemUtils.cleanGCodeForTransmission would. Blank lines and comments are
+ * skipped.
+ *
+ * The file is read in large blocks and the lines are found and cleaned in the
+ * bytes read, so the only object made for each line is the String returned.
+ *
+ * @author ianhudson
+ */
+class GCodeLineReader implements Closeable
+{
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private byte[] buffer = new byte[BLOCK_SIZE];
+    // The unread bytes are buffer[position] to buffer[limit - 1]
+    private int position = 0;
+    private int limit = 0;
+    // Where to carry on looking for the end of the line at position
+    private int searchPosition = 0;
+    private boolean endOfFile = false;
+
+    GCodeLineReader(File gcodeFile) throws FileNotFoundException
+    {
+        this(new FileInputStream(gcodeFile));
+    }
+
+    GCodeLineReader(InputStream input)
+    {
+        this.input = input;
+    }
+
+    /**
+     * @return the next line with something to send, or null at the end of the
+     * file
+     * @throws IOException
+     */
+    String readLine() throws IOException
+    {
+        while (true)
+        {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0)
+            {
+                if (!endOfFile)
+                {
+                    readBlock();
+                    continue;
+                }
+
+                if (position == limit)
+                {
+                    return null;
+                }
+                // The last line has no line ending
+                lineEnd = limit;
+            }
+
+            String line = cleanLine(position, lineEnd);
+            position = Math.min(lineEnd + 1, limit);
+            searchPosition = position;
+
+            if (line != null)
+            {
+                return line;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        input.close();
+    }
+
+    private int findLineEnd()
+    {
+        for (int index = searchPosition; index < limit; index++)
+        {
+            byte nextByte = buffer[index];
+            if (nextByte == '\n' || nextByte == '\r')
+            {
+                return index;
+            }
+        }
+        searchPosition = limit;
+        return -1;
+    }
+
+    private void readBlock() throws IOException
+    {
+        // Keep the start of the line that has been read so far
+        int partLineLength = limit - position;
+        if (position > 0)
+        {
+            System.arraycopy(buffer, position, buffer, 0, partLineLength);
+            searchPosition -= position;
+            position = 0;
+            limit = partLineLength;
+        } else if (limit == buffer.length)
+        {
+            // A line longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        int bytesRead = input.read(buffer, limit, buffer.length - limit);
+        if (bytesRead < 0)
+        {
+            endOfFile = true;
+        } else
+        {
+            limit += bytesRead;
+        }
+    }
+
+    /**
+     * @return the line without whitespace at either end or any comment, or null
+     * if that leaves nothing
+     */
+    private String cleanLine(int start, int end)
+    {
+        while (start < end && isWhitespace(buffer[start]))
+        {
+            start++;
+        }
+
+        for (int index = start; index < end; index++)
+        {
+            if (buffer[index] == ';')
+            {
+                end = index;
+                break;
+            }
+        }
+
+        while (end > start && isWhitespace(buffer[end - 1]))
+        {
+            end--;
+        }
+
+        if (start == end)
+        {
+            return null;
+        }
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isWhitespace(byte value)
+    {
+        // As String.trim - bytes of multi-byte characters are negative
+        return value >= 0 && value <= ' ';
+    }
+}
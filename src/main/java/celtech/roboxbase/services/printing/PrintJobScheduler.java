@@ -0,0 +1,832 @@
+package celtech.roboxbase.services.printing;
+
+import celtech.roboxbase.BaseLookup;
+import celtech.roboxbase.comms.RemoteDetectedPrinter;
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.remote.RoboxRemoteCommandInterface;
+import celtech.roboxbase.configuration.BaseConfiguration;
+import celtech.roboxbase.configuration.datafileaccessors.HeadContainer;
+import celtech.roboxbase.postprocessor.PrintJobStatistics;
+import celtech.roboxbase.printerControl.PrintJob;
+import celtech.roboxbase.printerControl.PrinterStatus;
+import celtech.roboxbase.printerControl.model.Extruder;
+import celtech.roboxbase.printerControl.model.Head;
+import celtech.roboxbase.printerControl.model.PrintEngine;
+import celtech.roboxbase.printerControl.model.Printer;
+import celtech.roboxbase.printerControl.model.Reel;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+import javafx.beans.value.ChangeListener;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Places queued print jobs on whichever of a set of printers suits them and
+ * will be free first.
+ *
+ * The queue is planned longest job first: each job goes on the compatible
+ * printer that would finish it soonest, after the jobs already planned there.
+ * A printer is compatible if it has the head the job was sliced for, and
+ * filament loaded - with enough left on the reel - for each material the job
+ * uses. Idle printers count from now and printing printers from when they are
+ * expected to finish, so the plan keeps down the time the farm takes to get
+ * through the queue.
+ *
+ * An idle printer whose bed has been cleared is given the first job planned
+ * for it. A job that the printer goes idle without printing, or that hasn't
+ * printed when the printer is removed, goes back to the front of the queue. A printer that is about to finish has its next job prepared ahead -
+ * for a printer on a Root, the job is uploaded - so that it starts as soon as
+ * the printer is free. A job is not started while it is being prepared, and
+ * preparing a job is cancelled if the job goes elsewhere.
+ *
+ * Printers are looked at, and jobs started, on the GUI thread; only preparing
+ * a job runs on a background thread.
+ *
+ * @author ianhudson
+ */
+public class PrintJobScheduler
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(PrintJobScheduler.class.getName());
+
+    public static final long DEFAULT_POLL_INTERVAL_MS = 5000;
+    public static final int DEFAULT_PREPARE_AHEAD_SECONDS = 600;
+    public static final long DEFAULT_START_TIMEOUT_MS = 600000;
+    private static final double UNAVAILABLE = -1;
+
+    private static long pollIntervalMs = DEFAULT_POLL_INTERVAL_MS;
+    private static int prepareAheadSeconds = DEFAULT_PREPARE_AHEAD_SECONDS;
+    private static long startTimeoutMs = DEFAULT_START_TIMEOUT_MS;
+    private static boolean bedClearanceRequired = true;
+
+    private final BackgroundExecutor executor;
+    private final Dispatcher dispatcher;
+    private final List<QueuedJob> queue = new ArrayList<>();
+    private final Map<Printer, PrinterSlot> slots = new LinkedHashMap<>();
+    private ScheduledFuture<?> nextPoll = null;
+    private boolean running = false;
+
+    /**
+     * Gets jobs onto printers.
+     */
+    public interface Dispatcher
+    {
+
+        /**
+         * Get the job ready to start on the printer, while the printer
+         * finishes what it is printing.
+         *
+         * @param printer
+         * @param printJob
+         */
+        public void prepare(Printer printer, PrintJob printJob);
+
+        /**
+         * @param printer
+         * @param printJob
+         * @return true if the printer took the job
+         */
+        public boolean start(Printer printer, PrintJob printJob);
+    }
+
+    /**
+     * Where and when the plan has a job printing. Times are in seconds from
+     * when the plan was made.
+     */
+    public static class Placement
+    {
+
+        private final Printer printer;
+        private final QueuedJob queuedJob;
+        private final double startSeconds;
+        private final double finishSeconds;
+
+        private Placement(Printer printer, QueuedJob queuedJob, double startSeconds, double finishSeconds)
+        {
+            this.printer = printer;
+            this.queuedJob = queuedJob;
+            this.startSeconds = startSeconds;
+            this.finishSeconds = finishSeconds;
+        }
+
+        public Printer getPrinter()
+        {
+            return printer;
+        }
+
+        public PrintJob getPrintJob()
+        {
+            return queuedJob.printJob;
+        }
+
+        public double getStartSeconds()
+        {
+            return startSeconds;
+        }
+
+        public double getFinishSeconds()
+        {
+            return finishSeconds;
+        }
+    }
+
+    private static class QueuedJob
+    {
+
+        private final PrintJob printJob;
+        private final PrintJobStatistics statistics;
+
+        private QueuedJob(PrintJob printJob, PrintJobStatistics statistics)
+        {
+            this.printJob = printJob;
+            this.statistics = statistics;
+        }
+
+        private double getDuration()
+        {
+            return Math.max(0, statistics.getPredictedDuration());
+        }
+
+        private double getVolume(int extruderNumber)
+        {
+            if (extruderNumber == 0)
+            {
+                return statistics.getRequiresMaterial1() ? statistics.geteVolumeUsed() : 0;
+            }
+            return statistics.getRequiresMaterial2() ? statistics.getdVolumeUsed() : 0;
+        }
+
+        private boolean requiresMaterial(int extruderNumber)
+        {
+            return (extruderNumber == 0) ? statistics.getRequiresMaterial1() : statistics.getRequiresMaterial2();
+        }
+    }
+
+    /**
+     * Preparing a job on a pool thread. It is done only once the work itself
+     * has finished, and cancelling it interrupts the thread doing the work.
+     */
+    private static class PrepareTask implements Runnable
+    {
+
+        private final Runnable work;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Thread worker = null;
+        private boolean cancelled = false;
+
+        private PrepareTask(Runnable work)
+        {
+            this.work = work;
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (this)
+            {
+                if (cancelled)
+                {
+                    done.complete(null);
+                    return;
+                }
+                worker = Thread.currentThread();
+            }
+
+            try
+            {
+                work.run();
+            } finally
+            {
+                synchronized (this)
+                {
+                    worker = null;
+                    // An interrupt meant for the work mustn't reach the next task
+                    Thread.interrupted();
+                }
+                done.complete(null);
+            }
+        }
+
+        private synchronized void cancel()
+        {
+            cancelled = true;
+            if (worker != null)
+            {
+                worker.interrupt();
+            }
+        }
+
+        private boolean isDone()
+        {
+            return done.isDone();
+        }
+    }
+
+    private static class PrinterSlot
+    {
+
+        private final Printer printer;
+        private boolean bedClear = true;
+        private PrinterStatus lastStatus = null;
+        private QueuedJob startedJob = null;
+        private long startedAtMs = 0;
+        // Set once the started job has been seen transferring or printing
+        private boolean startSeen = false;
+        // Set by the status listener, so that a print shorter than the poll
+        // interval is still seen
+        private volatile boolean printingSeen = false;
+        private final ChangeListener<PrinterStatus> statusListener = (observable, oldStatus, newStatus) ->
+        {
+            if (newStatus == PrinterStatus.PRINTING_PROJECT)
+            {
+                printingSeen = true;
+            }
+        };
+        private String preparedJobID = null;
+        private PrepareTask prepareTask = null;
+
+        private PrinterSlot(Printer printer)
+        {
+            this.printer = printer;
+        }
+
+        private String getName()
+        {
+            return printer.getPrinterIdentity().printerFriendlyNameProperty().get();
+        }
+
+        private boolean isPreparing()
+        {
+            return prepareTask != null && !prepareTask.isDone();
+        }
+
+        private void cancelPrepare()
+        {
+            if (prepareTask != null)
+            {
+                prepareTask.cancel();
+                prepareTask = null;
+            }
+            preparedJobID = null;
+        }
+    }
+
+    public PrintJobScheduler()
+    {
+        this(BackgroundExecutor.getInstance(), new PrinterDispatcher());
+    }
+
+    public PrintJobScheduler(BackgroundExecutor executor, Dispatcher dispatcher)
+    {
+        this.executor = executor;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * @param pollIntervalMs how often the printers are checked for one that
+     * can take a job
+     */
+    public static synchronized void setPollInterval(long pollIntervalMs)
+    {
+        PrintJobScheduler.pollIntervalMs = Math.max(100, pollIntervalMs);
+    }
+
+    /**
+     * @param prepareAheadSeconds how long before a printer is expected to
+     * finish its next job is prepared
+     */
+    public static synchronized void setPrepareAheadSeconds(int prepareAheadSeconds)
+    {
+        PrintJobScheduler.prepareAheadSeconds = Math.max(0, prepareAheadSeconds);
+    }
+
+    /**
+     * @param startTimeoutMs how long a printer that took a job has to start
+     * it before the job is put back in the queue
+     */
+    public static synchronized void setStartTimeout(long startTimeoutMs)
+    {
+        PrintJobScheduler.startTimeoutMs = startTimeoutMs;
+    }
+
+    /**
+     * @param bedClearanceRequired if true a printer that has finished a print
+     * is not given another job until bedCleared is called for it
+     */
+    public static synchronized void setBedClearanceRequired(boolean bedClearanceRequired)
+    {
+        PrintJobScheduler.bedClearanceRequired = bedClearanceRequired;
+    }
+
+    private static synchronized long getPollInterval()
+    {
+        return pollIntervalMs;
+    }
+
+    private static synchronized int getPrepareAheadSeconds()
+    {
+        return prepareAheadSeconds;
+    }
+
+    private static synchronized long getStartTimeout()
+    {
+        return startTimeoutMs;
+    }
+
+    private static synchronized boolean isBedClearanceRequired()
+    {
+        return bedClearanceRequired;
+    }
+
+    public synchronized void addPrinter(Printer printer)
+    {
+        if (!slots.containsKey(printer))
+        {
+            PrinterSlot slot = new PrinterSlot(printer);
+            printer.printerStatusProperty().addListener(slot.statusListener);
+            slots.put(printer, slot);
+        }
+        requestDispatch();
+    }
+
+    public synchronized void removePrinter(Printer printer)
+    {
+        PrinterSlot slot = slots.remove(printer);
+        if (slot != null)
+        {
+            printer.printerStatusProperty().removeListener(slot.statusListener);
+            slot.cancelPrepare();
+            if (slot.startedJob != null && !slot.printingSeen)
+            {
+                steno.warning("Job " + slot.startedJob.printJob.getJobUUID() + " didn't print on " + slot.getName()
+                        + " before it went - putting it back in the queue");
+                queue.add(0, slot.startedJob);
+            }
+        }
+    }
+
+    /**
+     * Tell the scheduler the printer's bed is clear for the next job.
+     *
+     * @param printer
+     */
+    public synchronized void bedCleared(Printer printer)
+    {
+        PrinterSlot slot = slots.get(printer);
+        if (slot != null)
+        {
+            slot.bedClear = true;
+            requestDispatch();
+        }
+    }
+
+    /**
+     * Add a post-processed job to the queue.
+     *
+     * @param printJob
+     * @return false if the job can't be scheduled
+     */
+    public boolean submit(PrintJob printJob)
+    {
+        PrintJobStatistics statistics;
+        try
+        {
+            statistics = printJob.getStatistics();
+        } catch (IOException ex)
+        {
+            steno.error("Couldn't schedule job " + printJob.getJobUUID() + " - no statistics: " + ex.getMessage());
+            return false;
+        }
+
+        String headType = statistics.getPrintedWithHeadType();
+        if (headType != null
+                && !headType.isEmpty()
+                && HeadContainer.getHeadByID(headType) == null)
+        {
+            steno.error("Couldn't schedule job " + printJob.getJobUUID() + " - unknown head type " + headType);
+            return false;
+        }
+
+        synchronized (this)
+        {
+            queue.add(new QueuedJob(printJob, statistics));
+        }
+        steno.info("Job " + printJob.getJobUUID() + " queued");
+        requestDispatch();
+        return true;
+    }
+
+    /**
+     * Take a job out of the queue, if it hasn't been started.
+     *
+     * @param printJob
+     * @return true if the job was in the queue
+     */
+    public synchronized boolean withdraw(PrintJob printJob)
+    {
+        slots.values().stream()
+                .filter(slot -> printJob.getJobUUID().equals(slot.preparedJobID))
+                .forEach(PrinterSlot::cancelPrepare);
+        return queue.removeIf(queuedJob -> queuedJob.printJob.getJobUUID().equals(printJob.getJobUUID()));
+    }
+
+    public synchronized List<PrintJob> getQueuedJobs()
+    {
+        return queue.stream()
+                .map(queuedJob -> queuedJob.printJob)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return where each queued job would print if the printers carried on as
+     * they are now, in the order the jobs would start. Jobs no printer can
+     * take are left out. Call on the GUI thread.
+     */
+    public synchronized List<Placement> plan()
+    {
+        long now = System.currentTimeMillis();
+        slots.values().forEach(slot -> updateSlot(slot, now));
+        List<Placement> placements = makePlan(now);
+        placements.sort(Comparator.comparingDouble(Placement::getStartSeconds));
+        return placements;
+    }
+
+    /**
+     * Check the printers every poll interval until shutdown.
+     */
+    public synchronized void start()
+    {
+        if (!running)
+        {
+            running = true;
+            nextPoll = executor.schedule(this::poll, 0, "Print job scheduler");
+        }
+    }
+
+    public synchronized void shutdown()
+    {
+        running = false;
+        if (nextPoll != null)
+        {
+            nextPoll.cancel(false);
+            nextPoll = null;
+        }
+    }
+
+    /**
+     * Start the next job on each printer that is ready for it, and prepare
+     * the next job on each printer that is about to be. Call on the GUI
+     * thread.
+     */
+    public synchronized void dispatch()
+    {
+        long now = System.currentTimeMillis();
+        slots.values().forEach(slot -> updateSlot(slot, now));
+
+        Set<Printer> printersPlanned = new HashSet<>();
+        for (Placement placement : makePlan(now))
+        {
+            // Only the next job on each printer needs anything done yet
+            if (!printersPlanned.add(placement.printer))
+            {
+                continue;
+            }
+
+            PrinterSlot slot = slots.get(placement.printer);
+            if (placement.startSeconds == 0 && isReadyForJob(slot))
+            {
+                startJob(slot, placement.queuedJob, now);
+            } else if (placement.startSeconds <= getPrepareAheadSeconds())
+            {
+                prepareJob(slot, placement.queuedJob);
+            }
+        }
+    }
+
+    private void poll()
+    {
+        BaseLookup.getTaskExecutor().runOnGUIThread(this::dispatchOnGUIThread);
+
+        synchronized (this)
+        {
+            if (running)
+            {
+                nextPoll = executor.schedule(this::poll, getPollInterval(), "Print job scheduler");
+            }
+        }
+    }
+
+    private synchronized void requestDispatch()
+    {
+        if (running)
+        {
+            BaseLookup.getTaskExecutor().runOnGUIThread(this::dispatchOnGUIThread);
+        }
+    }
+
+    /**
+     * The printers' properties are only changed on the GUI thread, and jobs
+     * are started there, as they are from the rest of the printer model.
+     */
+    private void dispatchOnGUIThread()
+    {
+        try
+        {
+            dispatch();
+        } catch (RuntimeException ex)
+        {
+            steno.exception("Error scheduling print jobs", ex);
+        }
+    }
+
+    private void updateSlot(PrinterSlot slot, long now)
+    {
+        PrinterStatus status = slot.printer.printerStatusProperty().get();
+        boolean busy = status != PrinterStatus.IDLE
+                || slot.printer.getPrintEngine().highIntensityCommsInProgressProperty().get();
+
+        if (slot.startedJob != null)
+        {
+            String jobID = slot.startedJob.printJob.getJobUUID();
+            if (busy)
+            {
+                slot.startSeen = true;
+            } else if (slot.printingSeen)
+            {
+                steno.info("Job " + jobID + " finished on " + slot.getName());
+                slot.startedJob = null;
+                if (isBedClearanceRequired())
+                {
+                    slot.bedClear = false;
+                }
+            } else if (slot.startSeen)
+            {
+                // Busy sending the job, then idle without printing it
+                steno.warning("Job " + jobID + " failed to print on " + slot.getName() + " - putting it back in the queue");
+                queue.add(0, slot.startedJob);
+                slot.startedJob = null;
+            } else if (now - slot.startedAtMs > getStartTimeout())
+            {
+                steno.warning("Job " + jobID + " didn't start on " + slot.getName() + " - putting it back in the queue");
+                queue.add(0, slot.startedJob);
+                slot.startedJob = null;
+            }
+        }
+
+        // Whatever was printed is on the bed until someone says otherwise
+        if (slot.lastStatus == PrinterStatus.PRINTING_PROJECT
+                && status == PrinterStatus.IDLE
+                && isBedClearanceRequired())
+        {
+            slot.bedClear = false;
+        }
+        slot.lastStatus = status;
+    }
+
+    /**
+     * @return the seconds until the printer could start another job, or
+     * UNAVAILABLE if that can't be told
+     */
+    private double secondsUntilFree(PrinterSlot slot, long now)
+    {
+        if (slot.printer.headProperty().get() == null)
+        {
+            return UNAVAILABLE;
+        }
+
+        PrintEngine printEngine = slot.printer.getPrintEngine();
+        if (slot.startedJob != null)
+        {
+            if (slot.startSeen && printEngine.etcAvailableProperty().get())
+            {
+                return Math.max(0, printEngine.progressETCProperty().get());
+            }
+            double elapsedSeconds = slot.startSeen ? (now - slot.startedAtMs) / 1000.0 : 0;
+            return Math.max(0, slot.startedJob.getDuration() - elapsedSeconds);
+        }
+
+        switch (slot.printer.printerStatusProperty().get())
+        {
+            case IDLE:
+                return (slot.bedClear && !printEngine.highIntensityCommsInProgressProperty().get())
+                        ? 0 : UNAVAILABLE;
+            case PRINTING_PROJECT:
+                return printEngine.etcAvailableProperty().get()
+                        ? Math.max(0, printEngine.progressETCProperty().get()) : UNAVAILABLE;
+            default:
+                return UNAVAILABLE;
+        }
+    }
+
+    private boolean isReadyForJob(PrinterSlot slot)
+    {
+        return slot.startedJob == null
+                && slot.bedClear
+                && slot.printer.printerStatusProperty().get() == PrinterStatus.IDLE;
+    }
+
+    private List<Placement> makePlan(long now)
+    {
+        List<PrinterSlot> printers = new ArrayList<>(slots.values());
+        double[] freeAt = new double[printers.size()];
+        double[][] volumePlanned = new double[printers.size()][2];
+        for (int printerIndex = 0; printerIndex < printers.size(); printerIndex++)
+        {
+            freeAt[printerIndex] = secondsUntilFree(printers.get(printerIndex), now);
+        }
+
+        // Longest first; the sort is stable, so equal jobs keep their queue order
+        List<QueuedJob> jobs = new ArrayList<>(queue);
+        jobs.sort(Comparator.comparingDouble(QueuedJob::getDuration).reversed());
+
+        List<Placement> placements = new ArrayList<>();
+        for (QueuedJob job : jobs)
+        {
+            int bestPrinter = -1;
+            double bestFinish = Double.MAX_VALUE;
+            for (int printerIndex = 0; printerIndex < printers.size(); printerIndex++)
+            {
+                if (freeAt[printerIndex] != UNAVAILABLE
+                        && freeAt[printerIndex] + job.getDuration() < bestFinish
+                        && isCompatible(printers.get(printerIndex).printer, job, volumePlanned[printerIndex]))
+                {
+                    bestPrinter = printerIndex;
+                    bestFinish = freeAt[printerIndex] + job.getDuration();
+                }
+            }
+
+            if (bestPrinter >= 0)
+            {
+                placements.add(new Placement(printers.get(bestPrinter).printer, job, freeAt[bestPrinter], bestFinish));
+                freeAt[bestPrinter] = bestFinish;
+                volumePlanned[bestPrinter][0] += job.getVolume(0);
+                volumePlanned[bestPrinter][1] += job.getVolume(1);
+            }
+        }
+        return placements;
+    }
+
+    private boolean isCompatible(Printer printer, QueuedJob job, double[] volumePlanned)
+    {
+        Head head = printer.headProperty().get();
+        String headType = job.statistics.getPrintedWithHeadType();
+        if (head == null
+                || (headType != null && !headType.isEmpty() && !headType.equals(head.typeCodeProperty().get())))
+        {
+            return false;
+        }
+
+        for (int extruderNumber = 0; extruderNumber < volumePlanned.length; extruderNumber++)
+        {
+            if (job.requiresMaterial(extruderNumber)
+                    && !hasFilamentFor(printer, extruderNumber, volumePlanned[extruderNumber] + job.getVolume(extruderNumber)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasFilamentFor(Printer printer, int extruderNumber, double volume)
+    {
+        if (printer.extrudersProperty().size() <= extruderNumber)
+        {
+            return false;
+        }
+
+        Extruder extruder = printer.extrudersProperty().get(extruderNumber);
+        if (!extruder.isFittedProperty().get() || !extruder.filamentLoadedProperty().get())
+        {
+            return false;
+        }
+
+        // Without a reel EEPROM there is no telling how much is left
+        Reel reel = printer.reelsProperty().get(extruderNumber);
+        if (reel == null || reel.diameterProperty().get() <= 0)
+        {
+            return true;
+        }
+        double radius = reel.diameterProperty().get() / 2.0;
+        return reel.remainingFilamentProperty().get() >= volume / (Math.PI * radius * radius);
+    }
+
+    private void startJob(PrinterSlot slot, QueuedJob job, long now)
+    {
+        String jobID = job.printJob.getJobUUID();
+        if (slot.isPreparing())
+        {
+            if (jobID.equals(slot.preparedJobID))
+            {
+                // Started once the upload is done
+                return;
+            }
+            slot.cancelPrepare();
+        }
+
+        // A job prepared on another printer, before the plan changed, is not
+        // needed there
+        for (PrinterSlot otherSlot : slots.values())
+        {
+            if (otherSlot != slot && jobID.equals(otherSlot.preparedJobID))
+            {
+                otherSlot.cancelPrepare();
+            }
+        }
+
+        steno.info("Starting job " + jobID + " on " + slot.getName());
+        slot.printingSeen = false;
+        if (dispatcher.start(slot.printer, job.printJob))
+        {
+            queue.remove(job);
+            slot.startedJob = job;
+            slot.startedAtMs = now;
+            slot.startSeen = false;
+            slot.cancelPrepare();
+        } else
+        {
+            steno.warning("Printer " + slot.getName() + " didn't take job " + jobID);
+        }
+    }
+
+    private void prepareJob(PrinterSlot slot, QueuedJob job)
+    {
+        String jobID = job.printJob.getJobUUID();
+        if (!jobID.equals(slot.preparedJobID))
+        {
+            slot.cancelPrepare();
+            slot.preparedJobID = jobID;
+            steno.info("Preparing job " + jobID + " for " + slot.getName());
+            PrepareTask prepareTask = new PrepareTask(() -> dispatcher.prepare(slot.printer, job.printJob));
+            // Look again once it is done, in case the printer is waiting for it
+            prepareTask.done.thenRun(this::requestDispatch);
+            slot.prepareTask = prepareTask;
+            executor.execute(prepareTask, "Prepare job " + jobID);
+        }
+    }
+
+    /**
+     * Prints jobs from the print spool. A job is prepared by making sure its
+     * content hash is in its statistics, so that the printer is asked whether
+     * it already has the job without the file being read again; for a printer
+     * on a Root the statistics and file are also sent, and the Root then
+     * prints its copy.
+     */
+    private static class PrinterDispatcher implements Dispatcher
+    {
+
+        @Override
+        public void prepare(Printer printer, PrintJob printJob)
+        {
+            try
+            {
+                PrintJobStatistics statistics = printJob.getStatistics();
+                String contentHash = statistics.getContentHash();
+                if (contentHash == null || contentHash.isEmpty())
+                {
+                    printJob.getContentHash();
+                    statistics.writeStatisticsToFile(printJob.getStatisticsFileLocation());
+                }
+
+                if (printer.getCommandInterface() instanceof RoboxRemoteCommandInterface)
+                {
+                    RoboxRemoteCommandInterface remoteCI = (RoboxRemoteCommandInterface) printer.getCommandInterface();
+                    RemoteDetectedPrinter remoteDevice = (RemoteDetectedPrinter) remoteCI.getPrinterHandle();
+                    remoteCI.sendStatistics(statistics);
+
+                    File gcodeFile = new File(printJob.getRoboxisedFileLocation());
+                    String remoteDirectory = BaseConfiguration.getRemotePrintJobDirectory() + printJob.getJobUUID();
+                    SFTPUtils sftpHelper = new SFTPUtils(remoteDevice.getServerPrinterIsAttachedTo().getServerIP());
+                    if (sftpHelper.transferToRemotePrinter(gcodeFile, remoteDirectory, gcodeFile.getName(), null))
+                    {
+                        steno.info("Job " + printJob.getJobUUID() + " uploaded ahead of printing");
+                    }
+                }
+            } catch (IOException | RoboxCommsException ex)
+            {
+                steno.warning("Couldn't prepare job " + printJob.getJobUUID() + ": " + ex.getMessage());
+            }
+        }
+
+        @Override
+        public boolean start(Printer printer, PrintJob printJob)
+        {
+            PrintJob spoolJob = new PrintJob(printJob.getJobUUID());
+            if (new File(spoolJob.getJobDirectory()).equals(new File(printJob.getJobDirectory())))
+            {
+                return printer.printJob(printJob.getJobUUID());
+            }
+            return printer.printJobFromDirectory(printJob.getJobUUID(), printJob.getJobDirectory());
+        }
+    }
+}
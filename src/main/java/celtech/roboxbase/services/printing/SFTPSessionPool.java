@@ -0,0 +1,328 @@
+package celtech.roboxbase.services.printing;
+
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * Keeps one SSH session open to each host that files are sent to, so that
+ * each transfer does not have to make a new connection.
+ *
+ * A session is closed when it has not been used for the idle timeout, and is
+ * opened again if it is found to have been dropped. Connecting is done outside
+ * the pool lock, so a slow or unreachable host only holds up transfers to
+ * that host.
+ *
+ * @author ianhudson
+ */
+class SFTPSessionPool
+{
+
+    interface SessionFactory
+    {
+
+        /**
+         * @param hostAddress
+         * @return a session that has not been connected yet
+         * @throws JSchException
+         */
+        Session createSession(String hostAddress) throws JSchException;
+    }
+
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+    static final int DEFAULT_SERVER_ALIVE_INTERVAL_MS = 5000;
+    static final int DEFAULT_BULK_REQUESTS = 16;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+
+    private static class HostSessions
+    {
+
+        // Held whilst connecting the session, so only one transfer connects it
+        private final Object connectLock = new Object();
+        private Session session = null;
+        private final Deque<ChannelSftp> idleChannels = new ArrayDeque<>();
+        private final Set<String> knownDirectories = new HashSet<>();
+        private int channelsInUse = 0;
+        private ScheduledFuture<?> idleClose = null;
+    }
+
+    private final Stenographer steno = StenographerFactory.getStenographer(this.getClass().getName());
+    private final SessionFactory sessionFactory;
+    private final Map<String, HostSessions> hosts = new HashMap<>();
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private volatile int serverAliveIntervalMs = DEFAULT_SERVER_ALIVE_INTERVAL_MS;
+    private volatile int bulkRequests = DEFAULT_BULK_REQUESTS;
+    private int sessionsCreated = 0;
+
+    SFTPSessionPool(SessionFactory sessionFactory)
+    {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Get a connected channel to the host for the caller to use alone. It must
+     * be given back with release or discard.
+     *
+     * @param hostAddress
+     * @return
+     * @throws JSchException
+     */
+    ChannelSftp acquire(String hostAddress) throws JSchException
+    {
+        HostSessions hostSessions;
+        synchronized (this)
+        {
+            hostSessions = hosts.computeIfAbsent(hostAddress, host -> new HostSessions());
+            if (hostSessions.idleClose != null)
+            {
+                hostSessions.idleClose.cancel(false);
+                hostSessions.idleClose = null;
+            }
+
+            hostSessions.channelsInUse++;
+            while (!hostSessions.idleChannels.isEmpty())
+            {
+                ChannelSftp idleChannel = hostSessions.idleChannels.pop();
+                if (idleChannel.isConnected() && hostSessions.session.isConnected())
+                {
+                    return idleChannel;
+                }
+                idleChannel.disconnect();
+            }
+        }
+
+        try
+        {
+            Session session = connectedSession(hostAddress, hostSessions);
+            ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
+            channel.connect(CONNECT_TIMEOUT_MS);
+            channel.setBulkRequests(bulkRequests);
+            return channel;
+        } catch (JSchException | RuntimeException ex)
+        {
+            synchronized (this)
+            {
+                hostSessions.channelsInUse--;
+                if (hosts.get(hostAddress) == hostSessions)
+                {
+                    closeWhenIdle(hostAddress, hostSessions);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private Session connectedSession(String hostAddress, HostSessions hostSessions) throws JSchException
+    {
+        synchronized (hostSessions.connectLock)
+        {
+            Session droppedSession = null;
+            synchronized (this)
+            {
+                if (hostSessions.session != null)
+                {
+                    if (hostSessions.session.isConnected())
+                    {
+                        return hostSessions.session;
+                    }
+                    droppedSession = hostSessions.session;
+                    hostSessions.session = null;
+                }
+            }
+
+            if (droppedSession != null)
+            {
+                steno.info("SFTP session to \"" + hostAddress + "\" was dropped - reconnecting");
+                droppedSession.disconnect();
+            }
+
+            Session session = connect(hostAddress);
+            synchronized (this)
+            {
+                if (hosts.get(hostAddress) == hostSessions)
+                {
+                    hostSessions.session = session;
+                    sessionsCreated++;
+                    return session;
+                }
+            }
+
+            // The pool was closed whilst connecting
+            session.disconnect();
+            throw new JSchException("SFTP sessions to \"" + hostAddress + "\" were closed whilst connecting");
+        }
+    }
+
+    /**
+     * Give back a channel that can be used again.
+     *
+     * @param hostAddress
+     * @param channel
+     */
+    synchronized void release(String hostAddress, ChannelSftp channel)
+    {
+        HostSessions hostSessions = hosts.get(hostAddress);
+        if (hostSessions == null)
+        {
+            channel.disconnect();
+            return;
+        }
+
+        hostSessions.channelsInUse--;
+        if (channel.isConnected())
+        {
+            hostSessions.idleChannels.push(channel);
+        }
+        closeWhenIdle(hostAddress, hostSessions);
+    }
+
+    /**
+     * Give back a channel that failed. Other transfers to the host share its
+     * session, so the session is only dropped if it has lost its connection.
+     *
+     * @param hostAddress
+     * @param channel
+     */
+    synchronized void discard(String hostAddress, ChannelSftp channel)
+    {
+        channel.disconnect();
+
+        HostSessions hostSessions = hosts.get(hostAddress);
+        if (hostSessions == null)
+        {
+            return;
+        }
+
+        hostSessions.channelsInUse--;
+        if (hostSessions.session != null && !hostSessions.session.isConnected())
+        {
+            hostSessions.idleChannels.forEach(ChannelSftp::disconnect);
+            hostSessions.idleChannels.clear();
+            hostSessions.session.disconnect();
+            hostSessions.session = null;
+        }
+        closeWhenIdle(hostAddress, hostSessions);
+    }
+
+    /**
+     * @param hostAddress
+     * @param directory
+     * @return true if the directory has been seen to exist on the host
+     */
+    synchronized boolean isKnownDirectory(String hostAddress, String directory)
+    {
+        HostSessions hostSessions = hosts.get(hostAddress);
+        return hostSessions != null && hostSessions.knownDirectories.contains(directory);
+    }
+
+    synchronized void addKnownDirectory(String hostAddress, String directory)
+    {
+        HostSessions hostSessions = hosts.get(hostAddress);
+        if (hostSessions != null)
+        {
+            hostSessions.knownDirectories.add(directory);
+        }
+    }
+
+    /**
+     * Close every session, including those with channels in use.
+     */
+    synchronized void closeAll()
+    {
+        List<String> hostAddresses = new ArrayList<>(hosts.keySet());
+        hostAddresses.forEach(this::close);
+    }
+
+    synchronized void setIdleTimeout(long idleTimeoutMs)
+    {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    synchronized void setServerAliveInterval(int serverAliveIntervalMs)
+    {
+        this.serverAliveIntervalMs = serverAliveIntervalMs;
+    }
+
+    synchronized void setBulkRequests(int bulkRequests)
+    {
+        this.bulkRequests = bulkRequests;
+    }
+
+    synchronized int getSessionsCreated()
+    {
+        return sessionsCreated;
+    }
+
+    synchronized Set<String> getConnectedHosts()
+    {
+        Set<String> connectedHosts = new HashSet<>();
+        hosts.forEach((hostAddress, hostSessions) ->
+        {
+            if (hostSessions.session != null && hostSessions.session.isConnected())
+            {
+                connectedHosts.add(hostAddress);
+            }
+        });
+        return Collections.unmodifiableSet(connectedHosts);
+    }
+
+    private Session connect(String hostAddress) throws JSchException
+    {
+        steno.info("Connecting to SFTP service on \"" + hostAddress + "\"");
+        Session session = sessionFactory.createSession(hostAddress);
+        session.setServerAliveInterval(serverAliveIntervalMs);
+        session.connect(CONNECT_TIMEOUT_MS);
+        steno.debug("Connected to host \"" + hostAddress + "\"");
+        return session;
+    }
+
+    private void closeWhenIdle(String hostAddress, HostSessions hostSessions)
+    {
+        if (hostSessions.channelsInUse == 0)
+        {
+            hostSessions.idleClose = BackgroundExecutor.getInstance().schedule(
+                    () -> closeIfIdle(hostAddress, hostSessions),
+                    idleTimeoutMs,
+                    "SFTP idle close");
+        }
+    }
+
+    private synchronized void closeIfIdle(String hostAddress, HostSessions hostSessions)
+    {
+        if (hosts.get(hostAddress) == hostSessions && hostSessions.channelsInUse == 0)
+        {
+            steno.debug("Closing idle SFTP session to \"" + hostAddress + "\"");
+            close(hostAddress);
+        }
+    }
+
+    private void close(String hostAddress)
+    {
+        HostSessions hostSessions = hosts.remove(hostAddress);
+        if (hostSessions != null)
+        {
+            if (hostSessions.idleClose != null)
+            {
+                hostSessions.idleClose.cancel(false);
+            }
+            hostSessions.idleChannels.forEach(ChannelSftp::disconnect);
+            if (hostSessions.session != null)
+            {
+                hostSessions.session.disconnect();
+            }
+        }
+    }
+}
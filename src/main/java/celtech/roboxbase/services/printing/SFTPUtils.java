@@ -10,6 +10,9 @@ import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.SftpProgressMonitor;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 
@@ -24,91 +27,280 @@ public class SFTPUtils
     private static final int[] pp1 = {81, 86, 10, 93, 51, 78, 87, 120, 117};
     private static final int[] pp2 = {-14, 155, 66, 138, 31, 189, 11, 231, 3};
     private static final String USER = "pi";
-    
+
+    public static final int DEFAULT_TRANSFER_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 2000;
+    // How much of the end of a part sent file is checked before carrying on from it
+    static final int RESUME_CHECK_LENGTH = 64 * 1024;
+
+    private static final SFTPSessionPool sessionPool = new SFTPSessionPool(SFTPUtils::createSession);
+    private static int transferAttempts = DEFAULT_TRANSFER_ATTEMPTS;
+
     private final Stenographer steno = StenographerFactory.getStenographer(this.getClass().getName());
     private String hostAddress = null;
-           
+    private final SFTPSessionPool pool;
+
     public SFTPUtils(String hostAddress)
+    {
+        this(hostAddress, sessionPool);
+    }
+
+    SFTPUtils(String hostAddress, SFTPSessionPool pool)
     {
         this.hostAddress = hostAddress;
+        this.pool = pool;
+    }
+
+    /**
+     * @param transferAttempts how many times to try a transfer, carrying on
+     * from where the last attempt got to
+     */
+    public static synchronized void setTransferAttempts(int transferAttempts)
+    {
+        SFTPUtils.transferAttempts = Math.max(1, transferAttempts);
+    }
+
+    /**
+     * @param idleTimeoutMs how long a session to a host is kept open after the
+     * last transfer to it
+     */
+    public static void setSessionIdleTimeout(long idleTimeoutMs)
+    {
+        sessionPool.setIdleTimeout(idleTimeoutMs);
+    }
+
+    /**
+     * @param serverAliveIntervalMs how often an idle session checks the host is
+     * still there
+     */
+    public static void setServerAliveInterval(int serverAliveIntervalMs)
+    {
+        sessionPool.setServerAliveInterval(serverAliveIntervalMs);
+    }
+
+    /**
+     * @param bulkRequests how many write requests to have outstanding at once
+     * during a transfer
+     */
+    public static void setBulkRequests(int bulkRequests)
+    {
+        sessionPool.setBulkRequests(bulkRequests);
+    }
+
+    /**
+     * Close the sessions kept open to each host.
+     */
+    public static void closeSessions()
+    {
+        sessionPool.closeAll();
     }
-    
+
+    private static synchronized int getTransferAttempts()
+    {
+        return transferAttempts;
+    }
+
+    private static Session createSession(String hostAddress) throws JSchException
+    {
+        JSch jsch = new JSch();
+        String pp = "";
+        for (int i = 0; i < 9; ++i)
+            pp += Character.toString((char)((i % 2) == 0 ? pp1[i] + pp2[i] : pp2[i] - pp1[i]));
+        jsch.addIdentity(BaseConfiguration.getApplicationKeyDirectory() + PRIVATE_KEY, pp);
+        Session session = jsch.getSession(USER, hostAddress, 22);
+        java.util.Properties config = new java.util.Properties();
+        config.put("StrictHostKeyChecking", "no");
+        session.setConfig(config);
+        return session;
+    }
+
     private void createRemoteDirectory(ChannelSftp channelSftp, String remoteDirectory) throws SftpException
     {
-        SftpATTRS attrs = null;
+        if (pool.isKnownDirectory(hostAddress, remoteDirectory))
+        {
+            return;
+        }
+
+        if (!remoteFileExists(channelSftp, remoteDirectory))
+        {
+            // Create directory, creating any missing parent directories.
+            // This fixes a problem where the transfer fails because
+            // the project directory has not been created.
+            String[] pathComponents = remoteDirectory.split("/");
+            String remotePath = "";
+            for (int i = 0; i < pathComponents.length; ++i)
+            {
+                if (i == 0)
+                    remotePath = pathComponents[0];
+                else
+                    remotePath = remotePath + "/" + pathComponents[i];
+                if (!remotePath.isEmpty() && !remoteFileExists(channelSftp, remotePath))
+                {
+                    steno.info("Creating remote directory \"" + remotePath + "\"");
+                    channelSftp.mkdir(remotePath);
+                }
+            }
+        }
+        pool.addKnownDirectory(hostAddress, remoteDirectory);
+    }
+
+    private SftpATTRS statRemoteFile(ChannelSftp channelSftp, String remotePath) throws SftpException
+    {
         try
         {
-            attrs = channelSftp.stat(remoteDirectory);
+            return channelSftp.stat(remotePath);
         }
-        catch (Exception e)
+        catch (SftpException ex)
         {
-            steno.debug("Remote directory \"" + remoteDirectory + "\" not found");
+            if (ex.id == ChannelSftp.SSH_FX_NO_SUCH_FILE)
+            {
+                return null;
+            }
+            throw ex;
         }
+    }
 
-        if (attrs == null)
+    private boolean remoteFileExists(ChannelSftp channelSftp, String remotePath) throws SftpException
+    {
+        boolean exists = statRemoteFile(channelSftp, remotePath) != null;
+        if (!exists)
         {
-            steno.info("Creating remote directory \"" + remoteDirectory + "\"");
-            channelSftp.mkdir(remoteDirectory);
+            steno.debug("Remote file \"" + remotePath + "\" not found");
         }
+        return exists;
     }
-    
+
     public boolean transferToRemotePrinter(File localFile, String remoteDirectory, String remoteFile, SftpProgressMonitor monitor)
     {
         // Use sftp to transfer file to remote printer.
-        boolean transferredOK = false;
         String remotePath = remoteFile;
-        try
+        if (remoteDirectory != null && !remoteDirectory.isEmpty())
+        {
+            remotePath = remoteDirectory + '/' + remoteFile;
+        }
+
+        int attempts = getTransferAttempts();
+        for (int attempt = 1; attempt <= attempts; attempt++)
+        {
+            ChannelSftp channelSftp = null;
+            try
+            {
+                channelSftp = pool.acquire(hostAddress);
+                if (remoteDirectory != null && !remoteDirectory.isEmpty())
+                {
+                    createRemoteDirectory(channelSftp, remoteDirectory);
+                }
+
+                boolean transferredOK = transferFile(channelSftp, localFile, remotePath, monitor);
+                pool.release(hostAddress, channelSftp);
+                return transferredOK;
+            }
+            catch (SftpException | JSchException | IOException ex)
+            {
+                if (channelSftp != null)
+                {
+                    pool.discard(hostAddress, channelSftp);
+                }
+                steno.error("Failed to transfer \"" + localFile.getPath() + "\" to remote printer file \"" + remotePath
+                        + "\" (attempt " + attempt + " of " + attempts + "): " + ex.getMessage());
+            }
+
+            if (attempt < attempts)
+            {
+                try
+                {
+                    Thread.sleep(RETRY_DELAY_MS);
+                }
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Send the file, carrying on from the end of any part of it that is
+     * already there.
+     *
+     * @return false if the transfer was stopped by the monitor
+     */
+    private boolean transferFile(ChannelSftp channelSftp, File localFile, String remotePath, SftpProgressMonitor monitor) throws SftpException, IOException
+    {
+        long localSize = localFile.length();
+        SftpATTRS remoteAttributes = statRemoteFile(channelSftp, remotePath);
+        long remoteSize = (remoteAttributes == null) ? 0 : remoteAttributes.getSize();
+
+        int mode = ChannelSftp.OVERWRITE;
+        if (remoteSize > 0 && remoteSize <= localSize)
         {
-            JSch jsch = new JSch();
-            steno.info("Connecting to SFTP service");
-            String pp = "";
-            for (int i = 0; i < 9; ++i)
-                pp += Character.toString((char)((i % 2) == 0 ? pp1[i] + pp2[i] : pp2[i] - pp1[i]));
-            jsch.addIdentity(BaseConfiguration.getApplicationKeyDirectory() + PRIVATE_KEY, pp);
-            Session session = jsch.getSession(USER, hostAddress, 22);
-            java.util.Properties config = new java.util.Properties();
-            config.put("StrictHostKeyChecking", "no");
-            session.setConfig(config);
-            session.connect();
-            steno.debug("Connected to host \"" + hostAddress + "\"");
-
-            ChannelSftp channelSftp = (ChannelSftp) session.openChannel("sftp");
-            channelSftp.connect();
-                        
-            if (remoteDirectory != null && !remoteDirectory.isEmpty())
+            if (partSentFileMatches(channelSftp, localFile, remotePath, remoteSize))
             {
-                // Create directory, creating any missing parent directories.
-                // This fixes a problem where the transfer fails because
-                // the project directory has not been created.
-                String[] pathComponents = remoteDirectory.split("/");
-                remotePath = "";
-                for(int i = 0; i < pathComponents.length; ++i)
+                if (remoteSize == localSize)
                 {
-                    if (i == 0)
-                        remotePath = pathComponents[0];
-                    else
-                        remotePath = remotePath + "/" + pathComponents[i];
-                    if (!remotePath.isEmpty())
-                        createRemoteDirectory(channelSftp, remotePath);
+                    steno.info("\"" + remotePath + "\" has already been transferred");
+                    if (monitor != null)
+                    {
+                        monitor.init(SftpProgressMonitor.PUT, localFile.getPath(), remotePath, localSize);
+                        monitor.count(localSize);
+                        monitor.end();
+                    }
+                    return true;
                 }
-                remotePath = remoteDirectory + '/' + remoteFile;
+                steno.info("Resuming transfer of \"" + remotePath + "\" from byte " + remoteSize);
+                mode = ChannelSftp.RESUME;
+            } else
+            {
+                steno.info("\"" + remotePath + "\" differs from the file being sent - replacing it");
             }
+        }
 
-            steno.info("Transferring file");
-            channelSftp.put(localFile.getCanonicalPath(),
-                            remotePath,
-                            monitor);
+        steno.info("Transferring file");
+        channelSftp.put(localFile.getCanonicalPath(),
+                        remotePath,
+                        monitor,
+                        mode);
 
-            channelSftp.disconnect();
-            session.disconnect();
-            
-            transferredOK = true;
+        // The monitor stops the transfer without an error, so see how much was sent
+        SftpATTRS transferredAttributes = statRemoteFile(channelSftp, remotePath);
+        return transferredAttributes != null && transferredAttributes.getSize() == localSize;
+    }
+
+    /**
+     * Compare the end of what has already been sent with the same part of the
+     * local file. There is no way to have the host hash the file over SFTP, so
+     * the bytes are read back and compared.
+     */
+    private boolean partSentFileMatches(ChannelSftp channelSftp, File localFile, String remotePath, long remoteSize) throws SftpException, IOException
+    {
+        int checkLength = (int) Math.min(RESUME_CHECK_LENGTH, remoteSize);
+        long checkStart = remoteSize - checkLength;
+
+        byte[] localBytes = new byte[checkLength];
+        try (RandomAccessFile localInput = new RandomAccessFile(localFile, "r"))
+        {
+            localInput.seek(checkStart);
+            localInput.readFully(localBytes);
         }
-        catch (SftpException | JSchException | IOException ex)
+
+        byte[] remoteBytes = new byte[checkLength];
+        try (InputStream remoteInput = channelSftp.get(remotePath, null, checkStart))
         {
-            steno.error("Failed to transfer \"" + localFile.getPath() + "\" to remote printer file \"" + remotePath + "\": " + ex.getMessage());
+            int bytesRead = 0;
+            while (bytesRead < checkLength)
+            {
+                int count = remoteInput.read(remoteBytes, bytesRead, checkLength - bytesRead);
+                if (count < 0)
+                {
+                    return false;
+                }
+                bytesRead += count;
+            }
         }
 
-        return transferredOK;
+        return Arrays.equals(localBytes, remoteBytes);
     }
 }
@@ -4,20 +4,23 @@ import celtech.roboxbase.comms.DetectedServer;
 import celtech.roboxbase.comms.RemoteDetectedPrinter;
 import celtech.roboxbase.comms.exceptions.RoboxCommsException;
 import celtech.roboxbase.comms.remote.RoboxRemoteCommandInterface;
+import celtech.roboxbase.comms.rx.ListFilesResponse;
 import celtech.roboxbase.configuration.BaseConfiguration;
 import celtech.roboxbase.configuration.fileRepresentation.CameraSettings;
 import celtech.roboxbase.configuration.hardwarevariants.PrinterType;
 import celtech.roboxbase.postprocessor.PrintJobStatistics;
+import celtech.roboxbase.printerControl.PrintJob;
 import celtech.roboxbase.printerControl.comms.commands.GCodeMacros;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.utils.SystemUtils;
+import celtech.roboxbase.utils.tasks.ProgressBus;
 import com.jcraft.jsch.SftpProgressMonitor;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Scanner;
 import javafx.beans.property.IntegerProperty;
 import javafx.concurrent.Task;
 import libertysystems.stenographer.Stenographer;
@@ -45,6 +48,7 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
         {
             this.fileSize = fileSize;
             this.count = 0;
+            progress.update(0, fileSize);
             if (server != null)
                 server.resetPollCount();
             steno.debug("Initialise file transfer: src = \"" + src + "\", dst = \"" + dest + "\", fileSize = " + Long.toString(fileSize));
@@ -54,8 +58,7 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
         public boolean count(long increment)
         {
           count += increment;
-          steno.debug("Transfer progress: count = " + Long.toString(count) + " of " + Long.toString(fileSize));
-          updateProgress((float) count, (float) fileSize);
+          progress.add(increment);
           if (server != null)
                 server.resetPollCount();
           return !isCancelled();
@@ -63,6 +66,7 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
         
         @Override
         public void end(){
+            steno.debug("Transfer progress: count = " + Long.toString(count) + " of " + Long.toString(fileSize));
         }
     }
            
@@ -77,6 +81,10 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
     private boolean thisJobCanBeReprinted = false;
     private int lineCounter = 0;
     private int numberOfLines = 0;
+    private ProgressBus.Channel progress = null;
+    // Each line is held back until the next is read, so that the last line
+    // of the file can be sent as the end of the data file
+    private String lineToSend = null;
     private final PrintJobStatistics printJobStatistics;
     private final CameraSettings cameraData;
 
@@ -124,12 +132,47 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
         GCodePrintResult result = new GCodePrintResult();
         result.setPrintJobID(printJobID);
 
+        updateTitle("GCode Print ID:" + printJobID);
+        progress = ProgressBus.getInstance().open("GCode Print ID:" + printJobID);
+        ProgressBus.getInstance().subscribe(progress, this::showProgress);
+        try
+        {
+            result.setSuccess(transfer());
+        } finally
+        {
+            progress.close();
+        }
+
+        long endTime = System.currentTimeMillis();
+        steno.info("Print transfer took " + Long.toString(endTime - startTime) + "ms");
+
+        return result;
+    }
+
+    private void showProgress(ProgressBus.Update update)
+    {
+        updateProgress(update.getDone(), update.getTotal());
+        if (update.getMessage() != null)
+        {
+            updateMessage(update.getMessage());
+        }
+    }
+
+    private boolean transfer() throws Exception
+    {
         boolean gotToEndOK = false;
 
-        updateTitle("GCode Print ID:" + printJobID);
         File gcodeFile = new File(gcodeFileToPrint);
-        Optional<PrinterType> printerType = Optional.of(printerToUse.findPrinterType());
-        numberOfLines = GCodeMacros.countLinesInMacroFile(gcodeFile, ";", printerType);
+        if (printJobStatistics != null
+                && printJobStatistics.getNumberOfLines() > 0)
+        {
+            // Counted when the file was post processed, with macros expanded
+            numberOfLines = printJobStatistics.getNumberOfLines();
+        } else
+        {
+            Optional<PrinterType> printerType = Optional.of(printerToUse.findPrinterType());
+            numberOfLines = GCodeMacros.countLinesInMacroFile(gcodeFile, ";", printerType);
+        }
         linesInFile.setValue(numberOfLines);
 
         steno.debug("Beginning transfer of file " + gcodeFileToPrint + " to printer from line "
@@ -137,6 +180,12 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
 
         boolean errorTransferringStats = false;
         boolean printerIsRemote = (printerToUse.getCommandInterface() instanceof RoboxRemoteCommandInterface);
+
+        Optional<String> jobWithSameContent = findJobWithSameContent(gcodeFile, printerIsRemote);
+        if (jobWithSameContent.isPresent())
+        {
+            return printJobWithSameContent(jobWithSameContent.get(), printerIsRemote);
+        }
         
         if (printerIsRemote)
         {
@@ -159,7 +208,7 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
 
         if (!errorTransferringStats)
         {
-            updateMessage("Transferring GCode");
+            progress.message("Transferring GCode");
 
             if (printerIsRemote &&
                 !gcodeFile.getParent().endsWith("Macros") &&
@@ -170,23 +219,103 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
                 gotToEndOK = transferToPrinter(gcodeFile);
         }
 
-        long endTime = System.currentTimeMillis();
-        steno.info("Print transfer took " + Long.toString(endTime - startTime) + "ms");
+        return gotToEndOK;
+    }
 
-        result.setSuccess(gotToEndOK);
-        return result;
+    /**
+     * A job already on the printer's SD card, or in the Root's print spool,
+     * need not be sent again if its content is the same.
+     *
+     * @return the ID of a job on the printer with the same content as this one
+     */
+    private Optional<String> findJobWithSameContent(File gcodeFile, boolean printerIsRemote)
+    {
+        if (printJobStatistics == null
+                || !printUsingSDCard
+                || startFromSequenceNumber != 0
+                || dontInitiatePrint
+                || gcodeFile.getParent().endsWith("Macros"))
+        {
+            return Optional.empty();
+        }
+
+        try
+        {
+            if (printJobStatistics.getContentHash() == null
+                    || printJobStatistics.getContentHash().isEmpty())
+            {
+                printJobStatistics.setContentHash(PrintJob.calculateContentHash(gcodeFile));
+            }
+            String contentHash = printJobStatistics.getContentHash();
+
+            if (printerIsRemote)
+            {
+                return ((RoboxRemoteCommandInterface) printerToUse.getCommandInterface()).findPrintJobWithContentHash(contentHash);
+            }
+
+            ListFilesResponse filesOnPrinter = printerToUse.transmitListFiles();
+            if (filesOnPrinter == null)
+            {
+                return Optional.empty();
+            }
+            // A job cut short on its way to the SD card is still listed, so
+            // only jobs known to have been sent in full are considered
+            String printerID = printerToUse.getPrinterIdentity().printerUniqueIDProperty().get();
+            List<String> completeJobIDs = new ArrayList<>();
+            for (String jobID : filesOnPrinter.getPrintJobIDs())
+            {
+                if (new PrintJob(jobID).hasCompleteCopyOnPrinter(printerID))
+                {
+                    completeJobIDs.add(jobID);
+                }
+            }
+            return PrintJob.findJobWithContentHash(contentHash, completeJobIDs);
+        } catch (IOException | RoboxCommsException ex)
+        {
+            steno.warning("Couldn't check whether job " + printJobID + " is already on the printer: " + ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private boolean printJobWithSameContent(String jobOnPrinter, boolean printerIsRemote)
+    {
+        steno.info("Job " + printJobID + " is the same as job " + jobOnPrinter
+                + " on the printer - printing that rather than sending it again");
+        try
+        {
+            if (printerIsRemote)
+            {
+                ((RoboxRemoteCommandInterface) printerToUse.getCommandInterface()).startPrintJob(jobOnPrinter);
+            } else
+            {
+                printerToUse.initiatePrint(jobOnPrinter);
+            }
+            progress.update(1, 1);
+            return true;
+        } catch (RoboxCommsException ex)
+        {
+            steno.error("Failed to start job " + jobOnPrinter + ": " + ex.getMessage());
+            progress.message("Printing error");
+            return false;
+        }
     }
 
     private boolean transferToPrinter(File gcodeFile) throws Exception
     {
-        FileReader gcodeReader = null;
-        Scanner scanner = null;
+        GCodeLineReader lineReader = null;
         boolean gotToEndOK = false;
-        //Note that FileReader is used, not File, since File is not Closeable
         try
         {
-            gcodeReader = new FileReader(gcodeFile);
-            scanner = new Scanner(gcodeReader);
+            lineReader = new GCodeLineReader(gcodeFile);
+
+            boolean recordCopy = printUsingSDCard
+                    && startFromSequenceNumber == 0
+                    && printJobStatistics != null
+                    && !gcodeFile.getParent().endsWith("Macros");
+            if (recordCopy)
+            {
+                recordCopyOnPrinter(false);
+            }
 
             if (printUsingSDCard && startFromSequenceNumber == 0)
             {
@@ -197,12 +326,12 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
             printerToUse.setDataFileSequenceNumberStartPoint(startFromSequenceNumber);
 
             lineCounter = 0;
+            lineToSend = null;
 
-            while (scanner.hasNextLine() && !isCancelled())
+            String line;
+            while (!isCancelled()
+                    && (line = lineReader.readLine()) != null)
             {
-                String line = scanner.nextLine();
-                line = line.trim();
-
                 if (GCodeMacros.isMacroExecutionDirective(line))
                 {
                     //Put in contents of macro
@@ -212,19 +341,35 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
                             false, false, false);
                     for (String macroLine : macroLines)
                     {
-                        outputLine(macroLine);
+                        String cleanedMacroLine = SystemUtils.cleanGCodeForTransmission(macroLine);
+                        if (!cleanedMacroLine.isEmpty())
+                        {
+                            queueLine(cleanedMacroLine);
+                        }
                     }
                 } else
                 {
-                    outputLine(line);
+                    queueLine(line);
                 }
 
                 if (lineCounter < numberOfLines)
                 {
-                    updateProgress((float) lineCounter, (float) numberOfLines);
+                    progress.update(lineCounter, numberOfLines);
                 }
             }
+
+            if (!isCancelled()
+                    && lineToSend != null)
+            {
+                outputLine(lineToSend, true);
+                lineToSend = null;
+            }
             gotToEndOK = true;
+
+            if (recordCopy && !isCancelled())
+            {
+                recordCopyOnPrinter(true);
+            }
         } catch (FileNotFoundException ex)
         {
             steno.error("Couldn't open gcode file " + gcodeFileToPrint + ": " + ex);
@@ -232,48 +377,54 @@ public class TransferGCodeToPrinterTask extends Task<GCodePrintResult>
         {
             steno.error("Error during print operation - abandoning transfer of " + printJobID + " " + ex.
                     getMessage());
-            updateMessage("Printing error");
+            progress.message("Printing error");
         } finally
         {
-            if (scanner != null)
-            {
-                scanner.close();
-            }
-
-            if (gcodeReader != null)
+            if (lineReader != null)
             {
-                gcodeReader.close();
+                lineReader.close();
             }
         }
         return gotToEndOK;
     }
 
-    private void outputLine(String line) throws RoboxCommsException, DatafileSendNotInitialised
+    private void recordCopyOnPrinter(boolean complete)
     {
-        if (line.equals("") == false && line.startsWith(";") == false)
+        new PrintJob(printJobID).recordCopyOnPrinter(
+                printerToUse.getPrinterIdentity().printerUniqueIDProperty().get(), complete);
+    }
+
+    /**
+     * Send the line held back, and hold back this one.
+     */
+    private void queueLine(String cleanedLine) throws RoboxCommsException, DatafileSendNotInitialised
+    {
+        if (lineToSend != null)
         {
-            line = SystemUtils.cleanGCodeForTransmission(line);
-            if (printUsingSDCard)
-            {
-                steno.trace("Sending data line " + lineCounter + " to printer");
-                printerToUse.sendDataFileChunk(line, lineCounter == numberOfLines - 1,
-                        true);
-                if (startFromSequenceNumber == 0
-                        && !dontInitiatePrint
-                        && ((printerToUse.getDataFileSequenceNumber() > 1
-                        && printerToUse.isPrintInitiated() == false)
-                        || (lineCounter == numberOfLines - 1
-                        && printerToUse.isPrintInitiated() == false)))
-                {
-                    //Start printing!
-                    printerToUse.initiatePrint(printJobID);
-                }
-            } else
+            outputLine(lineToSend, false);
+        }
+        lineToSend = cleanedLine;
+    }
+
+    private void outputLine(String cleanedLine, boolean lastLine) throws RoboxCommsException, DatafileSendNotInitialised
+    {
+        if (printUsingSDCard)
+        {
+            printerToUse.sendDataFileChunk(cleanedLine, lastLine, true);
+            if (startFromSequenceNumber == 0
+                    && !dontInitiatePrint
+                    && printerToUse.isPrintInitiated() == false
+                    && (printerToUse.getDataFileSequenceNumber() > 1
+                    || lastLine))
             {
-                printerToUse.sendRawGCode(line, false);
+                //Start printing!
+                printerToUse.initiatePrint(printJobID);
             }
-            lineCounter++;
+        } else
+        {
+            printerToUse.sendRawGCode(cleanedLine, false);
         }
+        lineCounter++;
     }
     
     private boolean transferToRemotePrinter(File gcodeFile)
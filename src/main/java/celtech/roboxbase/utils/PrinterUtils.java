@@ -12,7 +12,12 @@ import celtech.roboxbase.printerControl.model.Head;
 import celtech.roboxbase.printerControl.model.Printer;
 import celtech.roboxbase.utils.tasks.Cancellable;
 import java.util.List;
-import javafx.application.Platform;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -34,6 +39,9 @@ public class PrinterUtils
     private static final Stenographer steno = StenographerFactory.getStenographer(
             PrinterUtils.class.getName());
     private static PrinterUtils instance = null;
+    // How long to wait for the status processing to see the printer finish
+    // before asking the printer directly
+    private static final long BUSY_RECHECK_INTERVAL_MS = 250;
     private boolean purgeDialogVisible = false;
 
     private PrinterUtils()
@@ -64,7 +72,7 @@ public class PrinterUtils
     {
         boolean interrupted = false;
 
-        if (Platform.isFxApplicationThread())
+        if (BaseLookup.getTaskExecutor().isOnGUIThread())
         {
             throw new RuntimeException("Cannot call this function from the GUI thread");
         }
@@ -111,7 +119,7 @@ public class PrinterUtils
     {
         boolean failed = false;
 
-        if (Platform.isFxApplicationThread())
+        if (BaseLookup.getTaskExecutor().isOnGUIThread())
         {
             throw new RuntimeException("Cannot call this function from the GUI thread");
         }
@@ -155,62 +163,10 @@ public class PrinterUtils
      */
     public static boolean waitOnBusy(Printer printerToCheck, Task task)
     {
-        boolean failed = false;
-
-        if (task != null)
-        {
-            try
-            {
-                //Slug the status check if we're working remotely
-                Thread.sleep(1000);
-
-                StatusResponse response = printerToCheck.transmitStatusRequest();
-
-                while (response.getBusyStatus() != BusyStatus.NOT_BUSY && !BaseLookup.isShuttingDown())
-                {
-                    Thread.sleep(100);
-                    response = printerToCheck.transmitStatusRequest();
-
-                    if (task.isCancelled())
-                    {
-                        failed = true;
-                        break;
-                    }
-                }
-            } catch (RoboxCommsException ex)
-            {
-                steno.error("Error requesting status");
-                failed = true;
-            } catch (InterruptedException ex)
-            {
-                steno.error("Interrupted during busy check");
-                failed = true;
-            }
-        } else
-        {
-            try
-            {
-                StatusResponse response = printerToCheck.transmitStatusRequest();
-
-                while (response != null && response.getBusyStatus() != BusyStatus.NOT_BUSY && !BaseLookup.isShuttingDown())
-                {
-                    Thread.sleep(100);
-                    response = printerToCheck.transmitStatusRequest();
-                }
-                if (response == null)
-                    failed = true;
-            } catch (RoboxCommsException ex)
-            {
-                steno.error("Error requesting status");
-                failed = true;
-            } catch (InterruptedException ex)
-            {
-                steno.error("Interrupted during busy check");
-                failed = true;
-            }
-        }
-
-        return failed;
+        return waitOnBusy(printerToCheck,
+                () -> task != null && task.isCancelled(),
+                null,
+                0);
     }
 
     /**
@@ -220,28 +176,99 @@ public class PrinterUtils
      * @return failed
      */
     public static boolean waitOnBusy(Printer printerToCheck, Cancellable cancellable)
+    {
+        return waitOnBusy(printerToCheck, cancellable, 0);
+    }
+
+    /**
+     *
+     * @param printerToCheck
+     * @param cancellable
+     * @param timeoutMs how long to wait before giving up, or 0 to wait for as
+     * long as the printer is busy
+     * @return failed
+     */
+    public static boolean waitOnBusy(Printer printerToCheck, Cancellable cancellable, long timeoutMs)
+    {
+        BooleanProperty cancelled = (cancellable == null) ? null : cancellable.cancelled();
+        return waitOnBusy(printerToCheck,
+                () -> cancelled != null && cancelled.get(),
+                cancelled,
+                timeoutMs);
+    }
+
+    /**
+     * Returns as soon as the status processing sees the printer stop being
+     * busy. The printer is asked directly every BUSY_RECHECK_INTERVAL_MS in
+     * case the status polling is slow.
+     */
+    private static boolean waitOnBusy(Printer printerToCheck,
+            BooleanSupplier isCancelled,
+            ObservableValue<Boolean> cancelledProperty,
+            long timeoutMs)
     {
         boolean failed = false;
 
-        try
+        // Asked for before the status request so that the printer finishing
+        // straight after the request is not missed
+        CompletableFuture<Void> notBusy = printerToCheck.whenNotBusy();
+        ChangeListener<Boolean> cancelledListener = (observable, wasCancelled, nowCancelled) ->
         {
-            Thread.sleep(1000);
+            if (nowCancelled)
+            {
+                notBusy.cancel(false);
+            }
+        };
+        if (cancelledProperty != null)
+        {
+            cancelledProperty.addListener(cancelledListener);
+        }
+
+        long giveUpTime = System.currentTimeMillis() + timeoutMs;
 
+        try
+        {
             StatusResponse response = printerToCheck.transmitStatusRequest();
-            while (response != null && response.getBusyStatus() != BusyStatus.NOT_BUSY && !BaseLookup.isShuttingDown())
+            while (response != null
+                    && response.getBusyStatus() != BusyStatus.NOT_BUSY
+                    && !BaseLookup.isShuttingDown())
             {
-                Thread.sleep(100);
-                response = printerToCheck.transmitStatusRequest();
+                if (isCancelled.getAsBoolean())
+                {
+                    failed = true;
+                    break;
+                }
 
-                if (cancellable != null && cancellable.cancelled().get())
+                long waitTimeMs = BUSY_RECHECK_INTERVAL_MS;
+                if (timeoutMs > 0)
+                {
+                    long remainingTimeMs = giveUpTime - System.currentTimeMillis();
+                    if (remainingTimeMs <= 0)
+                    {
+                        steno.warning("Printer still busy after " + timeoutMs + "ms");
+                        failed = true;
+                        break;
+                    }
+                    waitTimeMs = Math.min(waitTimeMs, remainingTimeMs);
+                }
+
+                try
+                {
+                    notBusy.get(waitTimeMs, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException ex)
+                {
+                    response = printerToCheck.transmitStatusRequest();
+                } catch (CancellationException ex)
                 {
                     failed = true;
                     break;
                 }
             }
             if (response == null)
+            {
                 failed = true;
-            
+            }
         } catch (RoboxCommsException ex)
         {
             steno.error("Error requesting status");
@@ -250,6 +277,17 @@ public class PrinterUtils
         {
             steno.error("Interrupted during busy check");
             failed = true;
+        } catch (ExecutionException ex)
+        {
+            steno.error("Error waiting for printer to finish: " + ex);
+            failed = true;
+        } finally
+        {
+            if (cancelledProperty != null)
+            {
+                cancelledProperty.removeListener(cancelledListener);
+            }
+            notBusy.cancel(false);
         }
 
         return failed;
@@ -259,7 +297,7 @@ public class PrinterUtils
     {
         boolean failed = false;
 
-        if (Platform.isFxApplicationThread())
+        if (BaseLookup.getTaskExecutor().isOnGUIThread())
         {
             throw new RuntimeException("Cannot call this function from the GUI thread");
         }
@@ -1,6 +1,7 @@
 package celtech.roboxbase.utils;
 
 import celtech.roboxbase.postprocessor.PrintJobStatistics;
+import celtech.roboxbase.utils.tasks.ProgressBus;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
@@ -29,6 +30,11 @@ public class SystemUtils
     private static final Stenographer steno = StenographerFactory.getStenographer(SystemUtils.class.
             getName());
 
+    private static final byte[] HEX_DIGITS =
+    {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
     /**
      *
      * @return
@@ -406,13 +412,85 @@ public class SystemUtils
     }
 
     /**
+     * Write the upper case hex representation of a run of bytes into the
+     * destination buffer, two characters per byte, starting at index 0.
+     *
+     * @param source
+     * @param offset the first byte of source to encode
+     * @param length the number of bytes to encode
+     * @param destination must hold at least length * 2 bytes
+     * @return the number of characters written to destination
+     */
+    public static int hexEncode(byte[] source, int offset, int length, byte[] destination)
+    {
+        int writePosition = 0;
+        for (int readPosition = offset; readPosition < offset + length; readPosition++)
+        {
+            int value = source[readPosition] & 0xFF;
+            destination[writePosition++] = HEX_DIGITS[value >>> 4];
+            destination[writePosition++] = HEX_DIGITS[value & 0x0F];
+        }
+        return writePosition;
+    }
+
+    /**
+     * The reverse of hexEncode - accepts upper or lower case digits.
+     *
+     * @param hex
+     * @return
+     * @throws IllegalArgumentException if hex has an odd length or a character
+     * that is not a hex digit
+     */
+    public static byte[] hexDecode(String hex)
+    {
+        if (hex.length() % 2 != 0)
+        {
+            throw new IllegalArgumentException("Hex string has odd length " + hex.length());
+        }
+
+        byte[] decoded = new byte[hex.length() / 2];
+        for (int bytePosition = 0; bytePosition < decoded.length; bytePosition++)
+        {
+            int high = Character.digit(hex.charAt(bytePosition * 2), 16);
+            int low = Character.digit(hex.charAt(bytePosition * 2 + 1), 16);
+            if (high < 0 || low < 0)
+            {
+                throw new IllegalArgumentException("Invalid hex digit at position " + (bytePosition * 2));
+            }
+            decoded[bytePosition] = (byte) ((high << 4) | low);
+        }
+        return decoded;
+    }
+
+    /**
+     * Remove any comment and the whitespace at either end of a line of GCode.
      *
      * @param gcode
      * @return
      */
     public static String cleanGCodeForTransmission(String gcode)
     {
-        return gcode.trim().replaceFirst(";.*$", "").replaceFirst("\\s+$", "");
+        // Called for every line sent, so done without regular expressions
+        int start = 0;
+        int end = gcode.length();
+
+        while (start < end && gcode.charAt(start) <= ' ')
+        {
+            start++;
+        }
+
+        int commentStart = gcode.indexOf(';', start);
+        if (commentStart >= 0)
+        {
+            end = commentStart;
+        }
+
+        while (end > start && gcode.charAt(end - 1) <= ' ')
+        {
+            end--;
+        }
+
+        return gcode.substring(start, end);
     }
     
     /**
@@ -426,6 +504,21 @@ public class SystemUtils
         // as backslash u followed by the hex value for the codepoint.
         if (source != null)
         {
+            // Most payloads are plain ASCII, in which case there is nothing to escape
+            boolean needsEscaping = false;
+            for (int i = 0; i < source.length(); i++)
+            {
+                if (source.charAt(i) > 0x7f)
+                {
+                    needsEscaping = true;
+                    break;
+                }
+            }
+            if (!needsEscaping)
+            {
+                return source;
+            }
+
             StringBuilder sb = new StringBuilder(source.length() + 4);
             source.codePoints().forEach(c -> 
                                         {
@@ -454,6 +547,9 @@ public class SystemUtils
         boolean success = false;
         InputStream is = null;
         FileOutputStream fos = null;
+        ProgressBus.Channel progress = ProgressBus.getInstance().open("Download " + localFilename);
+        ProgressBus.getInstance().subscribe(progress,
+                update -> progressReceiver.updateProgressPercent(update.getPercent()));
 
         try
         {
@@ -461,23 +557,21 @@ public class SystemUtils
 
             is = urlConn.getInputStream();               //get connection inputstream
             fos = new FileOutputStream(localFilename);   //open outputstream to local file
-            int bytesToReceive = urlConn.getContentLength();
+            progress.setTotal(urlConn.getContentLength());
 
             byte[] buffer = new byte[4096];              //declare 4KB buffer
             int len;
-            int bytesRead = 0;
 
             //while we have availble data, continue downloading and storing to local file
             while ((len = is.read(buffer)) > 0)
             {
-                bytesRead += len;
-                double percentProgress = ((double) bytesRead / (double) bytesToReceive) * 100.0;
-                progressReceiver.updateProgressPercent(percentProgress);
+                progress.add(len);
                 fos.write(buffer, 0, len);
             }
             success = true;
         } finally
         {
+            progress.close();
             try
             {
                 if (is != null)
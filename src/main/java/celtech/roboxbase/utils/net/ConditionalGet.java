@@ -0,0 +1,79 @@
+package celtech.roboxbase.utils.net;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A GET that only fetches the resource again once it has changed.
+ *
+ * The ETag of the last successful response is sent back as If-None-Match, so
+ * an unchanged resource costs the Root a bodiless 304 rather than the whole
+ * resource. A Root that sends no ETag is simply fetched every time. Any 304
+ * is taken to mean the resource is unchanged, as it carries nothing to use.
+ *
+ * @author ianhudson
+ */
+public class ConditionalGet
+{
+
+    public static final int NOT_MODIFIED = 304;
+
+    private final String path;
+    private String entityTag = null;
+    private long unchangedCount = 0;
+
+    public ConditionalGet(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * @param client
+     * @param callType
+     * @return the response, or null if the resource has not changed since it
+     * was last fetched
+     * @throws IOException
+     */
+    public synchronized RootHttpClient.Response fetchIfChanged(RootHttpClient client,
+            RootHttpClient.CallType callType) throws IOException
+    {
+        Map<String, String> conditionHeaders = (entityTag == null)
+                ? null
+                : Collections.singletonMap("If-None-Match", entityTag);
+
+        RootHttpClient.Response response = client.request("GET", path, null, null, conditionHeaders, callType);
+
+        // A 304 has no body to hand on, whether or not it was asked for
+        if (response.getResponseCode() == NOT_MODIFIED)
+        {
+            unchangedCount++;
+            return null;
+        }
+
+        entityTag = (response.getResponseCode() == 200) ? response.getHeader("ETag") : null;
+        return response;
+    }
+
+    /**
+     * Forget the last version, so that the next fetch gets the whole resource.
+     * The caller's copy should be discarded at the same time.
+     */
+    public synchronized void reset()
+    {
+        entityTag = null;
+    }
+
+    public synchronized String getEntityTag()
+    {
+        return entityTag;
+    }
+
+    /**
+     * @return the number of fetches answered with "not modified"
+     */
+    public synchronized long getUnchangedCount()
+    {
+        return unchangedCount;
+    }
+}
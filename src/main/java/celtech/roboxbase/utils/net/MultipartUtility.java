@@ -2,6 +2,7 @@ package celtech.roboxbase.utils.net;
 
 import celtech.roboxbase.comms.remote.StringToBase64Encoder;
 import celtech.roboxbase.utils.PercentProgressReceiver;
+import celtech.roboxbase.utils.tasks.ProgressBus;
 import java.io.BufferedReader;
 
 import java.io.File;
@@ -121,21 +122,27 @@ public class MultipartUtility
         writer.append(LINE_FEED);
         writer.flush();
 
-        long fileLength = uploadFile.length();
-        
+        ProgressBus.Channel progress = ProgressBus.getInstance().open("Upload " + fileName);
+        ProgressBus.getInstance().subscribe(progress,
+                update -> progressReceiver.updateProgressPercent(update.getPercent()));
+        progress.setTotal(uploadFile.length());
+
         FileInputStream inputStream = new FileInputStream(uploadFile);
         byte[] buffer = new byte[4096];
         int bytesRead = -1;
-        int totalBytesRead = 0;
-        while ((bytesRead = inputStream.read(buffer)) != -1)
+        try
+        {
+            while ((bytesRead = inputStream.read(buffer)) != -1)
+            {
+                progress.add(bytesRead);
+                outputStream.write(buffer, 0, bytesRead);
+            }
+            outputStream.flush();
+        } finally
         {
-            totalBytesRead += bytesRead;
-            double percentComplete = ((double) totalBytesRead / fileLength) * 100.0;
-            progressReceiver.updateProgressPercent(percentComplete);
-            outputStream.write(buffer, 0, bytesRead);
+            inputStream.close();
+            progress.close();
         }
-        outputStream.flush();
-        inputStream.close();
 
         writer.append(LINE_FEED);
         writer.flush();
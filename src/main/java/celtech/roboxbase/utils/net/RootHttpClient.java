@@ -0,0 +1,392 @@
+package celtech.roboxbase.utils.net;
+
+import celtech.roboxbase.comms.remote.StringToBase64Encoder;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * A per-server HTTP client for talking to a Root.
+ *
+ * The JDK keeps idle HTTP connections alive and reuses them for the next
+ * request to the same host, but only once the previous response has been read
+ * to the end and its stream closed. Every request made through this client
+ * drains and closes the response so that the status polls made every second
+ * travel over a pooled connection rather than a new TCP connection each time.
+ *
+ * The Basic authorisation header is computed once, when the PIN is set, rather
+ * than on every request.
+ *
+ * @author ianhudson
+ */
+public class RootHttpClient
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(RootHttpClient.class.getName());
+
+    /**
+     * The kinds of call made to a Root, each of which has its own timeouts.
+     */
+    public enum CallType
+    {
+        /**
+         * Quick enquiries made by the detectors - who are you, list printers
+         * and list cameras
+         */
+        DISCOVERY,
+        /**
+         * Camera snapshots
+         */
+        CAMERA,
+        /**
+         * Printer control and admin requests
+         */
+        CONTROL,
+        /**
+         * Long-lived streams, such as the status stream - the read timeout is
+         * the longest gap allowed between messages
+         */
+        STREAM
+    }
+
+    public static class Timeouts
+    {
+
+        private final int connectTimeoutMs;
+        private final int readTimeoutMs;
+
+        public Timeouts(int connectTimeoutMs, int readTimeoutMs)
+        {
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+        }
+
+        public int getConnectTimeoutMs()
+        {
+            return connectTimeoutMs;
+        }
+
+        public int getReadTimeoutMs()
+        {
+            return readTimeoutMs;
+        }
+    }
+
+    public static class Response
+    {
+
+        private final int responseCode;
+        private final byte[] body;
+        private final String contentType;
+        private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        public Response(int responseCode, byte[] body, String contentType)
+        {
+            this.responseCode = responseCode;
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        public Response(int responseCode, byte[] body, String contentType, Map<String, List<String>> headerFields)
+        {
+            this(responseCode, body, contentType);
+            headerFields.forEach((name, values) ->
+            {
+                if (name != null && values != null && !values.isEmpty())
+                {
+                    headers.put(name, values.get(0));
+                }
+            });
+        }
+
+        public int getResponseCode()
+        {
+            return responseCode;
+        }
+
+        public boolean isSuccess()
+        {
+            return responseCode >= 200 && responseCode < 300;
+        }
+
+        public byte[] getBody()
+        {
+            return body;
+        }
+
+        public String getContentType()
+        {
+            return contentType;
+        }
+
+        /**
+         * @param name the header name, in any case
+         * @return the first value of the named response header, or null
+         */
+        public String getHeader(String name)
+        {
+            return headers.get(name);
+        }
+    }
+
+    /**
+     * A response whose body is read as it arrives rather than drained up
+     * front. Closing it drops the connection rather than returning it to the
+     * keep-alive cache.
+     */
+    public static class StreamResponse implements Closeable
+    {
+
+        private final HttpURLConnection connection;
+        private final int responseCode;
+        private final InputStream inputStream;
+
+        StreamResponse(HttpURLConnection connection, int responseCode, InputStream inputStream)
+        {
+            this.connection = connection;
+            this.responseCode = responseCode;
+            this.inputStream = inputStream;
+        }
+
+        public int getResponseCode()
+        {
+            return responseCode;
+        }
+
+        public boolean isSuccess()
+        {
+            return responseCode >= 200 && responseCode < 300;
+        }
+
+        public InputStream getInputStream()
+        {
+            return inputStream;
+        }
+
+        @Override
+        public void close()
+        {
+            try
+            {
+                inputStream.close();
+            } catch (IOException ex)
+            {
+                // Nothing more we can do with it
+            }
+            connection.disconnect();
+        }
+    }
+
+    private static final Timeouts NO_TIMEOUTS = new Timeouts(0, 0);
+
+    private final String baseUrl;
+    private final String userAgent;
+    private final Map<CallType, Timeouts> timeouts = new EnumMap<>(CallType.class);
+    private volatile String authorisationHeader = null;
+
+    public RootHttpClient(String hostAddress, int port, String userAgent)
+    {
+        this.baseUrl = "http://" + hostAddress + ":" + port;
+        this.userAgent = userAgent;
+    }
+
+    public String getBaseUrl()
+    {
+        return baseUrl;
+    }
+
+    public synchronized void setTimeouts(CallType callType, Timeouts callTimeouts)
+    {
+        timeouts.put(callType, callTimeouts);
+    }
+
+    public synchronized Timeouts getTimeouts(CallType callType)
+    {
+        return timeouts.getOrDefault(callType, NO_TIMEOUTS);
+    }
+
+    /**
+     * Set the credentials used for the Basic authorisation header. A null user
+     * means requests are sent without authorisation.
+     *
+     * @param user
+     * @param pin
+     */
+    public void setCredentials(String user, String pin)
+    {
+        if (user == null)
+        {
+            authorisationHeader = null;
+        } else
+        {
+            try
+            {
+                authorisationHeader = "Basic " + StringToBase64Encoder.encode(user + ":" + pin);
+            } catch (UnsupportedEncodingException ex)
+            {
+                steno.error("Unable to encode credentials for " + baseUrl);
+                authorisationHeader = null;
+            }
+        }
+    }
+
+    public Response get(String path, CallType callType) throws IOException
+    {
+        return request("GET", path, null, null, callType);
+    }
+
+    public Response post(String path, String jsonContent, CallType callType) throws IOException
+    {
+        return request("POST", path,
+                (jsonContent == null) ? null : jsonContent.getBytes(StandardCharsets.UTF_8),
+                "application/json", callType);
+    }
+
+    public Response request(String method, String path, byte[] content, String contentType,
+            CallType callType) throws IOException
+    {
+        return request(method, path, content, contentType, null, callType);
+    }
+
+    public Response request(String method, String path, byte[] content, String contentType,
+            Map<String, String> extraHeaders, CallType callType) throws IOException
+    {
+        HttpURLConnection con = openConnection(method, path, extraHeaders, callType);
+
+        if (content != null)
+        {
+            con.setDoOutput(true);
+            if (contentType != null)
+            {
+                con.setRequestProperty("Content-Type", contentType);
+            }
+            con.setFixedLengthStreamingMode(content.length);
+            try (OutputStream outputStream = con.getOutputStream())
+            {
+                outputStream.write(content);
+            }
+        }
+
+        int responseCode = con.getResponseCode();
+        byte[] body = drain(responseCode >= 400 ? con.getErrorStream() : con.getInputStream());
+
+        return new Response(responseCode, body, con.getContentType(), con.getHeaderFields());
+    }
+
+    /**
+     * Open a GET whose response body is left for the caller to read as it
+     * arrives. An error response is returned with its body already drained.
+     *
+     * @param path
+     * @param extraHeaders
+     * @param callType
+     * @return
+     * @throws IOException
+     */
+    public StreamResponse openStream(String path, Map<String, String> extraHeaders, CallType callType) throws IOException
+    {
+        HttpURLConnection con = openConnection("GET", path, extraHeaders, callType);
+
+        int responseCode = con.getResponseCode();
+        if (responseCode >= 400)
+        {
+            return new StreamResponse(con, responseCode, new ByteArrayInputStream(drain(con.getErrorStream())));
+        }
+
+        return new StreamResponse(con, responseCode, con.getInputStream());
+    }
+
+    private HttpURLConnection openConnection(String method, String path, Map<String, String> extraHeaders,
+            CallType callType) throws IOException
+    {
+        Timeouts callTimeouts = getTimeouts(callType);
+        HttpURLConnection con = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+
+        con.setRequestMethod(method);
+        con.setUseCaches(false);
+        if (userAgent != null)
+        {
+            con.setRequestProperty("User-Agent", userAgent);
+        }
+        String authorisation = authorisationHeader;
+        if (authorisation != null)
+        {
+            con.setRequestProperty("Authorization", authorisation);
+        }
+        if (extraHeaders != null)
+        {
+            extraHeaders.forEach(con::setRequestProperty);
+        }
+        con.setConnectTimeout(callTimeouts.getConnectTimeoutMs());
+        con.setReadTimeout(callTimeouts.getReadTimeoutMs());
+
+        return con;
+    }
+
+    public CompletableFuture<Response> getAsync(String path, CallType callType)
+    {
+        return requestAsync("GET", path, null, null, callType);
+    }
+
+    public CompletableFuture<Response> postAsync(String path, String jsonContent, CallType callType)
+    {
+        return requestAsync("POST", path,
+                (jsonContent == null) ? null : jsonContent.getBytes(StandardCharsets.UTF_8),
+                "application/json", callType);
+    }
+
+    public CompletableFuture<Response> requestAsync(String method, String path, byte[] content,
+            String contentType, CallType callType)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return request(method, path, content, contentType, callType);
+            } catch (IOException ex)
+            {
+                throw new CompletionException(ex);
+            }
+        }, BackgroundExecutor.getInstance());
+    }
+
+    /**
+     * Read a response stream to the end and close it, which hands the
+     * underlying connection back to the keep-alive cache.
+     */
+    private static byte[] drain(InputStream inputStream) throws IOException
+    {
+        if (inputStream == null)
+        {
+            return new byte[0];
+        }
+
+        try (InputStream stream = inputStream)
+        {
+            ByteArrayOutputStream bytesRead = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = stream.read(buffer)) != -1)
+            {
+                bytesRead.write(buffer, 0, count);
+            }
+            return bytesRead.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package celtech.roboxbase.utils.tasks;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import libertysystems.stenographer.Stenographer;
+import libertysystems.stenographer.StenographerFactory;
+
+/**
+ * The threads that background work runs on.
+ *
+ * Work runs on a pool of named daemon threads of bounded size; idle threads
+ * are retired after a minute. Once every thread is busy, further work waits in
+ * a queue. Delayed work is timed by a single scheduler thread and then handed
+ * to the pool, so a slow task never holds up the timing of the others.
+ *
+ * @author ianhudson
+ */
+public class BackgroundExecutor implements Executor
+{
+
+    private static final Stenographer steno = StenographerFactory.getStenographer(BackgroundExecutor.class.getName());
+
+    public static final int DEFAULT_MAX_THREADS = 128;
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
+    private static BackgroundExecutor instance = null;
+    private static BackgroundExecutor statusPollInstance = null;
+
+    private final String name;
+    private final int maxThreads;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicBoolean saturationReported = new AtomicBoolean(false);
+
+    public static synchronized BackgroundExecutor getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new BackgroundExecutor("Robox", DEFAULT_MAX_THREADS);
+        }
+        return instance;
+    }
+
+    /**
+     * Printer status polls have a pool of their own, so that they never wait
+     * behind work which is itself waiting for a printer's status to change.
+     *
+     * @return
+     */
+    public static synchronized BackgroundExecutor getStatusPollInstance()
+    {
+        if (statusPollInstance == null)
+        {
+            statusPollInstance = new BackgroundExecutor("StatusPoll", DEFAULT_MAX_THREADS);
+        }
+        return statusPollInstance;
+    }
+
+    public BackgroundExecutor(String name, int maxThreads)
+    {
+        this.name = name;
+        this.maxThreads = maxThreads;
+
+        workers = new ThreadPoolExecutor(maxThreads, maxThreads,
+                IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedDaemonThreads(name + "-worker-"));
+        workers.allowCoreThreadTimeOut(true);
+
+        scheduler = new ScheduledThreadPoolExecutor(1, namedDaemonThreads(name + "-scheduler-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadFactory namedDaemonThreads(String prefix)
+    {
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return (runnable) ->
+        {
+            Thread thread = new Thread(runnable, prefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void execute(Runnable runnable)
+    {
+        execute(runnable, null);
+    }
+
+    /**
+     * Run on a pool thread, which is named after the task while it runs.
+     *
+     * @param runnable
+     * @param taskName may be null
+     */
+    public void execute(Runnable runnable, String taskName)
+    {
+        if (workers.getActiveCount() >= maxThreads)
+        {
+            if (saturationReported.compareAndSet(false, true))
+            {
+                steno.warning("All " + maxThreads + " " + name + " background threads are busy - work is being queued");
+            }
+        } else
+        {
+            saturationReported.set(false);
+        }
+
+        workers.execute(() -> runTask(runnable, taskName));
+    }
+
+    /**
+     * Run on a pool thread after the given delay.
+     *
+     * @param runnable
+     * @param delayMs
+     * @return
+     */
+    public ScheduledFuture<?> schedule(Runnable runnable, long delayMs)
+    {
+        return schedule(runnable, delayMs, null);
+    }
+
+    /**
+     * Run on a pool thread after the given delay, naming the thread after the
+     * task while it runs.
+     *
+     * @param runnable
+     * @param delayMs
+     * @param taskName may be null
+     * @return
+     */
+    public ScheduledFuture<?> schedule(Runnable runnable, long delayMs, String taskName)
+    {
+        return scheduler.schedule(() -> execute(runnable, taskName), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void runTask(Runnable runnable, String taskName)
+    {
+        Thread currentThread = Thread.currentThread();
+        String poolThreadName = currentThread.getName();
+        if (taskName != null)
+        {
+            currentThread.setName(taskName);
+        }
+
+        try
+        {
+            runnable.run();
+        } catch (Throwable ex)
+        {
+            steno.exception("Uncaught exception in background task " + currentThread.getName(), ex);
+        } finally
+        {
+            if (taskName != null)
+            {
+                currentThread.setName(poolThreadName);
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads running work
+     */
+    public int getActiveCount()
+    {
+        return workers.getActiveCount();
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueDepth()
+    {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return the number of delayed tasks waiting for their time to come
+     */
+    public int getScheduledCount()
+    {
+        return scheduler.getQueue().size();
+    }
+
+    public int getPoolSize()
+    {
+        return workers.getPoolSize();
+    }
+
+    public int getLargestPoolSize()
+    {
+        return workers.getLargestPoolSize();
+    }
+
+    public long getCompletedTaskCount()
+    {
+        return workers.getCompletedTaskCount();
+    }
+
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+    public void shutdown()
+    {
+        scheduler.shutdownNow();
+        workers.shutdown();
+    }
+}
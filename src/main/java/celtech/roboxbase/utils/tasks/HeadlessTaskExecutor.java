@@ -1,13 +1,19 @@
 package celtech.roboxbase.utils.tasks;
 
-import java.util.Timer;
-import java.util.TimerTask;
-import javafx.application.Platform;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import javafx.concurrent.Task;
 import libertysystems.stenographer.Stenographer;
 import libertysystems.stenographer.StenographerFactory;
 
 /**
+ * A TaskExecutor for servers, which does not need the JavaFX toolkit.
+ *
+ * In place of the JavaFX application thread there is an event loop - a single
+ * daemon thread that runs the "GUI thread" work in the order it was submitted,
+ * just as Platform.runLater does. Printer model updates and task responses are
+ * therefore made on one thread, as they are in AutoMaker, without starting the
+ * FX platform.
  *
  * @author ianhudson
  */
@@ -16,54 +22,83 @@ public class HeadlessTaskExecutor implements TaskExecutor
 
     private final Stenographer steno = StenographerFactory.getStenographer(HeadlessTaskExecutor.class.getName());
 
-    @Override
-    public void runTaskAsDaemon(Task task)
+    private final BlockingQueue<Runnable> eventQueue = new LinkedBlockingQueue<>();
+    private final Thread eventLoopThread;
+
+    public HeadlessTaskExecutor()
+    {
+        eventLoopThread = new Thread(this::runEventLoop, "HeadlessEventLoop");
+        eventLoopThread.setDaemon(true);
+        eventLoopThread.start();
+    }
+
+    private void runEventLoop()
     {
-        runOnGUIThread(new Runnable()
+        while (true)
         {
+            Runnable event;
+            try
+            {
+                event = eventQueue.take();
+            } catch (InterruptedException ex)
+            {
+                steno.info("Event loop interrupted - exiting");
+                return;
+            }
 
-            @Override
-            public void run()
+            try
+            {
+                event.run();
+            } catch (Throwable ex)
             {
-                Thread th = new Thread(task);
-                th.setDaemon(true);
-                th.start();
+                // Keep going, as the FX thread would
+                steno.exception("Exception on event loop: ", ex);
             }
-        });
+        }
+    }
+
+    /**
+     * @return the number of events waiting to run on the event loop
+     */
+    public int getEventQueueDepth()
+    {
+        return eventQueue.size();
+    }
+
+    @Override
+    public boolean isOnGUIThread()
+    {
+        return Thread.currentThread() == eventLoopThread;
+    }
+
+    @Override
+    public void runTaskAsDaemon(Task task)
+    {
+        BackgroundExecutor.getInstance().execute(task);
     }
 
     @Override
     public void runOnGUIThread(Runnable runnable)
     {
-        if (Platform.isFxApplicationThread())
+        if (isOnGUIThread())
         {
             runnable.run();
         } else
         {
-            Platform.runLater(runnable);
+            eventQueue.add(runnable);
         }
     }
 
     @Override
     public void runOnBackgroundThread(Runnable runnable)
     {
-        Thread th = new Thread(runnable);
-        th.setDaemon(true);
-        th.start();
+        BackgroundExecutor.getInstance().execute(runnable);
     }
     
     @Override
     public void runDelayedOnBackgroundThread(Runnable runnable, long delay)
     {
-        new Timer().schedule(new TimerTask()
-                             {
-                                @Override
-                                public void run()
-                                {
-                                    runnable.run();
-                                }
-                             },
-                             delay);
+        BackgroundExecutor.getInstance().schedule(runnable, delay);
     }
 
     @Override
@@ -86,7 +121,7 @@ public class HeadlessTaskExecutor implements TaskExecutor
                 taskResponse.setReturnedObject(returnedObject);
             }
 
-            responder.taskEnded(taskResponse);
+            runOnGUIThread(() -> responder.taskEnded(taskResponse));
         }
     }
 
@@ -131,11 +166,6 @@ public class HeadlessTaskExecutor implements TaskExecutor
                 }
             }
         };
-        Thread taskThread = new Thread(runTask);
-        // Setting to Daemon is not strictly necessary if the cancelling logic
-        // is implemented correctly, but just in case.
-        taskThread.setDaemon(true);
-        taskThread.setName(taskName);
-        taskThread.start();
+        BackgroundExecutor.getInstance().execute(runTask, taskName);
     }
 }
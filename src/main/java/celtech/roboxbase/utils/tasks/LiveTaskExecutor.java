@@ -1,7 +1,5 @@
 package celtech.roboxbase.utils.tasks;
 
-import java.util.Timer;
-import java.util.TimerTask;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import libertysystems.stenographer.Stenographer;
@@ -26,9 +24,7 @@ public class LiveTaskExecutor implements TaskExecutor
             @Override
             public void run()
             {
-                Thread th = new Thread(task);
-                th.setDaemon(true);
-                th.start();
+                BackgroundExecutor.getInstance().execute(task);
             }
         });
     }
@@ -51,21 +47,13 @@ public class LiveTaskExecutor implements TaskExecutor
     @Override
     public void runOnBackgroundThread(Runnable runnable)
     {
-        Thread th = new Thread(runnable);
-        th.setDaemon(true);
-        th.start();
+        BackgroundExecutor.getInstance().execute(runnable);
     }
     
     @Override
     public void runDelayedOnBackgroundThread(Runnable runnable, long delay)
     {
-        new Timer().schedule(new TimerTask() {
-                                @Override
-                                public void run() {
-                                    runnable.run();
-                                }
-                             },
-                             delay);
+        BackgroundExecutor.getInstance().schedule(runnable, delay);
     }
 
     @Override
@@ -136,11 +124,6 @@ public class LiveTaskExecutor implements TaskExecutor
                 }
             }
         };
-        Thread taskThread = new Thread(runTask);
-        // Setting to Daemon is not strictly necessary if the cancelling logic
-        // is implemented correctly, but just in case.
-        taskThread.setDaemon(true);
-        taskThread.setName(taskName);
-        taskThread.start();
+        BackgroundExecutor.getInstance().execute(runTask, taskName);
     }
 }
@@ -0,0 +1,383 @@
+package celtech.roboxbase.utils.tasks;
+
+import celtech.roboxbase.BaseLookup;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Carries progress from long running work to whoever is showing it.
+ *
+ * Work publishes raw counters to a channel as often as it likes - per line,
+ * per packet - which only costs a couple of field writes. Each subscriber is
+ * handed the latest state of the channels it follows at its own interval, and
+ * only if something has changed, so the cost of showing progress does not
+ * depend on how often it is published. The final state of a channel is handed
+ * to its subscribers as it is closed.
+ *
+ * Subscribers are called on a background thread; GUI subscribers should be
+ * wrapped with onGUIThread.
+ *
+ * @author ianhudson
+ */
+public class ProgressBus
+{
+
+    public static final long DEFAULT_INTERVAL_MS = 100;
+
+    private static ProgressBus instance = null;
+
+    private final BackgroundExecutor executor;
+    private final List<Channel> openChannels = new CopyOnWriteArrayList<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile long defaultIntervalMs = DEFAULT_INTERVAL_MS;
+
+    public static synchronized ProgressBus getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new ProgressBus(BackgroundExecutor.getInstance());
+        }
+        return instance;
+    }
+
+    public ProgressBus(BackgroundExecutor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * The state of a channel when it was handed to a subscriber.
+     */
+    public static class Update
+    {
+
+        private final String channelName;
+        private final long done;
+        private final long total;
+        private final String message;
+        private final boolean finished;
+
+        private Update(String channelName, long done, long total, String message, boolean finished)
+        {
+            this.channelName = channelName;
+            this.done = done;
+            this.total = total;
+            this.message = message;
+            this.finished = finished;
+        }
+
+        public String getChannelName()
+        {
+            return channelName;
+        }
+
+        public long getDone()
+        {
+            return done;
+        }
+
+        public long getTotal()
+        {
+            return total;
+        }
+
+        /**
+         * @return the last message published, or null if there hasn't been one
+         */
+        public String getMessage()
+        {
+            return message;
+        }
+
+        /**
+         * @return true if the channel has been closed
+         */
+        public boolean isFinished()
+        {
+            return finished;
+        }
+
+        /**
+         * @return done as a fraction of total, or 0 if the total is not known
+         */
+        public double getFraction()
+        {
+            return (total > 0) ? Math.min(1.0, (double) done / (double) total) : 0;
+        }
+
+        public double getPercent()
+        {
+            return getFraction() * 100.0;
+        }
+    }
+
+    /**
+     * Where one piece of work publishes its progress. Publishing is meant to
+     * be done from one thread.
+     */
+    public class Channel
+    {
+
+        private final String name;
+        private final AtomicLong version = new AtomicLong(0);
+        private final AtomicLong done = new AtomicLong(0);
+        private volatile long total = 0;
+        private volatile String message = null;
+        private volatile boolean finished = false;
+
+        private Channel(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void update(long done, long total)
+        {
+            this.done.set(done);
+            this.total = total;
+            version.incrementAndGet();
+        }
+
+        /**
+         * @param increment added to the work done
+         */
+        public void add(long increment)
+        {
+            done.addAndGet(increment);
+            version.incrementAndGet();
+        }
+
+        public void setTotal(long total)
+        {
+            this.total = total;
+            version.incrementAndGet();
+        }
+
+        public void message(String message)
+        {
+            this.message = message;
+            version.incrementAndGet();
+        }
+
+        /**
+         * Hand the final state to the subscribers, and stop following the
+         * channel.
+         */
+        public void close()
+        {
+            if (!finished)
+            {
+                finished = true;
+                version.incrementAndGet();
+                channelClosed(this);
+            }
+        }
+
+        private Update snapshot()
+        {
+            return new Update(name, done.get(), total, message, finished);
+        }
+    }
+
+    /**
+     * Something following one or more channels.
+     */
+    public class Subscription
+    {
+
+        private static final long NOT_DELIVERED = -1;
+
+        private final Predicate<Channel> follows;
+        private final long intervalMs;
+        private final Consumer<Update> listener;
+        // A subscription to a single channel ends with it
+        private final boolean endsWithChannel;
+        private final Map<Channel, Long> deliveredVersions = new HashMap<>();
+        private ScheduledFuture<?> nextDelivery = null;
+        private boolean cancelled = false;
+
+        private Subscription(Predicate<Channel> follows, long intervalMs, Consumer<Update> listener, boolean endsWithChannel)
+        {
+            this.follows = follows;
+            this.intervalMs = Math.max(1, intervalMs);
+            this.listener = listener;
+            this.endsWithChannel = endsWithChannel;
+        }
+
+        public synchronized void cancel()
+        {
+            cancelled = true;
+            deliveredVersions.clear();
+            if (nextDelivery != null)
+            {
+                nextDelivery.cancel(false);
+                nextDelivery = null;
+            }
+            subscriptions.remove(this);
+        }
+
+        public synchronized boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        private synchronized void follow(Channel channel)
+        {
+            if (!cancelled && follows.test(channel))
+            {
+                deliveredVersions.putIfAbsent(channel, NOT_DELIVERED);
+                if (nextDelivery == null)
+                {
+                    nextDelivery = executor.schedule(this::deliverOnSchedule, intervalMs, "Progress " + channel.getName());
+                }
+            }
+        }
+
+        private synchronized void deliverOnSchedule()
+        {
+            nextDelivery = null;
+            if (cancelled)
+            {
+                return;
+            }
+
+            deliverChanges();
+            if (!deliveredVersions.isEmpty())
+            {
+                nextDelivery = executor.schedule(this::deliverOnSchedule, intervalMs);
+            }
+        }
+
+        private synchronized void deliverClosed(Channel channel)
+        {
+            if (cancelled || !deliveredVersions.containsKey(channel))
+            {
+                return;
+            }
+
+            deliverChanges();
+            if (deliveredVersions.isEmpty() && nextDelivery != null)
+            {
+                nextDelivery.cancel(false);
+                nextDelivery = null;
+            }
+        }
+
+        private void deliverChanges()
+        {
+            Iterator<Map.Entry<Channel, Long>> followed = deliveredVersions.entrySet().iterator();
+            while (followed.hasNext())
+            {
+                Map.Entry<Channel, Long> entry = followed.next();
+                Channel channel = entry.getKey();
+                long version = channel.version.get();
+                Update update = channel.snapshot();
+                if (version != entry.getValue())
+                {
+                    entry.setValue(version);
+                    listener.accept(update);
+                }
+                if (update.isFinished())
+                {
+                    followed.remove();
+                }
+            }
+
+            if (endsWithChannel && deliveredVersions.isEmpty())
+            {
+                cancelled = true;
+                subscriptions.remove(this);
+            }
+        }
+    }
+
+    /**
+     * @param defaultIntervalMs how often subscribers that don't ask for an
+     * interval are handed updates
+     */
+    public void setDefaultInterval(long defaultIntervalMs)
+    {
+        this.defaultIntervalMs = defaultIntervalMs;
+    }
+
+    public Channel open(String name)
+    {
+        Channel channel = new Channel(name);
+        openChannels.add(channel);
+        subscriptions.forEach(subscription -> subscription.follow(channel));
+        return channel;
+    }
+
+    /**
+     * Follow the channel until it is closed, at the default interval.
+     *
+     * @param channel
+     * @param listener
+     * @return
+     */
+    public Subscription subscribe(Channel channel, Consumer<Update> listener)
+    {
+        return subscribe(channel, defaultIntervalMs, listener);
+    }
+
+    /**
+     * Follow the channel until it is closed.
+     *
+     * @param channel
+     * @param intervalMs the shortest time between updates
+     * @param listener
+     * @return
+     */
+    public Subscription subscribe(Channel channel, long intervalMs, Consumer<Update> listener)
+    {
+        Subscription subscription = new Subscription(followed -> followed == channel, intervalMs, listener, true);
+        subscriptions.add(subscription);
+        subscription.follow(channel);
+        return subscription;
+    }
+
+    /**
+     * Follow every channel with the given name, including those opened
+     * later, until the subscription is cancelled.
+     *
+     * @param channelName null to follow all channels
+     * @param intervalMs the shortest time between updates from each channel
+     * @param listener
+     * @return
+     */
+    public Subscription subscribe(String channelName, long intervalMs, Consumer<Update> listener)
+    {
+        Subscription subscription = new Subscription(
+                channel -> channelName == null || channelName.equals(channel.getName()),
+                intervalMs, listener, false);
+        subscriptions.add(subscription);
+        openChannels.forEach(subscription::follow);
+        return subscription;
+    }
+
+    /**
+     * @param listener
+     * @return the listener, called on the GUI thread
+     */
+    public static Consumer<Update> onGUIThread(Consumer<Update> listener)
+    {
+        return update -> BaseLookup.getTaskExecutor().runOnGUIThread(() -> listener.accept(update));
+    }
+
+    private void channelClosed(Channel channel)
+    {
+        openChannels.remove(channel);
+        subscriptions.forEach(subscription -> subscription.deliverClosed(channel));
+    }
+}
@@ -2,6 +2,7 @@ package celtech.roboxbase.utils.tasks;
 
 import java.util.Timer;
 import java.util.TimerTask;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 
 /**
@@ -22,6 +23,15 @@ public interface TaskExecutor
     public void respondOnGUIThread(TaskResponder responder, boolean success, String message, Object returnedObject);
     public void respondOnCurrentThread(TaskResponder responder, boolean success, String message);
     public void runOnGUIThread(Runnable runnable);
+
+    /**
+     * @return true if the caller is on the thread that runOnGUIThread uses
+     */
+    public default boolean isOnGUIThread()
+    {
+        return Platform.isFxApplicationThread();
+    }
+
     public void runOnBackgroundThread(Runnable runnable);
     public void runDelayedOnBackgroundThread(Runnable runnable, long delay);
     
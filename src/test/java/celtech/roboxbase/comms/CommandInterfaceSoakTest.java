@@ -0,0 +1,112 @@
+package celtech.roboxbase.comms;
+
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
+import celtech.roboxbase.configuration.datafileaccessors.PrinterContainer;
+import celtech.roboxbase.printerControl.model.HardwarePrinter;
+import celtech.roboxbase.utils.BaseEnvironmentConfiguredTest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Connects a farm's worth of dummy printers and checks that polling them does
+ * not need a thread per printer.
+ *
+ * @author ianhudson
+ */
+public class CommandInterfaceSoakTest extends BaseEnvironmentConfiguredTest
+{
+
+    private static final int PRINTER_COUNT = 100;
+    private static final int POLL_INTERVAL_MS = 100;
+    private static final int POLLS_PER_PRINTER = 5;
+
+    @Test
+    public void testPrintersArePolledFromASharedPool() throws Exception
+    {
+        CountDownLatch allDisconnected = new CountDownLatch(PRINTER_COUNT);
+        PrinterStatusConsumer statusConsumer = new PrinterStatusConsumer()
+        {
+            @Override
+            public void printerConnected(DetectedDevice printerHandle)
+            {
+            }
+
+            @Override
+            public void disconnected(DetectedDevice printerHandle)
+            {
+                allDisconnected.countDown();
+            }
+        };
+
+        int threadsBefore = Thread.activeCount();
+
+        List<CountingDummyPrinter> commandInterfaces = new ArrayList<>();
+        for (int printerNumber = 0; printerNumber < PRINTER_COUNT; printerNumber++)
+        {
+            DetectedDevice printerHandle = new DetectedDevice(DeviceDetector.DeviceConnectionType.DUMMY,
+                    "Soak Printer " + printerNumber);
+            CountingDummyPrinter commandInterface = new CountingDummyPrinter(statusConsumer,
+                    printerHandle, "Soak " + printerNumber);
+            HardwarePrinter hardwarePrinter = new HardwarePrinter(statusConsumer, commandInterface);
+            hardwarePrinter.setPrinterConfiguration(PrinterContainer.getPrinterByID(PrinterContainer.defaultPrinterID));
+
+            // Skip the identification steps - they are not what is being measured
+            commandInterface.connectToPrinter();
+            commandInterface.commsState = RoboxCommsState.CONNECTED;
+            commandInterface.start();
+            commandInterfaces.add(commandInterface);
+        }
+
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!allPolled(commandInterfaces) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+        int threadsWhilePolling = Thread.activeCount();
+
+        assertTrue("not every printer was polled", allPolled(commandInterfaces));
+        assertTrue("threads before " + threadsBefore + " while polling " + threadsWhilePolling,
+                threadsWhilePolling - threadsBefore < PRINTER_COUNT / 4);
+
+        for (CountingDummyPrinter commandInterface : commandInterfaces)
+        {
+            commandInterface.shutdown();
+        }
+        assertTrue(allDisconnected.await(10, TimeUnit.SECONDS));
+    }
+
+    private static boolean allPolled(List<CountingDummyPrinter> commandInterfaces)
+    {
+        return commandInterfaces.stream()
+                .allMatch(commandInterface -> commandInterface.statusRequests.get() >= POLLS_PER_PRINTER);
+    }
+
+    private static class CountingDummyPrinter extends DummyPrinterCommandInterface
+    {
+
+        private final AtomicInteger statusRequests = new AtomicInteger(0);
+
+        CountingDummyPrinter(PrinterStatusConsumer controlInterface, DetectedDevice printerHandle, String printerName)
+        {
+            super(controlInterface, printerHandle, false, POLL_INTERVAL_MS, printerName, "RBX01");
+        }
+
+        @Override
+        public RoboxRxPacket writeToPrinterImpl(RoboxTxPacket messageToWrite, boolean dontPublishResult) throws RoboxCommsException
+        {
+            if (messageToWrite.getPacketType() == TxPacketTypeEnum.STATUS_REQUEST)
+            {
+                statusRequests.incrementAndGet();
+            }
+            return super.writeToPrinterImpl(messageToWrite, dontPublishResult);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package celtech.roboxbase.comms;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the detector against a fake sysfs and device directory.
+ *
+ * @author ianhudson
+ */
+public class LinuxSysfsDeviceDetectorTest
+{
+
+    private static final String ROBOX_VENDOR_ID = "16D0";
+    private static final String ROBOX_PRODUCT_ID = "081B";
+
+    @Rule
+    public TemporaryFolder fakeRoot = new TemporaryFolder();
+
+    private Path usbDevicesDirectory;
+    private Path deviceNodeDirectory;
+    private LinuxSysfsDeviceDetector detector;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        usbDevicesDirectory = Files.createDirectories(fakeRoot.getRoot().toPath().resolve("sys/bus/usb/devices"));
+        deviceNodeDirectory = Files.createDirectories(fakeRoot.getRoot().toPath().resolve("dev"));
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (detector != null)
+        {
+            detector.shutdown();
+        }
+    }
+
+    @Test
+    public void testFindsAttachedPrinters() throws IOException
+    {
+        addUSBDevice("1-1", "16d0", "081b", "Robox", "ttyACM0", true);
+        addUSBDevice("1-2", "16d0", "0000", "Robox Pro", "ttyACM1", true);
+        addUSBDevice("1-3", "0403", "6001", "FT232R USB UART", "ttyUSB0", false);
+        startDetector();
+
+        List<DetectedDevice> detectedDevices = detector.searchForDevices();
+
+        assertEquals(2, detectedDevices.size());
+        assertEquals(deviceNodeDirectory.resolve("ttyACM0").toString(), detectedDevices.get(0).getConnectionHandle());
+        assertEquals(deviceNodeDirectory.resolve("ttyACM1").toString(), detectedDevices.get(1).getConnectionHandle());
+        assertEquals(DeviceDetector.DeviceConnectionType.SERIAL, detectedDevices.get(0).getConnectionType());
+    }
+
+    @Test
+    public void testPrinterWithoutDeviceNodeIsNotReported() throws IOException
+    {
+        addUSBDevice("1-1", "16d0", "081b", "Robox", "ttyACM0", true);
+        Files.delete(deviceNodeDirectory.resolve("ttyACM0"));
+        startDetector();
+
+        assertTrue(detector.searchForDevices().isEmpty());
+    }
+
+    @Test
+    public void testRescansOnlyWhenDeviceNodesChange() throws Exception
+    {
+        addUSBDevice("1-1", "16d0", "081b", "Robox", "ttyACM0", true);
+        startDetector();
+
+        assertEquals(1, detector.searchForDevices().size());
+        assertEquals(1, detector.searchForDevices().size());
+        assertEquals(1, detector.getScanCount());
+
+        addUSBDevice("1-4", "16d0", "081b", "Robox", "ttyACM3", true);
+
+        List<DetectedDevice> detectedDevices = detector.searchForDevices();
+        for (int attempt = 0; attempt < 50 && detectedDevices.size() < 2; attempt++)
+        {
+            Thread.sleep(100);
+            detectedDevices = detector.searchForDevices();
+        }
+
+        assertEquals(2, detectedDevices.size());
+        assertEquals(2, detector.getScanCount());
+    }
+
+    @Test
+    public void testUsesSerialLinksWithoutSysfs() throws IOException
+    {
+        Files.delete(usbDevicesDirectory);
+        Path serialByID = Files.createDirectories(deviceNodeDirectory.resolve("serial/by-id"));
+        Path robox = Files.createFile(deviceNodeDirectory.resolve("ttyACM0"));
+        Path other = Files.createFile(deviceNodeDirectory.resolve("ttyUSB0"));
+        Files.createSymbolicLink(serialByID.resolve("usb-CEL_Robox_0001-if00"), robox);
+        Files.createSymbolicLink(serialByID.resolve("usb-FTDI_FT232R_USB_UART-if00-port0"), other);
+        Files.createSymbolicLink(serialByID.resolve("usb-CEL_Robox_0002-if00"), deviceNodeDirectory.resolve("ttyACM9"));
+        startDetector();
+
+        assertTrue(detector.isAvailable());
+        List<DetectedDevice> detectedDevices = detector.searchForDevices();
+
+        assertEquals(1, detectedDevices.size());
+        assertEquals(robox.toRealPath().toString(), detectedDevices.get(0).getConnectionHandle());
+    }
+
+    @Test
+    public void testNotAvailableWithoutSysfsOrSerialLinks() throws IOException
+    {
+        Files.delete(usbDevicesDirectory);
+        startDetector();
+
+        assertFalse(detector.isAvailable());
+        assertTrue(detector.searchForDevices().isEmpty());
+    }
+
+    private void startDetector()
+    {
+        detector = new LinuxSysfsDeviceDetector(usbDevicesDirectory, deviceNodeDirectory,
+                ROBOX_VENDOR_ID, ROBOX_PRODUCT_ID, "Robox");
+    }
+
+    /**
+     * Lay out a device the way the kernel does - ACM devices keep their tty
+     * in a tty directory below the interface, USB serial converters directly
+     * in the interface.
+     */
+    private void addUSBDevice(String deviceName, String vendorID, String productID, String productName,
+            String ttyName, boolean isACM) throws IOException
+    {
+        Path usbDevice = Files.createDirectories(usbDevicesDirectory.resolve(deviceName));
+        Files.write(usbDevice.resolve("idVendor"), (vendorID + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(usbDevice.resolve("idProduct"), (productID + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(usbDevice.resolve("product"), (productName + "\n").getBytes(StandardCharsets.UTF_8));
+
+        Path usbInterface = Files.createDirectories(usbDevice.resolve(deviceName + ":1.0"));
+        if (isACM)
+        {
+            Files.createDirectories(usbInterface.resolve("tty").resolve(ttyName));
+        } else
+        {
+            Files.createDirectories(usbInterface.resolve(ttyName));
+        }
+
+        Files.createFile(deviceNodeDirectory.resolve(ttyName));
+    }
+}
@@ -0,0 +1,209 @@
+package celtech.roboxbase.comms;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs discovery over loopback multicast against local stand-ins for Roots.
+ * Each stand-in replies from its own loopback address, as separate Roots
+ * would.
+ *
+ * @author ianhudson
+ */
+public class RemoteServerDetectorTest
+{
+
+    private static final String TEST_GROUP = "239.255.68.89";
+    private static final long SEARCH_TIME_MS = 1500;
+
+    private NetworkInterface loopbackInterface;
+    private InetSocketAddress transmitGroup;
+    private final List<StandInRoot> standInRoots = new ArrayList<>();
+    private final Set<InetAddress> addressesVerified = ConcurrentHashMap.newKeySet();
+    private RemoteServerDetector detector;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        loopbackInterface = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        int discoveryPort;
+        try (DatagramSocket portFinder = new DatagramSocket(0))
+        {
+            discoveryPort = portFinder.getLocalPort();
+        }
+        transmitGroup = new InetSocketAddress(TEST_GROUP, discoveryPort);
+    }
+
+    @After
+    public void tearDown()
+    {
+        standInRoots.forEach(StandInRoot::close);
+        if (detector != null)
+        {
+            detector.shutdown();
+        }
+    }
+
+    @Test
+    public void testFindsEveryRootOnce() throws Exception
+    {
+        startStandInRoot("127.0.0.2", RemoteDiscovery.iAmHereMessage, 2);
+        startStandInRoot("127.0.0.3", RemoteDiscovery.iAmHereMessage, 1);
+        startStandInRoot("127.0.0.4", "Something else", 1);
+        startDetector((address) -> verified(address));
+
+        List<DetectedServer> servers = detector.searchForServers();
+
+        assertEquals(2, servers.size());
+        assertEquals(2, addressesVerified.size());
+        assertTrue(addressesVerified.contains(InetAddress.getByName("127.0.0.2")));
+        assertTrue(addressesVerified.contains(InetAddress.getByName("127.0.0.3")));
+    }
+
+    @Test
+    public void testRootsAreReportedAsTheyAreFound() throws Exception
+    {
+        InetAddress slowRoot = InetAddress.getByName("127.0.0.2");
+        startStandInRoot("127.0.0.2", RemoteDiscovery.iAmHereMessage, 1);
+        startStandInRoot("127.0.0.3", RemoteDiscovery.iAmHereMessage, 1);
+        startDetector((address) ->
+        {
+            if (address.equals(slowRoot))
+            {
+                sleep(SEARCH_TIME_MS + 500);
+            }
+            return verified(address);
+        });
+
+        long searchStart = System.currentTimeMillis();
+        AtomicLong fastRootFoundAfter = new AtomicLong(-1);
+        List<DetectedServer> serversFound = Collections.synchronizedList(new ArrayList<>());
+        detector.searchForServers((server) ->
+        {
+            if (!server.getAddress().equals(slowRoot))
+            {
+                fastRootFoundAfter.set(System.currentTimeMillis() - searchStart);
+            }
+            serversFound.add(server);
+        });
+
+        // The slow Root does not hold up the fast one
+        assertTrue("found after " + fastRootFoundAfter.get(),
+                fastRootFoundAfter.get() >= 0 && fastRootFoundAfter.get() < SEARCH_TIME_MS / 2);
+        assertEquals(2, serversFound.size());
+    }
+
+    @Test
+    public void testUnverifiedRootsAreLeftOut() throws Exception
+    {
+        startStandInRoot("127.0.0.2", RemoteDiscovery.iAmHereMessage, 1);
+        startDetector((address) ->
+        {
+            verified(address);
+            return null;
+        });
+
+        assertTrue(detector.searchForServers().isEmpty());
+        assertEquals(1, addressesVerified.size());
+    }
+
+    private void startDetector(RemoteServerDetector.ServerVerifier serverVerifier)
+    {
+        detector = new RemoteServerDetector(transmitGroup,
+                () -> Collections.singletonList(loopbackInterface),
+                serverVerifier,
+                SEARCH_TIME_MS);
+    }
+
+    private DetectedServer verified(InetAddress address)
+    {
+        addressesVerified.add(address);
+        return DetectedServer.createDetectedServer(address);
+    }
+
+    private void startStandInRoot(String replyAddress, String reply, int replyCount) throws IOException
+    {
+        standInRoots.add(new StandInRoot(InetAddress.getByName(replyAddress), reply, replyCount));
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Listens on the test group and answers each discovery message from its
+     * own address.
+     */
+    private class StandInRoot
+    {
+
+        private final MulticastSocket listener;
+        private final DatagramSocket replier;
+
+        StandInRoot(InetAddress replyAddress, String reply, int replyCount) throws IOException
+        {
+            listener = new MulticastSocket(transmitGroup.getPort());
+            listener.joinGroup(transmitGroup, loopbackInterface);
+            replier = new DatagramSocket(new InetSocketAddress(replyAddress, 0));
+
+            Thread listenerThread = new Thread(() ->
+            {
+                byte[] replyBytes = reply.getBytes(StandardCharsets.US_ASCII);
+                try
+                {
+                    while (true)
+                    {
+                        DatagramPacket received = new DatagramPacket(new byte[100], 100);
+                        listener.receive(received);
+                        String message = new String(received.getData(), 0, received.getLength(), StandardCharsets.US_ASCII);
+                        if (message.equals(RemoteDiscovery.discoverHostsMessage))
+                        {
+                            for (int replyNumber = 0; replyNumber < replyCount; replyNumber++)
+                            {
+                                replier.send(new DatagramPacket(replyBytes, replyBytes.length, received.getSocketAddress()));
+                            }
+                        }
+                    }
+                } catch (SocketException ex)
+                {
+                    // Closed at the end of the test
+                } catch (IOException ex)
+                {
+                    fail("Stand-in Root failed: " + ex);
+                }
+            }, "Stand-in Root " + replyAddress.getHostAddress());
+            listenerThread.setDaemon(true);
+            listenerThread.start();
+        }
+
+        void close()
+        {
+            listener.close();
+            replier.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package celtech.roboxbase.comms;
+
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.rx.AckResponse;
+import celtech.roboxbase.comms.rx.FirmwareError;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.RoboxRxPacketFactory;
+import celtech.roboxbase.comms.rx.RxPacketTypeEnum;
+import celtech.roboxbase.comms.rx.SendFile;
+import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.comms.tx.SendDataFileChunk;
+import celtech.roboxbase.comms.tx.SendDataFileEnd;
+import celtech.roboxbase.comms.tx.SendDataFileStart;
+import celtech.roboxbase.comms.tx.SendPrintFileStart;
+import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A dummy printer at the end of a slow link. Every exchange with it takes the
+ * given time; if it is set to take batches in one exchange, a batch of packets
+ * costs the same as one.
+ *
+ * Data file chunks are checked against the sequence the firmware expects, and
+ * chunks can be set to be lost on the way. As on the printer, error flags stay
+ * set in every reply until the errors are reset.
+ *
+ * @author ianhudson
+ */
+public class SimulatedLatencyCommandInterface extends DummyPrinterCommandInterface
+{
+
+    private final long latencyMs;
+    private final boolean batchesInOneExchange;
+    private final Set<Integer> chunksToLose = new HashSet<>();
+    private final List<Integer> chunksReceived = new ArrayList<>();
+    private final Set<FirmwareError> errorsFlagged = EnumSet.noneOf(FirmwareError.class);
+    private String fileID = "";
+    private int exchanges = 0;
+    private int chunksSent = 0;
+
+    public SimulatedLatencyCommandInterface(PrinterStatusConsumer controlInterface,
+            DetectedDevice printerHandle, long latencyMs, boolean batchesInOneExchange)
+    {
+        super(controlInterface, printerHandle, false, 500);
+        this.latencyMs = latencyMs;
+        this.batchesInOneExchange = batchesInOneExchange;
+    }
+
+    /**
+     * @param sequenceNumber the chunk to lose the first time it is sent
+     */
+    public synchronized void loseChunk(int sequenceNumber)
+    {
+        chunksToLose.add(sequenceNumber);
+    }
+
+    /**
+     * @return the sequence numbers of the chunks taken into the file, in the
+     * order they were taken
+     */
+    public synchronized List<Integer> getChunksReceived()
+    {
+        return new ArrayList<>(chunksReceived);
+    }
+
+    public synchronized int getExchanges()
+    {
+        return exchanges;
+    }
+
+    /**
+     * @return the number of data file chunks sent, including those sent again
+     */
+    public synchronized int getChunksSent()
+    {
+        return chunksSent;
+    }
+
+    /**
+     * @param error an error to flag in every reply until errors are reset
+     */
+    public synchronized void flagError(FirmwareError error)
+    {
+        errorsFlagged.add(error);
+    }
+
+    @Override
+    public boolean deliversBatchesInOneExchange()
+    {
+        return batchesInOneExchange;
+    }
+
+    @Override
+    public RoboxRxPacket writeToPrinterImpl(RoboxTxPacket messageToWrite, boolean dontPublishResult) throws RoboxCommsException
+    {
+        exchange();
+        return receive(messageToWrite, dontPublishResult);
+    }
+
+    @Override
+    protected List<RoboxRxPacket> writeBatchToPrinterImpl(List<RoboxTxPacket> messagesToWrite,
+            boolean dontPublishResult) throws RoboxCommsException
+    {
+        if (!batchesInOneExchange)
+        {
+            return super.writeBatchToPrinterImpl(messagesToWrite, dontPublishResult);
+        }
+
+        exchange();
+        List<RoboxRxPacket> replies = new ArrayList<>(messagesToWrite.size());
+        for (RoboxTxPacket messageToWrite : messagesToWrite)
+        {
+            replies.add(receive(messageToWrite, dontPublishResult));
+        }
+        return replies;
+    }
+
+    private void exchange() throws RoboxCommsException
+    {
+        synchronized (this)
+        {
+            exchanges++;
+        }
+        try
+        {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RoboxCommsException("Interrupted");
+        }
+    }
+
+    private synchronized RoboxRxPacket receive(RoboxTxPacket messageToWrite, boolean dontPublishResult) throws RoboxCommsException
+    {
+        if (messageToWrite.getPacketType() == TxPacketTypeEnum.RESET_ERRORS)
+        {
+            errorsFlagged.clear();
+        } else if (messageToWrite.getPacketType() == TxPacketTypeEnum.READ_SEND_FILE_REPORT)
+        {
+            return sendFileReport();
+        } else if (messageToWrite instanceof SendDataFileStart
+                || messageToWrite instanceof SendPrintFileStart)
+        {
+            chunksReceived.clear();
+            fileID = messageToWrite.getMessagePayload();
+        } else if (messageToWrite instanceof SendDataFileChunk
+                || messageToWrite instanceof SendDataFileEnd)
+        {
+            chunksSent++;
+            int sequenceNumber = messageToWrite.getSequenceNumber();
+            if (chunksToLose.remove(sequenceNumber))
+            {
+                errorsFlagged.add(FirmwareError.USB_RX);
+            } else if (sequenceNumber != chunksReceived.size())
+            {
+                errorsFlagged.add(FirmwareError.CHUNK_SEQUENCE);
+            } else
+            {
+                chunksReceived.add(sequenceNumber);
+            }
+            return errorAck();
+        }
+
+        return super.writeToPrinterImpl(messageToWrite, dontPublishResult);
+    }
+
+    private SendFile sendFileReport()
+    {
+        String report = " " + String.format("%-16s", fileID).substring(0, 16)
+                + String.format("%08X", chunksReceived.size());
+        SendFile sendFile = new SendFile();
+        sendFile.populatePacket(report.getBytes(StandardCharsets.US_ASCII), 0);
+        return sendFile;
+    }
+
+    private AckResponse errorAck()
+    {
+        AckResponse response = (AckResponse) RoboxRxPacketFactory.createPacket(RxPacketTypeEnum.ACK_WITH_ERRORS);
+        response.getFirmwareErrors().addAll(errorsFlagged);
+        return response;
+    }
+}
@@ -0,0 +1,179 @@
+package celtech.roboxbase.comms;
+
+import celtech.roboxbase.comms.StatusPollingPolicy.PrinterActivity;
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.remote.BusyStatus;
+import celtech.roboxbase.comms.remote.PauseStatus;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.StatusResponse;
+import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.comms.tx.RoboxTxPacketFactory;
+import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
+import celtech.roboxbase.configuration.datafileaccessors.PrinterContainer;
+import celtech.roboxbase.printerControl.model.HardwarePrinter;
+import celtech.roboxbase.printerControl.model.HeaterMode;
+import celtech.roboxbase.utils.BaseEnvironmentConfiguredTest;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class StatusPollingPolicyTest extends BaseEnvironmentConfiguredTest
+{
+
+    private static final int BASE_INTERVAL_MS = 100;
+
+    @Test
+    public void testQuietIdlePrinterBacksOff()
+    {
+        StatusPollingPolicy policy = new StatusPollingPolicy();
+
+        assertEquals(BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, true));
+        for (int poll = 0; poll < StatusPollingPolicy.QUIET_POLLS_BEFORE_BACKOFF; poll++)
+        {
+            assertEquals(BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false));
+        }
+
+        assertEquals(2 * BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false));
+        assertEquals(4 * BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false));
+        for (int poll = 0; poll < 20; poll++)
+        {
+            policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false);
+        }
+        assertEquals(StatusPollingPolicy.MAX_BACKOFF_FACTOR * BASE_INTERVAL_MS,
+                policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false));
+    }
+
+    @Test
+    public void testChangeEndsBackoff()
+    {
+        StatusPollingPolicy policy = backedOffPolicy();
+
+        assertEquals(BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, true));
+
+        policy = backedOffPolicy();
+        assertEquals(BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.HEATING, false));
+        assertEquals(BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false));
+
+        policy = backedOffPolicy();
+        assertTrue(policy.reset());
+        assertFalse(policy.reset());
+        assertEquals(BASE_INTERVAL_MS, policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false));
+    }
+
+    @Test
+    public void testActivePrintersArePolledAtLeastAsOften()
+    {
+        StatusPollingPolicy policy = new StatusPollingPolicy();
+
+        assertEquals(1000, policy.getPollInterval(1000, PrinterActivity.PRINTING, false));
+        assertEquals(1000, policy.getPollInterval(1000, PrinterActivity.PAUSED, false));
+        assertEquals(500, policy.getPollInterval(1000, PrinterActivity.RUNNING_MACRO, false));
+        assertEquals(500, policy.getPollInterval(1000, PrinterActivity.CALIBRATING, false));
+        assertEquals(StatusPollingPolicy.MIN_POLL_INTERVAL_MS, policy.getPollInterval(300, PrinterActivity.BUSY, false));
+        assertEquals(100, policy.getPollInterval(100, PrinterActivity.BUSY, false));
+    }
+
+    @Test
+    public void testActivityOfStatus()
+    {
+        StatusResponse status = new StatusResponse();
+        status.setPauseStatus(PauseStatus.NOT_PAUSED);
+        status.setBusyStatus(BusyStatus.NOT_BUSY);
+        status.setBedHeaterMode(HeaterMode.OFF);
+        status.setNozzle0HeaterMode(HeaterMode.OFF);
+        status.setNozzle1HeaterMode(HeaterMode.OFF);
+        assertEquals(PrinterActivity.IDLE, StatusPollingPolicy.activityOf(null, status, false));
+
+        status.setBedHeaterMode(HeaterMode.NORMAL);
+        assertEquals(PrinterActivity.HEATING, StatusPollingPolicy.activityOf(null, status, false));
+
+        status.setBusyStatus(BusyStatus.LOADING_FILAMENT_E);
+        assertEquals(PrinterActivity.BUSY, StatusPollingPolicy.activityOf(null, status, false));
+
+        status.setPauseStatus(PauseStatus.PAUSED);
+        assertEquals(PrinterActivity.PAUSED, StatusPollingPolicy.activityOf(null, status, false));
+
+        assertEquals(PrinterActivity.UPDATING_FIRMWARE, StatusPollingPolicy.activityOf(null, status, true));
+    }
+
+    @Test
+    public void testIdleDummyPrinterIsPolledLessOften() throws Exception
+    {
+        PrinterStatusConsumer statusConsumer = new PrinterStatusConsumer()
+        {
+            @Override
+            public void printerConnected(DetectedDevice printerHandle)
+            {
+            }
+
+            @Override
+            public void disconnected(DetectedDevice printerHandle)
+            {
+            }
+        };
+
+        DetectedDevice printerHandle = new DetectedDevice(DeviceDetector.DeviceConnectionType.DUMMY, "Idle Printer");
+        CountingDummyPrinter commandInterface = new CountingDummyPrinter(statusConsumer, printerHandle);
+        HardwarePrinter hardwarePrinter = new HardwarePrinter(statusConsumer, commandInterface);
+        hardwarePrinter.setPrinterConfiguration(PrinterContainer.getPrinterByID(PrinterContainer.defaultPrinterID));
+
+        commandInterface.connectToPrinter();
+        commandInterface.commsState = RoboxCommsState.CONNECTED;
+        commandInterface.start();
+
+        try
+        {
+            long idleTimeMs = 4000;
+            Thread.sleep(idleTimeMs);
+            int idlePolls = commandInterface.statusRequests.get();
+            assertTrue("idle printer polled " + idlePolls + " times",
+                    idlePolls > StatusPollingPolicy.QUIET_POLLS_BEFORE_BACKOFF
+                    && idlePolls < idleTimeMs / BASE_INTERVAL_MS / 2);
+
+            // A command brings the polling back to its usual rate
+            commandInterface.writeToPrinter(RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.REPORT_ERRORS));
+            Thread.sleep(StatusPollingPolicy.MAX_BACKOFF_FACTOR * BASE_INTERVAL_MS);
+            int pollsAfterCommand = commandInterface.statusRequests.get() - idlePolls;
+            assertTrue("polled " + pollsAfterCommand + " times after the command", pollsAfterCommand >= 4);
+        } finally
+        {
+            commandInterface.shutdown();
+        }
+    }
+
+    private StatusPollingPolicy backedOffPolicy()
+    {
+        StatusPollingPolicy policy = new StatusPollingPolicy();
+        for (int poll = 0; poll < 10; poll++)
+        {
+            policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false);
+        }
+        assertTrue(policy.getPollInterval(BASE_INTERVAL_MS, PrinterActivity.IDLE, false) > BASE_INTERVAL_MS);
+        return policy;
+    }
+
+    private static class CountingDummyPrinter extends DummyPrinterCommandInterface
+    {
+
+        private final AtomicInteger statusRequests = new AtomicInteger(0);
+
+        CountingDummyPrinter(PrinterStatusConsumer controlInterface, DetectedDevice printerHandle)
+        {
+            super(controlInterface, printerHandle, false, BASE_INTERVAL_MS, "Idle Printer", "RBX01");
+        }
+
+        @Override
+        public RoboxRxPacket writeToPrinterImpl(RoboxTxPacket messageToWrite, boolean dontPublishResult) throws RoboxCommsException
+        {
+            if (messageToWrite.getPacketType() == TxPacketTypeEnum.STATUS_REQUEST)
+            {
+                statusRequests.incrementAndGet();
+            }
+            return super.writeToPrinterImpl(messageToWrite, dontPublishResult);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package celtech.roboxbase.comms.events;
+
+import celtech.roboxbase.comms.rx.AckResponse;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.StatusResponse;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class RoboxResponseMailboxTest
+{
+
+    private final List<Runnable> scheduledDrains = new ArrayList<>();
+    private final List<RoboxRxPacket> packetsConsumed = new ArrayList<>();
+    private RoboxResponseMailbox mailbox;
+
+    @Before
+    public void setUp()
+    {
+        mailbox = new RoboxResponseMailbox("test", scheduledDrains::add, packetsConsumed::add);
+    }
+
+    @Test
+    public void testBurstOfStatusPacketsGivesOneUpdate()
+    {
+        StatusResponse lastStatus = null;
+        for (int packetCount = 0; packetCount < 1000; packetCount++)
+        {
+            lastStatus = new StatusResponse();
+            mailbox.post(lastStatus);
+        }
+
+        assertEquals(1, scheduledDrains.size());
+        assertEquals(1, mailbox.getPendingCount());
+        assertEquals(999, mailbox.getPacketsConflated());
+
+        runScheduledDrains();
+
+        assertEquals(1, packetsConsumed.size());
+        assertSame(lastStatus, packetsConsumed.get(0));
+        assertEquals(0, mailbox.getPendingCount());
+    }
+
+    @Test
+    public void testOtherPacketsKeepTheirOrder()
+    {
+        AckResponse noErrors = new AckResponse();
+        AckResponse withErrors = new AckResponse();
+        withErrors.setMessagePayloadBytes(ackWithErrorAt(2));
+        StatusResponse firstStatus = new StatusResponse();
+        StatusResponse secondStatus = new StatusResponse();
+
+        mailbox.post(noErrors);
+        mailbox.post(firstStatus);
+        mailbox.post(withErrors);
+        mailbox.post(secondStatus);
+
+        runScheduledDrains();
+
+        assertEquals(3, packetsConsumed.size());
+        assertSame(noErrors, packetsConsumed.get(0));
+        assertSame(withErrors, packetsConsumed.get(1));
+        assertSame(secondStatus, packetsConsumed.get(2));
+    }
+
+    @Test
+    public void testIdenticalPacketsAreConflated()
+    {
+        for (int packetCount = 0; packetCount < 10; packetCount++)
+        {
+            AckResponse ack = new AckResponse();
+            ack.setMessagePayloadBytes(ackWithErrorAt(3));
+            mailbox.post(ack);
+        }
+
+        // Without a payload there is nothing to compare, so these are all kept
+        mailbox.post(new AckResponse());
+        mailbox.post(new AckResponse());
+
+        runScheduledDrains();
+
+        assertEquals(3, packetsConsumed.size());
+    }
+
+    @Test
+    public void testQueueIsBounded()
+    {
+        for (int packetCount = 0; packetCount < RoboxResponseMailbox.MAX_PENDING_PACKETS * 2; packetCount++)
+        {
+            AckResponse ack = new AckResponse();
+            ack.setMessagePayloadBytes(ackWithErrorAt(packetCount % 64 + 1));
+            mailbox.post(ack);
+            mailbox.post(new StatusResponse());
+        }
+
+        assertTrue(mailbox.getPendingCount() <= RoboxResponseMailbox.MAX_PENDING_PACKETS + 1);
+        assertEquals(1, scheduledDrains.size());
+    }
+
+    @Test
+    public void testPacketsArrivingDuringDrainAreScheduledAgain()
+    {
+        mailbox = new RoboxResponseMailbox("test", scheduledDrains::add, (rxPacket) ->
+        {
+            packetsConsumed.add(rxPacket);
+            if (packetsConsumed.size() == 1)
+            {
+                mailbox.post(new StatusResponse());
+            }
+        });
+
+        mailbox.post(new StatusResponse());
+        runScheduledDrains();
+
+        assertEquals(2, packetsConsumed.size());
+        assertEquals(0, mailbox.getPendingCount());
+    }
+
+    private void runScheduledDrains()
+    {
+        while (!scheduledDrains.isEmpty())
+        {
+            scheduledDrains.remove(0).run();
+        }
+    }
+
+    private static byte[] ackWithErrorAt(int bytePosition)
+    {
+        byte[] ack = new byte[65];
+        ack[0] = (byte) 0xE3;
+        ack[bytePosition] = 1;
+        return ack;
+    }
+}
@@ -0,0 +1,309 @@
+package celtech.roboxbase.comms.remote;
+
+import celtech.roboxbase.comms.exceptions.RoboxCommsException;
+import celtech.roboxbase.comms.rx.AckResponse;
+import celtech.roboxbase.comms.rx.FirmwareError;
+import celtech.roboxbase.comms.rx.PrinterNotFound;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.RxPacketTypeEnum;
+import celtech.roboxbase.comms.tx.RoboxTxPacket;
+import celtech.roboxbase.comms.tx.RoboxTxPacketFactory;
+import celtech.roboxbase.comms.tx.TxPacketTypeEnum;
+import celtech.roboxbase.utils.net.RootHttpClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the binary packet relay against a local stand-in for a Root.
+ *
+ * @author ianhudson
+ */
+public class RemoteClientBinaryTransportTest
+{
+
+    private static final String PRINTER_ID = "RBX01-1234";
+    private static final String BINARY_PATH = "/api/" + PRINTER_ID + Configuration.lowLevelAPIService + Configuration.writeDataBinaryService;
+    private static final String BATCH_PATH = "/api/" + PRINTER_ID + Configuration.lowLevelAPIService + Configuration.writeDataBatchService;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicReference<RoboxTxPacket> packetReceivedByRoot = new AtomicReference<>();
+    private final List<RoboxTxPacket> batchReceivedByRoot = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer standInRoot;
+    private RootHttpClient client;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        standInRoot = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        standInRoot.createContext(BINARY_PATH, this::relayPacket);
+        standInRoot.createContext(BATCH_PATH, this::relayBatch);
+        standInRoot.createContext("/api/unknown" + Configuration.lowLevelAPIService + Configuration.writeDataBinaryService, (exchange) ->
+        {
+            readBody(exchange);
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        standInRoot.start();
+
+        client = new RootHttpClient(InetAddress.getLoopbackAddress().getHostAddress(),
+                standInRoot.getAddress().getPort(), "RemoteClientBinaryTransportTest");
+    }
+
+    @After
+    public void tearDown()
+    {
+        standInRoot.stop(0);
+    }
+
+    @Test
+    public void testPacketIsRelayedAsRawBytes() throws Exception
+    {
+        RoboxTxPacket chunk = RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.DATA_FILE_CHUNK);
+        chunk.setSequenceNumber(42);
+        chunk.setMessagePayload("0123456789ABCDEF");
+
+        RootHttpClient.Response response = postBinary(BINARY_PATH, chunk.toByteArray());
+
+        assertTrue(RemoteClient.isBinaryReply(response));
+        assertEquals(chunk, packetReceivedByRoot.get());
+
+        RoboxRxPacket reply = RemoteClient.decodeBinaryReply(response, 0);
+        assertTrue(reply instanceof AckResponse);
+        assertTrue(((AckResponse) reply).getFirmwareErrors().contains(FirmwareError.fromBytePosition(1)));
+    }
+
+    @Test
+    public void testOlderRootIsDetected() throws Exception
+    {
+        RoboxTxPacket statusRequest = RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.STATUS_REQUEST);
+
+        RootHttpClient.Response response = postBinary("/api/unknown" + Configuration.lowLevelAPIService + Configuration.writeDataBinaryService,
+                statusRequest.toByteArray());
+
+        assertFalse(RemoteClient.isBinaryReply(response));
+        assertTrue(RemoteClient.isBinaryRefusal(response));
+    }
+
+    @Test
+    public void testFailedRequestIsNotARefusal() throws Exception
+    {
+        for (int responseCode : new int[]
+        {
+            500, 503
+        })
+        {
+            RootHttpClient.Response response = new RootHttpClient.Response(responseCode, new byte[0], null);
+            assertFalse(RemoteClient.isBinaryReply(response));
+            assertFalse(RemoteClient.isBinaryRefusal(response));
+        }
+
+        // A Root that answers without the protocol header doesn't relay bytes
+        RootHttpClient.Response unmarkedReply = new RootHttpClient.Response(200, new byte[0], "application/json");
+        assertTrue(RemoteClient.isBinaryRefusal(unmarkedReply));
+    }
+
+    @Test
+    public void testPrinterNotFoundIsDecoded() throws Exception
+    {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put(Configuration.packetProtocolHeader, Collections.singletonList("1"));
+        RootHttpClient.Response response = new RootHttpClient.Response(200,
+                new byte[]
+                {
+                    RxPacketTypeEnum.PRINTER_NOT_FOUND.getCommandByte()
+                },
+                Configuration.binaryPacketContentType, headers);
+
+        assertTrue(RemoteClient.decodeBinaryReply(response, 0) instanceof PrinterNotFound);
+    }
+
+    @Test
+    public void testBinaryPayloadIsSmallerThanJSON() throws Exception
+    {
+        RoboxTxPacket chunk = RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.DATA_FILE_CHUNK);
+        chunk.setSequenceNumber(42);
+        chunk.setMessagePayload("00");
+
+        int jsonLength = mapper.writeValueAsString(chunk).getBytes(StandardCharsets.UTF_8).length;
+        int binaryLength = chunk.toByteArray().length;
+
+        assertTrue("binary " + binaryLength + " json " + jsonLength, binaryLength * 4 < jsonLength);
+    }
+
+    @Test
+    public void testBatchFramingRoundTrip() throws Exception
+    {
+        List<byte[]> packets = Arrays.asList(new byte[]
+        {
+            1, 2, 3
+        }, new byte[0], new byte[300]);
+
+        List<byte[]> decoded = PacketBatch.decode(PacketBatch.encode(packets));
+
+        assertEquals(3, decoded.size());
+        for (int packetNumber = 0; packetNumber < packets.size(); packetNumber++)
+        {
+            assertArrayEquals(packets.get(packetNumber), decoded.get(packetNumber));
+        }
+    }
+
+    @Test(expected = RoboxCommsException.class)
+    public void testTruncatedBatchIsRejected() throws Exception
+    {
+        PacketBatch.decode(new byte[]
+        {
+            0, 5, 1, 2
+        });
+    }
+
+    @Test
+    public void testStatusPollIsSentAsOneBatch() throws Exception
+    {
+        List<RoboxTxPacket> statusPoll = Arrays.asList(
+                RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.STATUS_REQUEST),
+                RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.REPORT_ERRORS),
+                RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.READ_PRINTER_ID));
+
+        List<byte[]> packets = new ArrayList<>();
+        for (RoboxTxPacket packet : statusPoll)
+        {
+            packets.add(packet.toByteArray());
+        }
+
+        RootHttpClient.Response response = postBinary(BATCH_PATH, PacketBatch.encode(packets));
+
+        assertTrue(RemoteClient.isBinaryReply(response, Configuration.batchPacketProtocolVersion));
+        assertEquals(statusPoll, batchReceivedByRoot);
+
+        List<RoboxRxPacket> replies = RemoteClient.decodeBatchReply(response, 0, statusPoll.size());
+        assertEquals(3, replies.size());
+        for (RoboxRxPacket reply : replies)
+        {
+            assertTrue(reply instanceof AckResponse);
+        }
+    }
+
+    @Test
+    public void testVersionOneRootIsNotSentBatches() throws Exception
+    {
+        RoboxTxPacket statusRequest = RoboxTxPacketFactory.createPacket(TxPacketTypeEnum.STATUS_REQUEST);
+
+        RootHttpClient.Response response = postBinary(BINARY_PATH, statusRequest.toByteArray());
+
+        assertTrue(RemoteClient.isBinaryReply(response));
+        assertFalse(RemoteClient.isBinaryReply(response, Configuration.batchPacketProtocolVersion));
+        assertTrue(RemoteClient.isBinaryRefusal(response, Configuration.batchPacketProtocolVersion));
+    }
+
+    @Test
+    public void testFailedBatchIsNotARefusal() throws Exception
+    {
+        RootHttpClient.Response response = new RootHttpClient.Response(503, new byte[0], null);
+
+        assertFalse(RemoteClient.isBinaryRefusal(response, Configuration.batchPacketProtocolVersion));
+    }
+
+    private RootHttpClient.Response postBinary(String path, byte[] packetBytes) throws IOException
+    {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Configuration.packetProtocolHeader, Integer.toString(Configuration.binaryPacketProtocolVersion));
+        return client.request("POST", path, packetBytes, Configuration.binaryPacketContentType,
+                headers, RootHttpClient.CallType.CONTROL);
+    }
+
+    private void relayPacket(HttpExchange exchange) throws IOException
+    {
+        byte[] requestBytes = readBody(exchange);
+        try
+        {
+            packetReceivedByRoot.set(RoboxTxPacketFactory.createPacket(requestBytes));
+        } catch (Exception ex)
+        {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        // Reply as the printer would - an ack carrying the error at byte position 1
+        byte[] ack = ackWithError();
+
+        exchange.getResponseHeaders().add(Configuration.packetProtocolHeader, "1");
+        exchange.getResponseHeaders().add(Configuration.firmwareVersionHeader, "776");
+        exchange.getResponseHeaders().add("Content-Type", Configuration.binaryPacketContentType);
+        exchange.sendResponseHeaders(200, ack.length);
+        try (OutputStream responseStream = exchange.getResponseBody())
+        {
+            responseStream.write(ack);
+        }
+    }
+
+    private void relayBatch(HttpExchange exchange) throws IOException
+    {
+        List<byte[]> replies = new ArrayList<>();
+        try
+        {
+            for (byte[] packetBytes : PacketBatch.decode(readBody(exchange)))
+            {
+                batchReceivedByRoot.add(RoboxTxPacketFactory.createPacket(packetBytes));
+                replies.add(ackWithError());
+            }
+        } catch (Exception ex)
+        {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] batch = PacketBatch.encode(replies);
+        exchange.getResponseHeaders().add(Configuration.packetProtocolHeader, "2");
+        exchange.getResponseHeaders().add(Configuration.firmwareVersionHeader, "776");
+        exchange.getResponseHeaders().add("Content-Type", Configuration.binaryPacketContentType);
+        exchange.sendResponseHeaders(200, batch.length);
+        try (OutputStream responseStream = exchange.getResponseBody())
+        {
+            responseStream.write(batch);
+        }
+    }
+
+    private static byte[] ackWithError()
+    {
+        byte[] ack = new byte[65];
+        ack[0] = RxPacketTypeEnum.ACK_WITH_ERRORS.getCommandByte();
+        ack[2] = 1;
+        return ack;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException
+    {
+        ByteArrayOutputStream bytesRead = new ByteArrayOutputStream();
+        try (InputStream requestStream = exchange.getRequestBody())
+        {
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = requestStream.read(buffer)) != -1)
+            {
+                bytesRead.write(buffer, 0, count);
+            }
+        }
+        return bytesRead.toByteArray();
+    }
+}
@@ -0,0 +1,131 @@
+package celtech.roboxbase.comms.remote;
+
+import celtech.roboxbase.comms.rx.AckResponse;
+import celtech.roboxbase.comms.rx.PrinterNotFound;
+import celtech.roboxbase.comms.rx.RoboxRxPacket;
+import celtech.roboxbase.comms.rx.RxPacketTypeEnum;
+import celtech.roboxbase.utils.SystemUtils;
+import celtech.roboxbase.utils.net.RootHttpClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the status stream against a local stand-in for a Root.
+ *
+ * @author ianhudson
+ */
+public class RootStatusStreamTest
+{
+
+    private static final String PRINTER_ID = "RBX01-1234";
+    private static final String STREAM_PATH = "/api" + Configuration.statusStreamService;
+
+    private final BlockingQueue<RoboxRxPacket> packetsPushed = new LinkedBlockingQueue<>();
+    private final CountDownLatch testFinished = new CountDownLatch(1);
+    private HttpServer standInRoot;
+    private RootHttpClient client;
+    private RootStatusStream statusStream;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        standInRoot = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        standInRoot.createContext(STREAM_PATH, this::streamStatus);
+        standInRoot.createContext("/api/old" + Configuration.statusStreamService, (exchange) ->
+        {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        standInRoot.start();
+
+        client = new RootHttpClient(InetAddress.getLoopbackAddress().getHostAddress(),
+                standInRoot.getAddress().getPort(), "RootStatusStreamTest");
+        client.setTimeouts(RootHttpClient.CallType.STREAM, new RootHttpClient.Timeouts(2000, 10000));
+    }
+
+    @After
+    public void tearDown()
+    {
+        testFinished.countDown();
+        if (statusStream != null)
+        {
+            statusStream.stop();
+        }
+        standInRoot.stop(0);
+    }
+
+    @Test
+    public void testChangesArePushedOnce() throws Exception
+    {
+        statusStream = new RootStatusStream("stand-in", () -> client.openStream(STREAM_PATH, null, RootHttpClient.CallType.STREAM));
+        statusStream.subscribe(PRINTER_ID, packetsPushed::add);
+
+        RoboxRxPacket first = packetsPushed.poll(5, TimeUnit.SECONDS);
+        assertTrue(first instanceof AckResponse);
+        assertTrue(statusStream.isStreaming(PRINTER_ID));
+        assertFalse(statusStream.isStreaming("RBX01-9999"));
+
+        // The repeated ack and the other printer's ack are not passed on
+        RoboxRxPacket second = packetsPushed.poll(5, TimeUnit.SECONDS);
+        assertTrue(second instanceof PrinterNotFound);
+        assertNull(packetsPushed.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRootWithoutStreamIsRefused() throws Exception
+    {
+        statusStream = new RootStatusStream("old", () -> client.openStream("/api/old" + Configuration.statusStreamService,
+                null, RootHttpClient.CallType.STREAM));
+        statusStream.subscribe(PRINTER_ID, packetsPushed::add);
+
+        for (int wait = 0; wait < 50 && !statusStream.isRefused(); wait++)
+        {
+            Thread.sleep(100);
+        }
+
+        assertTrue(statusStream.isRefused());
+        assertFalse(statusStream.isStreaming(PRINTER_ID));
+    }
+
+    private void streamStatus(HttpExchange exchange) throws IOException
+    {
+        byte[] ack = new byte[65];
+        ack[0] = RxPacketTypeEnum.ACK_WITH_ERRORS.getCommandByte();
+        ack[2] = 1;
+        byte[] ackHex = new byte[ack.length * 2];
+        SystemUtils.hexEncode(ack, 0, ack.length, ackHex);
+        String ackEvent = new String(ackHex, StandardCharsets.US_ASCII);
+
+        exchange.getResponseHeaders().add("Content-Type", Configuration.statusStreamContentType);
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream responseStream = exchange.getResponseBody())
+        {
+            String events = "event: packet\ndata: " + PRINTER_ID + " 776 " + ackEvent + "\n\n"
+                    + ": heartbeat\n\n"
+                    + "event: packet\ndata: " + PRINTER_ID + " 776 " + ackEvent + "\n\n"
+                    + "event: packet\ndata: RBX01-9999 776 " + ackEvent + "\n\n"
+                    + "event: detached\ndata: " + PRINTER_ID + "\n\n";
+            responseStream.write(events.getBytes(StandardCharsets.US_ASCII));
+            responseStream.flush();
+
+            // Hold the stream open as a Root would
+            testFinished.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package celtech.roboxbase.printerControl;
+
+import celtech.roboxbase.postprocessor.PrintJobStatistics;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class PrintJobTest
+{
+
+    private static final String GCODE = "G28\nG1 X10 Y10\nG1 X20 Y20\n";
+
+    @Rule
+    public TemporaryFolder spoolFolder = new TemporaryFolder();
+
+    private File firstFile;
+    private File secondFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        firstFile = File.createTempFile("printJob", ".gcode");
+        secondFile = File.createTempFile("printJob", ".gcode");
+    }
+
+    @After
+    public void tearDown()
+    {
+        firstFile.delete();
+        secondFile.delete();
+    }
+
+    @Test
+    public void testSameContentHasSameHash() throws Exception
+    {
+        Files.write(firstFile.toPath(), "G28\nG1 X10 Y10\n".getBytes());
+        Files.write(secondFile.toPath(), "G28\nG1 X10 Y10\n".getBytes());
+
+        String hash = PrintJob.calculateContentHash(firstFile);
+        assertEquals(64, hash.length());
+        assertEquals(hash, PrintJob.calculateContentHash(secondFile));
+    }
+
+    @Test
+    public void testDifferentContentHasDifferentHash() throws Exception
+    {
+        Files.write(firstFile.toPath(), "G28\nG1 X10 Y10\n".getBytes());
+        Files.write(secondFile.toPath(), "G28\nG1 X10 Y11\n".getBytes());
+
+        assertNotEquals(PrintJob.calculateContentHash(firstFile),
+                PrintJob.calculateContentHash(secondFile));
+    }
+
+    @Test
+    public void testJobWithSameContentIsFound() throws Exception
+    {
+        String spoolDirectory = spoolFolder.getRoot().getAbsolutePath() + File.separator;
+        makeJob("other", "G28\n", PrintJob.calculateContentHash(writeGCode("G28\n")));
+        makeJob("same", GCODE, PrintJob.calculateContentHash(writeGCode(GCODE)));
+
+        String contentHash = PrintJob.calculateContentHash(firstFile);
+        assertEquals("same", PrintJob.findJobWithContentHash(contentHash,
+                Arrays.asList("other", "same"), spoolDirectory).get());
+    }
+
+    @Test
+    public void testJobCutShortIsNotFound() throws Exception
+    {
+        String spoolDirectory = spoolFolder.getRoot().getAbsolutePath() + File.separator;
+        String contentHash = PrintJob.calculateContentHash(writeGCode(GCODE));
+        // The statistics arrive before the file, which then stops part way
+        makeJob("truncated", GCODE.substring(0, GCODE.length() / 2), contentHash);
+
+        assertFalse(PrintJob.findJobWithContentHash(contentHash,
+                Arrays.asList("truncated"), spoolDirectory).isPresent());
+    }
+
+    @Test
+    public void testCopyOnPrinterIsCompleteOnlyOnceRecorded() throws Exception
+    {
+        PrintJob printJob = makeJob("job", GCODE, PrintJob.calculateContentHash(writeGCode(GCODE)));
+        assertFalse(printJob.hasCompleteCopyOnPrinter("printer1"));
+
+        printJob.recordCopyOnPrinter("printer1", true);
+        printJob.recordCopyOnPrinter("printer2", true);
+        assertTrue(printJob.hasCompleteCopyOnPrinter("printer1"));
+        assertTrue(printJob.hasCompleteCopyOnPrinter("printer2"));
+
+        // Sending the job again overwrites the copy on the printer
+        printJob.recordCopyOnPrinter("printer1", false);
+        assertFalse(printJob.hasCompleteCopyOnPrinter("printer1"));
+        assertTrue(printJob.hasCompleteCopyOnPrinter("printer2"));
+    }
+
+    private File writeGCode(String gcode) throws Exception
+    {
+        Files.write(firstFile.toPath(), gcode.getBytes());
+        return firstFile;
+    }
+
+    private PrintJob makeJob(String jobID, String gcode, String contentHash) throws Exception
+    {
+        File jobDirectory = spoolFolder.newFolder(jobID);
+        PrintJob printJob = new PrintJob(jobID, jobDirectory.getAbsolutePath() + File.separator);
+        Files.write(new File(printJob.getRoboxisedFileLocation()).toPath(), gcode.getBytes());
+
+        PrintJobStatistics statistics = new PrintJobStatistics();
+        statistics.setPrintJobID(jobID);
+        statistics.setContentHash(contentHash);
+        statistics.writeStatisticsToFile(printJob.getStatisticsFileLocation());
+        return printJob;
+    }
+}
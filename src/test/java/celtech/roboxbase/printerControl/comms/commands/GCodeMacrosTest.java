@@ -2,6 +2,7 @@ package celtech.roboxbase.printerControl.comms.commands;
 
 import celtech.roboxbase.configuration.hardwarevariants.PrinterType;
 import celtech.roboxbase.utils.BaseEnvironmentConfiguredTest;
+import java.util.List;
 import java.util.Optional;
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -90,6 +91,31 @@ public class GCodeMacrosTest extends BaseEnvironmentConfiguredTest
         assertTrue(fileName.endsWith("/Common/Macros/RBX10/Short_Purge#N1.gcode"));
     }
 
+    @Test
+    public void testRepeatedMacroContentsAreNotReloaded() throws Exception
+    {
+        Optional<PrinterType> typeCode = Optional.of(PrinterType.ROBOX);
+        List<String> firstContents = GCodeMacros.getMacroContents("before_print", typeCode,
+                "RBX01-DM", true, false, true);
+        int loadsAfterFirstUse = GCodeMacros.getMacroCache().getLoadCount();
+
+        for (int use = 0; use < 10; use++)
+        {
+            List<String> contents = GCodeMacros.getMacroContents("before_print", typeCode,
+                    "RBX01-DM", true, false, true);
+            assertEquals(firstContents, contents);
+            // Callers are free to change what they are given
+            contents.clear();
+        }
+        assertEquals(loadsAfterFirstUse, GCodeMacros.getMacroCache().getLoadCount());
+
+        // A different nozzle resolves to a different file
+        List<String> otherNozzleContents = GCodeMacros.getMacroContents("before_print", typeCode,
+                "RBX01-DM", false, true, true);
+        assertFalse(firstContents.equals(otherNozzleContents));
+        assertTrue(GCodeMacros.getMacroCache().getLoadCount() > loadsAfterFirstUse);
+    }
+
     /**
      * Test of getMacroContents method, of class GCodeMacros.
      */
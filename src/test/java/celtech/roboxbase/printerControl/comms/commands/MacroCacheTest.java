@@ -0,0 +1,81 @@
+package celtech.roboxbase.printerControl.comms.commands;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class MacroCacheTest
+{
+
+    private static final MacroCache.Key key = new MacroCache.Key("before_print",
+            Optional.empty(),
+            "RBX01-SM",
+            GCodeMacros.NozzleUseIndicator.DONT_CARE,
+            GCodeMacros.SafetyIndicator.DONT_CARE);
+
+    private Path macroDirectory;
+    private final MacroCache cache = new MacroCache();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        macroDirectory = Files.createTempDirectory("macros");
+        Files.write(macroDirectory.resolve("before_print.gcode"), "G28".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        cache.clear();
+        Files.deleteIfExists(macroDirectory.resolve("before_print.gcode"));
+        Files.deleteIfExists(macroDirectory.resolve("before_print#U.gcode"));
+        Files.deleteIfExists(macroDirectory);
+    }
+
+    @Test
+    public void testValueIsKeptUntilTheMacrosChange() throws Exception
+    {
+        MacroCache.Lookup<String> lookup = cache.lookup("filename", key, macroDirectory);
+        assertNull(lookup.getValue());
+        lookup.store("before_print.gcode");
+
+        assertEquals("before_print.gcode", cache.<String>lookup("filename", key, macroDirectory).getValue());
+        assertEquals(1, cache.getLoadCount());
+
+        Files.write(macroDirectory.resolve("before_print#U.gcode"), "G28 X".getBytes());
+
+        // The change is reported by the file system in its own time
+        long giveUpTime = System.currentTimeMillis() + 10000;
+        while (cache.lookup("filename", key, macroDirectory).getValue() != null)
+        {
+            assertTrue("change to the macros not seen", System.currentTimeMillis() < giveUpTime);
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testValueLoadedDuringAChangeIsNotKept() throws Exception
+    {
+        MacroCache.Lookup<String> lookup = cache.lookup("filename", key, macroDirectory);
+        cache.clear();
+        lookup.store("before_print.gcode");
+
+        assertNull(cache.lookup("filename", key, macroDirectory).getValue());
+    }
+
+    @Test
+    public void testKindsAreKeptApart() throws Exception
+    {
+        cache.<String>lookup("filename", key, macroDirectory).store("before_print.gcode");
+
+        assertNull(cache.lookup("operativeLines", key, macroDirectory).getValue());
+    }
+}
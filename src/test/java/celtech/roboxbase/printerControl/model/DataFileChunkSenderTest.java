@@ -0,0 +1,127 @@
+package celtech.roboxbase.printerControl.model;
+
+import celtech.roboxbase.comms.DetectedDevice;
+import celtech.roboxbase.comms.DeviceDetector;
+import celtech.roboxbase.comms.PrinterStatusConsumer;
+import celtech.roboxbase.comms.SimulatedLatencyCommandInterface;
+import celtech.roboxbase.comms.rx.FirmwareError;
+import celtech.roboxbase.comms.tx.SendDataFileChunk;
+import celtech.roboxbase.utils.BaseEnvironmentConfiguredTest;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Sends data files to a dummy printer over a link with simulated latency.
+ *
+ * @author ianhudson
+ */
+public class DataFileChunkSenderTest extends BaseEnvironmentConfiguredTest
+{
+
+    private static final long LATENCY_MS = 5;
+    private static final int CHUNKS = 100;
+
+    private final DetectedDevice printerHandle = new DetectedDevice(DeviceDetector.DeviceConnectionType.SERIAL, "Test Printer");
+
+    private static class StatusConsumer implements PrinterStatusConsumer
+    {
+
+        @Override
+        public void printerConnected(DetectedDevice printerHandle)
+        {
+        }
+
+        @Override
+        public void disconnected(DetectedDevice printerHandle)
+        {
+        }
+    }
+
+    @Test
+    public void testWindowSavesRoundTripsOnABatchingLink() throws Exception
+    {
+        SimulatedLatencyCommandInterface oneAtATime = new SimulatedLatencyCommandInterface(
+                new StatusConsumer(), printerHandle, LATENCY_MS, false);
+        sendFile(oneAtATime);
+
+        SimulatedLatencyCommandInterface batching = new SimulatedLatencyCommandInterface(
+                new StatusConsumer(), printerHandle, LATENCY_MS, true);
+        sendFile(batching);
+
+        assertEquals(expectedChunks(), oneAtATime.getChunksReceived());
+        assertEquals(expectedChunks(), batching.getChunksReceived());
+        assertTrue("one at a time " + oneAtATime.getExchanges() + " exchanges, batching " + batching.getExchanges(),
+                batching.getExchanges() * 4 < oneAtATime.getExchanges());
+    }
+
+    @Test
+    public void testLostChunksAreSentAgain() throws Exception
+    {
+        SimulatedLatencyCommandInterface commandInterface = new SimulatedLatencyCommandInterface(
+                new StatusConsumer(), printerHandle, LATENCY_MS, true);
+        commandInterface.loseChunk(3);
+        commandInterface.loseChunk(40);
+        commandInterface.loseChunk(CHUNKS - 1);
+
+        sendFile(commandInterface);
+
+        assertEquals(expectedChunks(), commandInterface.getChunksReceived());
+    }
+
+    @Test
+    public void testLostChunksAreSentAgainOneAtATime() throws Exception
+    {
+        SimulatedLatencyCommandInterface commandInterface = new SimulatedLatencyCommandInterface(
+                new StatusConsumer(), printerHandle, LATENCY_MS, false);
+        commandInterface.loseChunk(0);
+        commandInterface.loseChunk(50);
+
+        sendFile(commandInterface);
+
+        assertEquals(expectedChunks(), commandInterface.getChunksReceived());
+    }
+
+    @Test
+    public void testStaleErrorFlagsDontCauseChunksToBeSentAgain() throws Exception
+    {
+        SimulatedLatencyCommandInterface commandInterface = new SimulatedLatencyCommandInterface(
+                new StatusConsumer(), printerHandle, LATENCY_MS, true);
+        // Raised by some earlier command, and not yet reset
+        commandInterface.flagError(FirmwareError.BAD_COMMAND);
+
+        sendFile(commandInterface);
+
+        assertEquals(expectedChunks(), commandInterface.getChunksReceived());
+        assertEquals(CHUNKS, commandInterface.getChunksSent());
+    }
+
+    private void sendFile(SimulatedLatencyCommandInterface commandInterface) throws Exception
+    {
+        commandInterface.connectToPrinter();
+        HardwarePrinter printer = new HardwarePrinter(new StatusConsumer(), commandInterface);
+        StringBuilder chunk = new StringBuilder();
+        while (chunk.length() < SendDataFileChunk.PAYLOAD_SIZE)
+        {
+            chunk.append("G1 X10 Y10\r");
+        }
+        String payload = chunk.substring(0, SendDataFileChunk.PAYLOAD_SIZE);
+
+        printer.initialiseDataFileSend("test", false);
+        for (int chunkNumber = 0; chunkNumber < CHUNKS; chunkNumber++)
+        {
+            printer.sendDataFileChunk(payload, chunkNumber == CHUNKS - 1, false);
+        }
+    }
+
+    private List<Integer> expectedChunks()
+    {
+        List<Integer> chunks = new ArrayList<>();
+        for (int chunkNumber = 0; chunkNumber < CHUNKS; chunkNumber++)
+        {
+            chunks.add(chunkNumber);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,63 @@
+package celtech.roboxbase.printerControl.model;
+
+import celtech.roboxbase.comms.remote.BusyStatus;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class NotBusyNotifierTest
+{
+
+    @Test
+    public void testCompletedWhenBusyClears() throws Exception
+    {
+        NotBusyNotifier notifier = new NotBusyNotifier();
+        CompletableFuture<Void> notBusy = notifier.whenNotBusy();
+
+        notifier.statusProcessed(BusyStatus.BUSY);
+        assertFalse(notBusy.isDone());
+
+        notifier.statusProcessed(BusyStatus.NOT_BUSY);
+        assertTrue(notBusy.isDone());
+        notBusy.get(0, TimeUnit.MILLISECONDS);
+        assertEquals(0, notifier.getWaiterCount());
+    }
+
+    @Test
+    public void testNotBusyBeforeBusyIsIgnored()
+    {
+        NotBusyNotifier notifier = new NotBusyNotifier();
+        CompletableFuture<Void> notBusy = notifier.whenNotBusy();
+
+        // A status requested before the command was sent
+        notifier.statusProcessed(BusyStatus.NOT_BUSY);
+        assertFalse(notBusy.isDone());
+
+        notifier.statusProcessed(BusyStatus.LOADING_FILAMENT_E);
+        notifier.statusProcessed(BusyStatus.NOT_BUSY);
+        assertTrue(notBusy.isDone());
+    }
+
+    @Test
+    public void testCancelledFutureIsForgotten()
+    {
+        NotBusyNotifier notifier = new NotBusyNotifier();
+        CompletableFuture<Void> notBusy = notifier.whenNotBusy();
+        CompletableFuture<Void> otherNotBusy = notifier.whenNotBusy();
+        assertEquals(2, notifier.getWaiterCount());
+
+        notBusy.cancel(false);
+        assertEquals(1, notifier.getWaiterCount());
+
+        notifier.statusProcessed(BusyStatus.BUSY);
+        notifier.statusProcessed(BusyStatus.NOT_BUSY);
+        assertTrue(otherNotBusy.isDone());
+        assertFalse(otherNotBusy.isCancelled());
+        assertEquals(0, notifier.getWaiterCount());
+    }
+}
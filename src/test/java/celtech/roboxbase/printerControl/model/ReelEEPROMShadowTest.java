@@ -0,0 +1,89 @@
+package celtech.roboxbase.printerControl.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class ReelEEPROMShadowTest
+{
+
+    private static final String PAYLOAD = "RBX-ABS-GR499   FF0000";
+    private static final float DIAMETER = 1.75f;
+
+    @Test
+    public void testKnownContentsNeedNotBeWritten()
+    {
+        ReelEEPROMShadow shadow = new ReelEEPROMShadow(2);
+        assertFalse(shadow.holds(0, PAYLOAD));
+
+        long version = shadow.contentsKnown(0, PAYLOAD, 240000, DIAMETER);
+
+        assertTrue(shadow.holds(0, PAYLOAD));
+        assertFalse(shadow.holds(0, PAYLOAD + " "));
+        assertFalse(shadow.holds(1, PAYLOAD));
+        assertEquals(version, shadow.getVersion(0));
+    }
+
+    @Test
+    public void testForgottenReelIsWrittenAgain()
+    {
+        ReelEEPROMShadow shadow = new ReelEEPROMShadow(2);
+        long version = shadow.contentsKnown(1, PAYLOAD, 240000, DIAMETER);
+
+        shadow.forget(1);
+
+        assertFalse(shadow.holds(1, PAYLOAD));
+        assertTrue(shadow.getVersion(1) > version);
+        assertTrue(Float.isNaN(shadow.filamentUsed(1, 100)));
+    }
+
+    @Test
+    public void testReelIsWrittenOnceFilamentHasBeenUsed()
+    {
+        ReelEEPROMShadow shadow = new ReelEEPROMShadow(2);
+        shadow.contentsKnown(0, PAYLOAD, 1000, DIAMETER);
+
+        // The firmware has counted the reel down from what the payload says
+        shadow.filamentUsed(0, 100);
+        assertFalse(shadow.holds(0, PAYLOAD));
+
+        shadow.contentsKnown(0, PAYLOAD, 1000, DIAMETER);
+        assertTrue(shadow.holds(0, PAYLOAD));
+    }
+
+    @Test
+    public void testReelIsWrittenOnceFilamentMayHaveBeenUsed()
+    {
+        ReelEEPROMShadow shadow = new ReelEEPROMShadow(2);
+        shadow.contentsKnown(0, PAYLOAD, 1000, DIAMETER);
+        shadow.contentsKnown(1, PAYLOAD, 1000, DIAMETER);
+
+        // A purge or macro has run, so the counts may have moved unseen
+        shadow.filamentMayHaveBeenUsed();
+        assertFalse(shadow.holds(0, PAYLOAD));
+        assertFalse(shadow.holds(1, PAYLOAD));
+
+        shadow.contentsKnown(0, PAYLOAD, 990, DIAMETER);
+        assertTrue(shadow.holds(0, PAYLOAD));
+        assertFalse(shadow.holds(1, PAYLOAD));
+    }
+
+    @Test
+    public void testFilamentUsedIsTakenOffTheRemainingFilament()
+    {
+        ReelEEPROMShadow shadow = new ReelEEPROMShadow(2);
+        shadow.contentsKnown(0, PAYLOAD, 1000, DIAMETER);
+
+        double areaOfFilament = Math.PI * (DIAMETER / 2) * (DIAMETER / 2);
+        assertEquals(900, shadow.filamentUsed(0, areaOfFilament * 100), 0.01);
+        assertEquals(750, shadow.filamentUsed(0, areaOfFilament * 150), 0.01);
+        assertEquals(0, shadow.filamentUsed(0, areaOfFilament * 10000), 0.01);
+
+        // Reading the reel gives the printer's count to take the use from
+        shadow.contentsKnown(0, PAYLOAD, 800, DIAMETER);
+        assertEquals(790, shadow.filamentUsed(0, areaOfFilament * 10), 0.01);
+    }
+}
@@ -0,0 +1,117 @@
+package celtech.roboxbase.printerControl.model;
+
+import celtech.roboxbase.comms.rx.StatusResponse;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class StatusResponseChangesTest
+{
+
+    private final List<Object> valuesWritten = new ArrayList<>();
+
+    @Test
+    public void testFirstStatusAppliesEveryField()
+    {
+        StatusResponseChanges changes = new StatusResponseChanges(null, status(25, 60));
+
+        applyTemperatures(changes);
+
+        assertEquals(2, changes.getFieldsWritten());
+        assertEquals(25, valuesWritten.get(0));
+        assertEquals(60, valuesWritten.get(1));
+    }
+
+    @Test
+    public void testUnchangedFieldsAreNotApplied()
+    {
+        StatusResponseChanges changes = new StatusResponseChanges(status(25, 60), status(25, 61));
+
+        applyTemperatures(changes);
+
+        assertEquals(1, changes.getFieldsWritten());
+        assertEquals(1, valuesWritten.size());
+        assertEquals(61, valuesWritten.get(0));
+    }
+
+    @Test
+    public void testChangedObjectFieldIsApplied()
+    {
+        StatusResponse previousStatus = status(25, 60);
+        StatusResponse status = status(25, 60);
+        previousStatus.setRunningPrintJobID("");
+        status.setRunningPrintJobID("abc123");
+
+        StatusResponseChanges changes = new StatusResponseChanges(previousStatus, status);
+        changes.apply(StatusResponse::getRunningPrintJobID, valuesWritten::add);
+        applyTemperatures(changes);
+
+        assertEquals(1, changes.getFieldsWritten());
+        assertEquals("abc123", valuesWritten.get(0));
+    }
+
+    @Test
+    public void testEveryFieldAppliesUnchangedFields()
+    {
+        StatusResponseChanges changes = new StatusResponseChanges(status(25, 60), status(25, 60))
+                .everyField();
+
+        applyTemperatures(changes);
+
+        assertEquals(2, changes.getFieldsWritten());
+    }
+
+    @Test
+    public void testStatusUpdatedInPlaceAppliesEveryField()
+    {
+        StatusResponse status = status(25, 60);
+
+        StatusResponseChanges changes = new StatusResponseChanges(status, status);
+        applyTemperatures(changes);
+
+        assertEquals(2, changes.getFieldsWritten());
+    }
+
+    @Test
+    public void testSteadyPrintersOnlyWriteWhatChanges()
+    {
+        int printerCount = 50;
+        int secondsPolled = 60;
+
+        int fieldsWritten = 0;
+        for (int printer = 0; printer < printerCount; printer++)
+        {
+            StatusResponse previousStatus = null;
+            for (int second = 0; second < secondsPolled; second++)
+            {
+                // The bed is warming up, the ambient temperature is steady
+                StatusResponse status = status(25, 20 + second);
+                StatusResponseChanges changes = new StatusResponseChanges(previousStatus, status);
+                applyTemperatures(changes);
+                fieldsWritten += changes.getFieldsWritten();
+                previousStatus = status;
+            }
+        }
+
+        assertEquals(printerCount * (secondsPolled + 1), fieldsWritten);
+    }
+
+    private void applyTemperatures(StatusResponseChanges changes)
+    {
+        changes.apply(StatusResponse::getAmbientTemperature, valuesWritten::add);
+        changes.apply(StatusResponse::getBedTemperature, valuesWritten::add);
+    }
+
+    private StatusResponse status(int ambientTemperature, int bedTemperature)
+    {
+        StatusResponse status = new StatusResponse();
+        status.setAmbientTemperature(ambientTemperature);
+        status.setBedTemperature(bedTemperature);
+        return status;
+    }
+}
@@ -0,0 +1,103 @@
+package celtech.roboxbase.printerControl.model;
+
+import javafx.scene.chart.XYChart;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class TemperatureHistoryTest
+{
+
+    @Test
+    public void testSamplesAreKeptOldestFirst()
+    {
+        TemperatureHistory history = new TemperatureHistory(5);
+
+        history.add(1000, 20);
+        history.add(2000, 21);
+        history.add(3000, 22);
+
+        assertEquals(3, history.getSize());
+        assertEquals(20, history.getValue(0), 0);
+        assertEquals(22, history.getValue(2), 0);
+        assertEquals(3000, history.getTimestamp(2));
+        assertEquals(22, history.getLatestValue(), 0);
+    }
+
+    @Test
+    public void testOldestSamplesAreReplacedWhenFull()
+    {
+        TemperatureHistory history = new TemperatureHistory(3);
+
+        for (int sample = 0; sample < 10; sample++)
+        {
+            history.add(sample * 1000, 100 + sample);
+        }
+
+        assertEquals(3, history.getSize());
+        assertEquals(107, history.getValue(0), 0);
+        assertEquals(108, history.getValue(1), 0);
+        assertEquals(109, history.getValue(2), 0);
+        assertEquals(7000, history.getTimestamp(0));
+    }
+
+    @Test
+    public void testRepeatLatest()
+    {
+        TemperatureHistory history = new TemperatureHistory(4);
+
+        history.repeatLatest(1000);
+        history.add(2000, 50);
+        history.repeatLatest(3000);
+
+        assertEquals(3, history.getSize());
+        assertEquals(0, history.getValue(0), 0);
+        assertEquals(50, history.getValue(2), 0);
+        assertEquals(3000, history.getTimestamp(2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSampleNotYetTaken()
+    {
+        TemperatureHistory history = new TemperatureHistory(4);
+        history.add(1000, 50);
+
+        history.getValue(1);
+    }
+
+    @Test
+    public void testChartSeriesHasOnePointPerSample()
+    {
+        TemperatureHistory history = new TemperatureHistory(4);
+        history.add(1000, 50);
+
+        XYChart.Series<Number, Number> chartSeries = history.getChartSeries();
+
+        assertSame(chartSeries, history.getChartSeries());
+        assertEquals(4, chartSeries.getData().size());
+        assertEquals(3, chartSeries.getData().get(3).getXValue().intValue());
+        assertEquals(50, chartSeries.getData().get(3).getYValue().floatValue(), 0);
+        assertEquals(0, chartSeries.getData().get(2).getYValue().floatValue(), 0);
+    }
+
+    @Test
+    public void testChartPointsAreNumberedFromTheOldest()
+    {
+        TemperatureHistory history = new TemperatureHistory(3);
+        for (int sample = 0; sample < 10; sample++)
+        {
+            history.add(sample * 1000, 100 + sample);
+        }
+
+        XYChart.Series<Number, Number> chartSeries = history.getChartSeries();
+
+        assertEquals(3, chartSeries.getData().size());
+        assertEquals(0, chartSeries.getData().get(0).getXValue().intValue());
+        assertEquals(107, chartSeries.getData().get(0).getYValue().floatValue(), 0);
+        assertEquals(2, chartSeries.getData().get(2).getXValue().intValue());
+        assertEquals(109, chartSeries.getData().get(2).getYValue().floatValue(), 0);
+    }
+}
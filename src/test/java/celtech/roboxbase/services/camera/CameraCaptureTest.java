@@ -0,0 +1,99 @@
+package celtech.roboxbase.services.camera;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the capture with stub scripts in place of the camera.
+ *
+ * @author ianhudson
+ */
+public class CameraCaptureTest
+{
+
+    private Path scriptDirectory;
+    private File imageFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        scriptDirectory = Files.createTempDirectory("camera");
+        imageFile = scriptDirectory.resolve("image.jpg").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for (File file : scriptDirectory.toFile().listFiles())
+        {
+            file.delete();
+        }
+        Files.delete(scriptDirectory);
+    }
+
+    @Test
+    public void testTriggerReturnsWhenShutterReleased() throws Exception
+    {
+        CameraCapture capture = captureWithScript("echo " + CameraCapture.SHUTTER_RELEASED + "\n"
+                + "sleep 1\n"
+                + "echo image > \"$1\"\n", 15);
+
+        assertTrue(capture.trigger());
+        assertFalse("image stored before the trigger returned", imageFile.exists());
+
+        assertTrue(capture.whenAcquired().get(10, TimeUnit.SECONDS));
+        assertTrue(imageFile.exists());
+        assertTrue(capture.getShutterLatencyMs() >= 0);
+        assertTrue(capture.getCaptureLatencyMs() >= capture.getShutterLatencyMs() + 900);
+    }
+
+    @Test
+    public void testScriptThatDoesNotReleaseTheShutterIsWaitedFor() throws Exception
+    {
+        CameraCapture capture = captureWithScript("sleep 0.2\n"
+                + "echo image > \"$1\"\n", 15);
+
+        assertTrue(capture.trigger());
+        assertTrue(imageFile.exists());
+        assertTrue(capture.whenAcquired().get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedScript() throws Exception
+    {
+        CameraCapture capture = captureWithScript("exit 1\n", 15);
+
+        assertFalse(capture.trigger());
+        assertFalse(capture.whenAcquired().get(10, TimeUnit.SECONDS));
+        assertEquals(-1, capture.getCaptureLatencyMs());
+    }
+
+    @Test
+    public void testHungScriptIsStopped() throws Exception
+    {
+        CameraCapture capture = captureWithScript("sleep 30\n", 1);
+
+        long startTime = System.currentTimeMillis();
+        assertFalse(capture.trigger());
+        assertFalse(capture.whenAcquired().get(10, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - startTime < 10000);
+    }
+
+    private CameraCapture captureWithScript(String script, int timeoutSeconds) throws Exception
+    {
+        File scriptFile = scriptDirectory.resolve("takePhoto.sh").toFile();
+        Files.write(scriptFile.toPath(), ("#!/bin/sh\n" + script).getBytes());
+        scriptFile.setExecutable(true);
+
+        return new CameraCapture(scriptFile.getPath(),
+                timeoutSeconds,
+                Collections.singletonList(imageFile.getPath()));
+    }
+}
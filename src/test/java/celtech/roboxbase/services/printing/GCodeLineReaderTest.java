@@ -0,0 +1,102 @@
+package celtech.roboxbase.services.printing;
+
+import celtech.roboxbase.utils.SystemUtils;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class GCodeLineReaderTest
+{
+
+    @Test
+    public void testSkipsCommentsAndBlankLines() throws Exception
+    {
+        List<String> lines = readAll("; header\r\n"
+                + "\r\n"
+                + "  G28 X Y ; home\r\n"
+                + "\t; indented comment\n"
+                + "M104 S200\r"
+                + "G1 X10");
+
+        assertEquals(Arrays.asList("G28 X Y", "M104 S200", "G1 X10"), lines);
+    }
+
+    @Test
+    public void testLineLongerThanABlock() throws Exception
+    {
+        StringBuilder longLine = new StringBuilder("G1");
+        while (longLine.length() < GCodeLineReader.BLOCK_SIZE * 3)
+        {
+            longLine.append(" X1");
+        }
+
+        List<String> lines = readAll("G28\n" + longLine + "\nG29\n");
+
+        assertEquals(Arrays.asList("G28", longLine.toString(), "G29"), lines);
+    }
+
+    @Test
+    public void testMatchesLineByLineCleaning() throws Exception
+    {
+        File gcodeFile = new File(this.getClass().getResource("/postprocessor/complexTest.gcode").toURI());
+
+        List<String> expectedLines = readWithScanner(gcodeFile);
+        List<String> lines = new ArrayList<>();
+        try (GCodeLineReader lineReader = new GCodeLineReader(gcodeFile))
+        {
+            String line;
+            while ((line = lineReader.readLine()) != null)
+            {
+                lines.add(line);
+            }
+        }
+
+        assertEquals(expectedLines, lines);
+    }
+
+    private List<String> readAll(String contents) throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+        try (GCodeLineReader lineReader = new GCodeLineReader(
+                new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8))))
+        {
+            String line;
+            while ((line = lineReader.readLine()) != null)
+            {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * The lines as the transfer used to read them.
+     */
+    private List<String> readWithScanner(File gcodeFile) throws Exception
+    {
+        List<String> lines = new ArrayList<>();
+        try (Scanner scanner = new Scanner(new FileReader(gcodeFile)))
+        {
+            while (scanner.hasNextLine())
+            {
+                String line = scanner.nextLine().trim();
+                if (line.equals("") == false && line.startsWith(";") == false)
+                {
+                    lines.add(line.replaceFirst(";.*$", "").replaceFirst("\\s+$", ""));
+                }
+            }
+        }
+        return lines;
+    }
+}
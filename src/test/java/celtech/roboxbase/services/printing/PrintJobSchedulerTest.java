@@ -0,0 +1,404 @@
+package celtech.roboxbase.services.printing;
+
+import celtech.roboxbase.comms.DetectedDevice;
+import celtech.roboxbase.comms.DeviceDetector;
+import celtech.roboxbase.comms.DummyPrinterCommandInterface;
+import celtech.roboxbase.comms.PrinterStatusConsumer;
+import celtech.roboxbase.postprocessor.PrintJobStatistics;
+import celtech.roboxbase.printerControl.PrintJob;
+import celtech.roboxbase.printerControl.PrinterStatus;
+import celtech.roboxbase.printerControl.model.HardwarePrinter;
+import celtech.roboxbase.printerControl.model.Printer;
+import celtech.roboxbase.utils.BaseEnvironmentConfiguredTest;
+import celtech.roboxbase.utils.tasks.BackgroundExecutor;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Schedules jobs across a farm of dummy printers.
+ *
+ * @author ianhudson
+ */
+public class PrintJobSchedulerTest extends BaseEnvironmentConfiguredTest
+{
+
+    private static final String SINGLE_MATERIAL_HEAD = "RBX01-SM";
+    private static final String DUAL_MATERIAL_HEAD = "RBX01-DM";
+    private static final double HOUR = 3600;
+    private static final int LINES_PER_JOB = 300;
+
+    private final BackgroundExecutor executor = new BackgroundExecutor("test", 2);
+    private final RecordingDispatcher dispatcher = new RecordingDispatcher();
+    private final PrintJobScheduler scheduler = new PrintJobScheduler(executor, dispatcher);
+    private final Map<Printer, DummyPrinterCommandInterface> commandInterfaces = new HashMap<>();
+
+    private static class StatusConsumer implements PrinterStatusConsumer
+    {
+
+        @Override
+        public void printerConnected(DetectedDevice printerHandle)
+        {
+        }
+
+        @Override
+        public void disconnected(DetectedDevice printerHandle)
+        {
+        }
+    }
+
+    /**
+     * Sends each job it starts to the dummy printer as a data file, which the
+     * dummy then prints a hundred lines per status request.
+     */
+    private static class RecordingDispatcher implements PrintJobScheduler.Dispatcher
+    {
+
+        private final List<String> started = new CopyOnWriteArrayList<>();
+        private final List<String> prepared = new CopyOnWriteArrayList<>();
+        private final CountDownLatch prepareAllowed = new CountDownLatch(1);
+        private final CountDownLatch prepareStarted = new CountDownLatch(1);
+        private volatile boolean holdPrepare = false;
+        private volatile boolean prepareInterrupted = false;
+        private volatile boolean sendToPrinter = true;
+
+        @Override
+        public void prepare(Printer printer, PrintJob printJob)
+        {
+            if (holdPrepare)
+            {
+                prepareStarted.countDown();
+                try
+                {
+                    prepareAllowed.await();
+                } catch (InterruptedException ex)
+                {
+                    prepareInterrupted = true;
+                    return;
+                }
+            }
+            prepared.add(printer.getPrinterIdentity().printerFriendlyNameProperty().get()
+                    + ":" + printJob.getJobUUID());
+        }
+
+        @Override
+        public boolean start(Printer printer, PrintJob printJob)
+        {
+            try
+            {
+                if (sendToPrinter)
+                {
+                    printer.initialiseDataFileSend(printJob.getJobUUID(), false);
+                    for (int lineNumber = 0; lineNumber < LINES_PER_JOB; lineNumber++)
+                    {
+                        printer.sendDataFileChunk("G1 X10 Y10", lineNumber == LINES_PER_JOB - 1, true);
+                    }
+                }
+            } catch (Exception ex)
+            {
+                return false;
+            }
+            started.add(printer.getPrinterIdentity().printerFriendlyNameProperty().get()
+                    + ":" + printJob.getJobUUID());
+            return true;
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testJobsGoToPrintersWithTheirHead() throws Exception
+    {
+        Printer singleMaterial = makePrinter("single", SINGLE_MATERIAL_HEAD, 0);
+        Printer dualMaterial = makePrinter("dual", DUAL_MATERIAL_HEAD, 0, 1);
+        scheduler.addPrinter(singleMaterial);
+        scheduler.addPrinter(dualMaterial);
+
+        PrintJob shortJob = makeJob("short", SINGLE_MATERIAL_HEAD, 0.5 * HOUR, true, false);
+        PrintJob dualJob = makeJob("dual", DUAL_MATERIAL_HEAD, 2 * HOUR, true, true);
+        PrintJob longJob = makeJob("long", SINGLE_MATERIAL_HEAD, HOUR, true, false);
+        assertTrue(scheduler.submit(shortJob));
+        assertTrue(scheduler.submit(dualJob));
+        assertTrue(scheduler.submit(longJob));
+
+        scheduler.dispatch();
+
+        assertEquals(2, dispatcher.started.size());
+        assertTrue(dispatcher.started.contains("single:long"));
+        assertTrue(dispatcher.started.contains("dual:dual"));
+
+        List<PrintJobScheduler.Placement> plan = scheduler.plan();
+        assertEquals(1, plan.size());
+        assertSame(shortJob, plan.get(0).getPrintJob());
+        assertSame(singleMaterial, plan.get(0).getPrinter());
+        assertEquals(HOUR, plan.get(0).getStartSeconds(), 1);
+    }
+
+    @Test
+    public void testLongestJobsArePlannedFirst() throws Exception
+    {
+        scheduler.addPrinter(makePrinter("first", SINGLE_MATERIAL_HEAD, 0));
+        scheduler.addPrinter(makePrinter("second", SINGLE_MATERIAL_HEAD, 0));
+
+        // Taken in the order queued, the long job would end up after two short ones
+        for (int jobNumber = 0; jobNumber < 4; jobNumber++)
+        {
+            scheduler.submit(makeJob("short" + jobNumber, SINGLE_MATERIAL_HEAD, HOUR, true, false));
+        }
+        scheduler.submit(makeJob("long", SINGLE_MATERIAL_HEAD, 4 * HOUR, true, false));
+
+        List<PrintJobScheduler.Placement> plan = scheduler.plan();
+        assertEquals(5, plan.size());
+        double makespan = plan.stream()
+                .mapToDouble(PrintJobScheduler.Placement::getFinishSeconds)
+                .max()
+                .getAsDouble();
+        assertEquals(4 * HOUR, makespan, 1);
+    }
+
+    @Test
+    public void testJobsNeedTheirFilamentLoaded() throws Exception
+    {
+        Printer oneLoaded = makePrinter("oneLoaded", DUAL_MATERIAL_HEAD, 0);
+        Printer bothLoaded = makePrinter("bothLoaded", DUAL_MATERIAL_HEAD, 0, 1);
+        scheduler.addPrinter(oneLoaded);
+        scheduler.addPrinter(bothLoaded);
+
+        PrintJob dualJob = makeJob("dual", DUAL_MATERIAL_HEAD, HOUR, true, true);
+        PrintJob singleHeadJob = makeJob("single", SINGLE_MATERIAL_HEAD, HOUR, true, false);
+        scheduler.submit(dualJob);
+        scheduler.submit(singleHeadJob);
+
+        List<PrintJobScheduler.Placement> plan = scheduler.plan();
+        assertEquals(1, plan.size());
+        assertSame(dualJob, plan.get(0).getPrintJob());
+        assertSame(bothLoaded, plan.get(0).getPrinter());
+
+        scheduler.dispatch();
+        assertEquals(1, dispatcher.started.size());
+        assertTrue(dispatcher.started.contains("bothLoaded:dual"));
+        // Nothing can print the single material job
+        assertEquals(1, scheduler.getQueuedJobs().size());
+        assertSame(singleHeadJob, scheduler.getQueuedJobs().get(0));
+    }
+
+    @Test
+    public void testNextJobIsPreparedOnAPrinterAboutToFinish() throws Exception
+    {
+        scheduler.addPrinter(makePrinter("busy", SINGLE_MATERIAL_HEAD, 0));
+        scheduler.addPrinter(makePrinter("nearlyDone", SINGLE_MATERIAL_HEAD, 0));
+        scheduler.submit(makeJob("quick", SINGLE_MATERIAL_HEAD, 120, true, false));
+        scheduler.submit(makeJob("slow", SINGLE_MATERIAL_HEAD, 10 * HOUR, true, false));
+        scheduler.dispatch();
+        assertTrue(dispatcher.started.contains("busy:slow"));
+        assertTrue(dispatcher.started.contains("nearlyDone:quick"));
+
+        scheduler.submit(makeJob("next", SINGLE_MATERIAL_HEAD, HOUR, true, false));
+        scheduler.dispatch();
+
+        long giveUpTime = System.currentTimeMillis() + 5000;
+        while (dispatcher.prepared.isEmpty() && System.currentTimeMillis() < giveUpTime)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, dispatcher.prepared.size());
+        assertEquals("nearlyDone:next", dispatcher.prepared.get(0));
+        assertEquals(2, dispatcher.started.size());
+
+        // Preparing once is enough
+        scheduler.dispatch();
+        Thread.sleep(50);
+        assertEquals(1, dispatcher.prepared.size());
+    }
+
+    @Test
+    public void testJobIsNotStartedWhileBeingPrepared() throws Exception
+    {
+        dispatcher.holdPrepare = true;
+        Printer printer = makePrinter("only", SINGLE_MATERIAL_HEAD, 0);
+        DummyPrinterCommandInterface commandInterface = commandInterfaces.get(printer);
+        scheduler.addPrinter(printer);
+        scheduler.submit(makeJob("first", SINGLE_MATERIAL_HEAD, 60, true, false));
+        scheduler.dispatch();
+        assertEquals(1, dispatcher.started.size());
+
+        // Prepared while the first job prints, but the upload is slow
+        scheduler.submit(makeJob("second", SINGLE_MATERIAL_HEAD, 60, true, false));
+        commandInterface.doStatusRequest();
+        scheduler.dispatch();
+        printUntilIdle(printer, commandInterface);
+        scheduler.dispatch();
+        scheduler.bedCleared(printer);
+
+        scheduler.dispatch();
+        assertEquals(1, dispatcher.started.size());
+
+        dispatcher.prepareAllowed.countDown();
+        waitFor(() -> !dispatcher.prepared.isEmpty());
+        Thread.sleep(50);
+        scheduler.dispatch();
+        assertEquals(2, dispatcher.started.size());
+        assertEquals("only:second", dispatcher.started.get(1));
+    }
+
+    @Test
+    public void testWithdrawnJobStopsBeingPrepared() throws Exception
+    {
+        dispatcher.holdPrepare = true;
+        Printer printer = makePrinter("only", SINGLE_MATERIAL_HEAD, 0);
+        DummyPrinterCommandInterface commandInterface = commandInterfaces.get(printer);
+        scheduler.addPrinter(printer);
+        scheduler.submit(makeJob("first", SINGLE_MATERIAL_HEAD, 60, true, false));
+        scheduler.dispatch();
+
+        PrintJob secondJob = makeJob("second", SINGLE_MATERIAL_HEAD, 60, true, false);
+        scheduler.submit(secondJob);
+        commandInterface.doStatusRequest();
+        scheduler.dispatch();
+        assertTrue(dispatcher.prepareStarted.await(5, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.withdraw(secondJob));
+        waitFor(() -> dispatcher.prepareInterrupted);
+        assertTrue(dispatcher.prepared.isEmpty());
+    }
+
+    @Test
+    public void testBedMustBeClearedBeforeTheNextJob() throws Exception
+    {
+        Printer printer = makePrinter("only", SINGLE_MATERIAL_HEAD, 0);
+        DummyPrinterCommandInterface commandInterface = commandInterfaces.get(printer);
+        scheduler.addPrinter(printer);
+        scheduler.submit(makeJob("first", SINGLE_MATERIAL_HEAD, 60, true, false));
+        scheduler.submit(makeJob("second", SINGLE_MATERIAL_HEAD, 60, true, false));
+
+        scheduler.dispatch();
+        assertEquals(1, dispatcher.started.size());
+
+        commandInterface.doStatusRequest();
+        assertEquals(PrinterStatus.PRINTING_PROJECT, printer.printerStatusProperty().get());
+        scheduler.dispatch();
+        printUntilIdle(printer, commandInterface);
+
+        scheduler.dispatch();
+        assertEquals(1, dispatcher.started.size());
+        assertTrue(scheduler.plan().isEmpty());
+
+        scheduler.bedCleared(printer);
+        scheduler.dispatch();
+        assertEquals(2, dispatcher.started.size());
+        assertEquals("only:second", dispatcher.started.get(1));
+        assertTrue(scheduler.getQueuedJobs().isEmpty());
+    }
+
+    @Test
+    public void testJobThatDoesntPrintGoesBackInTheQueue() throws Exception
+    {
+        dispatcher.sendToPrinter = false;
+        Printer printer = makePrinter("only", SINGLE_MATERIAL_HEAD, 0);
+        scheduler.addPrinter(printer);
+        scheduler.submit(makeJob("first", SINGLE_MATERIAL_HEAD, 60, true, false));
+        scheduler.dispatch();
+        assertEquals(1, dispatcher.started.size());
+
+        // Busy with the job, then idle again without having printed it
+        printer.setPrinterStatus(PrinterStatus.RUNNING_MACRO_FILE);
+        scheduler.dispatch();
+        printer.setPrinterStatus(PrinterStatus.IDLE);
+        scheduler.dispatch();
+
+        // Nothing was printed, so the bed is still clear for another go
+        assertEquals(2, dispatcher.started.size());
+        assertEquals("only:first", dispatcher.started.get(1));
+        assertTrue(scheduler.getQueuedJobs().isEmpty());
+    }
+
+    @Test
+    public void testJobNotPrintedOnARemovedPrinterGoesBackInTheQueue() throws Exception
+    {
+        dispatcher.sendToPrinter = false;
+        Printer printer = makePrinter("only", SINGLE_MATERIAL_HEAD, 0);
+        scheduler.addPrinter(printer);
+        PrintJob printJob = makeJob("first", SINGLE_MATERIAL_HEAD, 60, true, false);
+        scheduler.submit(printJob);
+        scheduler.dispatch();
+        assertTrue(scheduler.getQueuedJobs().isEmpty());
+
+        scheduler.removePrinter(printer);
+        assertEquals(1, scheduler.getQueuedJobs().size());
+        assertSame(printJob, scheduler.getQueuedJobs().get(0));
+    }
+
+    private void printUntilIdle(Printer printer, DummyPrinterCommandInterface commandInterface)
+    {
+        for (int statusRequest = 0;
+                statusRequest < 10 && printer.printerStatusProperty().get() != PrinterStatus.IDLE;
+                statusRequest++)
+        {
+            commandInterface.doStatusRequest();
+        }
+        assertEquals(PrinterStatus.IDLE, printer.printerStatusProperty().get());
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException
+    {
+        long giveUpTime = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < giveUpTime)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private Printer makePrinter(String name, String headType, int... loadedExtruders) throws Exception
+    {
+        StatusConsumer statusConsumer = new StatusConsumer();
+        DummyPrinterCommandInterface commandInterface = new DummyPrinterCommandInterface(statusConsumer,
+                new DetectedDevice(DeviceDetector.DeviceConnectionType.SERIAL, name), false, 500);
+        commandInterface.connectToPrinter();
+        HardwarePrinter printer = new HardwarePrinter(statusConsumer, commandInterface);
+        printer.getPrinterIdentity().printerFriendlyNameProperty().set(name);
+
+        printer.sendRawGCode("INSERT SD", false);
+        printer.sendRawGCode("ATTACH HEAD " + headType, false);
+        for (int extruderNumber : loadedExtruders)
+        {
+            printer.sendRawGCode("ATTACH EXTRUDER " + extruderNumber, false);
+            printer.sendRawGCode("LOAD " + extruderNumber, false);
+        }
+        commandInterface.doStatusRequest();
+        printer.readHeadEEPROM(false);
+
+        commandInterfaces.put(printer, commandInterface);
+        return printer;
+    }
+
+    private PrintJob makeJob(String jobID, String headType, double durationSeconds,
+            boolean requiresMaterial1, boolean requiresMaterial2) throws Exception
+    {
+        File jobDirectory = temporaryUserStorageFolder.newFolder(jobID);
+        PrintJob printJob = new PrintJob(jobID, jobDirectory.getAbsolutePath() + File.separator);
+
+        PrintJobStatistics statistics = new PrintJobStatistics();
+        statistics.setPrintJobID(jobID);
+        statistics.setPrintedWithHeadType(headType);
+        statistics.setRequiresMaterial1(requiresMaterial1);
+        statistics.setRequiresMaterial2(requiresMaterial2);
+        statistics.setPredictedDuration(durationSeconds);
+        statistics.setNumberOfLines(LINES_PER_JOB);
+        statistics.writeStatisticsToFile(printJob.getStatisticsFileLocation());
+        return printJob;
+    }
+}
@@ -0,0 +1,247 @@
+package celtech.roboxbase.services.printing;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpProgressMonitor;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Sends files to an SSH server run in the test.
+ *
+ * @author ianhudson
+ */
+public class SFTPUtilsTest
+{
+
+    private static final String HOST = "127.0.0.1";
+    private static final String SLOW_HOST = "127.0.0.2";
+    private static final int FILE_SIZE = 1024 * 1024;
+
+    private static class RecordingMonitor implements SftpProgressMonitor
+    {
+
+        private long fileSize = 0;
+        private final List<Long> increments = new ArrayList<>();
+
+        @Override
+        public void init(int op, String src, String dest, long fileSize)
+        {
+            this.fileSize = fileSize;
+            increments.clear();
+        }
+
+        @Override
+        public boolean count(long increment)
+        {
+            increments.add(increment);
+            return true;
+        }
+
+        @Override
+        public void end()
+        {
+        }
+
+        long getCount()
+        {
+            return increments.stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    private SshServer sshServer;
+    private Path serverDirectory;
+    private File localFile;
+    private byte[] localBytes;
+    private SFTPSessionPool pool;
+    private final CountDownLatch slowHostReached = new CountDownLatch(1);
+    private final CountDownLatch slowHostReleased = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        serverDirectory = Files.createTempDirectory("sftpServer");
+
+        sshServer = SshServer.setUpDefaultServer();
+        sshServer.setHost(HOST);
+        sshServer.setPort(0);
+        sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        sshServer.setPasswordAuthenticator((username, password, session) -> true);
+        sshServer.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        sshServer.setFileSystemFactory(new VirtualFileSystemFactory(serverDirectory));
+        sshServer.start();
+
+        int port = sshServer.getPort();
+        pool = new SFTPSessionPool(hostAddress ->
+        {
+            if (hostAddress.equals(SLOW_HOST))
+            {
+                slowHostReached.countDown();
+                try
+                {
+                    slowHostReleased.await();
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                throw new JSchException("Host unreachable");
+            }
+            Session session = new JSch().getSession("pi", hostAddress, port);
+            session.setPassword("test");
+            session.setConfig("StrictHostKeyChecking", "no");
+            return session;
+        });
+
+        localBytes = new byte[FILE_SIZE];
+        new Random(42).nextBytes(localBytes);
+        localFile = File.createTempFile("job", ".gcode");
+        Files.write(localFile.toPath(), localBytes);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        slowHostReleased.countDown();
+        pool.closeAll();
+        sshServer.stop(true);
+        localFile.delete();
+        try (Stream<Path> paths = Files.walk(serverDirectory))
+        {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testSessionIsReusedBetweenTransfers() throws Exception
+    {
+        SFTPUtils sftpUtils = new SFTPUtils(HOST, pool);
+        RecordingMonitor monitor = new RecordingMonitor();
+
+        assertTrue(sftpUtils.transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", monitor));
+        assertTrue(sftpUtils.transferToRemotePrinter(localFile, "spool/job2", "job2.gcode", monitor));
+
+        assertEquals(1, pool.getSessionsCreated());
+        assertArrayEquals(localBytes, Files.readAllBytes(serverDirectory.resolve("spool/job1/job1.gcode")));
+        assertArrayEquals(localBytes, Files.readAllBytes(serverDirectory.resolve("spool/job2/job2.gcode")));
+        assertEquals(FILE_SIZE, monitor.getCount());
+    }
+
+    @Test
+    public void testDroppedSessionIsReopened() throws Exception
+    {
+        SFTPUtils sftpUtils = new SFTPUtils(HOST, pool);
+
+        assertTrue(sftpUtils.transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", null));
+        sshServer.getActiveSessions().forEach(session -> session.close(true));
+        assertTrue(sftpUtils.transferToRemotePrinter(localFile, "spool/job2", "job2.gcode", null));
+
+        assertEquals(2, pool.getSessionsCreated());
+        assertArrayEquals(localBytes, Files.readAllBytes(serverDirectory.resolve("spool/job2/job2.gcode")));
+    }
+
+    @Test
+    public void testFailedChannelLeavesSessionOpen() throws Exception
+    {
+        ChannelSftp failedChannel = pool.acquire(HOST);
+        ChannelSftp otherChannel = pool.acquire(HOST);
+
+        pool.discard(HOST, failedChannel);
+
+        assertFalse(failedChannel.isConnected());
+        assertTrue(otherChannel.isConnected());
+        assertTrue(pool.getConnectedHosts().contains(HOST));
+        pool.release(HOST, otherChannel);
+        assertTrue(new SFTPUtils(HOST, pool).transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", null));
+        assertEquals(1, pool.getSessionsCreated());
+    }
+
+    @Test
+    public void testPartSentFileIsResumed() throws Exception
+    {
+        int sentBytes = FILE_SIZE / 2;
+        Files.createDirectories(serverDirectory.resolve("spool/job1"));
+        Files.write(serverDirectory.resolve("spool/job1/job1.gcode"), Arrays.copyOf(localBytes, sentBytes));
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        assertTrue(new SFTPUtils(HOST, pool).transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", monitor));
+
+        assertArrayEquals(localBytes, Files.readAllBytes(serverDirectory.resolve("spool/job1/job1.gcode")));
+        // The part already sent is counted at the start, so the progress is right
+        assertEquals(Long.valueOf(sentBytes), monitor.increments.get(0));
+        assertEquals(FILE_SIZE, monitor.getCount());
+        assertEquals(FILE_SIZE, monitor.fileSize);
+    }
+
+    @Test
+    public void testDifferentPartSentFileIsReplaced() throws Exception
+    {
+        byte[] otherBytes = new byte[FILE_SIZE / 2];
+        new Random(7).nextBytes(otherBytes);
+        Files.createDirectories(serverDirectory.resolve("spool/job1"));
+        Files.write(serverDirectory.resolve("spool/job1/job1.gcode"), otherBytes);
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        assertTrue(new SFTPUtils(HOST, pool).transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", monitor));
+
+        assertArrayEquals(localBytes, Files.readAllBytes(serverDirectory.resolve("spool/job1/job1.gcode")));
+        assertEquals(FILE_SIZE, monitor.getCount());
+    }
+
+    @Test
+    public void testCompleteFileIsNotSentAgain() throws Exception
+    {
+        Files.createDirectories(serverDirectory.resolve("spool/job1"));
+        Files.write(serverDirectory.resolve("spool/job1/job1.gcode"), localBytes);
+        long modified = Files.getLastModifiedTime(serverDirectory.resolve("spool/job1/job1.gcode")).toMillis();
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        assertTrue(new SFTPUtils(HOST, pool).transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", monitor));
+
+        assertEquals(modified, Files.getLastModifiedTime(serverDirectory.resolve("spool/job1/job1.gcode")).toMillis());
+        assertEquals(FILE_SIZE, monitor.getCount());
+    }
+
+    @Test
+    public void testSlowHostDoesNotHoldUpOtherHosts() throws Exception
+    {
+        Thread slowTransfer = new Thread(() ->
+        {
+            try
+            {
+                pool.acquire(SLOW_HOST);
+            } catch (JSchException ex)
+            {
+            }
+        });
+        slowTransfer.start();
+        assertTrue(slowHostReached.await(5, TimeUnit.SECONDS));
+
+        assertTrue(new SFTPUtils(HOST, pool).transferToRemotePrinter(localFile, "spool/job1", "job1.gcode", null));
+
+        slowHostReleased.countDown();
+        slowTransfer.join(5000);
+        assertFalse(pool.getConnectedHosts().contains(SLOW_HOST));
+    }
+}
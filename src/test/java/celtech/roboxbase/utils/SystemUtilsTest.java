@@ -0,0 +1,80 @@
+package celtech.roboxbase.utils;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class SystemUtilsTest
+{
+
+    @Test
+    public void testHexEncodeMatchesStringFormat()
+    {
+        byte[] source = new byte[256];
+        for (int i = 0; i < source.length; i++)
+        {
+            source[i] = (byte) i;
+        }
+
+        StringBuilder expected = new StringBuilder();
+        for (byte value : source)
+        {
+            expected.append(String.format("%02X", value));
+        }
+
+        byte[] destination = new byte[source.length * 2];
+        int written = SystemUtils.hexEncode(source, 0, source.length, destination);
+
+        assertEquals(512, written);
+        assertEquals(expected.toString(), new String(destination, 0, written, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testHexEncodeHonoursOffsetAndLength()
+    {
+        byte[] source =
+        {
+            (byte) 0x01, (byte) 0xAB, (byte) 0xFF, (byte) 0x7F
+        };
+        byte[] destination = new byte[8];
+
+        int written = SystemUtils.hexEncode(source, 1, 2, destination);
+
+        assertEquals(4, written);
+        assertEquals("ABFF", new String(destination, 0, written, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testHexDecodeReversesHexEncode()
+    {
+        byte[] source =
+        {
+            (byte) 0x00, (byte) 0xAB, (byte) 0xFF, (byte) 0x7F
+        };
+        byte[] destination = new byte[8];
+        int written = SystemUtils.hexEncode(source, 0, source.length, destination);
+
+        assertArrayEquals(source, SystemUtils.hexDecode(new String(destination, 0, written, StandardCharsets.US_ASCII)));
+        assertArrayEquals(source, SystemUtils.hexDecode("00abff7f"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHexDecodeRejectsBadDigits()
+    {
+        SystemUtils.hexDecode("0G");
+    }
+
+    @Test
+    public void testCleanGCodeForTransmission()
+    {
+        assertEquals("G1 X10 Y20", SystemUtils.cleanGCodeForTransmission("  G1 X10 Y20  "));
+        assertEquals("G1 X10", SystemUtils.cleanGCodeForTransmission("G1 X10 \t; move ; twice\r"));
+        assertEquals("", SystemUtils.cleanGCodeForTransmission("; just a comment"));
+        assertEquals("", SystemUtils.cleanGCodeForTransmission("   "));
+        assertEquals("M104 S200", SystemUtils.cleanGCodeForTransmission("M104 S200"));
+    }
+}
@@ -0,0 +1,146 @@
+package celtech.roboxbase.utils.net;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs conditional fetches against a local stand-in for a Root's printer
+ * list.
+ *
+ * @author ianhudson
+ */
+public class ConditionalGetTest
+{
+
+    private static final String LIST_PATH = "/api/discovery/listPrinters";
+    private static final String NO_ETAG_PATH = "/api/discovery/listCameras";
+    private static final String ALWAYS_NOT_MODIFIED_PATH = "/api/discovery/unchanged";
+
+    private HttpServer standInRoot;
+    private RootHttpClient client;
+    private final AtomicReference<String> printerList = new AtomicReference<>("{\"printerIDs\":[\"RBX01-0001\"]}");
+    private final AtomicInteger inventoryVersion = new AtomicInteger(1);
+    private final AtomicInteger bodiesSent = new AtomicInteger(0);
+
+    @Before
+    public void setUp() throws IOException
+    {
+        standInRoot = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        standInRoot.createContext(LIST_PATH, (exchange) ->
+        {
+            String currentTag = "\"" + inventoryVersion.get() + "\"";
+            if (currentTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+            {
+                exchange.sendResponseHeaders(ConditionalGet.NOT_MODIFIED, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", currentTag);
+            sendBody(exchange, printerList.get());
+        });
+        standInRoot.createContext(NO_ETAG_PATH, (exchange) -> sendBody(exchange, "{\"cameras\":[]}"));
+        standInRoot.createContext(ALWAYS_NOT_MODIFIED_PATH, (exchange) ->
+        {
+            exchange.sendResponseHeaders(ConditionalGet.NOT_MODIFIED, -1);
+            exchange.close();
+        });
+        standInRoot.start();
+
+        client = new RootHttpClient(InetAddress.getLoopbackAddress().getHostAddress(),
+                standInRoot.getAddress().getPort(), "ConditionalGetTest");
+    }
+
+    @After
+    public void tearDown()
+    {
+        standInRoot.stop(0);
+    }
+
+    @Test
+    public void testUnchangedInventoryIsNotFetchedAgain() throws Exception
+    {
+        ConditionalGet printerInventory = new ConditionalGet(LIST_PATH);
+
+        RootHttpClient.Response firstResponse = printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY);
+        assertEquals(200, firstResponse.getResponseCode());
+        assertEquals("\"1\"", printerInventory.getEntityTag());
+
+        for (int poll = 0; poll < 10; poll++)
+        {
+            assertNull(printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY));
+        }
+        assertEquals(1, bodiesSent.get());
+        assertEquals(10, printerInventory.getUnchangedCount());
+    }
+
+    @Test
+    public void testChangedInventoryIsFetched() throws Exception
+    {
+        ConditionalGet printerInventory = new ConditionalGet(LIST_PATH);
+        printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY);
+
+        printerList.set("{\"printerIDs\":[\"RBX01-0001\",\"RBX01-0002\"]}");
+        inventoryVersion.incrementAndGet();
+
+        RootHttpClient.Response response = printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY);
+        assertNotNull(response);
+        assertTrue(new String(response.getBody(), StandardCharsets.UTF_8).contains("RBX01-0002"));
+        assertEquals("\"2\"", printerInventory.getEntityTag());
+        assertNull(printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY));
+    }
+
+    @Test
+    public void testResetFetchesEverything() throws Exception
+    {
+        ConditionalGet printerInventory = new ConditionalGet(LIST_PATH);
+        printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY);
+
+        printerInventory.reset();
+
+        assertNotNull(printerInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY));
+        assertEquals(2, bodiesSent.get());
+    }
+
+    @Test
+    public void testRootWithoutETagsIsFetchedEveryTime() throws Exception
+    {
+        ConditionalGet cameraInventory = new ConditionalGet(NO_ETAG_PATH);
+
+        assertNotNull(cameraInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY));
+        assertNotNull(cameraInventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY));
+        assertNull(cameraInventory.getEntityTag());
+    }
+
+    @Test
+    public void testNotModifiedWithoutETagIsUnchanged() throws Exception
+    {
+        ConditionalGet inventory = new ConditionalGet(ALWAYS_NOT_MODIFIED_PATH);
+
+        assertNull(inventory.fetchIfChanged(client, RootHttpClient.CallType.DISCOVERY));
+        assertNull(inventory.getEntityTag());
+        assertEquals(1, inventory.getUnchangedCount());
+    }
+
+    private void sendBody(HttpExchange exchange, String body) throws IOException
+    {
+        byte[] responseBody = body.getBytes(StandardCharsets.UTF_8);
+        bodiesSent.incrementAndGet();
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, responseBody.length);
+        try (OutputStream responseStream = exchange.getResponseBody())
+        {
+            responseStream.write(responseBody);
+        }
+    }
+}
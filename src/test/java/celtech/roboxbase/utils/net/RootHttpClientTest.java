@@ -0,0 +1,133 @@
+package celtech.roboxbase.utils.net;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Exercises RootHttpClient against a local stand-in for a Root.
+ *
+ * @author ianhudson
+ */
+public class RootHttpClientTest
+{
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = new HashSet<>();
+    private final AtomicReference<String> lastAuthorisation = new AtomicReference<>();
+    private final AtomicReference<String> lastBody = new AtomicReference<>();
+    private RootHttpClient client;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/echo", (exchange) ->
+        {
+            synchronized (clientPorts)
+            {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+            }
+            lastAuthorisation.set(exchange.getRequestHeaders().getFirst("Authorization"));
+
+            byte[] requestBody;
+            try (InputStream requestStream = exchange.getRequestBody())
+            {
+                requestBody = readAll(requestStream);
+            }
+            lastBody.set(new String(requestBody, StandardCharsets.UTF_8));
+
+            byte[] responseBody = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, responseBody.length);
+            try (OutputStream responseStream = exchange.getResponseBody())
+            {
+                responseStream.write(responseBody);
+            }
+        });
+        server.start();
+
+        client = new RootHttpClient(InetAddress.getLoopbackAddress().getHostAddress(),
+                server.getAddress().getPort(), "RootHttpClientTest");
+        client.setTimeouts(RootHttpClient.CallType.CONTROL, new RootHttpClient.Timeouts(2000, 5000));
+        client.setCredentials("root", "1111");
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConnectionIsReusedAcrossRequests() throws IOException
+    {
+        for (int requestCount = 0; requestCount < 20; requestCount++)
+        {
+            RootHttpClient.Response response = client.post("/api/echo", "{}", RootHttpClient.CallType.CONTROL);
+            assertEquals(200, response.getResponseCode());
+            assertEquals("{\"ok\":true}", new String(response.getBody(), StandardCharsets.UTF_8));
+        }
+
+        synchronized (clientPorts)
+        {
+            assertEquals(1, clientPorts.size());
+        }
+    }
+
+    @Test
+    public void testAuthorisationHeaderFollowsCredentials() throws IOException
+    {
+        client.get("/api/echo", RootHttpClient.CallType.CONTROL);
+        assertEquals("Basic " + Base64.getEncoder().encodeToString("root:1111".getBytes(StandardCharsets.UTF_8)),
+                lastAuthorisation.get());
+
+        client.setCredentials("root", "2222");
+        client.get("/api/echo", RootHttpClient.CallType.CONTROL);
+        assertEquals("Basic " + Base64.getEncoder().encodeToString("root:2222".getBytes(StandardCharsets.UTF_8)),
+                lastAuthorisation.get());
+    }
+
+    @Test
+    public void testAsyncPost() throws Exception
+    {
+        RootHttpClient.Response response = client.postAsync("/api/echo", "{\"name\":\"Robox\"}",
+                RootHttpClient.CallType.CONTROL).get(5, TimeUnit.SECONDS);
+
+        assertTrue(response.isSuccess());
+        assertEquals("{\"name\":\"Robox\"}", lastBody.get());
+    }
+
+    @Test
+    public void testErrorResponseIsDrained() throws IOException
+    {
+        RootHttpClient.Response response = client.get("/api/missing", RootHttpClient.CallType.CONTROL);
+        assertEquals(404, response.getResponseCode());
+        assertFalse(response.isSuccess());
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException
+    {
+        java.io.ByteArrayOutputStream bytesRead = new java.io.ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1)
+        {
+            bytesRead.write(buffer, 0, count);
+        }
+        return bytesRead.toByteArray();
+    }
+}
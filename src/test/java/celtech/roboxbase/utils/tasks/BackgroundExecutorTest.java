@@ -0,0 +1,160 @@
+package celtech.roboxbase.utils.tasks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class BackgroundExecutorTest
+{
+
+    private static final int MAX_THREADS = 8;
+
+    private final BackgroundExecutor executor = new BackgroundExecutor("test", MAX_THREADS);
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testThreadCountStaysFlatUnderLoad() throws Exception
+    {
+        int immediateTasks = 5000;
+        int delayedTasks = 2000;
+        CountDownLatch allRun = new CountDownLatch(immediateTasks + delayedTasks);
+        int threadsBefore = Thread.activeCount();
+
+        for (int taskCount = 0; taskCount < immediateTasks; taskCount++)
+        {
+            executor.execute(allRun::countDown);
+        }
+        for (int taskCount = 0; taskCount < delayedTasks; taskCount++)
+        {
+            executor.schedule(allRun::countDown, taskCount % 50);
+        }
+
+        int threadsDuring = Thread.activeCount();
+
+        assertTrue(allRun.await(20, TimeUnit.SECONDS));
+        assertTrue("largest pool " + executor.getLargestPoolSize(), executor.getLargestPoolSize() <= MAX_THREADS);
+        // The pool plus the scheduler thread, however many tasks were submitted
+        assertTrue("threads before " + threadsBefore + " during " + threadsDuring,
+                threadsDuring - threadsBefore <= MAX_THREADS + 1);
+        assertEquals(0, executor.getScheduledCount());
+    }
+
+    @Test
+    public void testBlockedWorkIsQueued() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch allRun = new CountDownLatch(MAX_THREADS + 10);
+
+        for (int taskCount = 0; taskCount < MAX_THREADS + 10; taskCount++)
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    release.await();
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                allRun.countDown();
+            });
+        }
+
+        for (int wait = 0; wait < 50 && executor.getActiveCount() < MAX_THREADS; wait++)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(MAX_THREADS, executor.getActiveCount());
+        assertEquals(10, executor.getQueueDepth());
+
+        release.countDown();
+        assertTrue(allRun.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTaskNameIsAppliedAndRestored() throws Exception
+    {
+        // One thread, so every task runs on the same one
+        BackgroundExecutor singleThreaded = new BackgroundExecutor("single", 1);
+        AtomicReference<String> nameBeforeTask = new AtomicReference<>();
+        AtomicReference<String> nameDuringTask = new AtomicReference<>();
+        AtomicReference<String> nameAfterTask = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        try
+        {
+            singleThreaded.execute(() -> nameBeforeTask.set(Thread.currentThread().getName()));
+            singleThreaded.execute(() -> nameDuringTask.set(Thread.currentThread().getName()), "Ejecting filament");
+            singleThreaded.execute(() ->
+            {
+                nameAfterTask.set(Thread.currentThread().getName());
+                done.countDown();
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally
+        {
+            singleThreaded.shutdown();
+        }
+
+        assertEquals("Ejecting filament", nameDuringTask.get());
+        assertNotEquals("Ejecting filament", nameBeforeTask.get());
+        assertEquals(nameBeforeTask.get(), nameAfterTask.get());
+    }
+
+    @Test
+    public void testStatusPollsRunWhileTheSharedPoolIsBlocked() throws Exception
+    {
+        BackgroundExecutor sharedPool = BackgroundExecutor.getInstance();
+        assertNotSame(sharedPool, BackgroundExecutor.getStatusPollInstance());
+
+        // Every shared thread waits for a status change that only a poll sees
+        CountDownLatch statusChanged = new CountDownLatch(1);
+        CountDownLatch waitersDone = new CountDownLatch(sharedPool.getMaxThreads());
+        for (int taskCount = 0; taskCount < sharedPool.getMaxThreads(); taskCount++)
+        {
+            sharedPool.execute(() ->
+            {
+                try
+                {
+                    statusChanged.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                waitersDone.countDown();
+            });
+        }
+
+        BackgroundExecutor.getStatusPollInstance().schedule(statusChanged::countDown, 10, "Status poll");
+
+        assertTrue(statusChanged.await(5, TimeUnit.SECONDS));
+        assertTrue(waitersDone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopThePool() throws Exception
+    {
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(() ->
+        {
+            throw new IllegalStateException("Deliberate failure");
+        });
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,131 @@
+package celtech.roboxbase.utils.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the headless event loop without starting the JavaFX toolkit.
+ *
+ * @author ianhudson
+ */
+public class HeadlessTaskExecutorTest
+{
+
+    private final HeadlessTaskExecutor taskExecutor = new HeadlessTaskExecutor();
+
+    @Test
+    public void testEventsRunInOrderOnOneThread() throws Exception
+    {
+        int producerCount = 4;
+        int eventsPerProducer = 500;
+        List<List<Integer>> eventsSeen = new ArrayList<>();
+        for (int producer = 0; producer < producerCount; producer++)
+        {
+            eventsSeen.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        Set<Thread> threadsUsed = ConcurrentHashMap.newKeySet();
+        CountDownLatch allRun = new CountDownLatch(producerCount * eventsPerProducer);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int producer = 0; producer < producerCount; producer++)
+        {
+            List<Integer> producerEvents = eventsSeen.get(producer);
+            Thread producerThread = new Thread(() ->
+            {
+                for (int event = 0; event < eventsPerProducer; event++)
+                {
+                    int eventNumber = event;
+                    taskExecutor.runOnGUIThread(() ->
+                    {
+                        threadsUsed.add(Thread.currentThread());
+                        producerEvents.add(eventNumber);
+                        allRun.countDown();
+                    });
+                }
+            });
+            producers.add(producerThread);
+            producerThread.start();
+        }
+
+        assertTrue(allRun.await(10, TimeUnit.SECONDS));
+        assertEquals(1, threadsUsed.size());
+        for (List<Integer> producerEvents : eventsSeen)
+        {
+            for (int event = 0; event < eventsPerProducer; event++)
+            {
+                assertEquals(event, (int) producerEvents.get(event));
+            }
+        }
+    }
+
+    @Test
+    public void testEventLoopRunsNestedEventsImmediately() throws Exception
+    {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        taskExecutor.runOnGUIThread(() ->
+        {
+            assertTrue(taskExecutor.isOnGUIThread());
+            order.add("outer start");
+            taskExecutor.runOnGUIThread(() -> order.add("nested"));
+            order.add("outer end");
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(taskExecutor.isOnGUIThread());
+        assertEquals(3, order.size());
+        assertEquals("nested", order.get(1));
+    }
+
+    @Test
+    public void testEventLoopSurvivesExceptions() throws Exception
+    {
+        AtomicBoolean ranAfterFailure = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(1);
+
+        taskExecutor.runOnGUIThread(() ->
+        {
+            throw new IllegalStateException("Deliberate failure");
+        });
+        taskExecutor.runOnGUIThread(() ->
+        {
+            ranAfterFailure.set(true);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(ranAfterFailure.get());
+    }
+
+    @Test
+    public void testResponsesRunOnTheEventLoop() throws Exception
+    {
+        AtomicReference<Thread> responseThread = new AtomicReference<>();
+        AtomicReference<TaskResponse> response = new AtomicReference<>();
+        CountDownLatch responded = new CountDownLatch(1);
+
+        taskExecutor.respondOnGUIThread((TaskResponse taskResponse) ->
+        {
+            responseThread.set(Thread.currentThread());
+            response.set(taskResponse);
+            responded.countDown();
+        }, true, "Done", "result");
+
+        assertTrue(responded.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), responseThread.get());
+        assertEquals("HeadlessEventLoop", responseThread.get().getName());
+        assertTrue(response.get().succeeded());
+        assertEquals("result", response.get().getReturnedObject());
+    }
+}
@@ -0,0 +1,116 @@
+package celtech.roboxbase.utils.tasks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author ianhudson
+ */
+public class ProgressBusTest
+{
+
+    private final BackgroundExecutor executor = new BackgroundExecutor("test", 4);
+    private final ProgressBus progressBus = new ProgressBus(executor);
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testUpdatesAreCoalesced() throws Exception
+    {
+        List<ProgressBus.Update> updates = new CopyOnWriteArrayList<>();
+        ProgressBus.Channel channel = progressBus.open("transfer");
+        ProgressBus.Subscription subscription = progressBus.subscribe(channel, 50, updates::add);
+
+        int lines = 2000000;
+        for (int line = 1; line <= lines; line++)
+        {
+            channel.update(line, lines);
+        }
+        Thread.sleep(120);
+        channel.close();
+
+        assertTrue("updates " + updates.size(), updates.size() <= 5);
+        ProgressBus.Update last = updates.get(updates.size() - 1);
+        assertTrue(last.isFinished());
+        assertEquals(lines, last.getDone());
+        assertEquals(100.0, last.getPercent(), 0.0001);
+        assertTrue(subscription.isCancelled());
+    }
+
+    @Test
+    public void testNothingIsDeliveredWithoutChange() throws Exception
+    {
+        List<ProgressBus.Update> updates = new CopyOnWriteArrayList<>();
+        ProgressBus.Channel channel = progressBus.open("transfer");
+        progressBus.subscribe(channel, 10, updates::add);
+
+        channel.add(10);
+        Thread.sleep(200);
+
+        assertEquals(1, updates.size());
+        assertEquals(10, updates.get(0).getDone());
+        channel.close();
+        assertEquals(2, updates.size());
+    }
+
+    @Test
+    public void testSubscribersHaveTheirOwnRate() throws Exception
+    {
+        List<ProgressBus.Update> fastUpdates = new CopyOnWriteArrayList<>();
+        List<ProgressBus.Update> slowUpdates = new CopyOnWriteArrayList<>();
+        ProgressBus.Subscription fast = progressBus.subscribe("upload", 10, fastUpdates::add);
+        ProgressBus.Subscription slow = progressBus.subscribe("upload", 400, slowUpdates::add);
+
+        ProgressBus.Channel channel = progressBus.open("upload");
+        channel.setTotal(600);
+        for (int step = 0; step < 60; step++)
+        {
+            channel.add(10);
+            Thread.sleep(10);
+        }
+        channel.message("done");
+        channel.close();
+
+        assertTrue("fast " + fastUpdates.size() + " slow " + slowUpdates.size(),
+                fastUpdates.size() > slowUpdates.size() * 4);
+        assertTrue(slowUpdates.size() <= 3);
+        assertEquals("done", fastUpdates.get(fastUpdates.size() - 1).getMessage());
+        assertEquals("done", slowUpdates.get(slowUpdates.size() - 1).getMessage());
+        assertEquals(600, slowUpdates.get(slowUpdates.size() - 1).getDone());
+
+        // Subscriptions by name carry on for later channels
+        assertFalse(fast.isCancelled());
+        slow.cancel();
+        ProgressBus.Channel nextChannel = progressBus.open("upload");
+        nextChannel.update(1, 2);
+        nextChannel.close();
+
+        ProgressBus.Update last = fastUpdates.get(fastUpdates.size() - 1);
+        assertEquals(1, last.getDone());
+        assertTrue(last.isFinished());
+        assertEquals(600, slowUpdates.get(slowUpdates.size() - 1).getDone());
+        fast.cancel();
+    }
+
+    @Test
+    public void testOtherChannelsAreNotDelivered() throws Exception
+    {
+        List<ProgressBus.Update> updates = new CopyOnWriteArrayList<>();
+        progressBus.subscribe("firmware", 10, updates::add);
+
+        ProgressBus.Channel channel = progressBus.open("download");
+        channel.update(5, 10);
+        Thread.sleep(50);
+        channel.close();
+
+        assertTrue(updates.isEmpty());
+    }
+}